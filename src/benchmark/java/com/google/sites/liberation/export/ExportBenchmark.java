@@ -0,0 +1,119 @@
+/*
+ * Copyright (C) 2009 Google Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.google.sites.liberation.export;
+
+import static com.google.sites.liberation.util.EntryType.isPage;
+
+import com.google.common.base.Strings;
+import com.google.common.collect.Lists;
+import com.google.gdata.data.sites.BaseContentEntry;
+import com.google.inject.Guice;
+import com.google.sites.liberation.util.EntryUtils;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.IOException;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures the export of every page of a {@link SyntheticSite}: storing its
+ * entries, converting the absolute links in its pages, and rendering its
+ * pages.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class ExportBenchmark {
+
+  @Param({ "100", "1000" })
+  public int numPages;
+
+  @Param({ "1", "5" })
+  public int depth;
+
+  private List<BaseContentEntry<?>> entries;
+  private EntryStore entryStore;
+  private List<BaseContentEntry<?>> pages;
+  private List<String> siteRoots;
+  private PageExporter pageExporter;
+
+  @Setup
+  public void setUp() {
+    SyntheticSite site = new SyntheticSite(numPages, depth);
+    entries = site.newEntries();
+    entryStore = site.newEntryStore();
+    pages = Lists.newArrayList();
+    siteRoots = Lists.newArrayList();
+    for (BaseContentEntry<?> entry : entries) {
+      if (isPage(entry)) {
+        pages.add(entryStore.getEntry(entry.getId()));
+        siteRoots.add(Strings.repeat("../", 
+            entryStore.getDepth(entry.getId()) + 1));
+      }
+    }
+    pageExporter = Guice.createInjector(new SiteExporterModule())
+        .getInstance(PageExporter.class);
+  }
+
+  @Benchmark
+  public EntryStore storeEntries() {
+    EntryStore store = new InMemoryEntryStore();
+    for (BaseContentEntry<?> entry : entries) {
+      store.addEntry(entry);
+    }
+    for (BaseContentEntry<?> page : pages) {
+      store.getPath(page.getId());
+    }
+    return store;
+  }
+
+  @Benchmark
+  public int convertLinks() {
+    int length = 0;
+    for (int i = 0; i < pages.size(); i++) {
+      length += AbsoluteLinkConverterImpl.convertLinks(
+          EntryUtils.getXhtmlContent(pages.get(i)), SyntheticSite.SITE_URL,
+          siteRoots.get(i)).length();
+    }
+    return length;
+  }
+
+  @Benchmark
+  public long exportPages() throws IOException {
+    long length = 0;
+    StringBuilder out = new StringBuilder();
+    for (BaseContentEntry<?> page : pages) {
+      out.setLength(0);
+      pageExporter.exportPage(page, entryStore, out, false);
+      length += out.length();
+    }
+    return length;
+  }
+}
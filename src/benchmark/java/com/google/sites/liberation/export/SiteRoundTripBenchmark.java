@@ -0,0 +1,159 @@
+/*
+ * Copyright (C) 2009 Google Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.google.sites.liberation.export;
+
+import com.google.common.io.Files;
+import com.google.gdata.client.sites.SitesService;
+import com.google.inject.Guice;
+import com.google.sites.liberation.imprt.SiteImporter;
+import com.google.sites.liberation.imprt.SiteImporterModule;
+import com.google.sites.liberation.util.ProgressListener;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.File;
+import java.io.IOException;
+import java.net.URL;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures a whole export of a {@link SyntheticSite} served by a
+ * {@link FakeSite}, and a whole import of its export into an empty fake site,
+ * through the real exporter and importer. Each request to a fake site takes
+ * the given latency, so that the cost of round trips can be told apart from
+ * the cost of the work done locally. Run with {@code -prof gc} to measure
+ * memory as well.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.SingleShotTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+@Fork(1)
+public class SiteRoundTripBenchmark {
+
+  @Param({ "100", "1000" })
+  public int numPages;
+
+  @Param({ "3" })
+  public int depth;
+
+  @Param({ "0", "5" })
+  public long latencyMillis;
+
+  private SyntheticSite site;
+  private FakeSite fakeSite;
+  private File exported;
+  private File directory;
+  private FakeSite copy;
+
+  @Setup
+  public void setUp() throws IOException {
+    site = new SyntheticSite(numPages, depth, 1, 1);
+    fakeSite = site.newFakeSite().setLatency(latencyMillis);
+    exported = Files.createTempDir();
+    exportSite(exported);
+  }
+
+  @Setup(Level.Iteration)
+  public void setUpIteration() throws IOException {
+    directory = Files.createTempDir();
+    copy = new FakeSite(new URL(
+        "https://" + SyntheticSite.HOST + "/feeds/content/site/copy"))
+        .setLatency(latencyMillis);
+  }
+
+  @TearDown(Level.Iteration)
+  public void tearDownIteration() {
+    delete(directory);
+  }
+
+  @TearDown
+  public void tearDown() {
+    delete(exported);
+  }
+
+  @Benchmark
+  public File exportSite() {
+    exportSite(directory);
+    return directory;
+  }
+
+  @Benchmark
+  public FakeSite importSite() {
+    Guice.createInjector(new SiteImporterModule(), new FakeSiteModule(copy))
+        .getInstance(SiteImporter.class).importSite(SyntheticSite.HOST, null,
+            "copy", false, new SitesService("benchmark"), exported,
+            new NullProgressListener());
+    return copy;
+  }
+
+  private void exportSite(File directory) {
+    Guice.createInjector(new SiteExporterModule(), new FakeSiteModule(fakeSite))
+        .getInstance(SiteExporter.class).exportSite(SyntheticSite.HOST, null,
+            SyntheticSite.WEBSPACE, false, new SitesService("benchmark"),
+            directory, new NullProgressListener());
+  }
+
+  private static void delete(File file) {
+    File[] children = file.listFiles();
+    if (children != null) {
+      for (File child : children) {
+        delete(child);
+      }
+    }
+    file.delete();
+  }
+
+  private static class NullProgressListener implements ProgressListener {
+
+    private String status;
+    private double progress;
+
+    @Override
+    public String getStatus() {
+      return status;
+    }
+
+    @Override
+    public double getProgress() {
+      return progress;
+    }
+
+    @Override
+    public void setStatus(String status) {
+      this.status = status;
+    }
+
+    @Override
+    public void setProgress(double progress) {
+      this.progress = progress;
+    }
+  }
+}
@@ -0,0 +1,87 @@
+/*
+ * Copyright (C) 2009 Google Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.google.sites.liberation.imprt;
+
+import com.google.common.collect.Lists;
+import com.google.gdata.data.sites.BasePageEntry;
+import com.google.gdata.data.sites.PageName;
+import com.google.gdata.data.sites.WebPageEntry;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures the conversion of relative links in page content on import, for
+ * pages with an increasing number of links. The time per link should stay
+ * about the same as the number of links grows.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class RelativeLinkConverterBenchmark {
+
+  private static final String URL = "https://sites.google.com/site/mysite";
+
+  @Param({ "10", "100", "1000", "10000" })
+  public int numLinks;
+
+  private List<BasePageEntry<?>> ancestors;
+  private String content;
+
+  @Setup
+  public void setUp() {
+    ancestors = Lists.newArrayList();
+    for (String name : new String[] { "a", "b", "c" }) {
+      WebPageEntry page = new WebPageEntry();
+      page.setPageName(new PageName(name));
+      ancestors.add(page);
+    }
+    StringBuilder builder = new StringBuilder("<div>");
+    for (int i = 0; i < numLinks; i++) {
+      char quote = (i % 2 == 0) ? '"' : '\'';
+      builder.append("<p>Paragraph ").append(i).append(" links to <a href=")
+          .append(quote);
+      for (int j = 0; j <= i % 4; j++) {
+        builder.append("../");
+      }
+      builder.append("page-").append(i).append("/index.html").append(quote)
+          .append(">page ").append(i).append("</a>.</p>");
+    }
+    content = builder.append("</div>").toString();
+  }
+
+  @Benchmark
+  public String convertLinks() {
+    return RelativeLinkConverterImpl.convertLinks(content, ancestors, URL,
+        false);
+  }
+}
@@ -0,0 +1,93 @@
+/*
+ * Copyright (C) 2009 Google Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.google.sites.liberation.parsers;
+
+import com.google.common.io.Files;
+import com.google.inject.Guice;
+import com.google.sites.liberation.export.SyntheticSite;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures parsing every exported page of a {@link SyntheticSite} back into
+ * entries, as an import does.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class PageParserBenchmark {
+
+  @Param({ "100", "1000" })
+  public int numPages;
+
+  @Param({ "1", "5" })
+  public int depth;
+
+  private File directory;
+  private List<File> files;
+  private PageParser pageParser;
+
+  @Setup
+  public void setUp() throws IOException {
+    directory = Files.createTempDir();
+    files = new SyntheticSite(numPages, depth).exportTo(directory);
+    pageParser = Guice.createInjector().getInstance(PageParser.class);
+  }
+
+  @TearDown
+  public void tearDown() {
+    delete(directory);
+  }
+
+  @Benchmark
+  public int parsePages() {
+    int numEntries = 0;
+    for (File file : files) {
+      numEntries += pageParser.parsePage(file).size();
+    }
+    return numEntries;
+  }
+
+  private static void delete(File file) {
+    File[] children = file.listFiles();
+    if (children != null) {
+      for (File child : children) {
+        delete(child);
+      }
+    }
+    file.delete();
+  }
+}
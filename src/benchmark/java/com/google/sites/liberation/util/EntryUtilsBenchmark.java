@@ -0,0 +1,73 @@
+/*
+ * Copyright (C) 2009 Google Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.google.sites.liberation.util;
+
+import com.google.common.collect.Lists;
+import com.google.gdata.data.sites.BaseContentEntry;
+import com.google.sites.liberation.export.SyntheticSite;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures reading the xhtml content of every page and comment of a 
+ * {@link SyntheticSite}.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class EntryUtilsBenchmark {
+
+  @Param({ "100", "1000", "10000" })
+  public int numPages;
+
+  private List<BaseContentEntry<?>> entries;
+
+  @Setup
+  public void setUp() {
+    entries = Lists.newArrayList();
+    for (BaseContentEntry<?> entry : 
+        new SyntheticSite(numPages, 3).newEntries()) {
+      if (EntryType.getType(entry) != EntryType.LIST_ITEM) {
+        entries.add(entry);
+      }
+    }
+  }
+
+  @Benchmark
+  public int getXhtmlContent() {
+    int length = 0;
+    for (BaseContentEntry<?> entry : entries) {
+      length += EntryUtils.getXhtmlContent(entry).length();
+    }
+    return length;
+  }
+}
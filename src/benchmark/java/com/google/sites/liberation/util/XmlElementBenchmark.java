@@ -0,0 +1,98 @@
+/*
+ * Copyright (C) 2009 Google Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.google.sites.liberation.util;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures building and writing a large page, shaped like a rendered list
+ * page with one table row per list item, for an increasing number of rows.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class XmlElementBenchmark {
+
+  private static final int NUM_COLUMNS = 5;
+
+  @Param({ "100", "1000", "10000" })
+  public int numRows;
+
+  private XmlElement page;
+
+  @Setup
+  public void setUp() {
+    page = buildPage(numRows);
+  }
+
+  @Benchmark
+  public StringBuilder appendTo() throws IOException {
+    StringBuilder builder = new StringBuilder();
+    page.appendTo(builder);
+    return builder;
+  }
+
+  @Benchmark
+  public StringBuilder buildAndAppendTo() throws IOException {
+    StringBuilder builder = new StringBuilder();
+    buildPage(numRows).appendTo(builder);
+    return builder;
+  }
+
+  private static XmlElement buildPage(int numRows) {
+    XmlElement table = new XmlElement("table")
+        .setAttribute("class", "goog-ws-list-table");
+    XmlElement header = new XmlElement("tr");
+    for (int j = 0; j < NUM_COLUMNS; j++) {
+      header.addElement(new XmlElement("th").addText("Column " + j));
+    }
+    table.addElement(header);
+    for (int i = 0; i < numRows; i++) {
+      XmlElement row = new XmlElement("tr")
+          .setAttribute("class", "hentry listitem")
+          .setAttribute("id", "item-" + i);
+      for (int j = 0; j < NUM_COLUMNS; j++) {
+        row.addElement(new XmlElement("td")
+            .setAttribute("class", "gs:field")
+            .setAttribute("title", "Column " + j)
+            .addText("Row " + i + " & \"cell\" <" + j + "> caf\u00e9"));
+      }
+      table.addElement(row);
+    }
+    XmlElement body = new XmlElement("body")
+        .addElement(new XmlElement("div").setAttribute("class", "hentry")
+            .addElement(new XmlElement("h3").addText("List page"))
+            .addElement(table));
+    return new XmlElement("html").addElement(body);
+  }
+}
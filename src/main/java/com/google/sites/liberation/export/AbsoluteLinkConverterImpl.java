@@ -19,8 +19,8 @@ package com.google.sites.liberation.export;
 import static com.google.sites.liberation.util.EntryUtils.getXhtmlContent;
 import static com.google.sites.liberation.util.EntryUtils.setContent;
 
+import com.google.common.base.Strings;
 import com.google.gdata.data.sites.BaseContentEntry;
-import com.google.gdata.data.sites.BasePageEntry;
 
 import java.net.URL;
 
@@ -32,45 +32,64 @@ import java.net.URL;
  */
 final class AbsoluteLinkConverterImpl implements AbsoluteLinkConverter {
 
+  private static final String HREF = "href=";
+
   @Override
   public void convertLinks(BaseContentEntry<?> entry, EntryStore entryStore,
       URL siteUrl, boolean isRevision) {
-    convertLinks(entry, entryStore, siteUrl, isRevision, "href=\"", "\"");
-    convertLinks(entry, entryStore, siteUrl, isRevision, "href='", "'");
-  }
-  
-  private void convertLinks(BaseContentEntry<?> entry, EntryStore entryStore, 
-      URL siteUrl, boolean isRevision, String prefix, String suffix) {
-    String content = getXhtmlContent(entry);
-    String url = siteUrl.toExternalForm();
     String siteRoot = getSiteRoot(entry, entryStore);
     if (isRevision) {
       siteRoot += "../";
     }
-    int index = content.indexOf(prefix + url);
+    setContent(entry, convertLinks(getXhtmlContent(entry), 
+        siteUrl.toExternalForm(), siteRoot));
+  }
+  
+  /**
+   * Returns the given content with every double or single quoted href 
+   * starting with the given url replaced by a link to the corresponding 
+   * index.html relative to the given site root. The content is scanned once, 
+   * and the result is written to a single buffer.
+   */
+  static String convertLinks(String content, String url, String siteRoot) {
+    StringBuilder builder = null;
+    int copied = 0;
+    int index = content.indexOf(HREF);
     while (index != -1) {
-      int startIndex = index + prefix.length();
-      int endIndex = content.indexOf(suffix, startIndex + 1);
-      String beforeLink = content.substring(0, startIndex);
-      
-      String link = "";
-	  int beginIndex = startIndex + url.length() + 1;
-	  if(beginIndex < endIndex){
-		  link = content.substring(beginIndex, endIndex);
-	  }
-	  
-      String afterLink = content.substring(endIndex);
-      content = beforeLink + siteRoot + link + "/index.html" + afterLink;
-      index = content.indexOf(prefix + url);
+      int startIndex = index + HREF.length() + 1;
+      if (startIndex > content.length()) {
+        break;
+      }
+      char quote = content.charAt(startIndex - 1);
+      if ((quote == '"' || quote == '\'') 
+          && content.startsWith(url, startIndex)) {
+        int endIndex = content.indexOf(quote, startIndex + 1);
+        if (endIndex == -1) {
+          break;
+        }
+        if (builder == null) {
+          builder = new StringBuilder(content.length());
+        }
+        builder.append(content, copied, startIndex).append(siteRoot);
+        int beginIndex = startIndex + url.length() + 1;
+        if (beginIndex < endIndex) {
+          builder.append(content, beginIndex, endIndex);
+        }
+        builder.append("/index.html");
+        copied = endIndex;
+        index = content.indexOf(HREF, endIndex);
+      } else {
+        index = content.indexOf(HREF, index + 1);
+      }
+    }
+    if (builder == null) {
+      return content;
     }
-    setContent(entry, content);
+    return builder.append(content, copied, content.length()).toString();
   }
   
   private String getSiteRoot(BaseContentEntry<?> entry, EntryStore entryStore) {
-    BasePageEntry<?> parent = entryStore.getParent(entry.getId());
-    if (parent == null) {
-      return "../";
-    }
-    return getSiteRoot(parent, entryStore) + "../";
+    int depth = Math.max(entryStore.getDepth(entry.getId()), 0);
+    return Strings.repeat("../", depth + 1);
   }
 }
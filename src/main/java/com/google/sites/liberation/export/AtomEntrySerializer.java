@@ -0,0 +1,79 @@
+/*
+ * Copyright (C) 2009 Google Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.google.sites.liberation.export;
+
+import static com.google.common.base.Preconditions.checkNotNull;
+
+import com.google.gdata.client.sites.SitesService;
+import com.google.gdata.data.ExtensionProfile;
+import com.google.gdata.data.sites.BaseContentEntry;
+import com.google.gdata.data.sites.ContentEntry;
+import com.google.gdata.util.ServiceException;
+import com.google.gdata.util.common.xml.XmlWriter;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+
+/**
+ * Converts content entries to and from their Atom representation, so that 
+ * they can be kept outside of the heap.
+ */
+final class AtomEntrySerializer {
+
+  private final ExtensionProfile extensionProfile;
+
+  /**
+   * Creates a new serializer using the extension profile of the Sites API.
+   */
+  AtomEntrySerializer() {
+    extensionProfile =
+        new SitesService("google-sites-liberation").getExtensionProfile();
+  }
+
+  /**
+   * Returns the given entry as UTF-8 encoded Atom.
+   */
+  byte[] serialize(BaseContentEntry<?> entry) throws IOException {
+    checkNotNull(entry);
+    ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+    XmlWriter writer = new XmlWriter(new OutputStreamWriter(bytes, "UTF-8"));
+    entry.generateAtom(writer, extensionProfile);
+    writer.flush();
+    return bytes.toByteArray();
+  }
+
+  /**
+   * Returns the entry represented by the given UTF-8 encoded Atom, as an 
+   * instance of the same class as the entry it was serialized from.
+   */
+  BaseContentEntry<?> deserialize(byte[] bytes) throws IOException {
+    checkNotNull(bytes);
+    ContentEntry entry = new ContentEntry();
+    try {
+      entry.parseAtom(extensionProfile, new ByteArrayInputStream(bytes));
+      BaseContentEntry<?> adaptedEntry =
+          (BaseContentEntry<?>) entry.getAdaptedEntry();
+      return (adaptedEntry == null) ? entry : adaptedEntry;
+    } catch (ServiceException e) {
+      IOException exception = new IOException("Unable to parse entry.");
+      exception.initCause(e);
+      throw exception;
+    }
+  }
+}
@@ -0,0 +1,229 @@
+/*
+ * Copyright (C) 2009 Google Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.google.sites.liberation.export;
+
+import static com.google.common.base.Preconditions.checkArgument;
+import static com.google.common.base.Preconditions.checkNotNull;
+
+import com.google.common.collect.HashMultiset;
+import com.google.common.collect.Lists;
+import com.google.common.collect.Maps;
+import com.google.common.collect.Multiset;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+import com.google.gdata.client.sites.SitesService;
+import com.google.gdata.data.OutOfLineContent;
+import com.google.gdata.data.sites.AttachmentEntry;
+import com.google.sites.liberation.util.ProgressListener;
+
+import java.io.File;
+import java.net.URI;
+import java.net.URISyntaxException;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Map;
+import java.util.Queue;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Downloads attachments on a pool of worker threads, while never running more
+ * than a given number of downloads against any one host at a time. Downloads
+ * from a host already running that many wait in a queue of their own host, 
+ * rather than on a worker thread, so that a slow host never keeps downloads 
+ * from the other hosts waiting.
+ *
+ * <p>Attachments can be scheduled as soon as their folder is known. The
+ * scheduler never calls the given {@link ProgressListener} from its worker
+ * threads, only from the thread waiting in {@link #awaitCompletion}. Apart
+ * from the download counts, a scheduler should only be used from the thread
+ * that created it.</p>
+ */
+final class AttachmentDownloadScheduler {
+
+  private static final Logger LOGGER = Logger.getLogger(
+      AttachmentDownloadScheduler.class.getCanonicalName());
+
+  private final AttachmentDownloader attachmentDownloader;
+  private final int maxDownloadsPerHost;
+  private final ExecutorService executor;
+  private final Map<String, Queue<Runnable>> hostQueues;
+  private final Multiset<String> hostsRunning;
+  private final List<Future<?>> downloads;
+  private final AtomicInteger numCompleted;
+
+  /**
+   * Creates a new scheduler using the given downloader, with
+   * {@code numWorkers} worker threads, and at most
+   * {@code maxDownloadsPerHost} concurrent downloads from a single host.
+   */
+  AttachmentDownloadScheduler(AttachmentDownloader attachmentDownloader,
+      int numWorkers, int maxDownloadsPerHost) {
+    checkArgument(numWorkers > 0);
+    checkArgument(maxDownloadsPerHost > 0);
+    this.attachmentDownloader = checkNotNull(attachmentDownloader);
+    this.maxDownloadsPerHost = maxDownloadsPerHost;
+    executor = Executors.newFixedThreadPool(numWorkers,
+        new ThreadFactoryBuilder().setDaemon(true)
+            .setNameFormat("attachment-downloader-%d").build());
+    hostQueues = Maps.newHashMap();
+    hostsRunning = HashMultiset.create();
+    downloads = Lists.newArrayList();
+    numCompleted = new AtomicInteger();
+  }
+
+  /**
+   * Schedules the download of the given attachment to the given file,
+   * creating the file's folder first if needed.
+   */
+  void schedule(final AttachmentEntry attachment, final File file,
+      final SitesService sitesService) {
+    checkNotNull(attachment);
+    checkNotNull(file);
+    checkNotNull(sitesService);
+    FutureTask<Void> download = new FutureTask<Void>(new Runnable() {
+      @Override
+      public void run() {
+        try {
+          file.getParentFile().mkdirs();
+          attachmentDownloader.download(attachment, file, sitesService);
+        } finally {
+          numCompleted.incrementAndGet();
+        }
+      }
+    }, null);
+    downloads.add(download);
+    submit(getHost(attachment), download);
+  }
+
+  /**
+   * Returns the number of attachments scheduled so far.
+   */
+  int getNumScheduled() {
+    return downloads.size();
+  }
+
+  /**
+   * Returns the number of scheduled attachments that have finished
+   * downloading, successfully or not.
+   */
+  int getNumCompleted() {
+    return numCompleted.get();
+  }
+
+  /**
+   * Waits for every scheduled download to finish. After each one, the
+   * progress of the given listener is set to 
+   * {@code (done + completed) / total}, where {@code completed} is the 
+   * number of finished downloads.
+   */
+  void awaitCompletion(ProgressListener progressListener, int done,
+      int total) {
+    for (Future<?> download : downloads) {
+      try {
+        download.get();
+      } catch (InterruptedException e) {
+        Thread.currentThread().interrupt();
+        throw new RuntimeException(e);
+      } catch (ExecutionException e) {
+        LOGGER.log(Level.WARNING, "Error downloading attachment.", 
+            e.getCause());
+      }
+      progressListener.setProgress(
+          ((double) (done + getNumCompleted())) / total);
+    }
+  }
+
+  /**
+   * Stops any downloads that are still running or waiting to run.
+   */
+  void shutdown() {
+    executor.shutdownNow();
+  }
+
+  /**
+   * Runs the given download from the given host on a worker thread if fewer
+   * than the maximum number of downloads from the host are running, and 
+   * otherwise queues it until one of them finishes.
+   */
+  private synchronized void submit(String host, Runnable download) {
+    if (hostsRunning.count(host) < maxDownloadsPerHost) {
+      hostsRunning.add(host);
+      execute(host, download);
+    } else {
+      Queue<Runnable> queue = hostQueues.get(host);
+      if (queue == null) {
+        queue = new LinkedList<Runnable>();
+        hostQueues.put(host, queue);
+      }
+      queue.add(download);
+    }
+  }
+
+  private void execute(final String host, final Runnable download) {
+    executor.execute(new Runnable() {
+      @Override
+      public void run() {
+        try {
+          download.run();
+        } finally {
+          downloadFinished(host);
+        }
+      }
+    });
+  }
+
+  /**
+   * Runs the next queued download from the given host, if there is one, in
+   * place of a download from the host which finished.
+   */
+  private synchronized void downloadFinished(String host) {
+    Queue<Runnable> queue = hostQueues.get(host);
+    Runnable next = (queue == null) ? null : queue.poll();
+    if (next == null || executor.isShutdown()) {
+      hostsRunning.remove(host);
+    } else {
+      execute(host, next);
+    }
+  }
+
+  /**
+   * Returns the host the given attachment is downloaded from, or the empty
+   * string if it is unknown.
+   */
+  static String getHost(AttachmentEntry attachment) {
+    if (attachment.getContent() instanceof OutOfLineContent) {
+      String uri = ((OutOfLineContent) attachment.getContent()).getUri();
+      if (uri != null) {
+        try {
+          String host = new URI(uri).getHost();
+          if (host != null) {
+            return host.toLowerCase();
+          }
+        } catch (URISyntaxException e) {
+          LOGGER.log(Level.FINE, "Invalid attachment uri: " + uri, e);
+        }
+      }
+    }
+    return "";
+  }
+}
@@ -32,7 +32,9 @@ interface AttachmentDownloader {
   
   /**
    * Downloads the given attachment to the given file name, using the given
-   * SitesService.
+   * SitesService, returning whether it was downloaded. If not, any existing
+   * file is left as it was.
    */
-  void download(AttachmentEntry attachment, File file, SitesService sitesService);
+  boolean download(AttachmentEntry attachment, File file, 
+      SitesService sitesService);
 }
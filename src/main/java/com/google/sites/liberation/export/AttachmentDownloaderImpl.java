@@ -24,12 +24,15 @@ import com.google.gdata.data.OutOfLineContent;
 import com.google.gdata.data.media.MediaSource;
 import com.google.gdata.data.sites.AttachmentEntry;
 import com.google.gdata.util.ServiceException;
+import com.google.sites.liberation.util.FileUtils;
 
 import java.io.File;
 import java.io.FileOutputStream;
 import java.io.IOException;
 import java.io.InputStream;
-import java.io.OutputStream;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.channels.ReadableByteChannel;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 
@@ -37,6 +40,11 @@ import java.util.logging.Logger;
  * Implements {@link AttachmentDownloader} to download an attachment
  * to a specified file.
  * 
+ * <p>The attachment is streamed into a temporary file in the destination 
+ * folder with {@link FileChannel#transferFrom}, and only renamed to the given 
+ * file once it is complete, so that a failed download never leaves a 
+ * partially written file behind, and never removes the previous file.</p>
+ * 
  * @author bsimon@google.com (Benjamin Simon)
  */
 final class AttachmentDownloaderImpl implements AttachmentDownloader {
@@ -44,11 +52,13 @@ final class AttachmentDownloaderImpl implements AttachmentDownloader {
   private static final Logger LOGGER = Logger.getLogger(
       AttachmentDownloaderImpl.class.getCanonicalName());
   
+  static final long TRANSFER_SIZE = 8 * 1024 * 1024;
+  
   /**
    * Downloads the given attachment to the given file name.
    */
   @Override
-  public void download(AttachmentEntry attachment, File file, 
+  public boolean download(AttachmentEntry attachment, File file, 
       SitesService sitesService) {
     checkNotNull(attachment);
     checkNotNull(file);
@@ -56,15 +66,8 @@ final class AttachmentDownloaderImpl implements AttachmentDownloader {
     mediaContent.setUri(((OutOfLineContent) attachment.getContent()).getUri());
     try {
       MediaSource mediaSource = sitesService.getMedia(mediaContent);
-      InputStream inStream = mediaSource.getInputStream();
-      OutputStream outStream = new FileOutputStream(file);
-      byte[] buf = new byte[4*1024];
-      int bytesRead;
-      while((bytesRead = inStream.read(buf)) != -1) {
-        outStream.write(buf, 0, bytesRead);
-      }
-      inStream.close();
-      outStream.close();
+      write(mediaSource.getInputStream(), file);
+      return true;
     } catch (IOException e) {
       LOGGER.log(Level.WARNING, "Error downloading attachment: " 
           + attachment.getTitle().getPlainText(), e);
@@ -72,5 +75,51 @@ final class AttachmentDownloaderImpl implements AttachmentDownloader {
       LOGGER.log(Level.WARNING, "Error downloading attachment: " 
           + attachment.getTitle().getPlainText(), e);
     }
+    return false;
+  }
+  
+  /**
+   * Writes the contents of the given stream to the given file, through a 
+   * temporary file which replaces it once complete. If the temporary file 
+   * can not replace it, the given file is left as it was, and the temporary
+   * file is kept so that the download is not lost. A directory is never 
+   * replaced; the download fails instead. The stream is always closed.
+   */
+  static void write(InputStream inStream, File file) throws IOException {
+    File tempFile = null;
+    boolean complete = false;
+    try {
+      File folder = file.getAbsoluteFile().getParentFile();
+      tempFile = File.createTempFile(".download", ".tmp", folder);
+      ReadableByteChannel in = Channels.newChannel(inStream);
+      FileOutputStream outStream = new FileOutputStream(tempFile);
+      try {
+        FileChannel out = outStream.getChannel();
+        long position = 0;
+        long transferred;
+        // transferFrom returns 0 only once the source channel is exhausted, 
+        // since a stream-backed channel always blocks until data arrives.
+        while ((transferred = out.transferFrom(in, position, TRANSFER_SIZE)) 
+            > 0) {
+          position += transferred;
+        }
+      } finally {
+        outStream.close();
+      }
+      if (file.isDirectory()) {
+        throw new IOException("Unable to replace directory " + file);
+      }
+      complete = true;
+      if (!FileUtils.replaceFile(tempFile, file, 
+          new File(tempFile.getPath() + ".old"))) {
+        throw new IOException("Unable to rename " + tempFile + " to " + file
+            + ", the download is kept in " + tempFile);
+      }
+    } finally {
+      inStream.close();
+      if (tempFile != null && !complete && !tempFile.delete()) {
+        LOGGER.log(Level.WARNING, "Unable to delete file: " + tempFile);
+      }
+    }
   }
 }
@@ -19,20 +19,30 @@ package com.google.sites.liberation.export;
 import static com.google.gdata.util.common.base.Preconditions.checkNotNull;
 import static com.google.gdata.util.common.base.Preconditions.checkArgument;
 
+import com.google.common.base.Throwables;
 import com.google.common.collect.AbstractIterator;
 import com.google.common.collect.Iterators;
+import com.google.common.collect.Lists;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
 import com.google.gdata.client.Query;
 import com.google.gdata.client.sites.ContentQuery;
 import com.google.gdata.client.sites.SitesService;
+import com.google.gdata.data.DateTime;
 import com.google.gdata.data.sites.BaseContentEntry;
 import com.google.gdata.util.ServiceException;
-import com.google.gdata.util.common.base.Pair;
+import com.google.gdata.util.common.base.Nullable;
 import com.google.sites.liberation.util.EntryProvider;
 
 import java.io.IOException;
 import java.net.URL;
 import java.util.Iterator;
+import java.util.LinkedList;
 import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 
@@ -42,6 +52,17 @@ import java.util.logging.Logger;
  * valid entries in a feed even if some entries in the feed cause exceptions
  * to be thrown. 
  * 
+ * <p>Entries are requested in windows of consecutive start indices, whose size
+ * is chosen by a {@link PageSizeController}. When more
+ * than one request is allowed in flight, later windows are fetched in the 
+ * background while earlier ones are being consumed, but entries are always
+ * returned in feed order.</p>
+ * 
+ * <p>A feed can start at any index, can be limited to the entries updated 
+ * since a given time, and can report to a {@link FeedCheckpointListener} each 
+ * time all of the entries of a window have been consumed, so that an 
+ * interrupted export can later continue from there.</p>
+ * 
  * <p>This class can produce unexpected results if used on a feed other than the
  * content feed for a Google Site.</p>
  * 
@@ -52,10 +73,20 @@ final class ContinuousContentFeed implements Iterable<BaseContentEntry<?>> {
   private static final Logger LOGGER = Logger.getLogger(
       ContinuousContentFeed.class.getCanonicalName());
   
+  /**
+   * The number of consecutive windows that may fail entirely before the 
+   * rest of the feed is given up on.
+   */
+  static final int MAX_FAILED_WINDOWS = 3;
+  
   private final EntryProvider entryProvider;
   private final URL feedUrl;
   private final SitesService sitesService;
-  private final int resultsPerRequest;
+  private final PageSizeController pageSizeController;
+  private final int maxRequestsInFlight;
+  private final int startIndex;
+  private final DateTime updatedMin;
+  private final FeedCheckpointListener checkpointListener;
   
   /**
    * Creates a new instance of {@code ContinuousContentFeed} for the given
@@ -66,11 +97,59 @@ final class ContinuousContentFeed implements Iterable<BaseContentEntry<?>> {
    */
   ContinuousContentFeed(URL feedUrl, EntryProvider entryProvider,
       SitesService sitesService, int resultsPerRequest) {
+    this(feedUrl, entryProvider, sitesService, resultsPerRequest, 1);
+  }
+  
+  /**
+   * Creates a new instance of {@code ContinuousContentFeed} for the given
+   * entry provider, feed URL, and number of entries to request per query, 
+   * which will have at most {@code maxRequestsInFlight} queries outstanding
+   * at any time.
+   */
+  ContinuousContentFeed(URL feedUrl, EntryProvider entryProvider,
+      SitesService sitesService, int resultsPerRequest, 
+      int maxRequestsInFlight) {
+    this(feedUrl, entryProvider, sitesService, 
+        PageSizeController.fixed(resultsPerRequest), maxRequestsInFlight);
+  }
+  
+  /**
+   * Creates a new instance of {@code ContinuousContentFeed} for the given
+   * entry provider and feed URL, which requests as many entries per query as 
+   * the given {@code PageSizeController} chooses, with at most 
+   * {@code maxRequestsInFlight} queries outstanding at any time.
+   */
+  ContinuousContentFeed(URL feedUrl, EntryProvider entryProvider,
+      SitesService sitesService, PageSizeController pageSizeController, 
+      int maxRequestsInFlight) {
+    this(feedUrl, entryProvider, sitesService, pageSizeController, 
+        maxRequestsInFlight, 1, null, null);
+  }
+  
+  /**
+   * Creates a new instance of {@code ContinuousContentFeed} for the given
+   * entry provider and feed URL, starting at feed index {@code startIndex}, 
+   * which requests as many entries per query as the given 
+   * {@code PageSizeController} chooses, with at most 
+   * {@code maxRequestsInFlight} queries outstanding at any time. If 
+   * {@code updatedMin} is not {@code null}, only entries updated since then 
+   * are returned. If {@code checkpointListener} is not {@code null}, it is 
+   * told whenever a window of entries has been consumed.
+   */
+  ContinuousContentFeed(URL feedUrl, EntryProvider entryProvider,
+      SitesService sitesService, PageSizeController pageSizeController, 
+      int maxRequestsInFlight, int startIndex, @Nullable DateTime updatedMin,
+      @Nullable FeedCheckpointListener checkpointListener) {
     this.entryProvider = checkNotNull(entryProvider);
     this.feedUrl = checkNotNull(feedUrl);
     this.sitesService = checkNotNull(sitesService);
-    checkArgument(resultsPerRequest > 0);
-    this.resultsPerRequest = resultsPerRequest;
+    this.pageSizeController = checkNotNull(pageSizeController);
+    checkArgument(maxRequestsInFlight > 0);
+    this.maxRequestsInFlight = maxRequestsInFlight;
+    checkArgument(startIndex > 0);
+    this.startIndex = startIndex;
+    this.updatedMin = updatedMin;
+    this.checkpointListener = checkpointListener;
   }
   
   /**
@@ -79,7 +158,7 @@ final class ContinuousContentFeed implements Iterable<BaseContentEntry<?>> {
    * The iterator returned will iterate through all of the entries corresponding 
    * to this {@code ContinuousContentFeed} even if the results are spread over 
    * multiple feeds. Subsequent calls to this method will return independent 
-   * iterators, each starting at the beginning of the feed. However, each 
+   * iterators, each starting at this feed's start index. However, each 
    * iterator instance will make its own RPC's, and so the use of multiple 
    * iterators should be avoided.
    * </p>
@@ -91,18 +170,37 @@ final class ContinuousContentFeed implements Iterable<BaseContentEntry<?>> {
   /**
    * This class defines the iterator returned by a 
    * {@code ContinuousContentFeed} iterable.
+   * 
+   * <p>Windows are issued with a slow start: only one request is made until a
+   * full window comes back, after which the number of requests in flight 
+   * doubles with each full window up to {@code maxRequestsInFlight}. Small 
+   * feeds therefore cost no more requests than a serial fetch would.</p>
+   * 
+   * <p>The feed ends at the first window the server returns short, or after
+   * {@link #MAX_FAILED_WINDOWS} consecutive windows in which every request 
+   * failed.</p>
    */
   private class FeedIterator extends AbstractIterator<BaseContentEntry<?>> {
 
     Iterator<BaseContentEntry<?>> currentItr;
     int index;
+    
+    private final LinkedList<Window> windows;
+    private Window currentWindow;
+    private ExecutorService executor;
+    private int requestsAllowed;
+    private int failedWindows;
+    private boolean endOfFeed;
 
     /**
      * Constructs a new iterator for this {@code ContinuousContentFeed}.
      */
     FeedIterator() {
       currentItr = Iterators.emptyIterator();
-      index = 1;
+      index = startIndex;
+      windows = Lists.newLinkedList();
+      requestsAllowed = 1;
+      endOfFeed = false;
     }
 
     /**
@@ -111,26 +209,136 @@ final class ContinuousContentFeed implements Iterable<BaseContentEntry<?>> {
      */
     @Override
     public BaseContentEntry<?> computeNext() {
-      if (!currentItr.hasNext()) {
-        Pair<Iterator<BaseContentEntry<?>>, Integer> pair = 
-            getEntries(index, resultsPerRequest);
-        currentItr = pair.getFirst();
-        index += pair.getSecond();
-        if (!currentItr.hasNext()) {
+      while (!currentItr.hasNext()) {
+        if (currentWindow != null) {
+          if (checkpointListener != null) {
+            checkpointListener.windowCompleted(
+                currentWindow.start + currentWindow.size);
+          }
+          currentWindow = null;
+        }
+        if (endOfFeed) {
+          shutdown();
           return endOfData();
         }
+        Window window = nextWindow();
+        WindowEntries entries = window.get();
+        currentWindow = window;
+        currentItr = entries.iterator;
+        if (entries.numCovered < window.size) {
+          endOfFeed = true;
+        } else if (entries.numReturned == 0) {
+          if (++failedWindows >= MAX_FAILED_WINDOWS) {
+            LOGGER.log(Level.WARNING, "Giving up on " + feedUrl + " after " 
+                + failedWindows + " windows in a row could not be retrieved, "
+                + "the last one ending at index " 
+                + (window.start + window.size - 1) + ".");
+            endOfFeed = true;
+          }
+        } else {
+          failedWindows = 0;
+          requestsAllowed = Math.min(2 * requestsAllowed, maxRequestsInFlight);
+        }
       }
       return currentItr.next();
     }
     
     /**
-     * Returns an iterator containing the valid entries with indices between
-     * {@code start} and {@code start}+{@code num}-1 and the number of entries
-     * the iterator contains. 
+     * Returns the window starting at the lowest index not yet consumed, 
+     * issuing as many further windows as are currently allowed in flight.
      */
-    private Pair<Iterator<BaseContentEntry<?>>, Integer>
-        getEntries(int start, int num) {
+    private Window nextWindow() {
+      if (maxRequestsInFlight == 1) {
+        Window window = new Window(index, pageSizeController.getPageSize());
+        window.run();
+        index += window.size;
+        return window;
+      }
+      if (executor == null) {
+        executor = Executors.newFixedThreadPool(maxRequestsInFlight,
+            new ThreadFactoryBuilder().setDaemon(true)
+                .setNameFormat("feed-fetcher-%d").build());
+      }
+      while (windows.size() < requestsAllowed) {
+        Window window = new Window(index, pageSizeController.getPageSize());
+        window.future = executor.submit(window);
+        windows.add(window);
+        index += window.size;
+      }
+      return windows.removeFirst();
+    }
+    
+    /**
+     * Cancels any outstanding requests and releases the fetching threads.
+     */
+    private void shutdown() {
+      for (Window window : windows) {
+        window.future.cancel(true);
+      }
+      windows.clear();
+      if (executor != null) {
+        executor.shutdownNow();
+        executor = null;
+      }
+    }
+    
+    /**
+     * A range of {@code size} consecutive feed indices beginning at 
+     * {@code start}, together with the result of requesting them.
+     */
+    private class Window implements Callable<WindowEntries> {
+      
+      final int start;
+      final int size;
+      Future<WindowEntries> future;
+      WindowEntries result;
+      
+      Window(int start, int size) {
+        this.start = start;
+        this.size = size;
+      }
+      
+      @Override
+      public WindowEntries call() {
+        return getEntries(start, size, pageSizeController);
+      }
+      
+      void run() {
+        result = call();
+      }
+      
+      /**
+       * Returns the result of this window, waiting for it if it was issued
+       * in the background.
+       */
+      WindowEntries get() {
+        if (result == null) {
+          try {
+            result = future.get();
+          } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            shutdown();
+            throw new RuntimeException(e);
+          } catch (ExecutionException e) {
+            shutdown();
+            throw Throwables.propagate(e.getCause());
+          }
+        }
+        return result;
+      }
+    }
+    
+    /**
+     * Returns the valid entries with indices between {@code start} and 
+     * {@code start}+{@code num}-1. If {@code controller} is not {@code null}, 
+     * the outcome of each query is reported to it.
+     */
+    private WindowEntries getEntries(int start, int num, 
+        @Nullable PageSizeController controller) {
       Query query = new ContentQuery(feedUrl);
+      if (updatedMin != null) {
+        query.setUpdatedMin(updatedMin);
+      }
       try {
         int numReturned = 0;
         Iterator<BaseContentEntry<?>> itr = Iterators.emptyIterator();
@@ -138,37 +346,70 @@ final class ContinuousContentFeed implements Iterable<BaseContentEntry<?>> {
         do {
           query.setStartIndex(start + numReturned);
           query.setMaxResults(num - numReturned);
+          long startTime = System.currentTimeMillis();
           entries = entryProvider.getEntries(query, sitesService);
+          if (controller != null) {
+            controller.recordResponse(num - numReturned, entries.size(), 
+                System.currentTimeMillis() - startTime);
+          }
           numReturned += entries.size();
           itr = Iterators.concat(itr, entries.iterator());
         } while (numReturned < num && entries.size() > 0);
-        return Pair.of(itr, numReturned);
+        return new WindowEntries(itr, numReturned, numReturned);
       } catch (IOException e) {
-        return catchException(e, start, num);
+        return catchException(e, start, num, controller);
       } catch (ServiceException e) {
-        return catchException(e, start, num);
+        return catchException(e, start, num, controller);
       }
     }
     
-    private Pair<Iterator<BaseContentEntry<?>>, Integer> 
-        catchException(Exception e, int start, int num) {
+    /**
+     * Handles a failed query by retrying each half of the window separately, 
+     * so that a single bad entry only costs the entries around it. Only the
+     * failure of the original window is reported to the controller. An 
+     * index whose request fails on its own is covered without returning an
+     * entry.
+     */
+    private WindowEntries catchException(Exception e, int start, int num, 
+        @Nullable PageSizeController controller) {
       String message = "Error retrieving response from query.";
       LOGGER.log(Level.WARNING, message, e);
+      if (controller != null) {
+        controller.recordFailure();
+      }
       if (num == 1) {
         Iterator<BaseContentEntry<?>> itr = Iterators.emptyIterator();
-        return Pair.of(itr, 1);
+        return new WindowEntries(itr, 0, 1);
       } else {
         int num1 = num/2;
         int num2 = num - num1;
-        Pair<Iterator<BaseContentEntry<?>>, Integer> pair1 = 
-            getEntries(start, num1);
-        Pair<Iterator<BaseContentEntry<?>>, Integer> pair2 = 
-            getEntries(start + num1, num2);
-        Iterator<BaseContentEntry<?>> itr = Iterators.concat(pair1.getFirst(),
-            pair2.getFirst());
-        int numReturned = pair1.getSecond() + pair2.getSecond();
-        return Pair.of(itr, numReturned);
+        WindowEntries entries1 = getEntries(start, num1, null);
+        WindowEntries entries2 = getEntries(start + num1, num2, null);
+        Iterator<BaseContentEntry<?>> itr = Iterators.concat(
+            entries1.iterator, entries2.iterator);
+        return new WindowEntries(itr, 
+            entries1.numReturned + entries2.numReturned,
+            entries1.numCovered + entries2.numCovered);
       }
     }
   }
+  
+  /**
+   * The entries retrieved for a range of feed indices, together with the 
+   * number of entries returned and the number of indices covered, which also
+   * counts the indices whose requests failed.
+   */
+  private static final class WindowEntries {
+    
+    final Iterator<BaseContentEntry<?>> iterator;
+    final int numReturned;
+    final int numCovered;
+    
+    WindowEntries(Iterator<BaseContentEntry<?>> iterator, int numReturned, 
+        int numCovered) {
+      this.iterator = iterator;
+      this.numReturned = numReturned;
+      this.numCovered = numCovered;
+    }
+  }
 }
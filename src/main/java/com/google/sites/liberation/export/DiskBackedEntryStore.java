@@ -0,0 +1,299 @@
+/*
+ * Copyright (C) 2009 Google Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.google.sites.liberation.export;
+
+import static com.google.common.base.Preconditions.checkNotNull;
+import static com.google.sites.liberation.util.EntryType.getType;
+import static com.google.sites.liberation.util.EntryType.isPage;
+
+import com.google.common.collect.LinkedHashMultimap;
+import com.google.common.collect.Lists;
+import com.google.common.collect.Maps;
+import com.google.common.collect.Multimap;
+import com.google.common.collect.Sets;
+import com.google.gdata.data.sites.BaseContentEntry;
+import com.google.gdata.data.sites.BasePageEntry;
+import com.google.sites.liberation.util.EntryType;
+import com.google.sites.liberation.util.EntryUtils;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.util.Collection;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * An implementation of {@link EntryStore} for sites too large to hold in
+ * memory.
+ *
+ * <p>Only the id, parent id, page name, title and type of each entry, and its
+ * position in the {@link EntryPathIndex page hierarchy}, are kept on the
+ * heap. The entries themselves are serialized as Atom to an append-only 
+ * temporary file when they are added, and again each time they are updated,
+ * to be parsed back on demand, and a small cache of recently used entries is
+ * kept in memory. Since a cached entry may leave the cache at any time, 
+ * changes made to an entry, such as converting its links, are only kept 
+ * once it is {@link #updateEntry updated}. The temporary file is deleted 
+ * when the store is closed.</p>
+ *
+ * <p>All methods are synchronized, so a store can be shared between
+ * threads.</p>
+ */
+final class DiskBackedEntryStore implements EntryStore, Closeable {
+
+  private static final Logger LOGGER = Logger.getLogger(
+      DiskBackedEntryStore.class.getCanonicalName());
+
+  static final int DEFAULT_CACHE_SIZE = 256;
+
+  private final File file;
+  private final RandomAccessFile data;
+  private final AtomEntrySerializer serializer;
+  private final Map<String, EntryRecord> records;
+  private final Multimap<String, String> children;
+  private final Set<String> topLevelIds;
+  private final Map<String, BaseContentEntry<?>> cache;
+  private final EntryPathIndex pathIndex;
+
+  /**
+   * Creates a new DiskBackedEntryStore backed by a new temporary file in the
+   * given directory, or the default temporary directory if it is
+   * {@code null}, which caches up to {@code cacheSize} entries in memory.
+   */
+  DiskBackedEntryStore(File directory, final int cacheSize)
+      throws IOException {
+    file = File.createTempFile("entries", ".atom", directory);
+    file.deleteOnExit();
+    data = new RandomAccessFile(file, "rw");
+    serializer = new AtomEntrySerializer();
+    records = Maps.newHashMap();
+    children = LinkedHashMultimap.create();
+    topLevelIds = Sets.newLinkedHashSet();
+    pathIndex = new EntryPathIndex();
+    cache = new LinkedHashMap<String, BaseContentEntry<?>>(16, 0.75f, true) {
+      @Override
+      protected boolean removeEldestEntry(
+          Map.Entry<String, BaseContentEntry<?>> eldest) {
+        return size() > cacheSize;
+      }
+    };
+  }
+
+  @Override
+  public synchronized void addEntry(BaseContentEntry<?> entry) {
+    checkNotNull(entry);
+    String id = entry.getId();
+    if (id == null || records.containsKey(id)) {
+      LOGGER.log(Level.WARNING, "All entries should have a unique non-null id!");
+      return;
+    }
+    String parentId = EntryUtils.getParentId(entry);
+    String pageName = null;
+    if (isPage(entry) && ((BasePageEntry<?>) entry).getPageName() != null) {
+      pageName = ((BasePageEntry<?>) entry).getPageName().getValue();
+    }
+    String title = (entry.getTitle() == null)
+        ? null : entry.getTitle().getPlainText();
+    EntryRecord record = 
+        new EntryRecord(parentId, pageName, title, getType(entry));
+    write(entry, record);
+    records.put(id, record);
+    pathIndex.add(id, parentId, pageName);
+    cache.put(id, entry);
+    if (parentId == null) {
+      if (isPage(entry)) {
+        topLevelIds.add(id);
+      } else {
+        LOGGER.log(Level.WARNING, "All non-page entries must have a parent!");
+      }
+    } else {
+      children.put(parentId, id);
+    }
+  }
+
+  @Override
+  public synchronized void updateEntry(BaseContentEntry<?> entry) {
+    checkNotNull(entry);
+    EntryRecord record = records.get(entry.getId());
+    if (record == null) {
+      LOGGER.log(Level.WARNING, "Only stored entries can be updated!");
+      return;
+    }
+    write(entry, record);
+    cache.put(entry.getId(), entry);
+  }
+
+  @Override
+  public synchronized Collection<BaseContentEntry<?>> getChildren(String id) {
+    checkNotNull(id);
+    List<BaseContentEntry<?>> entries = Lists.newArrayList();
+    for (String childId : children.get(id)) {
+      entries.add(getEntry(childId));
+    }
+    return entries;
+  }
+
+  @Override
+  public synchronized BaseContentEntry<?> getEntry(String id) {
+    checkNotNull(id);
+    BaseContentEntry<?> entry = cache.get(id);
+    if (entry == null) {
+      EntryRecord record = records.get(id);
+      if (record == null) {
+        return null;
+      }
+      entry = load(record);
+      cache.put(id, entry);
+    }
+    return entry;
+  }
+
+  @Override
+  public synchronized BasePageEntry<?> getParent(String id) {
+    checkNotNull(id);
+    EntryRecord record = records.get(id);
+    if (record == null || record.parentId == null) {
+      return null;
+    }
+    return (BasePageEntry<?>) getEntry(record.parentId);
+  }
+
+  @Override
+  public synchronized Collection<BasePageEntry<?>> getTopLevelEntries() {
+    List<BasePageEntry<?>> entries = Lists.newArrayList();
+    for (String id : topLevelIds) {
+      entries.add((BasePageEntry<?>) getEntry(id));
+    }
+    return entries;
+  }
+
+  @Override
+  public synchronized List<BasePageEntry<?>> getAncestors(String id) {
+    List<String> ancestorIds = pathIndex.getAncestorIds(checkNotNull(id));
+    if (ancestorIds == null) {
+      return null;
+    }
+    List<BasePageEntry<?>> ancestors = Lists.newArrayList();
+    for (String ancestorId : ancestorIds) {
+      ancestors.add((BasePageEntry<?>) getEntry(ancestorId));
+    }
+    return ancestors;
+  }
+
+  @Override
+  public int getDepth(String id) {
+    return pathIndex.getDepth(checkNotNull(id));
+  }
+
+  @Override
+  public String getPath(String id) {
+    return pathIndex.getPath(checkNotNull(id));
+  }
+
+  /**
+   * Returns the page name of the entry with the given id without loading it,
+   * or {@code null} if there is no such page.
+   */
+  synchronized String getPageName(String id) {
+    EntryRecord record = records.get(checkNotNull(id));
+    return (record == null) ? null : record.pageName;
+  }
+
+  /**
+   * Returns the title of the entry with the given id without loading it,
+   * or {@code null} if there is no such entry.
+   */
+  synchronized String getTitle(String id) {
+    EntryRecord record = records.get(checkNotNull(id));
+    return (record == null) ? null : record.title;
+  }
+
+  /**
+   * Returns the type of the entry with the given id without loading it,
+   * or {@code null} if there is no such entry.
+   */
+  synchronized EntryType getEntryType(String id) {
+    EntryRecord record = records.get(checkNotNull(id));
+    return (record == null) ? null : record.type;
+  }
+
+  /**
+   * Closes and deletes the backing file.
+   */
+  @Override
+  public synchronized void close() throws IOException {
+    cache.clear();
+    data.close();
+    if (!file.delete()) {
+      LOGGER.log(Level.WARNING, "Unable to delete file: " + file);
+    }
+  }
+
+  /**
+   * Appends the given entry to the file, and points its record at it.
+   */
+  private void write(BaseContentEntry<?> entry, EntryRecord record) {
+    try {
+      byte[] bytes = serializer.serialize(entry);
+      long offset = data.length();
+      data.seek(offset);
+      data.write(bytes);
+      record.offset = offset;
+      record.length = bytes.length;
+    } catch (IOException e) {
+      throw new RuntimeException("Unable to write entry to: " + file, e);
+    }
+  }
+
+  private BaseContentEntry<?> load(EntryRecord record) {
+    try {
+      byte[] bytes = new byte[record.length];
+      data.seek(record.offset);
+      data.readFully(bytes);
+      return serializer.deserialize(bytes);
+    } catch (IOException e) {
+      throw new RuntimeException("Unable to read entry from: " + file, e);
+    }
+  }
+
+  /**
+   * The information about an entry which is kept in memory.
+   */
+  private static class EntryRecord {
+
+    final String parentId;
+    final String pageName;
+    final String title;
+    final EntryType type;
+    long offset;
+    int length;
+
+    EntryRecord(String parentId, String pageName, String title,
+        EntryType type) {
+      this.parentId = parentId;
+      this.pageName = pageName;
+      this.title = title;
+      this.type = type;
+    }
+  }
+}
@@ -0,0 +1,38 @@
+/*
+ * Copyright (C) 2009 Google Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.google.sites.liberation.export;
+
+import java.io.IOException;
+
+/**
+ * Provides new DiskBackedEntryStore's, backed by files in the default
+ * temporary directory.
+ */
+final class DiskBackedEntryStoreFactory implements EntryStoreFactory {
+
+  /**
+   * Returns a new DiskBackedEntryStore.
+   */
+  public EntryStore newEntryStore() {
+    try {
+      return new DiskBackedEntryStore(null,
+          DiskBackedEntryStore.DEFAULT_CACHE_SIZE);
+    } catch (IOException e) {
+      throw new RuntimeException("Unable to create temporary file.", e);
+    }
+  }
+}
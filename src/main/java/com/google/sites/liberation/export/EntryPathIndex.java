@@ -0,0 +1,147 @@
+/*
+ * Copyright (C) 2009 Google Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.google.sites.liberation.export;
+
+import static com.google.common.base.Preconditions.checkNotNull;
+
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.Lists;
+import com.google.common.collect.Maps;
+
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Indexes the position of each entry of an {@link EntryStore} in the page
+ * hierarchy: the ids of its ancestors, its depth, and its site-relative path.
+ *
+ * <p>An entry's position is worked out from its parent's position the first
+ * time it is asked for once all of its ancestors are known, and kept from
+ * then on, since neither the parent nor the page name of an entry ever
+ * changes. Entries can therefore be indexed in any order, and finding the
+ * position of an entry takes constant time, apart from the first time it is
+ * found. All methods are synchronized, so an index can be read from several
+ * threads at once.</p>
+ */
+final class EntryPathIndex {
+
+  private final Map<String, String> parentIds;
+  private final Map<String, String> pageNames;
+  private final Map<String, Position> positions;
+
+  /**
+   * Creates a new empty index.
+   */
+  EntryPathIndex() {
+    parentIds = Maps.newHashMap();
+    pageNames = Maps.newHashMap();
+    positions = Maps.newHashMap();
+  }
+
+  /**
+   * Indexes the entry with the given id, parent id and page name. The parent
+   * id is {@code null} for top-level pages, and the page name is
+   * {@code null} for entries which are not pages.
+   */
+  synchronized void add(String id, String parentId, String pageName) {
+    checkNotNull(id);
+    parentIds.put(id, parentId);
+    pageNames.put(id, pageName);
+  }
+
+  /**
+   * Returns the ids of the ancestors of the entry with the given id, starting
+   * with its top-level ancestor and ending with its parent, or {@code null} if
+   * the entry or any of its ancestors is missing.
+   */
+  synchronized List<String> getAncestorIds(String id) {
+    Position position = getPosition(checkNotNull(id));
+    return (position == null) ? null : position.ancestorIds;
+  }
+
+  /**
+   * Returns the number of ancestors of the entry with the given id, or -1 if
+   * the entry or any of its ancestors is missing.
+   */
+  synchronized int getDepth(String id) {
+    Position position = getPosition(checkNotNull(id));
+    return (position == null) ? -1 : position.ancestorIds.size();
+  }
+
+  /**
+   * Returns the page names of the ancestors of the page with the given id and
+   * of the page itself, separated by slashes, or {@code null} if the page or
+   * any of its ancestors is missing.
+   */
+  synchronized String getPath(String id) {
+    Position position = getPosition(checkNotNull(id));
+    return (position == null) ? null : position.path;
+  }
+
+  private Position getPosition(String id) {
+    Position position = positions.get(id);
+    if (position != null) {
+      return position;
+    }
+    List<String> unindexed = Lists.newArrayList();
+    String current = id;
+    while (position == null) {
+      if (!parentIds.containsKey(current)) {
+        return null;
+      }
+      unindexed.add(current);
+      if (unindexed.size() > parentIds.size()) {
+        return null;
+      }
+      current = parentIds.get(current);
+      if (current == null) {
+        break;
+      }
+      position = positions.get(current);
+    }
+    for (int i = unindexed.size() - 1; i >= 0; i--) {
+      String entryId = unindexed.get(i);
+      String pageName = pageNames.get(entryId);
+      if (position == null) {
+        position = new Position(ImmutableList.<String>of(), pageName);
+      } else {
+        String parentId = parentIds.get(entryId);
+        List<String> ancestorIds = ImmutableList.<String>builder()
+            .addAll(position.ancestorIds).add(parentId).build();
+        String path = (position.path == null || pageName == null)
+            ? null : position.path + '/' + pageName;
+        position = new Position(ancestorIds, path);
+      }
+      positions.put(entryId, position);
+    }
+    return position;
+  }
+
+  /**
+   * The position of an entry whose ancestors are all known.
+   */
+  private static class Position {
+
+    final List<String> ancestorIds;
+    final String path;
+
+    Position(List<String> ancestorIds, String path) {
+      this.ancestorIds = ancestorIds;
+      this.path = path;
+    }
+  }
+}
@@ -0,0 +1,109 @@
+/*
+ * Copyright (C) 2009 Google Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.google.sites.liberation.export;
+
+import static com.google.common.base.Preconditions.checkNotNull;
+import static com.google.sites.liberation.util.EntryType.isPage;
+import static com.google.sites.liberation.util.EntryUtils.getParentId;
+
+import com.google.common.collect.HashMultimap;
+import com.google.common.collect.Lists;
+import com.google.common.collect.Multimap;
+import com.google.common.collect.Sets;
+import com.google.gdata.data.sites.BaseContentEntry;
+
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * Tracks which entries of a content feed have had their whole chain of
+ * ancestors retrieved, and so have a known place in the exported directory
+ * structure, while the rest of the feed is still being fetched.
+ *
+ * <p>An entry is ready once it is a top-level page, or its parent is ready.
+ * Entries whose ancestors are never retrieved never become ready.</p>
+ */
+final class EntryReadinessTracker {
+
+  private final Set<String> ids;
+  private final Set<String> readyIds;
+  private final Multimap<String, BaseContentEntry<?>> waiting;
+
+  /**
+   * Creates a new tracker with no entries.
+   */
+  EntryReadinessTracker() {
+    ids = Sets.newHashSet();
+    readyIds = Sets.newHashSet();
+    waiting = HashMultimap.create();
+  }
+
+  /**
+   * Records the given entry, and returns every entry that became ready as a
+   * result. Parents always appear in the returned list before their children.
+   * Entries with a previously seen id are ignored.
+   */
+  List<BaseContentEntry<?>> addEntry(BaseContentEntry<?> entry) {
+    checkNotNull(entry);
+    List<BaseContentEntry<?>> ready = Lists.newArrayList();
+    String id = entry.getId();
+    if (id != null && !ids.add(id)) {
+      return ready;
+    }
+    String parentId = getParentId(entry);
+    if (parentId == null) {
+      if (isPage(entry)) {
+        markReady(entry, ready);
+      }
+    } else if (readyIds.contains(parentId)) {
+      markReady(entry, ready);
+    } else {
+      waiting.put(parentId, entry);
+    }
+    return ready;
+  }
+
+  /**
+   * Returns whether or not the entry with the given id is ready.
+   */
+  boolean isReady(String id) {
+    return readyIds.contains(id);
+  }
+
+  /**
+   * Returns the number of entries still waiting on a missing ancestor.
+   */
+  int getNumWaiting() {
+    return waiting.size();
+  }
+
+  private void markReady(BaseContentEntry<?> entry,
+      List<BaseContentEntry<?>> ready) {
+    LinkedList<BaseContentEntry<?>> queue = Lists.newLinkedList();
+    queue.add(entry);
+    while (!queue.isEmpty()) {
+      BaseContentEntry<?> next = queue.removeFirst();
+      ready.add(next);
+      String id = next.getId();
+      if (id != null) {
+        readyIds.add(id);
+        queue.addAll(waiting.removeAll(id));
+      }
+    }
+  }
+}
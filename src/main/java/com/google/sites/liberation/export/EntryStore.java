@@ -20,6 +20,7 @@ import com.google.gdata.data.sites.BaseContentEntry;
 import com.google.gdata.data.sites.BasePageEntry;
 
 import java.util.Collection;
+import java.util.List;
 
 /**
  * Defines a data structure that can be used to store the
@@ -35,6 +36,13 @@ interface EntryStore {
    */
   void addEntry(BaseContentEntry<?> entry);
   
+  /**
+   * Stores the given content entry in place of the stored entry with the 
+   * same id, with the same parent and page name. Changes made to an entry 
+   * after it was stored are only kept once it is updated.
+   */
+  void updateEntry(BaseContentEntry<?> entry);
+  
   /**
    * Retrieves the entry with the given {@code id} or {@code null} if there is
    * no such entry.
@@ -58,4 +66,25 @@ interface EntryStore {
    * store.
    */
   Collection<BasePageEntry<?>> getTopLevelEntries();
+  
+  /**
+   * Returns the ancestors of the entry with the given {@code id}, starting 
+   * with its top-level ancestor and ending with its parent, or {@code null} 
+   * if the entry or any of its ancestors is missing.
+   */
+  List<BasePageEntry<?>> getAncestors(String id);
+  
+  /**
+   * Returns the number of ancestors of the entry with the given {@code id}, 
+   * or -1 if the entry or any of its ancestors is missing.
+   */
+  int getDepth(String id);
+  
+  /**
+   * Returns the site-relative path of the page with the given {@code id}, 
+   * made of the page names of its ancestors and of the page itself separated 
+   * by slashes, or {@code null} if the page or any of its ancestors is 
+   * missing.
+   */
+  String getPath(String id);
 }
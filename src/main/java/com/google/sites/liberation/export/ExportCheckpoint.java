@@ -0,0 +1,688 @@
+/*
+ * Copyright (C) 2009 Google Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.google.sites.liberation.export;
+
+import static com.google.common.base.Preconditions.checkNotNull;
+import static com.google.sites.liberation.util.EntryUtils.getVersion;
+
+import com.google.common.base.Charsets;
+import com.google.common.collect.AbstractIterator;
+import com.google.common.collect.Maps;
+import com.google.common.collect.Sets;
+import com.google.common.hash.Hashing;
+import com.google.common.io.Files;
+import com.google.gdata.client.sites.SitesService;
+import com.google.gdata.data.DateTime;
+import com.google.gdata.data.sites.AttachmentEntry;
+import com.google.gdata.data.sites.BaseContentEntry;
+import com.google.gdata.data.sites.BasePageEntry;
+import com.google.sites.liberation.util.FileUtils;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.RandomAccessFile;
+import java.io.Writer;
+import java.net.URL;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.Set;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Records the progress of an export in a {@code _checkpoint} folder of the
+ * export root, so that an interrupted export can be resumed.
+ *
+ * <p>The folder holds a manifest, a log and a journal. The manifest records
+ * the feed index up to which the content feed has been consumed, the id,
+ * version and {@link PageFingerprinter fingerprint} of each exported page,
+ * and the id, version, size and MD5 checksum of each downloaded attachment.
+ * The journal holds every entry retrieved so far, serialized as Atom, since
+ * pages can only be rendered once the whole site is known. Progress made
+ * after the manifest was written is appended to the log, one record per
+ * line, and records in the log override those in the manifest. The log is
+ * only compacted into the manifest, which is replaced as a whole, when the
+ * feed has been retrieved and when the checkpoint is opened and closed, so
+ * recording progress never costs more than the progress itself. The 
+ * manifest and log record how much of the journal they cover, and a record 
+ * cut short by a crash is ignored, so a crash never leaves them and the
+ * journal inconsistent.</p>
+ *
+ * <p>Opening a checkpoint for an export root holding an unfinished export of
+ * the same site, with the same revisions setting, resumes it: the journal is
+ * replayed and the feed continues from the recorded index. If the previous
+ * export of the same site finished, the new export is incremental: the whole
+ * feed is retrieved again, but the records of exported pages and downloaded
+ * attachments are kept, so that only changed pages are rendered and only
+ * changed attachments are downloaded. The journal is deleted once the
+ * export finishes, unless it is to be kept as a snapshot of the site, which
+ * takes about as much disk space again as the export itself. A snapshot is
+ * kept until the next export finishes, so that the next export can retrieve
+ * only the entries updated since the server time at which the feed of the
+ * finished export started, and merge them into the snapshot. Any entry
+ * edited while that feed was being retrieved was updated after it started,
+ * so the edit is retrieved by the next export. Deleting the folder forces a
+ * full export. The site importer ignores the folder, as
+ * it does every folder starting with an underscore.</p>
+ */
+final class ExportCheckpoint implements FeedCheckpointListener {
+
+  private static final Logger LOGGER = Logger.getLogger(
+      ExportCheckpoint.class.getCanonicalName());
+
+  static final String DIRECTORY_NAME = "_checkpoint";
+  static final String MANIFEST_NAME = "manifest.txt";
+  static final String LOG_NAME = "manifest.log";
+  static final String JOURNAL_NAME = "entries.dat";
+  static final String SNAPSHOT_NAME = "snapshot.dat";
+  static final int PAGES_PER_FLUSH = 50;
+  private static final String FORMAT = "google-sites-liberation-checkpoint-2";
+
+  private final File manifestFile;
+  private final File logFile;
+  private final File journalFile;
+  private final File snapshotFile;
+  private final String feedUrl;
+  private final boolean exportRevisions;
+  private final boolean keepSnapshot;
+  private final AtomEntrySerializer serializer;
+  private final Map<String, PageRecord> pages;
+  private final Map<String, AttachmentRecord> attachments;
+  private final Set<String> seenIds;
+  private final boolean resumed;
+  private final boolean incremental;
+  private final long replayLength;
+  private final DateTime previousFeedStarted;
+  private DataOutputStream journal;
+  private Writer log;
+  private long journalWritten;
+  private long journalLength;
+  private int nextStartIndex;
+  private boolean feedComplete;
+  private boolean complete;
+  private DateTime feedStarted;
+  private int unflushedPages;
+
+  /**
+   * Opens the checkpoint of an export of the site with the given feed URL to
+   * the given root directory, resuming the previous export if it was
+   * interrupted. If {@code keepSnapshot} is true, the journal of the previous
+   * finished export is used as a snapshot, and the journal of this export is
+   * kept once it finishes.
+   */
+  ExportCheckpoint(File rootDirectory, URL feedUrl, boolean exportRevisions,
+      boolean keepSnapshot) throws IOException {
+    checkNotNull(rootDirectory);
+    File directory = new File(rootDirectory, DIRECTORY_NAME);
+    if (!directory.isDirectory() && !directory.mkdirs()) {
+      throw new IOException("Unable to create directory: " + directory);
+    }
+    this.manifestFile = new File(directory, MANIFEST_NAME);
+    this.logFile = new File(directory, LOG_NAME);
+    this.journalFile = new File(directory, JOURNAL_NAME);
+    this.snapshotFile = new File(directory, SNAPSHOT_NAME);
+    this.feedUrl = feedUrl.toExternalForm();
+    this.exportRevisions = exportRevisions;
+    this.keepSnapshot = keepSnapshot;
+    this.serializer = new AtomEntrySerializer();
+    this.pages = Maps.newHashMap();
+    this.attachments = Maps.newHashMap();
+    this.seenIds = Sets.newHashSet();
+    this.nextStartIndex = 1;
+    boolean loaded = FileUtils.getFileOrBackup(manifestFile).isFile()
+        && load() && loadLog();
+    this.incremental = loaded && complete;
+    this.resumed = loaded && !complete
+        && journalFile.length() >= journalLength;
+    if (keepSnapshot && incremental && journalFile.isFile()
+        && journalFile.length() == journalLength) {
+      previousFeedStarted = feedStarted;
+      if (snapshotFile.exists() && !snapshotFile.delete()) {
+        throw new IOException("Unable to delete file: " + snapshotFile);
+      }
+      if (!journalFile.renameTo(snapshotFile)) {
+        throw new IOException("Unable to rename " + journalFile + " to " 
+            + snapshotFile);
+      }
+    } else {
+      previousFeedStarted = null;
+    }
+    if (!resumed) {
+      if (!incremental) {
+        pages.clear();
+        attachments.clear();
+      }
+      feedStarted = null;
+      nextStartIndex = 1;
+      journalLength = 0;
+      feedComplete = false;
+      complete = false;
+    }
+    RandomAccessFile file = new RandomAccessFile(journalFile, "rw");
+    try {
+      file.setLength(journalLength);
+    } finally {
+      file.close();
+    }
+    replayLength = journalLength;
+    journalWritten = journalLength;
+    journal = new DataOutputStream(new BufferedOutputStream(
+        new FileOutputStream(journalFile, true)));
+    compact();
+  }
+
+  /**
+   * Returns whether this checkpoint continues an interrupted export.
+   */
+  boolean isResumed() {
+    return resumed;
+  }
+
+  /**
+   * Returns whether this checkpoint follows a finished export of the same
+   * site, whose records of exported pages and attachments are kept.
+   */
+  boolean isIncremental() {
+    return incremental;
+  }
+
+  /**
+   * Returns the server time at which the feed of the finished export this
+   * checkpoint follows started, or {@code null} if it is unknown or there is 
+   * no snapshot of its entries.
+   */
+  DateTime getPreviousFeedStarted() {
+    return previousFeedStarted;
+  }
+
+  /**
+   * Records the server time at which the feed of this export started, 
+   * before any of its entries were retrieved.
+   */
+  synchronized void feedStarted(DateTime serverTime) {
+    feedStarted = checkNotNull(serverTime);
+  }
+
+  /**
+   * Returns the entries of the finished export this checkpoint follows, in 
+   * the order they were retrieved.
+   */
+  Iterable<BaseContentEntry<?>> getSnapshotEntries() {
+    return new Iterable<BaseContentEntry<?>>() {
+      @Override
+      public Iterator<BaseContentEntry<?>> iterator() {
+        return new JournalIterator(snapshotFile, snapshotFile.length());
+      }
+    };
+  }
+
+  /**
+   * Returns the feed index at which retrieval of the content feed should
+   * continue.
+   */
+  synchronized int getNextStartIndex() {
+    return nextStartIndex;
+  }
+
+  /**
+   * Returns whether the whole content feed has already been retrieved.
+   */
+  synchronized boolean isFeedComplete() {
+    return feedComplete;
+  }
+
+  /**
+   * Returns the entries retrieved by the interrupted export, in the order
+   * they were retrieved.
+   */
+  Iterable<BaseContentEntry<?>> getJournaledEntries() {
+    return new Iterable<BaseContentEntry<?>>() {
+      @Override
+      public Iterator<BaseContentEntry<?>> iterator() {
+        return new JournalIterator(journalFile, replayLength);
+      }
+    };
+  }
+
+  /**
+   * Returns an Iterable of the given entries which adds each entry to the
+   * journal as it is returned.
+   */
+  Iterable<BaseContentEntry<?>> journal(
+      final Iterable<BaseContentEntry<?>> entries) {
+    checkNotNull(entries);
+    return new Iterable<BaseContentEntry<?>>() {
+      @Override
+      public Iterator<BaseContentEntry<?>> iterator() {
+        final Iterator<BaseContentEntry<?>> itr = entries.iterator();
+        return new AbstractIterator<BaseContentEntry<?>>() {
+          @Override
+          protected BaseContentEntry<?> computeNext() {
+            if (!itr.hasNext()) {
+              return endOfData();
+            }
+            BaseContentEntry<?> entry = itr.next();
+            if (entry != null) {
+              addToJournal(entry);
+            }
+            return entry;
+          }
+        };
+      }
+    };
+  }
+
+  @Override
+  public synchronized void windowCompleted(int nextStartIndex) {
+    try {
+      journal.flush();
+      journalLength = journalWritten;
+      this.nextStartIndex = nextStartIndex;
+      writeProgress(log);
+      log.flush();
+      unflushedPages = 0;
+    } catch (IOException e) {
+      LOGGER.log(Level.WARNING, "Unable to save checkpoint.", e);
+    }
+  }
+
+  /**
+   * Records that the whole content feed has been retrieved.
+   */
+  synchronized void feedCompleted() {
+    try {
+      journal.flush();
+      journalLength = journalWritten;
+      feedComplete = true;
+      compact();
+    } catch (IOException e) {
+      LOGGER.log(Level.WARNING, "Unable to save checkpoint.", e);
+    }
+  }
+
+  /**
+   * Returns whether the given page was already exported to the given
+   * directory with the given fingerprint.
+   */
+  synchronized boolean isPageExported(BasePageEntry<?> page,
+      String fingerprint, File directory) {
+    seenIds.add(page.getId());
+    PageRecord record = pages.get(page.getId());
+    return record != null && record.fingerprint.equals(fingerprint)
+        && new File(directory, "index.html").isFile();
+  }
+
+  /**
+   * Records that the given page has been exported with the given
+   * fingerprint.
+   */
+  synchronized void pageExported(BasePageEntry<?> page, String fingerprint) {
+    seenIds.add(page.getId());
+    PageRecord record = new PageRecord(getVersion(page), fingerprint);
+    pages.put(page.getId(), record);
+    try {
+      writePage(log, page.getId(), record);
+      if (++unflushedPages >= PAGES_PER_FLUSH) {
+        log.flush();
+        unflushedPages = 0;
+      }
+    } catch (IOException e) {
+      LOGGER.log(Level.WARNING, "Unable to save checkpoint.", e);
+    }
+  }
+
+  /**
+   * Returns whether the given attachment was already downloaded to the given
+   * file at its current version, and the file is intact.
+   */
+  boolean isAttachmentDownloaded(AttachmentEntry attachment, File file) {
+    AttachmentRecord record;
+    synchronized (this) {
+      seenIds.add(attachment.getId());
+      record = attachments.get(attachment.getId());
+    }
+    if (record == null || !record.version.equals(getVersion(attachment))
+        || !file.isFile() || file.length() != record.size) {
+      return false;
+    }
+    try {
+      return record.checksum.equals(getChecksum(file));
+    } catch (IOException e) {
+      return false;
+    }
+  }
+
+  /**
+   * Returns an {@code AttachmentDownloader} which downloads with the given
+   * downloader, and records each attachment which was successfully
+   * downloaded. A failed download leaves the previous file, if any, in place
+   * along with its record, which is for an older version of the attachment,
+   * so that the attachment is downloaded again by the next export.
+   */
+  AttachmentDownloader recordDownloads(
+      final AttachmentDownloader attachmentDownloader) {
+    checkNotNull(attachmentDownloader);
+    return new AttachmentDownloader() {
+      @Override
+      public boolean download(AttachmentEntry attachment, File file,
+          SitesService sitesService) {
+        if (!attachmentDownloader.download(attachment, file, sitesService)) {
+          return false;
+        }
+        try {
+          AttachmentRecord record = new AttachmentRecord(
+              getVersion(attachment), file.length(), getChecksum(file));
+          synchronized (ExportCheckpoint.this) {
+            seenIds.add(attachment.getId());
+            attachments.put(attachment.getId(), record);
+            writeAttachment(log, attachment.getId(), record);
+            log.flush();
+          }
+        } catch (IOException e) {
+          LOGGER.log(Level.WARNING, "Unable to read file: " + file, e);
+        }
+        return true;
+      }
+    };
+  }
+
+  /**
+   * Records that the export is complete, so that it will not be resumed, and
+   * forgets the pages and attachments which are no longer part of the site.
+   */
+  synchronized void exportCompleted() throws IOException {
+    pages.keySet().retainAll(seenIds);
+    attachments.keySet().retainAll(seenIds);
+    complete = true;
+    compact();
+    if (snapshotFile.exists() && !snapshotFile.delete()) {
+      LOGGER.log(Level.WARNING, "Unable to delete file: " + snapshotFile);
+    }
+  }
+
+  /**
+   * Compacts the log into the manifest and closes the journal, which is
+   * deleted if the export is complete and no snapshot is to be kept.
+   */
+  synchronized void close() throws IOException {
+    try {
+      journal.flush();
+      compact();
+    } finally {
+      journal.close();
+      log.close();
+    }
+    if (complete && !keepSnapshot && !journalFile.delete()) {
+      LOGGER.log(Level.WARNING, "Unable to delete file: " + journalFile);
+    }
+  }
+
+  private synchronized void addToJournal(BaseContentEntry<?> entry) {
+    try {
+      byte[] bytes = serializer.serialize(entry);
+      journal.writeInt(bytes.length);
+      journal.write(bytes);
+      journalWritten += 4 + bytes.length;
+    } catch (IOException e) {
+      throw new RuntimeException("Unable to write to: " + journalFile, e);
+    }
+  }
+
+  /**
+   * Replaces the manifest with the current state of this checkpoint, and
+   * starts a new, empty log.
+   */
+  private synchronized void compact() throws IOException {
+    if (log != null) {
+      log.close();
+    }
+    boolean replaced = false;
+    try {
+      File tempFile = new File(manifestFile.getPath() + ".tmp");
+      Writer out = new BufferedWriter(new OutputStreamWriter(
+          new FileOutputStream(tempFile), "UTF-8"));
+      try {
+        out.write(FORMAT + '\n');
+        out.write("feed\t" + feedUrl + '\n');
+        out.write("revisions\t" + exportRevisions + '\n');
+        out.write("complete\t" + complete + '\n');
+        out.write("feedComplete\t" + feedComplete + '\n');
+        writeProgress(out);
+        for (Map.Entry<String, PageRecord> page : pages.entrySet()) {
+          writePage(out, page.getKey(), page.getValue());
+        }
+        for (Map.Entry<String, AttachmentRecord> attachment
+            : attachments.entrySet()) {
+          writeAttachment(out, attachment.getKey(), attachment.getValue());
+        }
+      } finally {
+        out.close();
+      }
+      if (!FileUtils.replaceFile(tempFile, manifestFile)) {
+        throw new IOException("Unable to rename " + tempFile + " to "
+            + manifestFile);
+      }
+      replaced = true;
+    } finally {
+      // Keep appending to the old log if the manifest was not replaced.
+      log = new BufferedWriter(new OutputStreamWriter(
+          new FileOutputStream(logFile, !replaced), "UTF-8"));
+      unflushedPages = 0;
+    }
+  }
+
+  private void writeProgress(Writer out) throws IOException {
+    out.write("nextStartIndex\t" + nextStartIndex + '\n');
+    out.write("journalLength\t" + journalLength + '\n');
+    if (feedStarted != null) {
+      out.write("feedStarted\t" + feedStarted + '\n');
+    }
+  }
+
+  private static void writePage(Writer out, String id, PageRecord record)
+      throws IOException {
+    out.write("page\t" + id + '\t' + record.version + '\t'
+        + record.fingerprint + '\n');
+  }
+
+  private static void writeAttachment(Writer out, String id,
+      AttachmentRecord record) throws IOException {
+    out.write("attachment\t" + id + '\t' + record.version + '\t'
+        + record.size + '\t' + record.checksum + '\n');
+  }
+
+  /**
+   * Loads the manifest, returning {@code false} if it is unreadable or
+   * belongs to a different export.
+   */
+  private boolean load() {
+    BufferedReader in = null;
+    try {
+      in = new BufferedReader(new InputStreamReader(
+          new FileInputStream(FileUtils.getFileOrBackup(manifestFile)),
+          "UTF-8"));
+      if (!FORMAT.equals(in.readLine())) {
+        return false;
+      }
+      boolean sameFeed = false;
+      boolean sameRevisions = false;
+      String line;
+      while ((line = in.readLine()) != null) {
+        String[] fields = line.split("\t");
+        String key = fields[0];
+        if (key.equals("feed")) {
+          sameFeed = feedUrl.equals(fields[1]);
+        } else if (key.equals("revisions")) {
+          sameRevisions = exportRevisions == Boolean.parseBoolean(fields[1]);
+        } else {
+          readRecord(fields);
+        }
+      }
+      return sameFeed && sameRevisions;
+    } catch (IOException e) {
+      LOGGER.log(Level.WARNING, "Unable to read checkpoint.", e);
+      return false;
+    } catch (RuntimeException e) {
+      LOGGER.log(Level.WARNING, "Invalid checkpoint: " + manifestFile, e);
+      return false;
+    } finally {
+      if (in != null) {
+        try {
+          in.close();
+        } catch (IOException e) {
+          LOGGER.log(Level.WARNING, "Failed closing file: " + manifestFile, e);
+        }
+      }
+    }
+  }
+
+  /**
+   * Applies the complete records of the log to the loaded manifest,
+   * returning {@code false} if the log is unreadable.
+   */
+  private boolean loadLog() {
+    if (!logFile.isFile()) {
+      return true;
+    }
+    try {
+      String contents = Files.toString(logFile, Charsets.UTF_8);
+      int end = contents.lastIndexOf('\n');
+      if (end < 0) {
+        return true;
+      }
+      for (String line : contents.substring(0, end).split("\n")) {
+        readRecord(line.split("\t"));
+      }
+      return true;
+    } catch (IOException e) {
+      LOGGER.log(Level.WARNING, "Unable to read checkpoint.", e);
+      return false;
+    } catch (RuntimeException e) {
+      LOGGER.log(Level.WARNING, "Invalid checkpoint: " + logFile, e);
+      return false;
+    }
+  }
+
+  /**
+   * Applies a record of the manifest or log, split into its fields.
+   */
+  private void readRecord(String[] fields) {
+    String key = fields[0];
+    if (key.equals("complete")) {
+      complete = Boolean.parseBoolean(fields[1]);
+    } else if (key.equals("feedComplete")) {
+      feedComplete = Boolean.parseBoolean(fields[1]);
+    } else if (key.equals("nextStartIndex")) {
+      nextStartIndex = Integer.parseInt(fields[1]);
+    } else if (key.equals("journalLength")) {
+      journalLength = Long.parseLong(fields[1]);
+    } else if (key.equals("feedStarted")) {
+      feedStarted = DateTime.parseDateTime(fields[1]);
+    } else if (key.equals("page")) {
+      pages.put(fields[1], new PageRecord(fields[2], fields[3]));
+    } else if (key.equals("attachment")) {
+      attachments.put(fields[1], new AttachmentRecord(fields[2],
+          Long.parseLong(fields[3]), fields[4]));
+    }
+  }
+
+  private static String getChecksum(File file) throws IOException {
+    return Files.hash(file, Hashing.md5()).toString();
+  }
+
+  /**
+   * Reads back the first {@code length} bytes of a journal.
+   */
+  private class JournalIterator extends AbstractIterator<BaseContentEntry<?>> {
+
+    private final File file;
+    private final long length;
+    private DataInputStream in;
+    private long position;
+
+    JournalIterator(File file, long length) {
+      this.file = file;
+      this.length = length;
+    }
+
+    @Override
+    protected BaseContentEntry<?> computeNext() {
+      try {
+        if (position >= length) {
+          if (in != null) {
+            in.close();
+          }
+          return endOfData();
+        }
+        if (in == null) {
+          in = new DataInputStream(new BufferedInputStream(
+              new FileInputStream(file)));
+        }
+        int length = in.readInt();
+        byte[] bytes = new byte[length];
+        in.readFully(bytes);
+        position += 4 + length;
+        return serializer.deserialize(bytes);
+      } catch (EOFException e) {
+        throw new RuntimeException("Truncated journal: " + file, e);
+      } catch (IOException e) {
+        throw new RuntimeException("Unable to read: " + file, e);
+      }
+    }
+  }
+
+  /**
+   * The information recorded about an exported page.
+   */
+  private static class PageRecord {
+
+    final String version;
+    final String fingerprint;
+
+    PageRecord(String version, String fingerprint) {
+      this.version = version;
+      this.fingerprint = fingerprint;
+    }
+  }
+
+  /**
+   * The information recorded about a downloaded attachment.
+   */
+  private static class AttachmentRecord {
+
+    final String version;
+    final long size;
+    final String checksum;
+
+    AttachmentRecord(String version, long size, String checksum) {
+      this.version = version;
+      this.size = size;
+      this.checksum = checksum;
+    }
+  }
+}
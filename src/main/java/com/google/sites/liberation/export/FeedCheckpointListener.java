@@ -0,0 +1,30 @@
+/*
+ * Copyright (C) 2009 Google Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.google.sites.liberation.export;
+
+/**
+ * Listener that is told how far through a content feed every entry has been 
+ * consumed, so that a later export can continue from that point.
+ */
+public interface FeedCheckpointListener {
+
+  /**
+   * Called once every entry before feed index {@code nextStartIndex} has been
+   * returned by the feed and processed by its consumer.
+   */
+  void windowCompleted(int nextStartIndex);
+}
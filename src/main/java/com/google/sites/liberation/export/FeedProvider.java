@@ -17,7 +17,9 @@
 package com.google.sites.liberation.export;
 
 import com.google.gdata.client.sites.SitesService;
+import com.google.gdata.data.DateTime;
 import com.google.gdata.data.sites.BaseContentEntry;
+import com.google.gdata.util.common.base.Nullable;
 import com.google.inject.ImplementedBy;
 
 import java.net.URL;
@@ -37,4 +39,21 @@ public interface FeedProvider {
    */
   Iterable<BaseContentEntry<?>> getEntries(URL feedUrl, 
       SitesService sitesService);
+  
+  /**
+   * Returns an Iterable of the entries at the given feed URL, starting at 
+   * feed index {@code startIndex}, using the given SitesService. If 
+   * {@code updatedMin} is not {@code null}, only the entries updated since 
+   * then are returned. If {@code checkpointListener} is not {@code null}, it 
+   * is told how far through the feed the returned entries have been consumed.
+   */
+  Iterable<BaseContentEntry<?>> getEntries(URL feedUrl, 
+      SitesService sitesService, int startIndex, @Nullable DateTime updatedMin,
+      @Nullable FeedCheckpointListener checkpointListener);
+  
+  /**
+   * Returns the current time at the server of the feed at the given URL, or 
+   * {@code null} if it cannot be retrieved.
+   */
+  DateTime getServerTime(URL feedUrl, SitesService sitesService);
 }
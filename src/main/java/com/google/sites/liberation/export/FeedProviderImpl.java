@@ -18,12 +18,20 @@ package com.google.sites.liberation.export;
 
 import static com.google.common.base.Preconditions.checkNotNull;
 
+import com.google.gdata.client.Query;
+import com.google.gdata.client.sites.ContentQuery;
 import com.google.gdata.client.sites.SitesService;
+import com.google.gdata.data.DateTime;
 import com.google.gdata.data.sites.BaseContentEntry;
+import com.google.gdata.util.ServiceException;
+import com.google.gdata.util.common.base.Nullable;
 import com.google.inject.Inject;
 import com.google.sites.liberation.util.EntryProvider;
 
+import java.io.IOException;
 import java.net.URL;
+import java.util.logging.Level;
+import java.util.logging.Logger;
 
 /**
  * Provides an Iterable of BaseContentEntry's, for a given feed URL and 
@@ -33,7 +41,14 @@ import java.net.URL;
  */
 final class FeedProviderImpl implements FeedProvider {
 
-  private static final int RESULTS_PER_REQUEST = 20;
+  private static final Logger LOGGER = Logger.getLogger(
+      FeedProviderImpl.class.getCanonicalName());
+
+  private static final int INITIAL_RESULTS_PER_REQUEST = 20;
+  private static final int MIN_RESULTS_PER_REQUEST = 5;
+  private static final int MAX_RESULTS_PER_REQUEST = 320;
+  private static final long SLOW_RESPONSE_MILLIS = 15000;
+  private static final int MAX_REQUESTS_IN_FLIGHT = 4;
   
   private final EntryProvider entryProvider;
   
@@ -45,7 +60,34 @@ final class FeedProviderImpl implements FeedProvider {
   @Override
   public Iterable<BaseContentEntry<?>> getEntries(URL feedUrl, 
       SitesService sitesService) {
+    return getEntries(feedUrl, sitesService, 1, null, null);
+  }
+  
+  @Override
+  public Iterable<BaseContentEntry<?>> getEntries(URL feedUrl, 
+      SitesService sitesService, int startIndex, @Nullable DateTime updatedMin,
+      @Nullable FeedCheckpointListener checkpointListener) {
+    PageSizeController pageSizeController = new PageSizeController(
+        INITIAL_RESULTS_PER_REQUEST, MIN_RESULTS_PER_REQUEST, 
+        MAX_RESULTS_PER_REQUEST, SLOW_RESPONSE_MILLIS);
     return new ContinuousContentFeed(feedUrl, entryProvider, sitesService,
-        RESULTS_PER_REQUEST);
+        pageSizeController, MAX_REQUESTS_IN_FLIGHT, startIndex, updatedMin,
+        checkpointListener);
+  }
+  
+  @Override
+  public DateTime getServerTime(URL feedUrl, SitesService sitesService) {
+    Query query = new ContentQuery(feedUrl);
+    query.setMaxResults(1);
+    try {
+      return entryProvider.getUpdated(query, sitesService);
+    } catch (IOException e) {
+      LOGGER.log(Level.WARNING, "Unable to retrieve server time: " + feedUrl, 
+          e);
+    } catch (ServiceException e) {
+      LOGGER.log(Level.WARNING, "Unable to retrieve server time: " + feedUrl, 
+          e);
+    }
+    return null;
   }
 }
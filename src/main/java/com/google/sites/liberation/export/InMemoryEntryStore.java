@@ -25,9 +25,11 @@ import com.google.sites.liberation.util.EntryUtils;
 import com.google.common.collect.Multimap;
 import com.google.common.collect.Maps;
 import com.google.common.collect.HashMultimap;
+import com.google.common.collect.Lists;
 import com.google.common.collect.Sets;
 
 import java.util.Collection;
+import java.util.List;
 import java.util.Map;
 import java.util.Set;
 import java.util.logging.Level;
@@ -36,6 +38,10 @@ import java.util.logging.Logger;
 /**
  * An in-memory implementation of {@link EntryStore}.
  * 
+ * <p>A store is not synchronized, but once every entry has been added it can 
+ * be read from several threads at once. The position of each entry in the 
+ * page hierarchy is kept in an {@link EntryPathIndex}.</p>
+ * 
  * @author bsimon@google.com (Benjamin Simon)
  */
 final class InMemoryEntryStore implements EntryStore {
@@ -46,6 +52,7 @@ final class InMemoryEntryStore implements EntryStore {
   private final Map<String, BaseContentEntry<?>> entries;
   private final Set<BasePageEntry<?>> topLevelEntries;
   private final Multimap<String, BaseContentEntry<?>> children;
+  private final EntryPathIndex pathIndex;
   
   /**
    * Creates a new InMemoryEntryStore which provides constant time storage 
@@ -55,6 +62,7 @@ final class InMemoryEntryStore implements EntryStore {
     entries = Maps.newHashMap();
     topLevelEntries = Sets.newHashSet();
     children = HashMultimap.create();
+    pathIndex = new EntryPathIndex();
   }
 
   @Override
@@ -64,6 +72,7 @@ final class InMemoryEntryStore implements EntryStore {
     if (id != null && entries.get(id) == null) {
       entries.put(id, entry);
       String parentId = EntryUtils.getParentId(entry);
+      pathIndex.add(id, parentId, getPageName(entry));
       if (parentId == null) {
         if (isPage(entry)) {
           topLevelEntries.add((BasePageEntry<?>) entry);
@@ -78,6 +87,26 @@ final class InMemoryEntryStore implements EntryStore {
     }
   }
   
+  @Override
+  public void updateEntry(BaseContentEntry<?> entry) {
+    checkNotNull(entry);
+    BaseContentEntry<?> oldEntry = entries.get(entry.getId());
+    if (oldEntry == null) {
+      LOGGER.log(Level.WARNING, "Only stored entries can be updated!");
+    } else if (oldEntry != entry) {
+      entries.put(entry.getId(), entry);
+      String parentId = EntryUtils.getParentId(oldEntry);
+      if (parentId == null) {
+        if (topLevelEntries.remove(oldEntry)) {
+          topLevelEntries.add((BasePageEntry<?>) entry);
+        }
+      } else {
+        children.remove(parentId, oldEntry);
+        children.put(parentId, entry);
+      }
+    }
+  }
+  
   @Override
   public Collection<BaseContentEntry<?>> getChildren(String id) {
     checkNotNull(id);
@@ -105,4 +134,34 @@ final class InMemoryEntryStore implements EntryStore {
   public Collection<BasePageEntry<?>> getTopLevelEntries() {
     return topLevelEntries;
   }
+  
+  @Override
+  public List<BasePageEntry<?>> getAncestors(String id) {
+    List<String> ancestorIds = pathIndex.getAncestorIds(checkNotNull(id));
+    if (ancestorIds == null) {
+      return null;
+    }
+    List<BasePageEntry<?>> ancestors = Lists.newArrayList();
+    for (String ancestorId : ancestorIds) {
+      ancestors.add((BasePageEntry<?>) entries.get(ancestorId));
+    }
+    return ancestors;
+  }
+  
+  @Override
+  public int getDepth(String id) {
+    return pathIndex.getDepth(checkNotNull(id));
+  }
+  
+  @Override
+  public String getPath(String id) {
+    return pathIndex.getPath(checkNotNull(id));
+  }
+  
+  private static String getPageName(BaseContentEntry<?> entry) {
+    if (!isPage(entry) || ((BasePageEntry<?>) entry).getPageName() == null) {
+      return null;
+    }
+    return ((BasePageEntry<?>) entry).getPageName().getValue();
+  }
 }
@@ -72,6 +72,23 @@ public class Main {
   @Option(name="-h", usage="host")
   private String host = "sites.google.com";
   
+  @Option(name="-l", usage="keep entries on disk rather than in memory, "
+      + "for very large sites")
+  private boolean storeEntriesOnDisk = false;
+  
+  @Option(name="-u", usage="when updating a finished export, only retrieve "
+      + "entries changed since; deleted pages are not detected, so run "
+      + "without this option now and then; keeps a copy of the site's data "
+      + "in _checkpoint, which takes about as much disk space again")
+  private boolean fetchChangesOnly = false;
+  
+  @Option(name="-t", usage="number of attachments to download at once")
+  private int downloadThreads = SiteExporterModule.DEFAULT_DOWNLOAD_THREADS;
+  
+  @Option(name="-p", usage="number of attachments to download at once from "
+      + "any one host")
+  private int downloadsPerHost = SiteExporterModule.DEFAULT_DOWNLOADS_PER_HOST;
+  
   
   /**
    * Be sure to specify the name of your application. If the application name is {@code null} or
@@ -131,13 +148,18 @@ public class Main {
   
   private void doMain(String[] args) {
     CmdLineParser parser = new CmdLineParser(this);
-    Injector injector = Guice.createInjector(new SiteExporterModule());
-    SiteExporter siteExporter = injector.getInstance(SiteExporter.class);
     try {
       parser.parseArgument(args);
       if (webspace == null) {
         throw new CmdLineException("Webspace of site not specified!");
       }
+      if (downloadThreads < 1 || downloadsPerHost < 1) {
+        throw new CmdLineException("Number of downloads must be positive!");
+      }
+      Injector injector = Guice.createInjector(
+          new SiteExporterModule(storeEntriesOnDisk, fetchChangesOnly, 
+              downloadThreads, downloadsPerHost));
+      SiteExporter siteExporter = injector.getInstance(SiteExporter.class);
       SitesService sitesService = new SitesService("google-sites-liberation");
       httpTransport = GoogleNetHttpTransport.newTrustedTransport();
       dataStoreFactory = new FileDataStoreFactory(DATA_STORE_DIR);
@@ -0,0 +1,134 @@
+/*
+ * Copyright (C) 2009 Google Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.google.sites.liberation.export;
+
+import static com.google.common.base.Preconditions.checkArgument;
+import static com.google.common.base.Preconditions.checkNotNull;
+
+import com.google.common.base.Strings;
+import com.google.common.collect.Lists;
+import com.google.common.collect.Sets;
+import com.google.gdata.data.sites.BaseContentEntry;
+import com.google.gdata.data.sites.BasePageEntry;
+import com.google.sites.liberation.util.EntryUtils;
+import com.google.sites.liberation.util.XmlElement;
+import com.google.sites.liberation.util.XmlWriter;
+
+import java.io.IOException;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * Writes the navigation sidebar of the pages in an {@link EntryStore}, which
+ * links to each of the site's top-level pages in order of title.
+ *
+ * <p>The top-level pages are sorted once, and the row for each of them is
+ * rendered once, plus once for every depth a page is exported at, since the
+ * rows only differ in the path back to the root and in whether they are for
+ * the page being exported. The store must not change while the sidebar is in
+ * use.</p>
+ */
+final class NavigationSideBar {
+
+  private final EntryStore entryStore;
+  private List<BasePageEntry<?>> pages;
+  private String[] textRows;
+  private final List<String[]> linkRows;
+
+  /**
+   * Creates a new sidebar for the pages in the given store.
+   */
+  NavigationSideBar(EntryStore entryStore) {
+    this.entryStore = checkNotNull(entryStore);
+    linkRows = Lists.newArrayList();
+  }
+
+  /**
+   * Writes the sidebar of the given entry, exported at the given depth, to
+   * the given writer.
+   */
+  void write(BaseContentEntry<?> entry, int depth, XmlWriter writer)
+      throws IOException {
+    checkNotNull(entry);
+    checkArgument(depth >= 0);
+    checkNotNull(writer);
+    writer.startElement("table");
+    writer.startElement("tr").startElement("th").setAttribute("align", "left")
+        .addText("Navigation").endElement().endElement();
+    List<BasePageEntry<?>> pages = getPages();
+    String[] links = getLinkRows(depth);
+    for (int i = 0; i < pages.size(); i++) {
+      BasePageEntry<?> page = pages.get(i);
+      if (page.equals(entry)
+          || (page.getId() != null && page.getId().equals(entry.getId()))) {
+        writer.addXml(textRows[i]);
+      } else {
+        writer.addXml(links[i]);
+      }
+    }
+    writer.endElement();
+  }
+
+  private synchronized List<BasePageEntry<?>> getPages() {
+    if (pages == null) {
+      Set<BasePageEntry<?>> sorted =
+          Sets.newTreeSet(EntryUtils.getTitleComparator());
+      sorted.addAll(entryStore.getTopLevelEntries());
+      pages = Lists.newArrayList(sorted);
+      textRows = new String[pages.size()];
+      for (int i = 0; i < textRows.length; i++) {
+        textRows[i] = renderRow(
+            new XmlElement("small").addText(getTitle(pages.get(i))));
+      }
+    }
+    return pages;
+  }
+
+  private synchronized String[] getLinkRows(int depth) {
+    while (linkRows.size() <= depth) {
+      linkRows.add(null);
+    }
+    String[] links = linkRows.get(depth);
+    if (links == null) {
+      String pathToRoot = Strings.repeat("../", depth + 1);
+      List<BasePageEntry<?>> pages = getPages();
+      links = new String[pages.size()];
+      for (int i = 0; i < links.length; i++) {
+        BasePageEntry<?> page = pages.get(i);
+        if (page.getPageName() == null) {
+          continue;
+        }
+        String href = pathToRoot + page.getPageName().getValue()
+            + "/index.html";
+        links[i] = renderRow(new XmlElement("small").addElement(
+            new XmlElement("a").setAttribute("href", href)
+                .addText(getTitle(page))));
+      }
+      linkRows.set(depth, links);
+    }
+    return links;
+  }
+
+  private static String renderRow(XmlElement small) {
+    return new XmlElement("tr").addElement(new XmlElement("td")
+        .addElement(small)).toString();
+  }
+
+  private static String getTitle(BasePageEntry<?> page) {
+    return page.getTitle().getPlainText();
+  }
+}
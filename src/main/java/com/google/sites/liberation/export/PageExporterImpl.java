@@ -22,8 +22,10 @@ import static com.google.sites.liberation.util.EntryType.FILE_CABINET_PAGE;
 import static com.google.sites.liberation.util.EntryType.LIST_PAGE;
 import static com.google.sites.liberation.util.EntryType.getType;
 
+import com.google.common.cache.CacheBuilder;
+import com.google.common.cache.CacheLoader;
+import com.google.common.cache.LoadingCache;
 import com.google.common.collect.Lists;
-import com.google.common.collect.Sets;
 import com.google.gdata.data.sites.AnnouncementEntry;
 import com.google.gdata.data.sites.BaseContentEntry;
 import com.google.gdata.data.sites.BasePageEntry;
@@ -41,13 +43,12 @@ import com.google.sites.liberation.renderers.ListRenderer;
 import com.google.sites.liberation.renderers.SubpageLinksRenderer;
 import com.google.sites.liberation.renderers.TitleRenderer;
 import com.google.sites.liberation.util.EntryUtils;
-import com.google.sites.liberation.util.XmlElement;
+import com.google.sites.liberation.util.XmlWriter;
 
 import java.io.IOException;
 import java.util.Collections;
 import java.util.Comparator;
 import java.util.List;
-import java.util.Set;
 
 /**
  * Implements {@link PageExporter} to export a single page in a 
@@ -72,6 +73,7 @@ final class PageExporterImpl implements PageExporter {
   private ListRenderer listRenderer;
   private SubpageLinksRenderer subpageLinksRenderer;
   private TitleRenderer titleRenderer;
+  private final LoadingCache<EntryStore, NavigationSideBar> sideBars;
   
   @Inject
   PageExporterImpl(
@@ -93,6 +95,13 @@ final class PageExporterImpl implements PageExporter {
     this.listRenderer = checkNotNull(listRenderer);
     this.subpageLinksRenderer = checkNotNull(subpageLinksRenderer);
     this.titleRenderer = checkNotNull(titleRenderer);
+    sideBars = CacheBuilder.newBuilder().weakKeys().build(
+        new CacheLoader<EntryStore, NavigationSideBar>() {
+          @Override
+          public NavigationSideBar load(EntryStore entryStore) {
+            return new NavigationSideBar(entryStore);
+          }
+        });
   }
   
   @Override
@@ -101,30 +110,6 @@ final class PageExporterImpl implements PageExporter {
     checkNotNull(entry, "entry");
     checkNotNull(entryStore, "entryStore");
     checkNotNull(out, "out");
-    XmlElement html = new XmlElement("html");
-    XmlElement head = new XmlElement("head");
-    XmlElement title = new XmlElement("title");
-    
-    XmlElement meta_charset = new XmlElement("meta").setAttribute("charset", "utf-8");
-    
-    title.addText(entry.getTitle().getPlainText());
-    html.addElement(head.addElement(title).addElement(meta_charset));
-    XmlElement body = new XmlElement("body");
-    XmlElement table = new XmlElement("table").setAttribute("width", "100%");
-    XmlElement row = new XmlElement("tr").setAttribute("valign", "top");
-    XmlElement sideBar = getSideBar(entry, entryStore);
-    row.addElement(new XmlElement("td").addElement(sideBar).setAttribute(
-        "width", "150px"));
-    row.addElement(new XmlElement("td").addXml("&#160;"));
-    XmlElement mainDiv = new XmlElement("div");
-    mainDiv.setAttribute("class", "hentry " + getType(entry).toString());
-    mainDiv.setAttribute("id", entry.getId());
-    if (entryStore.getParent(entry.getId()) != null) {
-      List<BasePageEntry<?>> ancestors = getAncestors(entry, entryStore);
-      mainDiv.addElement(ancestorLinksRenderer.renderAncestorLinks(ancestors));      
-    }
-    mainDiv.addElement(titleRenderer.renderTitle(entry));
-    mainDiv.addElement(contentRenderer.renderContent(entry, revisionsExported));
     List<AnnouncementEntry> announcements = Lists.newArrayList();
     List<BaseContentEntry<?>> attachments = Lists.newArrayList();
     List<CommentEntry> comments = Lists.newArrayList();
@@ -161,73 +146,63 @@ final class PageExporterImpl implements PageExporter {
     Collections.sort(comments, updatedComparator);
     Collections.sort(listItems, updatedComparator);
     Collections.sort(subpages, titleComparator);
+    XmlWriter writer = new XmlWriter(out);
+    writer.startElement("html");
+    writer.startElement("head");
+    writer.startElement("title").addText(entry.getTitle().getPlainText())
+        .endElement();
+    writer.startElement("meta").setAttribute("charset", "utf-8").endElement();
+    writer.endElement();
+    writer.startElement("body");
+    writer.startElement("table").setAttribute("width", "100%");
+    writer.startElement("tr").setAttribute("valign", "top");
+    writer.startElement("td").setAttribute("width", "150px");
+    writeSideBar(entry, entryStore, writer);
+    writer.endElement();
+    writer.startElement("td").addXml("&#160;").endElement();
+    writer.startElement("td");
+    writer.startElement("div");
+    writer.setAttribute("class", "hentry " + getType(entry).toString());
+    writer.setAttribute("id", entry.getId());
+    List<BasePageEntry<?>> ancestors = entryStore.getAncestors(entry.getId());
+    if (ancestors != null && !ancestors.isEmpty()) {
+      writer.addElement(ancestorLinksRenderer.renderAncestorLinks(ancestors));
+    }
+    writer.addElement(titleRenderer.renderTitle(entry));
+    writer.addElement(contentRenderer.renderContent(entry, revisionsExported));
     if (getType(entry) == ANNOUNCEMENTS_PAGE) {
-      mainDiv.addElement(announcementsRenderer
-          .renderAnnouncements(announcements));
+      announcementsRenderer.renderAnnouncements(announcements, writer);
     } else if (getType(entry) == FILE_CABINET_PAGE) {
-      mainDiv.addElement(fileCabinetRenderer.renderFileCabinet(attachments));
+      writer.addElement(fileCabinetRenderer.renderFileCabinet(attachments));
     } else if (getType(entry) == LIST_PAGE) {
       // TODO(gk5885): remove extra cast for
       // http://bugs.sun.com/bugdatabase/view_bug.do?bug_id=6302214
-      mainDiv.addElement(listRenderer.renderList(
-          (ListPageEntry) entry, listItems));
+      listRenderer.renderList((ListPageEntry) entry, listItems, writer);
     }
     if (!subpages.isEmpty()) {
-      mainDiv.addElement(new XmlElement("hr"));
-      mainDiv.addElement(subpageLinksRenderer.renderSubpageLinks(subpages));
+      writer.startElement("hr").endElement();
+      writer.addElement(subpageLinksRenderer.renderSubpageLinks(subpages));
     }
     if (!attachments.isEmpty() && getType(entry) != FILE_CABINET_PAGE) {
-      mainDiv.addElement(new XmlElement("hr"));
-      mainDiv.addElement(attachmentsRenderer.renderAttachments(attachments));
+      writer.startElement("hr").endElement();
+      writer.addElement(attachmentsRenderer.renderAttachments(attachments));
     }
     if (!comments.isEmpty()) {
-      mainDiv.addElement(new XmlElement("hr"));
-      mainDiv.addElement(commentsRenderer.renderComments(comments));
-    }
-    row.addElement(new XmlElement("td").addElement(mainDiv));
-    html.addElement(body.addElement(table.addElement(row)));
-    html.appendTo(out);
-  }
-  
-  private XmlElement getSideBar(BaseContentEntry<?> entry, EntryStore entryStore) {
-    XmlElement table = new XmlElement("table");
-    table.addElement(new XmlElement("tr").addElement(new XmlElement("th")
-        .addText("Navigation").setAttribute("align", "left")));
-    Set<BasePageEntry<?>> pages = Sets.newTreeSet(titleComparator);
-    pages.addAll(entryStore.getTopLevelEntries());
-    String pathToRoot = getPathToRoot(entry, entryStore);
-    for (BasePageEntry<?> page : pages) {
-      String text = page.getTitle().getPlainText();
-      if (page.equals(entry)) {
-        table.addElement(new XmlElement("tr").addElement(new XmlElement("td")
-            .addElement(new XmlElement("small").addText(text))));
-      } else {
-        String href = pathToRoot + page.getPageName().getValue() + "/index.html";
-        XmlElement link = new XmlElement("a").addText(text)
-            .setAttribute("href", href);
-        table.addElement(new XmlElement("tr").addElement(new XmlElement("td")
-            .addElement(new XmlElement("small").addElement(link))));
-      }
+      writer.startElement("hr").endElement();
+      writer.addElement(commentsRenderer.renderComments(comments));
     }
-    return table;
+    writer.endElement().endElement().endElement().endElement().endElement()
+        .endElement();
   }
   
-  private String getPathToRoot(BaseContentEntry<?> entry, EntryStore entryStore) {
-    BasePageEntry<?> parent = entryStore.getParent(entry.getId());
-    if (parent == null) {
-      return "../";
-    }
-    return getPathToRoot(parent, entryStore) + "../";
-  }
-  
-  private List<BasePageEntry<?>> getAncestors(BaseContentEntry<?> entry,
-      EntryStore entryStore) {
-    BasePageEntry<?> parent = entryStore.getParent(entry.getId());
-    if (parent == null) {
-      return Lists.newLinkedList();
-    }
-    List<BasePageEntry<?>> ancestors = getAncestors(parent, entryStore);
-    ancestors.add(parent);
-    return ancestors;
+  /**
+   * Writes the sidebar of the given entry. The sidebar of each store is only 
+   * built once, so the store must be complete by the time its first page is 
+   * exported.
+   */
+  private void writeSideBar(BaseContentEntry<?> entry, EntryStore entryStore,
+      XmlWriter writer) throws IOException {
+    int depth = Math.max(entryStore.getDepth(entry.getId()), 0);
+    sideBars.getUnchecked(entryStore).write(entry, depth, writer);
   }
-}
\ No newline at end of file
+}
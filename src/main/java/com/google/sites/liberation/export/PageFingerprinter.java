@@ -0,0 +1,118 @@
+/*
+ * Copyright (C) 2009 Google Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.google.sites.liberation.export;
+
+import static com.google.common.base.Preconditions.checkNotNull;
+import static com.google.sites.liberation.util.EntryType.isPage;
+import static com.google.sites.liberation.util.EntryUtils.getVersion;
+
+import com.google.common.collect.Lists;
+import com.google.common.hash.Hasher;
+import com.google.common.hash.Hashing;
+import com.google.gdata.data.sites.BaseContentEntry;
+import com.google.gdata.data.sites.BasePageEntry;
+
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Computes a fingerprint of everything an exported page depends on, so that
+ * a page only needs to be rendered again when its fingerprint changes.
+ *
+ * <p>A page's fingerprint covers the version of the page itself, the titles
+ * and page names of its ancestors, which appear in its links and ancestor
+ * links, the versions of its children, such as subpages, attachments,
+ * comments and list items, and the titles and page names of the site's
+ * top-level pages, which make up every page's sidebar.</p>
+ */
+final class PageFingerprinter {
+
+  private final EntryStore entryStore;
+  private String topLevelFingerprint;
+
+  /**
+   * Creates a new fingerprinter for the pages in the given store, which must
+   * not change while the fingerprinter is in use.
+   */
+  PageFingerprinter(EntryStore entryStore) {
+    this.entryStore = checkNotNull(entryStore);
+  }
+
+  /**
+   * Returns the fingerprint of the given page.
+   */
+  String getFingerprint(BasePageEntry<?> page) {
+    Hasher hasher = Hashing.md5().newHasher();
+    putString(hasher, getTopLevelFingerprint());
+    putPage(hasher, page);
+    putString(hasher, getVersion(page));
+    List<BasePageEntry<?>> ancestors = entryStore.getAncestors(page.getId());
+    if (ancestors != null) {
+      for (BasePageEntry<?> ancestor : Lists.reverse(ancestors)) {
+        putPage(hasher, ancestor);
+      }
+    }
+    List<String> children = Lists.newArrayList();
+    for (BaseContentEntry<?> child : entryStore.getChildren(page.getId())) {
+      children.add(child.getId() + '\0' + getVersion(child)
+          + '\0' + getTitle(child) + '\0' + getPageName(child));
+    }
+    Collections.sort(children);
+    for (String child : children) {
+      putString(hasher, child);
+    }
+    return hasher.hash().toString();
+  }
+
+  private synchronized String getTopLevelFingerprint() {
+    if (topLevelFingerprint == null) {
+      List<String> pages = Lists.newArrayList();
+      for (BasePageEntry<?> page : entryStore.getTopLevelEntries()) {
+        pages.add(page.getId() + '\0' + getTitle(page) + '\0'
+            + getPageName(page));
+      }
+      Collections.sort(pages);
+      Hasher hasher = Hashing.md5().newHasher();
+      for (String page : pages) {
+        putString(hasher, page);
+      }
+      topLevelFingerprint = hasher.hash().toString();
+    }
+    return topLevelFingerprint;
+  }
+
+  private static void putPage(Hasher hasher, BasePageEntry<?> page) {
+    putString(hasher, page.getId());
+    putString(hasher, getTitle(page));
+    putString(hasher, getPageName(page));
+  }
+
+  private static void putString(Hasher hasher, String string) {
+    hasher.putString(String.valueOf(string)).putChar('\0');
+  }
+
+  private static String getTitle(BaseContentEntry<?> entry) {
+    return (entry.getTitle() == null) ? null : entry.getTitle().getPlainText();
+  }
+
+  private static String getPageName(BaseContentEntry<?> entry) {
+    if (!isPage(entry) || ((BasePageEntry<?>) entry).getPageName() == null) {
+      return null;
+    }
+    return ((BasePageEntry<?>) entry).getPageName().getValue();
+  }
+}
@@ -0,0 +1,98 @@
+/*
+ * Copyright (C) 2009 Google Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.google.sites.liberation.export;
+
+import static com.google.common.base.Preconditions.checkArgument;
+
+/**
+ * Chooses the number of results to request per query from a feed.
+ *
+ * <p>The page size doubles after a number of consecutive fast, complete
+ * responses at the current size, and halves after a failed or slow response,
+ * always staying between the given minimum and maximum. Since a failed
+ * window only halves the size once, later clean windows grow it back.</p>
+ *
+ * <p>Instances are thread-safe, so that a single controller can be shared by
+ * concurrent requests for the same feed.</p>
+ */
+final class PageSizeController {
+
+  static final int SUCCESSES_BEFORE_GROWTH = 2;
+
+  private final int minPageSize;
+  private final int maxPageSize;
+  private final long slowResponseMillis;
+  private int pageSize;
+  private int successes;
+
+  /**
+   * Creates a new controller starting at {@code initialPageSize} which treats
+   * any response taking longer than {@code slowResponseMillis} as slow.
+   */
+  PageSizeController(int initialPageSize, int minPageSize, int maxPageSize,
+      long slowResponseMillis) {
+    checkArgument(minPageSize > 0);
+    checkArgument(minPageSize <= initialPageSize);
+    checkArgument(initialPageSize <= maxPageSize);
+    this.minPageSize = minPageSize;
+    this.maxPageSize = maxPageSize;
+    this.slowResponseMillis = slowResponseMillis;
+    this.pageSize = initialPageSize;
+  }
+
+  /**
+   * Returns a controller that always requests {@code pageSize} results.
+   */
+  static PageSizeController fixed(int pageSize) {
+    return new PageSizeController(pageSize, pageSize, pageSize, Long.MAX_VALUE);
+  }
+
+  /**
+   * Returns the number of results to request in the next query.
+   */
+  synchronized int getPageSize() {
+    return pageSize;
+  }
+
+  /**
+   * Records that a query for {@code requested} results returned
+   * {@code returned} results after {@code elapsedMillis} milliseconds.
+   */
+  synchronized void recordResponse(int requested, int returned,
+      long elapsedMillis) {
+    if (elapsedMillis > slowResponseMillis) {
+      shrink();
+    } else if (requested >= pageSize && returned == requested) {
+      if (++successes >= SUCCESSES_BEFORE_GROWTH) {
+        pageSize = Math.min(2 * pageSize, maxPageSize);
+        successes = 0;
+      }
+    }
+  }
+
+  /**
+   * Records that a query failed.
+   */
+  synchronized void recordFailure() {
+    shrink();
+  }
+
+  private void shrink() {
+    pageSize = Math.max(pageSize / 2, minPageSize);
+    successes = 0;
+  }
+}
@@ -16,22 +16,31 @@
 
 package com.google.sites.liberation.export;
 
+import static com.google.common.base.Preconditions.checkArgument;
 import static com.google.common.base.Preconditions.checkNotNull;
 import static com.google.sites.liberation.util.EntryType.ATTACHMENT;
 import static com.google.sites.liberation.util.EntryType.getType;
 import static com.google.sites.liberation.util.EntryType.isPage;
-import static com.google.sites.liberation.util.EntryUtils.getParentId;
 
 import java.io.Closeable;
 import java.io.File;
 import java.io.IOException;
 import java.net.URL;
-import java.util.Set;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 
-import com.google.common.collect.Sets;
+import com.google.common.base.Throwables;
+import com.google.common.collect.Iterables;
+import com.google.common.collect.Lists;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
 import com.google.gdata.client.sites.SitesService;
+import com.google.gdata.data.DateTime;
 import com.google.gdata.data.sites.AttachmentEntry;
 import com.google.gdata.data.sites.BaseContentEntry;
 import com.google.gdata.data.sites.BasePageEntry;
@@ -44,6 +53,22 @@ import com.google.sites.liberation.util.UrlUtils;
  * Implements {@link SiteExporter} to export an entire Site 
  * to a given root folder.
  * 
+ * <p>The export is pipelined: as soon as an entry and all of its ancestors 
+ * have been retrieved, it is added to the {@link EntryStore}, a page has its 
+ * links converted, and an attachment is handed to an 
+ * {@link AttachmentDownloadScheduler}, while the rest of the feed is still 
+ * being fetched. Pages are rendered once the feed is complete, since every 
+ * page lists its children and the site's top-level pages. Only the ids of 
+ * pages are held until then, so that the entry store decides how much of 
+ * the site is kept in memory.</p>
+ * 
+ * <p>Progress is recorded in an {@link ExportCheckpoint}, so that rerunning 
+ * an interrupted export into the same folder continues the content feed 
+ * where it stopped, and skips the pages and attachments already 
+ * written. Rerunning a finished export into the same folder only renders the 
+ * pages whose {@link PageFingerprinter fingerprint} changed, and only 
+ * downloads the attachments which changed.</p>
+ * 
  * @author bsimon@google.com (Benjamin Simon)
  */
 final class SiteExporterImpl implements SiteExporter {
@@ -51,6 +76,15 @@ final class SiteExporterImpl implements SiteExporter {
   private static final Logger LOGGER = Logger.getLogger(
       SiteExporterImpl.class.getCanonicalName());
   
+  static final int RENDER_THREADS = 
+      Runtime.getRuntime().availableProcessors();
+  
+  /** 
+   * How long before the start of the previous export's feed changes are
+   * retrieved from, to allow for differences between the server's clocks.
+   */
+  static final long UPDATED_MIN_MARGIN_MILLIS = 10 * 60 * 1000;
+  
   private final AbsoluteLinkConverter linkConverter;
   private final AppendableFactory appendableFactory;
   private final AttachmentDownloader attachmentDownloader;
@@ -58,11 +92,15 @@ final class SiteExporterImpl implements SiteExporter {
   private final FeedProvider feedProvider;
   private final PageExporter pageExporter;
   private final RevisionsExporter revisionsExporter;
+  private final boolean fetchChangesOnly;
+  private final int downloadThreads;
+  private final int downloadsPerHost;
   
   /**
-   * Creates a new SiteExporter with the given dependencies.
+   * Creates a new SiteExporter with the given dependencies, which always
+   * retrieves the whole site, and downloads attachments as many at once as
+   * the {@link SiteExporterModule} does by default.
    */
-  @Inject
   SiteExporterImpl(AbsoluteLinkConverter linkConverter,
       AppendableFactory appendableFactory,
       AttachmentDownloader attachmentDownloader,
@@ -70,13 +108,42 @@ final class SiteExporterImpl implements SiteExporter {
       FeedProvider feedProvider,
       PageExporter pageExporter,
       RevisionsExporter revisionsExporter) {
+    this(linkConverter, appendableFactory, attachmentDownloader, 
+        entryStoreFactory, feedProvider, pageExporter, revisionsExporter, 
+        false, SiteExporterModule.DEFAULT_DOWNLOAD_THREADS, 
+        SiteExporterModule.DEFAULT_DOWNLOADS_PER_HOST);
+  }
+  
+  /**
+   * Creates a new SiteExporter with the given dependencies. If 
+   * {@code fetchChangesOnly} is true, an export following a finished export 
+   * to the same directory only retrieves the entries updated since. At most
+   * {@code downloadThreads} attachments are downloaded at once, and at most
+   * {@code downloadsPerHost} of them from any one host.
+   */
+  @Inject
+  SiteExporterImpl(AbsoluteLinkConverter linkConverter,
+      AppendableFactory appendableFactory,
+      AttachmentDownloader attachmentDownloader,
+      EntryStoreFactory entryStoreFactory,
+      FeedProvider feedProvider,
+      PageExporter pageExporter,
+      RevisionsExporter revisionsExporter,
+      @FetchChangesOnly boolean fetchChangesOnly,
+      @DownloadThreads int downloadThreads,
+      @DownloadsPerHost int downloadsPerHost) {
     this.linkConverter = checkNotNull(linkConverter);
     this.appendableFactory = checkNotNull(appendableFactory);
     this.attachmentDownloader = checkNotNull(attachmentDownloader);
     this.entryStoreFactory = checkNotNull(entryStoreFactory);
     this.feedProvider = checkNotNull(feedProvider);
     this.pageExporter = checkNotNull(pageExporter);
-    this.revisionsExporter = checkNotNull(revisionsExporter);   
+    this.revisionsExporter = checkNotNull(revisionsExporter);
+    this.fetchChangesOnly = fetchChangesOnly;
+    checkArgument(downloadThreads > 0);
+    checkArgument(downloadsPerHost > 0);
+    this.downloadThreads = downloadThreads;
+    this.downloadsPerHost = downloadsPerHost;
   }
   
   @Override
@@ -88,69 +155,217 @@ final class SiteExporterImpl implements SiteExporter {
     checkNotNull(sitesService, "sitesService");
     checkNotNull(rootDirectory, "rootDirectory");
     checkNotNull(progressListener, "progressListener");
-    Set<BaseContentEntry<?>> pages = Sets.newHashSet();
-    Set<AttachmentEntry> attachments = Sets.newHashSet();
+    List<String> pageIds = Lists.newArrayList();
     EntryStore entryStore = entryStoreFactory.newEntryStore();
+    EntryReadinessTracker readinessTracker = new EntryReadinessTracker();
     URL feedUrl = UrlUtils.getFeedUrl(host, domain, webspace);
     URL siteUrl = UrlUtils.getSiteUrl(host, domain, webspace);
+    ExportCheckpoint checkpoint;
+    try {
+      checkpoint = new ExportCheckpoint(rootDirectory, feedUrl, 
+          exportRevisions, fetchChangesOnly);
+    } catch (IOException e) {
+      throw new RuntimeException("Unable to create checkpoint in: " 
+          + rootDirectory, e);
+    }
+    AttachmentDownloadScheduler downloadScheduler = 
+        new AttachmentDownloadScheduler(
+            checkpoint.recordDownloads(attachmentDownloader), 
+            downloadThreads, downloadsPerHost);
+    ExecutorService renderExecutor = Executors.newFixedThreadPool(
+        RENDER_THREADS, new ThreadFactoryBuilder().setDaemon(true)
+            .setNameFormat("page-renderer-%d").build());
     
+    if (checkpoint.isResumed()) {
+      progressListener.setStatus("Resuming interrupted export.");
+    } else if (checkpoint.isIncremental()) {
+      progressListener.setStatus("Updating previous export.");
+    }
     progressListener.setStatus("Retrieving site data (this may take a few minutes).");
-    Iterable<BaseContentEntry<?>> entries = 
-        feedProvider.getEntries(feedUrl, sitesService);
+    if (!checkpoint.isResumed()) {
+      DateTime serverTime = feedProvider.getServerTime(feedUrl, sitesService);
+      if (serverTime != null) {
+        checkpoint.feedStarted(serverTime);
+      }
+    }
+    Iterable<BaseContentEntry<?>> entries;
+    DateTime previousFeedStarted = checkpoint.getPreviousFeedStarted();
+    if (fetchChangesOnly && previousFeedStarted != null) {
+      progressListener.setStatus("Retrieving changes since previous export.");
+      DateTime updatedMin = new DateTime(
+          previousFeedStarted.getValue() - UPDATED_MIN_MARGIN_MILLIS, 0);
+      entries = checkpoint.journal(new SnapshotMerger(
+          checkpoint.getSnapshotEntries(), 
+          feedProvider.getEntries(feedUrl, sitesService, 1, updatedMin, 
+              null)));
+    } else {
+      entries = checkpoint.getJournaledEntries();
+      if (!checkpoint.isFeedComplete()) {
+        entries = Iterables.concat(entries, checkpoint.journal(
+            feedProvider.getEntries(feedUrl, sitesService, 
+                checkpoint.getNextStartIndex(), null, checkpoint)));
+      }
+    }
     int num = 1;
-    for (BaseContentEntry<?> entry : entries) {
-      if (entry != null) {
-        if (num % 20 == 0) {
-          progressListener.setStatus("Retrieved " + num + " entries.");
+    try {
+      for (BaseContentEntry<?> entry : entries) {
+        if (entry != null) {
+          if (num % 20 == 0) {
+            progressListener.setStatus("Retrieved " + num + " entries.");
+          }
+          if (!isPage(entry) && getType(entry) != ATTACHMENT) {
+            progressListener.setStatus("The class of page is not supported!"
+                + "The class of page:" + entry.getClass());
+          }
+          for (BaseContentEntry<?> ready : readinessTracker.addEntry(entry)) {
+            entryStore.addEntry(ready);
+            if (isPage(ready)) {
+              linkConverter.convertLinks(ready, entryStore, siteUrl, false);
+              entryStore.updateEntry(ready);
+              pageIds.add(ready.getId());
+            } else if (getType(ready) == ATTACHMENT) {
+              // TODO(gk5885): remove extra cast for
+              // http://bugs.sun.com/bugdatabase/view_bug.do?bug_id=6302214
+              downloadAttachment((AttachmentEntry) ready, rootDirectory, 
+                  entryStore, sitesService, downloadScheduler, checkpoint);
+            }
+          }
+          num++;
+        } else {
+          LOGGER.log(Level.WARNING, "Error parsing entries!");
+        }
+      }
+      checkpoint.feedCompleted();
+      if (readinessTracker.getNumWaiting() > 0) {
+        LOGGER.log(Level.WARNING, readinessTracker.getNumWaiting() 
+            + " entries are missing an ancestor and will not be exported.");
+      }
+      
+      int totalEntries = pageIds.size() + downloadScheduler.getNumScheduled();
+      if (totalEntries > 0) {  
+        int currentPages = 0;
+        int unchangedPages = 0;
+        PageFingerprinter fingerprinter = new PageFingerprinter(entryStore);
+        List<Future<Boolean>> renders = Lists.newArrayList();
+        for (String pageId : pageIds) {
+          renders.add(renderExecutor.submit(new PageRender(pageId, 
+              rootDirectory, entryStore, fingerprinter, checkpoint, 
+              exportRevisions, sitesService, siteUrl)));
         }
-        entryStore.addEntry(entry);
-        if (isPage(entry)) {
-          pages.add((BasePageEntry<?>) entry);
-        } else if (getType(entry) == ATTACHMENT) {
-          // TODO(gk5885): remove extra cast for
-          // http://bugs.sun.com/bugdatabase/view_bug.do?bug_id=6302214
-          attachments.add((AttachmentEntry) entry);
+        for (int i = 0; i < renders.size(); i++) {
+          BasePageEntry<?> page = 
+              (BasePageEntry<?>) entryStore.getEntry(pageIds.get(i));
+          progressListener.setStatus("Exporting page: " 
+              + page.getTitle().getPlainText() + '.');
+          if (isUnchanged(renders.get(i))) {
+            unchangedPages++;
+          }
+          progressListener.setProgress(((double) (++currentPages 
+              + downloadScheduler.getNumCompleted())) / totalEntries);
         }
-        else
-        {
-            progressListener.setStatus("The class of page is not supported!"
-                  + "The class of page:" + entry.getClass());
+        if (unchangedPages > 0) {
+          LOGGER.log(Level.INFO, unchangedPages 
+              + " unchanged pages were not exported again.");
         }
-        num++;
+        if (downloadScheduler.getNumScheduled() > 0) {
+          progressListener.setStatus("Waiting for attachment downloads.");
+          downloadScheduler.awaitCompletion(progressListener, currentPages, 
+              totalEntries);
+        }
+        checkpoint.exportCompleted();
+        progressListener.setStatus("Export complete.");
       } else {
-        LOGGER.log(Level.WARNING, "Error parsing entries!");
+        progressListener.setStatus("No data returned. "
+            + "Can you get anything from " + feedUrl.toString()+".");
       }
+    } catch (IOException e) {
+      LOGGER.log(Level.WARNING, "Unable to save checkpoint.", e);
+    } finally {
+      renderExecutor.shutdownNow();
+      downloadScheduler.shutdown();
+      try {
+        checkpoint.close();
+      } catch (IOException e) {
+        LOGGER.log(Level.WARNING, "Unable to save checkpoint.", e);
+      }
+      if (entryStore instanceof Closeable) {
+        try {
+          ((Closeable) entryStore).close();
+        } catch (IOException e) {
+          LOGGER.log(Level.WARNING, "Failed closing entry store.", e);
+        }
+      }
+    }
+  }
+  
+  /**
+   * Waits for the given page render, and returns whether the page was left 
+   * as it is because it is unchanged since the previous export. Unchecked 
+   * exceptions thrown while rendering are rethrown.
+   */
+  private boolean isUnchanged(Future<Boolean> render) {
+    try {
+      return render.get();
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      throw new RuntimeException(e);
+    } catch (ExecutionException e) {
+      Throwables.propagateIfPossible(e.getCause());
+      throw new RuntimeException(e.getCause());
     }
+  }
+  
+  /**
+   * Renders a single page, unless it is unchanged since the previous export, 
+   * and returns whether it was unchanged. Renders of different pages run 
+   * concurrently: they only read the entry store, which is complete by the 
+   * time they start, and each writes to its own folder, so the output does 
+   * not depend on their order.
+   */
+  private class PageRender implements Callable<Boolean> {
     
-    int totalEntries = pages.size() + attachments.size();
-    if (totalEntries > 0) {  
-      int currentEntries = 0;
-      for (BaseContentEntry<?> page : pages) {
-        progressListener.setStatus("Exporting page: " 
-            + page.getTitle().getPlainText() + '.');
-        linkConverter.convertLinks(page, entryStore, siteUrl, false);
-        File relativePath = getPath(page, entryStore);
-        if (relativePath != null) {
-          File directory = new File(rootDirectory, relativePath.getPath());
-          directory.mkdirs();
-          exportPage(page, directory, entryStore, exportRevisions);
-          if (exportRevisions) {
-            revisionsExporter.exportRevisions(page, entryStore, directory, 
-                sitesService, siteUrl);
-          }
-        }
-        progressListener.setProgress(((double) ++currentEntries) / totalEntries);
+    private final String pageId;
+    private final File rootDirectory;
+    private final EntryStore entryStore;
+    private final PageFingerprinter fingerprinter;
+    private final ExportCheckpoint checkpoint;
+    private final boolean exportRevisions;
+    private final SitesService sitesService;
+    private final URL siteUrl;
+    
+    PageRender(String pageId, File rootDirectory, EntryStore entryStore, 
+        PageFingerprinter fingerprinter, ExportCheckpoint checkpoint, 
+        boolean exportRevisions, SitesService sitesService, URL siteUrl) {
+      this.pageId = pageId;
+      this.rootDirectory = rootDirectory;
+      this.entryStore = entryStore;
+      this.fingerprinter = fingerprinter;
+      this.checkpoint = checkpoint;
+      this.exportRevisions = exportRevisions;
+      this.sitesService = sitesService;
+      this.siteUrl = siteUrl;
+    }
+    
+    @Override
+    public Boolean call() {
+      BasePageEntry<?> page = (BasePageEntry<?>) entryStore.getEntry(pageId);
+      File relativePath = getPath(page, entryStore);
+      if (relativePath == null) {
+        return false;
       }
-      for (AttachmentEntry attachment : attachments) {
-        progressListener.setStatus("Downloading attachment: " 
-            + attachment.getTitle().getPlainText() + '.');
-        downloadAttachment(attachment, rootDirectory, entryStore, sitesService);
-        progressListener.setProgress(((double) ++currentEntries) / totalEntries);
+      File directory = new File(rootDirectory, relativePath.getPath());
+      String fingerprint = fingerprinter.getFingerprint(page);
+      if (checkpoint.isPageExported(page, fingerprint, directory)) {
+        return true;
       }
-      progressListener.setStatus("Export complete.");
-    } else {
-      progressListener.setStatus("No data returned. "
-          + "Can you get anything from " + feedUrl.toString()+".");
+      directory.mkdirs();
+      exportPage(page, directory, entryStore, exportRevisions);
+      if (exportRevisions) {
+        revisionsExporter.exportRevisions(page, entryStore, directory, 
+            sitesService, siteUrl);
+      }
+      checkpoint.pageExported(page, fingerprint);
+      return false;
     }
   }
   
@@ -174,16 +389,24 @@ final class SiteExporterImpl implements SiteExporter {
     }
   }
   
+  /**
+   * Schedules the download of the given attachment, if it has a place in the 
+   * export and was not already downloaded. The attachment's folder is 
+   * resolved immediately.
+   */
   private void downloadAttachment(AttachmentEntry attachment, 
-      File rootDirectory, EntryStore entryStore, SitesService sitesService) {
+      File rootDirectory, EntryStore entryStore, SitesService sitesService, 
+      AttachmentDownloadScheduler downloadScheduler, 
+      ExportCheckpoint checkpoint) {
     BasePageEntry<?> parent = entryStore.getParent(attachment.getId());
     if (parent != null) {
       File relativePath = getPath(parent, entryStore);
       if (relativePath != null) {
         File folder = new File(rootDirectory, relativePath.getPath());
-        folder.mkdirs();
         File file = new File(folder, attachment.getTitle().getPlainText());
-        attachmentDownloader.download(attachment, file, sitesService);
+        if (!checkpoint.isAttachmentDownloaded(attachment, file)) {
+          downloadScheduler.schedule(attachment, file, sitesService);
+        }
       }
     }
   }
@@ -193,14 +416,7 @@ final class SiteExporterImpl implements SiteExporter {
    * {@code null} if any of the page's ancestors are missing.
    */
   private File getPath(BaseContentEntry<?> entry, EntryStore entryStore) {
-    String parentId = getParentId(entry);
-    if (parentId == null) {
-      return new File(((BasePageEntry<?>) entry).getPageName().getValue());
-    }
-    BasePageEntry<?> parent = (BasePageEntry<?>) entryStore.getEntry(parentId);
-    if (parent == null) {
-      return null;
-    }
-    return new File(getPath(parent, entryStore), ((BasePageEntry<?>) entry).getPageName().getValue());
+    String path = entryStore.getPath(entry.getId());
+    return (path == null) ? null : new File(path);
   }
 }
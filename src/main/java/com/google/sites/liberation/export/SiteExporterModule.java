@@ -16,6 +16,8 @@
 
 package com.google.sites.liberation.export;
 
+import static com.google.common.base.Preconditions.checkArgument;
+
 import com.google.inject.AbstractModule;
 
 /**
@@ -23,9 +25,74 @@ import com.google.inject.AbstractModule;
  */
 public class SiteExporterModule extends AbstractModule {
 
+  /**
+   * The number of attachments downloaded at once by default.
+   */
+  public static final int DEFAULT_DOWNLOAD_THREADS = 8;
+  
+  /**
+   * The number of attachments downloaded at once from any one host by 
+   * default.
+   */
+  public static final int DEFAULT_DOWNLOADS_PER_HOST = 4;
+
+  private final boolean storeEntriesOnDisk;
+  private final boolean fetchChangesOnly;
+  private final int downloadThreads;
+  private final int downloadsPerHost;
+
+  /**
+   * Creates a module which keeps retrieved entries in memory.
+   */
+  public SiteExporterModule() {
+    this(false);
+  }
+
+  /**
+   * Creates a module which keeps retrieved entries on disk rather than in 
+   * memory if {@code storeEntriesOnDisk} is {@code true}, for sites too large 
+   * to fit in the heap.
+   */
+  public SiteExporterModule(boolean storeEntriesOnDisk) {
+    this(storeEntriesOnDisk, false);
+  }
+
+  /**
+   * Creates a module as above which, if {@code fetchChangesOnly} is 
+   * {@code true}, makes an export following a finished export to the same 
+   * directory only retrieve the entries updated since.
+   */
+  public SiteExporterModule(boolean storeEntriesOnDisk, 
+      boolean fetchChangesOnly) {
+    this(storeEntriesOnDisk, fetchChangesOnly, DEFAULT_DOWNLOAD_THREADS,
+        DEFAULT_DOWNLOADS_PER_HOST);
+  }
+
+  /**
+   * Creates a module as above which downloads at most 
+   * {@code downloadThreads} attachments at once, and at most 
+   * {@code downloadsPerHost} of them from any one host.
+   */
+  public SiteExporterModule(boolean storeEntriesOnDisk, 
+      boolean fetchChangesOnly, int downloadThreads, int downloadsPerHost) {
+    checkArgument(downloadThreads > 0);
+    checkArgument(downloadsPerHost > 0);
+    this.storeEntriesOnDisk = storeEntriesOnDisk;
+    this.fetchChangesOnly = fetchChangesOnly;
+    this.downloadThreads = downloadThreads;
+    this.downloadsPerHost = downloadsPerHost;
+  }
+
   @Override
   protected void configure() {
-    bind(EntryStoreFactory.class).to(InMemoryEntryStoreFactory.class);
+    if (storeEntriesOnDisk) {
+      bind(EntryStoreFactory.class).to(DiskBackedEntryStoreFactory.class);
+    } else {
+      bind(EntryStoreFactory.class).to(InMemoryEntryStoreFactory.class);
+    }
     bind(AppendableFactory.class).to(BufferedWriterFactory.class);
+    bindConstant().annotatedWith(FetchChangesOnly.class).to(fetchChangesOnly);
+    bindConstant().annotatedWith(DownloadThreads.class).to(downloadThreads);
+    bindConstant().annotatedWith(DownloadsPerHost.class).to(downloadsPerHost);
   }
 }
\ No newline at end of file
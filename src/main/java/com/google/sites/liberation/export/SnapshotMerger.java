@@ -0,0 +1,80 @@
+/*
+ * Copyright (C) 2009 Google Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.google.sites.liberation.export;
+
+import static com.google.common.base.Preconditions.checkNotNull;
+
+import com.google.common.collect.AbstractIterator;
+import com.google.common.collect.Maps;
+import com.google.gdata.data.sites.BaseContentEntry;
+
+import java.util.Iterator;
+import java.util.Map;
+
+/**
+ * Merges the entries changed since an export into a snapshot of the entries
+ * of that export.
+ *
+ * <p>The changed entries are retrieved as soon as iteration starts, and held
+ * in memory, since they are expected to be few. Every snapshot entry is then
+ * returned, or its changed version if there is one, followed by the changed
+ * entries which are not in the snapshot. Entries deleted since the snapshot
+ * are still returned, since a query for changed entries cannot report
+ * them.</p>
+ */
+final class SnapshotMerger implements Iterable<BaseContentEntry<?>> {
+
+  private final Iterable<BaseContentEntry<?>> snapshot;
+  private final Iterable<BaseContentEntry<?>> changes;
+
+  /**
+   * Creates a new merger of the given snapshot and changed entries.
+   */
+  SnapshotMerger(Iterable<BaseContentEntry<?>> snapshot,
+      Iterable<BaseContentEntry<?>> changes) {
+    this.snapshot = checkNotNull(snapshot);
+    this.changes = checkNotNull(changes);
+  }
+
+  @Override
+  public Iterator<BaseContentEntry<?>> iterator() {
+    final Map<String, BaseContentEntry<?>> changed = Maps.newLinkedHashMap();
+    for (BaseContentEntry<?> entry : changes) {
+      if (entry != null && entry.getId() != null) {
+        changed.put(entry.getId(), entry);
+      }
+    }
+    final Iterator<BaseContentEntry<?>> snapshotItr = snapshot.iterator();
+    return new AbstractIterator<BaseContentEntry<?>>() {
+
+      private Iterator<BaseContentEntry<?>> remainingItr;
+
+      @Override
+      protected BaseContentEntry<?> computeNext() {
+        if (snapshotItr.hasNext()) {
+          BaseContentEntry<?> entry = snapshotItr.next();
+          BaseContentEntry<?> change = changed.remove(entry.getId());
+          return (change == null) ? entry : change;
+        }
+        if (remainingItr == null) {
+          remainingItr = changed.values().iterator();
+        }
+        return remainingItr.hasNext() ? remainingItr.next() : endOfData();
+      }
+    };
+  }
+}
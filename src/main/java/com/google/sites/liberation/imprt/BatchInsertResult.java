@@ -0,0 +1,72 @@
+/*
+ * Copyright (C) 2009 Google Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.google.sites.liberation.imprt;
+
+import static com.google.common.base.Preconditions.checkNotNull;
+
+import com.google.gdata.data.sites.BaseContentEntry;
+
+import java.net.HttpURLConnection;
+
+/**
+ * The outcome of inserting a single entry in a batch request: either the
+ * entry returned from the server, or the status code the server gave for 
+ * failing to insert it.
+ */
+public final class BatchInsertResult {
+
+  private final BaseContentEntry<?> entry;
+  private final int statusCode;
+
+  private BatchInsertResult(BaseContentEntry<?> entry, int statusCode) {
+    this.entry = entry;
+    this.statusCode = statusCode;
+  }
+
+  /**
+   * Returns the result of an entry which was inserted, as the given entry.
+   */
+  public static BatchInsertResult inserted(BaseContentEntry<?> entry) {
+    return new BatchInsertResult(checkNotNull(entry), 0);
+  }
+
+  /**
+   * Returns the result of an entry which was not inserted, with the given
+   * status code.
+   */
+  public static BatchInsertResult failed(int statusCode) {
+    return new BatchInsertResult(null, statusCode);
+  }
+
+  /**
+   * Returns the entry returned from the server, or {@code null} if the entry
+   * was not inserted.
+   */
+  public BaseContentEntry<?> getEntry() {
+    return entry;
+  }
+
+  /**
+   * Returns whether the entry was not inserted for a reason which may not
+   * recur, such as the server being unavailable, so that inserting it again
+   * may succeed.
+   */
+  public boolean isRetryable() {
+    return entry == null && (statusCode == HttpURLConnection.HTTP_CLIENT_TIMEOUT
+        || statusCode >= HttpURLConnection.HTTP_INTERNAL_ERROR);
+  }
+}
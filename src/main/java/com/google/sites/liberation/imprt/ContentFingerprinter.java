@@ -0,0 +1,125 @@
+/*
+ * Copyright (C) 2009 Google Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.google.sites.liberation.imprt;
+
+import static com.google.sites.liberation.util.EntryType.COMMENT;
+import static com.google.sites.liberation.util.EntryType.LIST_ITEM;
+import static com.google.sites.liberation.util.EntryType.getType;
+
+import com.google.common.collect.Maps;
+import com.google.common.hash.Hasher;
+import com.google.common.hash.Hashing;
+import com.google.gdata.data.TextContent;
+import com.google.gdata.data.sites.BaseContentEntry;
+import com.google.gdata.data.sites.ListItemEntry;
+import com.google.gdata.data.spreadsheet.Field;
+
+import org.apache.commons.lang.StringEscapeUtils;
+
+import java.util.Map;
+import java.util.regex.Pattern;
+
+/**
+ * Computes a fingerprint of the content of a comment or list item, so that
+ * an entry parsed from an exported page and the entry on the server that it
+ * was exported from have the same fingerprint.
+ *
+ * <p>A comment's fingerprint covers the plain text of its content, and a
+ * list item's the values of its fields ordered by column. Whitespace is
+ * collapsed in both. The value of a field on the server is markup, which is
+ * exported as its text, with an empty value exported as a non-breaking
+ * space, so only the values of remote list items have their markup
+ * removed.</p>
+ *
+ * @author bsimon@google.com (Benjamin Simon)
+ */
+final class ContentFingerprinter {
+
+  private static final Pattern TAG = Pattern.compile("<[^>]*>");
+  private static final Pattern WHITESPACE = Pattern.compile("[\\s\u00a0]+");
+
+  /**
+   * Returns the fingerprint of the given comment or list item as returned by
+   * the server, or {@code null} if it is neither.
+   */
+  static String getRemoteFingerprint(BaseContentEntry<?> entry) {
+    return getFingerprint(entry, true);
+  }
+
+  /**
+   * Returns the fingerprint of the given comment or list item as parsed from
+   * an exported page, or {@code null} if it is neither.
+   */
+  static String getLocalFingerprint(BaseContentEntry<?> entry) {
+    return getFingerprint(entry, false);
+  }
+
+  private static String getFingerprint(BaseContentEntry<?> entry,
+      boolean remote) {
+    Hasher hasher = Hashing.md5().newHasher();
+    if (getType(entry) == COMMENT) {
+      putString(hasher, COMMENT.toString());
+      putString(hasher, normalize(getPlainText(entry)));
+    } else if (getType(entry) == LIST_ITEM) {
+      putString(hasher, LIST_ITEM.toString());
+      // TODO(gk5885): remove extra cast for
+      // http://bugs.sun.com/bugdatabase/view_bug.do?bug_id=6302214
+      Map<String, String> values = Maps.newTreeMap();
+      for (Field field : ((ListItemEntry) (BaseContentEntry) entry)
+          .getFields()) {
+        String value = remote ? getRemoteValue(field) : getLocalValue(field);
+        values.put(String.valueOf(field.getIndex()), normalize(value));
+      }
+      for (Map.Entry<String, String> value : values.entrySet()) {
+        putString(hasher, value.getKey());
+        putString(hasher, value.getValue());
+      }
+    } else {
+      return null;
+    }
+    return hasher.hash().toString();
+  }
+
+  private static String getRemoteValue(Field field) {
+    if (field.getValue() == null) {
+      return "";
+    }
+    return StringEscapeUtils.unescapeHtml(
+        TAG.matcher(field.getValue()).replaceAll(""));
+  }
+
+  private static String getLocalValue(Field field) {
+    return (field.getValue() == null) ? "" : field.getValue();
+  }
+
+  private static String getPlainText(BaseContentEntry<?> entry) {
+    if (!(entry.getContent() instanceof TextContent)) {
+      return "";
+    }
+    TextContent content = (TextContent) entry.getContent();
+    return (content.getContent() == null)
+        ? "" : content.getContent().getPlainText();
+  }
+
+  private static String normalize(String text) {
+    return WHITESPACE.matcher(text).replaceAll(" ").trim();
+  }
+
+  private static void putString(Hasher hasher, String string) {
+    hasher.putString(string).putChar('\0');
+  }
+}
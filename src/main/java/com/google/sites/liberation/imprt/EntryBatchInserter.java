@@ -0,0 +1,45 @@
+/*
+ * Copyright (C) 2009 Google Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.google.sites.liberation.imprt;
+
+import com.google.gdata.client.sites.SitesService;
+import com.google.gdata.data.sites.BaseContentEntry;
+import com.google.gdata.util.ServiceException;
+import com.google.inject.ImplementedBy;
+
+import java.io.IOException;
+import java.net.URL;
+import java.util.List;
+
+/**
+ * Inserts several entries to a feed in a single batch request.
+ */
+@ImplementedBy(EntryBatchInserterImpl.class)
+public interface EntryBatchInserter {
+
+  /**
+   * Inserts the given entries at the given URL in one request, and returns 
+   * the result of each entry in the same order, with null in place of each
+   * entry the response did not mention, which may or may not have been 
+   * inserted. If the request fails as a whole, an exception is thrown, and 
+   * any of the entries may or may not have been inserted. Entries with 
+   * media can not be inserted in a batch.
+   */
+  List<BatchInsertResult> insertEntries(List<BaseContentEntry<?>> entries, 
+      URL feedUrl, SitesService sitesService) 
+      throws IOException, ServiceException;
+}
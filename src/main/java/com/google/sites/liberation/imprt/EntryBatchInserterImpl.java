@@ -0,0 +1,122 @@
+/*
+ * Copyright (C) 2009 Google Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.google.sites.liberation.imprt;
+
+import static com.google.common.base.Preconditions.checkNotNull;
+
+import com.google.common.collect.Lists;
+import com.google.gdata.client.sites.SitesService;
+import com.google.gdata.data.batch.BatchId;
+import com.google.gdata.data.batch.BatchOperation;
+import com.google.gdata.data.batch.BatchOperationType;
+import com.google.gdata.data.batch.BatchStatus;
+import com.google.gdata.data.batch.BatchUtils;
+import com.google.gdata.data.sites.BaseContentEntry;
+import com.google.gdata.data.sites.ContentFeed;
+import com.google.gdata.util.ServiceException;
+
+import java.io.IOException;
+import java.net.URL;
+import java.util.Collections;
+import java.util.List;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Inserts entries to a feed through its batch URL.
+ */
+final class EntryBatchInserterImpl implements EntryBatchInserter {
+
+  private static final Logger LOGGER = Logger.getLogger(
+      EntryBatchInserterImpl.class.getCanonicalName());
+  
+  @SuppressWarnings("unchecked")
+  @Override
+  public List<BatchInsertResult> insertEntries(
+      List<BaseContentEntry<?>> entries, URL feedUrl, 
+      SitesService sitesService) throws IOException, ServiceException {
+    checkNotNull(entries);
+    checkNotNull(feedUrl);
+    checkNotNull(sitesService);
+    List<BatchInsertResult> results = Lists.newArrayList(
+        Collections.<BatchInsertResult>nCopies(entries.size(), null));
+    if (entries.isEmpty()) {
+      return results;
+    }
+    ContentFeed batchFeed = new ContentFeed();
+    for (int i = 0; i < entries.size(); i++) {
+      BaseContentEntry<?> entry = entries.get(i);
+      BatchUtils.setBatchId(entry, Integer.toString(i));
+      BatchUtils.setBatchOperationType(entry, BatchOperationType.INSERT);
+      batchFeed.getEntries().add(entry);
+    }
+    try {
+      ContentFeed response = sitesService.batch(getBatchUrl(feedUrl), 
+          batchFeed);
+      for (BaseContentEntry entry : response.getEntries()) {
+        int index = getIndex(entry, entries.size());
+        if (index < 0) {
+          LOGGER.log(Level.WARNING, "Unexpected entry in batch response: " 
+              + entry);
+        } else if (BatchUtils.isSuccess(entry)) {
+          BaseContentEntry<?> adaptedEntry = 
+              (BaseContentEntry<?>) entry.getAdaptedEntry();
+          results.set(index, BatchInsertResult.inserted(
+              (adaptedEntry == null) ? entry : adaptedEntry));
+        } else {
+          BatchStatus status = BatchUtils.getBatchStatus(entry);
+          LOGGER.log(Level.WARNING, "Unable to insert entry: " 
+              + entries.get(index) + ((status == null) 
+                  ? "" : " (" + status.getCode() + " " 
+                      + status.getReason() + ")"));
+          results.set(index, BatchInsertResult.failed(
+              (status == null) ? 0 : status.getCode()));
+        }
+      }
+    } finally {
+      for (BaseContentEntry<?> entry : entries) {
+        entry.removeExtension(BatchId.class);
+        entry.removeExtension(BatchOperation.class);
+      }
+    }
+    return results;
+  }
+  
+  /**
+   * Returns the URL batch requests to the given feed are posted to.
+   */
+  static URL getBatchUrl(URL feedUrl) throws IOException {
+    return new URL(feedUrl.toExternalForm() + "/batch");
+  }
+  
+  /**
+   * Returns the index in the request of the given response entry, or -1 if
+   * it has none.
+   */
+  private static int getIndex(BaseContentEntry<?> entry, int size) {
+    String id = BatchUtils.getBatchId(entry);
+    if (id == null) {
+      return -1;
+    }
+    try {
+      int index = Integer.parseInt(id);
+      return (index >= 0 && index < size) ? index : -1;
+    } catch (NumberFormatException e) {
+      return -1;
+    }
+  }
+}
@@ -35,8 +35,21 @@ public interface EntryUploader {
   /**
    * Uploads the given entry which has the given ancestors to the given
    * URL, using the given SitesService. The entry will be updated if at all
-   * possible, otherwise it will be inserted.
+   * possible, otherwise it will be inserted. Whether the entry already exists
+   * is looked up in the given index, which is then told of the entry 
+   * returned by the server.
    */
   BaseContentEntry<?> uploadEntry(BaseContentEntry<?> entry, 
-      List<BasePageEntry<?>> ancestors, URL feedUrl, SitesService sitesService);
+      List<BasePageEntry<?>> ancestors, RemoteSiteIndex siteIndex, 
+      URL feedUrl, SitesService sitesService);
+  
+  /**
+   * Uploads the given entries which have the given ancestors as above, and 
+   * returns the entries returned from the server in the same order, with 
+   * null in place of each entry it was unable to upload. Comments and list 
+   * items which need to be inserted are inserted in batches.
+   */
+  List<BaseContentEntry<?>> uploadEntries(List<BaseContentEntry<?>> entries, 
+      List<BasePageEntry<?>> ancestors, RemoteSiteIndex siteIndex, 
+      URL feedUrl, SitesService sitesService);
 }
@@ -24,32 +24,38 @@ import static com.google.sites.liberation.util.EntryType.getType;
 import static com.google.sites.liberation.util.EntryType.isPage;
 import static com.google.common.base.Preconditions.checkNotNull;
 
-import com.google.common.collect.Maps;
+import com.google.common.collect.Lists;
+import com.google.common.collect.Sets;
 import com.google.gdata.client.sites.ContentQuery;
 import com.google.gdata.client.sites.SitesService;
 import com.google.gdata.data.ILink;
 import com.google.gdata.data.sites.BaseContentEntry;
 import com.google.gdata.data.sites.BasePageEntry;
-import com.google.gdata.data.sites.CommentEntry;
-import com.google.gdata.data.sites.ListItemEntry;
 import com.google.gdata.data.sites.SitesLink;
-import com.google.gdata.data.spreadsheet.Field;
 import com.google.gdata.util.ServiceException;
 import com.google.inject.Inject;
 import com.google.sites.liberation.util.EntryProvider;
 import com.google.sites.liberation.util.EntryUtils;
 
-import org.apache.commons.lang.StringEscapeUtils;
-
 import java.io.IOException;
 import java.net.URL;
+import java.util.Collections;
 import java.util.List;
-import java.util.Map;
+import java.util.Set;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 
 /**
  * Uploads (updates if possible, otherwise inserts) an entry to a given feed URL.
+ * Whether an entry already exists is looked up in a {@link RemoteSiteIndex} 
+ * rather than queried from the server. Comments and list items uploaded 
+ * together are inserted in batches.
+ *
+ * <p>Only the entries of a batch which the server failed to insert for a
+ * retryable reason are inserted again, after a growing delay. If a batch 
+ * request fails as a whole, the server may still have inserted some of its
+ * entries, so the children of their parents are queried into the index 
+ * first, and only the entries not found there are inserted again.</p>
  * 
  * @author bsimon@google.com (Benjamin Simon)
  */
@@ -58,32 +64,72 @@ final class EntryUploaderImpl implements EntryUploader {
   private static final Logger LOGGER = Logger.getLogger(
       EntryUploaderImpl.class.getCanonicalName());
   
+  /**
+   * The largest number of entries inserted in one batch request.
+   */
+  static final int BATCH_SIZE = 100;
+  
+  /**
+   * The number of batch requests in which an entry is attempted to be 
+   * inserted before giving up on it.
+   */
+  static final int BATCH_ATTEMPTS = 3;
+  
+  /**
+   * The delay before the second batch request for an entry, which doubles
+   * before each further request.
+   */
+  static final long RETRY_DELAY_MILLIS = 1000;
+  
+  /**
+   * The largest number of children of a parent queried in one request.
+   */
+  private static final int CHILDREN_PER_QUERY = 100;
+  
+  private final EntryBatchInserter entryBatchInserter;
   private final EntryInserter entryInserter;
-  private final EntryProvider entryProvider;
   private final EntryUpdater entryUpdater;
+  private final EntryProvider entryProvider;
+  private final long retryDelayMillis;
   
   /**
    * Creates a new EntryUploaderImpl with the given dependencies.
    */
   @Inject
-  EntryUploaderImpl(EntryInserter entryInserter, EntryProvider entryProvider, 
-      EntryUpdater entryUpdater) {
+  EntryUploaderImpl(EntryBatchInserter entryBatchInserter, 
+      EntryInserter entryInserter, EntryUpdater entryUpdater,
+      EntryProvider entryProvider) {
+    this(entryBatchInserter, entryInserter, entryUpdater, entryProvider, 
+        RETRY_DELAY_MILLIS);
+  }
+  
+  /**
+   * Creates a new EntryUploaderImpl with the given dependencies, which waits
+   * {@code retryDelayMillis} before the second batch request for an entry.
+   */
+  EntryUploaderImpl(EntryBatchInserter entryBatchInserter, 
+      EntryInserter entryInserter, EntryUpdater entryUpdater,
+      EntryProvider entryProvider, long retryDelayMillis) {
+    this.entryBatchInserter = checkNotNull(entryBatchInserter);
     this.entryInserter = checkNotNull(entryInserter);
-    this.entryProvider = checkNotNull(entryProvider);
     this.entryUpdater = checkNotNull(entryUpdater);
+    this.entryProvider = checkNotNull(entryProvider);
+    this.retryDelayMillis = retryDelayMillis;
   }
   
   @Override
   public BaseContentEntry<?> uploadEntry(BaseContentEntry<?> entry, 
-      List<BasePageEntry<?>> ancestors, URL feedUrl, SitesService sitesService) {
+      List<BasePageEntry<?>> ancestors, RemoteSiteIndex siteIndex, 
+      URL feedUrl, SitesService sitesService) {
     checkNotNull(entry);
     checkNotNull(ancestors);
+    checkNotNull(siteIndex);
     checkNotNull(feedUrl);
     checkNotNull(sitesService);
     BaseContentEntry<?> returnedEntry = null;
     if (entry.getId() != null) {
       if (entry.getId().startsWith(feedUrl.toExternalForm() + "/")) {
-        returnedEntry = getEntryById(entry, sitesService);
+        returnedEntry = siteIndex.getEntry(entry.getId());
       } else {
         entry.setId(null);
       }
@@ -92,119 +138,165 @@ final class EntryUploaderImpl implements EntryUploader {
       if (isPage(entry) || 
           getType(entry) == ATTACHMENT || 
           getType(entry) == WEB_ATTACHMENT) {
-        returnedEntry = getEntryByPath(entry, ancestors, feedUrl, sitesService);
-      } else if (getType(entry) == COMMENT) {
-        // TODO(gk5885): remove extra cast for
-        // http://bugs.sun.com/bugdatabase/view_bug.do?bug_id=6302214
-        if (commentExists((CommentEntry) (BaseContentEntry) entry, feedUrl, sitesService)) {
-          return entry;
-        }
-      } else if (getType(entry) == LIST_ITEM) {
-        // TODO(gk5885): remove extra cast for
-        // http://bugs.sun.com/bugdatabase/view_bug.do?bug_id=6302214
-        if (listItemExists((ListItemEntry) (BaseContentEntry) entry, feedUrl, sitesService)) {
+        returnedEntry = siteIndex.getEntryByPath(getPath(entry, ancestors));
+      } else if (getType(entry) == COMMENT || getType(entry) == LIST_ITEM) {
+        if (siteIndex.containsEquivalent(entry)) {
           return entry;
         }
       }
     }
     if (returnedEntry == null) {
-      return entryInserter.insertEntry(entry, feedUrl, sitesService);
+      returnedEntry = entryInserter.insertEntry(entry, feedUrl, sitesService);
     } else {
-      return entryUpdater.updateEntry(returnedEntry, entry, 
+      returnedEntry = entryUpdater.updateEntry(returnedEntry, entry, 
           sitesService);
     }
+    if (returnedEntry != null) {
+      siteIndex.addEntry(returnedEntry);
+    }
+    return returnedEntry;
   }
 
-  /**
-   * Returns whether or not an identical comment to the one given exists at the 
-   * given feed URL.
-   */
-  private boolean commentExists(CommentEntry comment, URL feedUrl, 
-      SitesService sitesService) {
-    try {
-      String content = StringEscapeUtils.unescapeXml(
-          EntryUtils.getXhtmlContent(comment));
-      ContentQuery query = new ContentQuery(feedUrl);
-      String parentId = comment.getLink(SitesLink.Rel.PARENT, ILink.Type.ATOM)
-          .getHref();
-      query.setParent(parentId.substring(parentId.lastIndexOf('/') + 1));
-      query.setKind("comment");
-      List<BaseContentEntry<?>> entries = entryProvider
-          .getEntries(query, sitesService);
-      for (BaseContentEntry<?> entry : entries) {
-        String otherContent = entry.getTextContent().getContent().getPlainText();
-        if (otherContent.equals(content)) {
-          return true;
-        }
+  @Override
+  public List<BaseContentEntry<?>> uploadEntries(
+      List<BaseContentEntry<?>> entries, List<BasePageEntry<?>> ancestors, 
+      RemoteSiteIndex siteIndex, URL feedUrl, SitesService sitesService) {
+    checkNotNull(entries);
+    checkNotNull(ancestors);
+    checkNotNull(siteIndex);
+    checkNotNull(feedUrl);
+    checkNotNull(sitesService);
+    List<BaseContentEntry<?>> returnedEntries = Lists.newArrayList(
+        Collections.<BaseContentEntry<?>>nCopies(entries.size(), null));
+    List<Integer> inserts = Lists.newArrayList();
+    for (int i = 0; i < entries.size(); i++) {
+      BaseContentEntry<?> entry = entries.get(i);
+      if (!isBatchable(entry, feedUrl)) {
+        returnedEntries.set(i, uploadEntry(entry, ancestors, siteIndex, 
+            feedUrl, sitesService));
+      } else if (siteIndex.containsEquivalent(entry)) {
+        returnedEntries.set(i, entry);
+      } else {
+        entry.setId(null);
+        inserts.add(i);
       }
-      return false;
-    } catch(IOException e) {
-      LOGGER.log(Level.WARNING, "Error communicating with the server.", e);
-      return false;
-    } catch (ServiceException e) {
-      LOGGER.log(Level.WARNING, "Error communicating with the server.", e);
-      return false;
     }
-  }
-
-  /**
-   * Returns whether or not an identical list item to the one given exists at 
-   * the given feed URL.
-   */
-  private boolean listItemExists(ListItemEntry listItem, URL feedUrl, 
-      SitesService sitesService) {
-    try {
-      Map<String, String> values = Maps.newHashMap();
-      for (Field field : listItem.getFields()) {
-        values.put(field.getIndex(), field.getValue());
+    long delayMillis = retryDelayMillis;
+    for (int attempt = 0; attempt < BATCH_ATTEMPTS && !inserts.isEmpty(); 
+        attempt++) {
+      if (attempt > 0) {
+        try {
+          Thread.sleep(delayMillis);
+        } catch (InterruptedException e) {
+          Thread.currentThread().interrupt();
+          break;
+        }
+        delayMillis *= 2;
       }
-      ContentQuery query = new ContentQuery(feedUrl);
-      String parentId = listItem.getLink(SitesLink.Rel.PARENT, ILink.Type.ATOM)
-          .getHref();
-      query.setParent(parentId.substring(parentId.lastIndexOf('/') + 1));
-      query.setKind("listitem");
-      List<BaseContentEntry<?>> entries = entryProvider
-          .getEntries(query, sitesService);
-      for (BaseContentEntry<?> entry : entries) {
-        // TODO(gk5885): remove extra cast for
-        // http://bugs.sun.com/bugdatabase/view_bug.do?bug_id=6302214
-        ListItemEntry item = (ListItemEntry) (BaseContentEntry) entry;
-        if (item.getFields().size() == listItem.getFields().size()) {
-          boolean equal = true;
-          for (Field field : item.getFields()) {
-            if (!values.get(field.getIndex()).equals(field.getValue())) {
-              equal = false;
-            }
+      List<Integer> failures = Lists.newArrayList();
+      List<Integer> unknowns = Lists.newArrayList();
+      for (List<Integer> batch : Lists.partition(inserts, BATCH_SIZE)) {
+        List<BaseContentEntry<?>> batchEntries = Lists.newArrayList();
+        for (int i : batch) {
+          batchEntries.add(entries.get(i));
+        }
+        List<BatchInsertResult> batchResults;
+        try {
+          batchResults = entryBatchInserter.insertEntries(batchEntries, 
+              feedUrl, sitesService);
+        } catch (IOException e) {
+          LOGGER.log(Level.WARNING, "Unable to insert entries.", e);
+          unknowns.addAll(batch);
+          continue;
+        } catch (ServiceException e) {
+          LOGGER.log(Level.WARNING, "Unable to insert entries.", e);
+          unknowns.addAll(batch);
+          continue;
+        }
+        for (int j = 0; j < batch.size(); j++) {
+          BatchInsertResult result = batchResults.get(j);
+          if (result == null) {
+            unknowns.add(batch.get(j));
+          } else if (result.getEntry() != null) {
+            returnedEntries.set(batch.get(j), result.getEntry());
+            siteIndex.addEntry(result.getEntry());
+          } else if (result.isRetryable()) {
+            failures.add(batch.get(j));
           }
-          if (equal) { 
-            return true;
+        }
+      }
+      if (!unknowns.isEmpty()) {
+        if (indexChildren(entries, unknowns, siteIndex, feedUrl, 
+            sitesService)) {
+          for (int i : unknowns) {
+            if (siteIndex.containsEquivalent(entries.get(i))) {
+              returnedEntries.set(i, entries.get(i));
+            } else {
+              failures.add(i);
+            }
           }
+        } else {
+          LOGGER.log(Level.WARNING, "Unable to tell whether " 
+              + unknowns.size() + " entries were inserted.");
         }
       }
-      return false;
-    } catch (IOException e) {
-      LOGGER.log(Level.WARNING, "Error communicating with the server.", e);
-      return false;
-    } catch (ServiceException e) {
-      LOGGER.log(Level.WARNING, "Error communicating with the server.", e);
-      return false;
+      Collections.sort(failures);
+      inserts = failures;
+    }
+    if (!inserts.isEmpty()) {
+      LOGGER.log(Level.WARNING, "Unable to insert " + inserts.size() 
+          + " entries after " + BATCH_ATTEMPTS + " attempts.");
     }
+    return returnedEntries;
   }
   
   /**
-   * Returns the given entry's with the given id or null if it doesn't exist.
+   * Queries the children of the parents of the entries at the given indices
+   * into the given index, and returns whether every query succeeded.
    */
-  private BaseContentEntry<?> getEntryById(BaseContentEntry<?> entry, 
+  private boolean indexChildren(List<BaseContentEntry<?>> entries, 
+      List<Integer> indices, RemoteSiteIndex siteIndex, URL feedUrl, 
       SitesService sitesService) {
+    Set<String> parentIds = Sets.newLinkedHashSet();
+    for (int i : indices) {
+      parentIds.add(EntryUtils.getParentId(entries.get(i)));
+    }
     try {
-      return sitesService.getEntry(new URL(entry.getId()), entry.getClass());
+      for (String parentId : parentIds) {
+        ContentQuery query = new ContentQuery(feedUrl);
+        query.setParent(parentId.substring(parentId.lastIndexOf('/') + 1));
+        query.setMaxResults(CHILDREN_PER_QUERY);
+        List<BaseContentEntry<?>> children;
+        int startIndex = 1;
+        do {
+          query.setStartIndex(startIndex);
+          children = entryProvider.getEntries(query, sitesService);
+          for (BaseContentEntry<?> child : children) {
+            siteIndex.addEntry(child);
+          }
+          startIndex += children.size();
+        } while (children.size() == CHILDREN_PER_QUERY);
+      }
+      return true;
     } catch (IOException e) {
-      return null;
+      LOGGER.log(Level.WARNING, "Unable to query entries.", e);
     } catch (ServiceException e) {
-      return null;
+      LOGGER.log(Level.WARNING, "Unable to query entries.", e);
     }
+    return false;
   }
   
+  /**
+   * Returns whether the given entry is a comment or list item which can only 
+   * be inserted, rather than updated, at the given feed URL.
+   */
+  private static boolean isBatchable(BaseContentEntry<?> entry, URL feedUrl) {
+    return (getType(entry) == COMMENT || getType(entry) == LIST_ITEM)
+        && entry.getLink(SitesLink.Rel.PARENT, ILink.Type.ATOM) != null
+        && (entry.getId() == null 
+            || !entry.getId().startsWith(feedUrl.toExternalForm() + "/"));
+  }
+
   /**
    * Returns the site-relative path to the given entry.
    */
@@ -222,27 +314,4 @@ final class EntryUploaderImpl implements EntryUploader {
     }
     return path + name;
   }
-  
-  /**
-   * Returns the entry with the given entry's path, or null if it doesn't exist.
-   */
-  @SuppressWarnings("unchecked")
-  private BaseContentEntry<?> getEntryByPath(BaseContentEntry<?> entry, 
-      List<BasePageEntry<?>> ancestors, URL feedUrl, SitesService sitesService) {
-    try {
-      ContentQuery query = new ContentQuery(feedUrl);
-      query.setPath(getPath(entry, ancestors));
-      List<BaseContentEntry<?>> entries = entryProvider
-          .getEntries(query, sitesService);
-      if (entries.size() == 0) {
-        return null;
-      } else {
-        return entries.get(0);
-      }
-    } catch (IOException e) {
-      return null;
-    } catch (ServiceException e) {
-      return null;
-    }
-  }
 }
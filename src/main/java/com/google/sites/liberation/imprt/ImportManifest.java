@@ -0,0 +1,288 @@
+/*
+ * Copyright (C) 2009 Google Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.google.sites.liberation.imprt;
+
+import static com.google.common.base.Preconditions.checkNotNull;
+import static com.google.sites.liberation.util.EntryType.isPage;
+import static com.google.sites.liberation.util.EntryUtils.getVersion;
+
+import com.google.common.base.Objects;
+import com.google.common.collect.Maps;
+import com.google.common.collect.Sets;
+import com.google.common.hash.Hasher;
+import com.google.common.hash.Hashing;
+import com.google.common.io.Files;
+import com.google.gdata.data.sites.BaseContentEntry;
+import com.google.gdata.data.sites.BasePageEntry;
+import com.google.sites.liberation.util.EntryUtils;
+import com.google.sites.liberation.util.FileUtils;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.net.URL;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Records the pages imported from an export root in an {@code _import}
+ * folder of the root, so that a later import of the same root to the same
+ * site can skip the pages which have not changed since.
+ *
+ * <p>For each page, the manifest records the fingerprint of the files in its
+ * directory, which hold the page and all of its other entries, and the id
+ * and version of the page on the server. A page is only recorded once it
+ * and all of its other entries have been uploaded. A page is unchanged if
+ * the fingerprint of its directory is the same as recorded, and the page on
+ * the server still has the recorded version and the parent it is being
+ * imported under. The manifest is forgotten if it was written by an import
+ * to a different site, or with a different revisions setting.</p>
+ */
+public final class ImportManifest {
+
+  private static final Logger LOGGER = Logger.getLogger(
+      ImportManifest.class.getCanonicalName());
+
+  static final String DIRECTORY_NAME = "_import";
+  static final String MANIFEST_NAME = "manifest.txt";
+  static final int PAGES_PER_SAVE = 50;
+  private static final String FORMAT = "google-sites-liberation-import-1";
+
+  private final File rootDirectory;
+  private final File manifestFile;
+  private final String feedUrl;
+  private final boolean importRevisions;
+  private final Map<String, PageRecord> pages;
+  private final Set<String> seenPaths;
+  private int unsavedPages;
+
+  /**
+   * Opens the manifest of imports from the given root directory to the site
+   * with the given feed URL.
+   */
+  ImportManifest(File rootDirectory, URL feedUrl,
+      boolean importRevisions) throws IOException {
+    this.rootDirectory = checkNotNull(rootDirectory);
+    File directory = new File(rootDirectory, DIRECTORY_NAME);
+    if (!directory.isDirectory() && !directory.mkdirs()) {
+      throw new IOException("Unable to create directory: " + directory);
+    }
+    this.manifestFile = new File(directory, MANIFEST_NAME);
+    this.feedUrl = feedUrl.toExternalForm();
+    this.importRevisions = importRevisions;
+    this.pages = Maps.newHashMap();
+    this.seenPaths = Sets.newHashSet();
+    if (FileUtils.getFileOrBackup(manifestFile).isFile() && !load()) {
+      pages.clear();
+    }
+  }
+
+  /**
+   * Returns the fingerprint of the files in the given page directory and of
+   * its revisions, or {@code null} if they can not be read.
+   */
+  String getFingerprint(ImportPlan.PageDirectory page) {
+    Hasher hasher = Hashing.md5().newHasher();
+    try {
+      putFiles(hasher, "", page.getFiles());
+      putFiles(hasher, ImportPlan.REVISIONS_DIRECTORY_NAME + '/', 
+          page.getRevisionFiles());
+    } catch (IOException e) {
+      LOGGER.log(Level.WARNING, "Unable to read directory: " 
+          + page.getDirectory(), e);
+      return null;
+    }
+    return hasher.hash().toString();
+  }
+
+  /**
+   * Returns the page on the server imported from the given directory if
+   * neither has changed since, and the page still has the last of the given
+   * ancestors as its parent, or {@code null} otherwise. If {@code null} is
+   * returned, the page is forgotten until it is recorded again.
+   */
+  synchronized BasePageEntry<?> getUnchangedPage(File directory,
+      String fingerprint, List<BasePageEntry<?>> ancestors,
+      RemoteSiteIndex siteIndex) {
+    String path = getPath(directory);
+    seenPaths.add(path);
+    PageRecord record = pages.remove(path);
+    if (record == null || fingerprint == null
+        || !record.fingerprint.equals(fingerprint)) {
+      return null;
+    }
+    BaseContentEntry<?> page = siteIndex.getEntry(record.id);
+    if (page == null || !isPage(page)
+        || !record.version.equals(getVersion(page))) {
+      return null;
+    }
+    String parentId = ancestors.isEmpty()
+        ? null : ancestors.get(ancestors.size() - 1).getId();
+    if (!Objects.equal(parentId, EntryUtils.getParentId(page))) {
+      return null;
+    }
+    pages.put(path, record);
+    return (BasePageEntry<?>) page;
+  }
+
+  /**
+   * Records that the page in the given directory, with the given
+   * fingerprint, has been imported along with all of its other entries as
+   * the given page.
+   */
+  synchronized void pageImported(File directory, String fingerprint,
+      BasePageEntry<?> page) {
+    String path = getPath(directory);
+    seenPaths.add(path);
+    pages.put(path, new PageRecord(fingerprint, page.getId(),
+        getVersion(page)));
+    if (++unsavedPages >= PAGES_PER_SAVE) {
+      try {
+        save();
+      } catch (IOException e) {
+        LOGGER.log(Level.WARNING, "Unable to save manifest.", e);
+      }
+    }
+  }
+
+  /**
+   * Forgets the pages which were not part of this import, and saves the
+   * manifest.
+   */
+  synchronized void importCompleted() throws IOException {
+    pages.keySet().retainAll(seenPaths);
+    save();
+  }
+
+  /**
+   * Saves the manifest.
+   */
+  synchronized void save() throws IOException {
+    File tempFile = new File(manifestFile.getPath() + ".tmp");
+    Writer out = new BufferedWriter(new OutputStreamWriter(
+        new FileOutputStream(tempFile), "UTF-8"));
+    try {
+      out.write(FORMAT + '\n');
+      out.write("feed\t" + feedUrl + '\n');
+      out.write("revisions\t" + importRevisions + '\n');
+      for (Map.Entry<String, PageRecord> page : pages.entrySet()) {
+        PageRecord record = page.getValue();
+        out.write("page\t" + page.getKey() + '\t' + record.fingerprint + '\t'
+            + record.id + '\t' + record.version + '\n');
+      }
+    } finally {
+      out.close();
+    }
+    if (!FileUtils.replaceFile(tempFile, manifestFile)) {
+      throw new IOException("Unable to rename " + tempFile + " to "
+          + manifestFile);
+    }
+    unsavedPages = 0;
+  }
+
+  /**
+   * Loads the manifest, returning {@code false} if it is unreadable or
+   * belongs to imports to a different site.
+   */
+  private boolean load() {
+    BufferedReader in = null;
+    try {
+      in = new BufferedReader(new InputStreamReader(
+          new FileInputStream(FileUtils.getFileOrBackup(manifestFile)),
+          "UTF-8"));
+      if (!FORMAT.equals(in.readLine())) {
+        return false;
+      }
+      boolean sameFeed = false;
+      boolean sameRevisions = false;
+      String line;
+      while ((line = in.readLine()) != null) {
+        String[] fields = line.split("\t");
+        String key = fields[0];
+        if (key.equals("feed")) {
+          sameFeed = feedUrl.equals(fields[1]);
+        } else if (key.equals("revisions")) {
+          sameRevisions = importRevisions == Boolean.parseBoolean(fields[1]);
+        } else if (key.equals("page")) {
+          pages.put(fields[1], new PageRecord(fields[2], fields[3],
+              fields[4]));
+        }
+      }
+      return sameFeed && sameRevisions;
+    } catch (IOException e) {
+      LOGGER.log(Level.WARNING, "Unable to read manifest.", e);
+      return false;
+    } catch (RuntimeException e) {
+      LOGGER.log(Level.WARNING, "Invalid manifest: " + manifestFile, e);
+      return false;
+    } finally {
+      if (in != null) {
+        try {
+          in.close();
+        } catch (IOException e) {
+          LOGGER.log(Level.WARNING, "Failed closing file: " + manifestFile, e);
+        }
+      }
+    }
+  }
+
+  /**
+   * Returns the path of the given directory relative to the root directory.
+   */
+  private String getPath(File directory) {
+    String path = rootDirectory.toURI().relativize(directory.toURI())
+        .getPath();
+    return path.endsWith("/") ? path.substring(0, path.length() - 1) : path;
+  }
+
+  /**
+   * Adds the name, with the given prefix, and contents of each of the given
+   * files to the given hasher.
+   */
+  private static void putFiles(Hasher hasher, String prefix, 
+      List<File> files) throws IOException {
+    for (File file : files) {
+      hasher.putString(prefix + file.getName()).putChar('\0');
+      hasher.putString(Files.hash(file, Hashing.md5()).toString());
+    }
+  }
+
+  /**
+   * The information recorded about an imported page.
+   */
+  private static class PageRecord {
+
+    final String fingerprint;
+    final String id;
+    final String version;
+
+    PageRecord(String fingerprint, String id, String version) {
+      this.fingerprint = fingerprint;
+      this.id = id;
+      this.version = version;
+    }
+  }
+}
@@ -0,0 +1,188 @@
+/*
+ * Copyright (C) 2009 Google Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.google.sites.liberation.imprt;
+
+import static com.google.common.base.Preconditions.checkNotNull;
+
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.Lists;
+import com.google.common.collect.Maps;
+
+import java.io.File;
+import java.util.Arrays;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * The pages to import from an export root, read in a single walk of the
+ * directory tree, so that the later stages of an import never need to list
+ * a directory or check whether a file exists.
+ *
+ * <p>A page directory is a directory whose name does not start with an
+ * underscore and which holds an {@code index.html} file. Its revisions are
+ * the files {@code _revisions/1.html}, {@code _revisions/2.html}, and so on,
+ * up to the first missing number.</p>
+ */
+public final class ImportPlan {
+
+  static final String PAGE_FILE_NAME = "index.html";
+  static final String REVISIONS_DIRECTORY_NAME = "_revisions";
+
+  private final List<PageDirectory> rootPages;
+  private final List<PageDirectory> pages;
+
+  /**
+   * Walks the directory tree under the given root directory.
+   */
+  ImportPlan(File rootDirectory) {
+    checkNotNull(rootDirectory);
+    rootPages = getChildPages(new Listing(rootDirectory));
+    List<PageDirectory> pages = Lists.newArrayList();
+    LinkedList<PageDirectory> queue = Lists.newLinkedList(rootPages);
+    while (!queue.isEmpty()) {
+      PageDirectory page = queue.removeFirst();
+      pages.add(page);
+      queue.addAll(page.getChildren());
+    }
+    this.pages = ImmutableList.copyOf(pages);
+  }
+
+  /**
+   * Returns the page directories directly under the root directory.
+   */
+  List<PageDirectory> getRootPages() {
+    return rootPages;
+  }
+
+  /**
+   * Returns every page directory, with each page before its children.
+   */
+  List<PageDirectory> getPages() {
+    return pages;
+  }
+
+  /**
+   * Returns the number of page directories.
+   */
+  int getNumPages() {
+    return pages.size();
+  }
+
+  private static List<PageDirectory> getChildPages(Listing listing) {
+    ImmutableList.Builder<PageDirectory> children = ImmutableList.builder();
+    for (File directory : listing.directories.values()) {
+      if (!directory.getName().startsWith("_")) {
+        Listing childListing = new Listing(directory);
+        if (childListing.files.containsKey(PAGE_FILE_NAME)) {
+          children.add(new PageDirectory(childListing));
+        }
+      }
+    }
+    return children.build();
+  }
+
+  /**
+   * The files of a page to import, and the page directories under it.
+   */
+  public static final class PageDirectory {
+
+    private final File directory;
+    private final List<File> files;
+    private final List<File> revisionFiles;
+    private final List<PageDirectory> children;
+
+    private PageDirectory(Listing listing) {
+      directory = listing.directory;
+      files = ImmutableList.copyOf(listing.files.values());
+      List<File> revisionFiles = Lists.newArrayList();
+      File revisionsDirectory =
+          listing.directories.get(REVISIONS_DIRECTORY_NAME);
+      if (revisionsDirectory != null) {
+        Map<String, File> revisions = new Listing(revisionsDirectory).files;
+        int num = 1;
+        while (revisions.containsKey(num + ".html")) {
+          revisionFiles.add(revisions.get(num + ".html"));
+          num++;
+        }
+      }
+      this.revisionFiles = ImmutableList.copyOf(revisionFiles);
+      children = getChildPages(listing);
+    }
+
+    /**
+     * Returns the directory of this page.
+     */
+    File getDirectory() {
+      return directory;
+    }
+
+    /**
+     * Returns the file holding the current version of this page.
+     */
+    File getPageFile() {
+      return new File(directory, PAGE_FILE_NAME);
+    }
+
+    /**
+     * Returns the files directly in this page's directory, including its
+     * page file and attachments, in order of name.
+     */
+    List<File> getFiles() {
+      return files;
+    }
+
+    /**
+     * Returns the files holding this page's revisions, oldest first.
+     */
+    List<File> getRevisionFiles() {
+      return revisionFiles;
+    }
+
+    /**
+     * Returns the page directories directly under this one.
+     */
+    List<PageDirectory> getChildren() {
+      return children;
+    }
+  }
+
+  /**
+   * The files and subdirectories of a directory, by name in order of name.
+   */
+  private static class Listing {
+
+    final File directory;
+    final Map<String, File> files = Maps.newLinkedHashMap();
+    final Map<String, File> directories = Maps.newLinkedHashMap();
+
+    Listing(File directory) {
+      this.directory = directory;
+      File[] children = directory.listFiles();
+      if (children != null) {
+        Arrays.sort(children);
+        for (File child : children) {
+          if (child.isDirectory()) {
+            directories.put(child.getName(), child);
+          } else {
+            files.put(child.getName(), child);
+          }
+        }
+      }
+    }
+  }
+}
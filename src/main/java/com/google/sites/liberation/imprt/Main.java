@@ -73,6 +73,12 @@ public class Main {
   @Option(name="-r", usage="import revisions")
   private boolean importRevisions = false;
   
+  @Option(name="-t", usage="number of pages and entries to upload at once")
+  private int importThreads = SiteImporterModule.DEFAULT_IMPORT_THREADS;
+  
+  @Option(name="-u", usage="skip pages unchanged since the last import")
+  private boolean skipUnchanged = false;
+  
   /**
    * Be sure to specify the name of your application. If the application name is {@code null} or
    * blank, the application will log a warning. Suggested format is "MyCompany-ProductName/1.0".
@@ -130,13 +136,17 @@ public class Main {
   
   private void doMain(String[] args) {
     CmdLineParser parser = new CmdLineParser(this);
-    Injector injector = Guice.createInjector(new SiteImporterModule());
-    SiteImporter siteImporter = injector.getInstance(SiteImporter.class);
     try {
       parser.parseArgument(args);
       if (webspace == null) {
         throw new CmdLineException("Webspace of site not specified!");
       }
+      if (importThreads < 1) {
+        throw new CmdLineException("Number of threads must be positive!");
+      }
+      Injector injector = Guice.createInjector(
+          new SiteImporterModule(importThreads, skipUnchanged));
+      SiteImporter siteImporter = injector.getInstance(SiteImporter.class);
       SitesService sitesService = new SitesService("google-sites-liberation");
       
       httpTransport = GoogleNetHttpTransport.newTrustedTransport();
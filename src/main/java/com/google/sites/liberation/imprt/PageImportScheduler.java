@@ -0,0 +1,221 @@
+/*
+ * Copyright (C) 2009 Google Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.google.sites.liberation.imprt;
+
+import static com.google.common.base.Preconditions.checkArgument;
+import static com.google.common.base.Preconditions.checkNotNull;
+
+import com.google.common.collect.Lists;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+import com.google.gdata.client.sites.SitesService;
+import com.google.gdata.data.sites.BasePageEntry;
+import com.google.gdata.util.common.base.Nullable;
+import com.google.sites.liberation.util.ProgressListener;
+
+import java.net.URL;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletionService;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorCompletionService;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Imports the pages of a site on a pool of worker threads, uploading each
+ * page only once its parent has been uploaded, and every other page as soon
+ * as a worker is free. The comments, attachments and list items of a page
+ * are uploaded on the same pool, so that no more than the given number of
+ * uploads run at any one time.
+ *
+ * <p>The scheduler never calls the given {@link ProgressListener} from its
+ * worker threads, only from the thread waiting in {@link #awaitCompletion}.
+ * A scheduler should only be used from the thread that created it.</p>
+ */
+final class PageImportScheduler {
+
+  private static final Logger LOGGER = Logger.getLogger(
+      PageImportScheduler.class.getCanonicalName());
+
+  private final PageImporter pageImporter;
+  private final boolean importRevisions;
+  private final RemoteSiteIndex siteIndex;
+  private final ImportManifest manifest;
+  private final URL feedUrl;
+  private final URL siteUrl;
+  private final SitesService sitesService;
+  private final PageParseStage parseStage;
+  private final ExecutorService executor;
+  private final CompletionService<PageImport> pages;
+  private final List<Future<?>> entries;
+  private final Executor entryExecutor;
+  private int numScheduled;
+
+  /**
+   * Creates a new scheduler which imports pages with the given importer to
+   * the given feed, whose existing entries are in the given index, using 
+   * {@code numThreads} worker threads, taking parsed pages from the given
+   * stage.
+   * If a manifest is given, the pages which have not changed since they were
+   * recorded in it are skipped.
+   */
+  PageImportScheduler(PageImporter pageImporter, int numThreads,
+      boolean importRevisions, RemoteSiteIndex siteIndex, 
+      @Nullable ImportManifest manifest, URL feedUrl, URL siteUrl, 
+      SitesService sitesService, PageParseStage parseStage) {
+    checkArgument(numThreads > 0);
+    this.pageImporter = checkNotNull(pageImporter);
+    this.importRevisions = importRevisions;
+    this.siteIndex = checkNotNull(siteIndex);
+    this.manifest = manifest;
+    this.feedUrl = checkNotNull(feedUrl);
+    this.siteUrl = checkNotNull(siteUrl);
+    this.sitesService = checkNotNull(sitesService);
+    this.parseStage = checkNotNull(parseStage);
+    executor = Executors.newFixedThreadPool(numThreads,
+        new ThreadFactoryBuilder().setDaemon(true)
+            .setNameFormat("page-importer-%d").build());
+    pages = new ExecutorCompletionService<PageImport>(executor);
+    entries = Lists.newArrayList();
+    entryExecutor = new Executor() {
+      @Override
+      public void execute(Runnable upload) {
+        Future<?> future = executor.submit(upload);
+        synchronized (entries) {
+          entries.add(future);
+        }
+      }
+    };
+  }
+
+  /**
+   * Schedules the import of the page in the given directory, and of every
+   * page below it, under the given ancestors.
+   */
+  void schedule(final ImportPlan.PageDirectory directory,
+      final List<BasePageEntry<?>> ancestors) {
+    checkNotNull(directory);
+    checkNotNull(ancestors);
+    pages.submit(new Callable<PageImport>() {
+      @Override
+      public PageImport call() {
+        BasePageEntry<?> page = null;
+        try {
+          page = pageImporter.importPage(directory, importRevisions, 
+              ancestors, siteIndex, manifest, feedUrl, siteUrl, sitesService,
+              parseStage, entryExecutor);
+        } catch (RuntimeException e) {
+          LOGGER.log(Level.WARNING, "Error importing page: " 
+              + directory.getDirectory(), e);
+        }
+        return new PageImport(directory, ancestors, page);
+      }
+    });
+    numScheduled++;
+  }
+
+  /**
+   * Waits for every scheduled page, and every page below it, to be
+   * imported along with its other entries. After each page, the progress of
+   * the given listener is increased by {@code 1 / numPages}.
+   */
+  void awaitCompletion(ProgressListener progressListener, int numPages) {
+    try {
+      while (numScheduled > 0) {
+        PageImport page = null;
+        try {
+          page = pages.take().get();
+        } catch (ExecutionException e) {
+          LOGGER.log(Level.WARNING, "Error importing page.", e.getCause());
+        }
+        numScheduled--;
+        progressListener.setProgress(
+            progressListener.getProgress() + 1.0 / numPages);
+        if (page != null && page.page != null) {
+          progressListener.setStatus("Imported page: "
+              + page.directory.getDirectory().getName());
+          List<BasePageEntry<?>> newAncestors =
+              Lists.newLinkedList(page.ancestors);
+          newAncestors.add(page.page);
+          for (ImportPlan.PageDirectory child 
+              : page.directory.getChildren()) {
+            schedule(child, newAncestors);
+          }
+        } else if (page != null) {
+          discard(page.directory);
+        }
+      }
+      for (Future<?> entry : getEntries()) {
+        try {
+          entry.get();
+        } catch (ExecutionException e) {
+          LOGGER.log(Level.WARNING, "Error importing entry.", e.getCause());
+        }
+      }
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      throw new RuntimeException(e);
+    }
+  }
+
+  /**
+   * Stops any uploads that are still running or waiting to run.
+   */
+  void shutdown() {
+    executor.shutdownNow();
+  }
+
+  /**
+   * Discards the given page, and every page below it, from the parse stage,
+   * as they will not be imported.
+   */
+  private void discard(ImportPlan.PageDirectory directory) {
+    parseStage.discard(directory);
+    for (ImportPlan.PageDirectory child : directory.getChildren()) {
+      discard(child);
+    }
+  }
+
+  private List<Future<?>> getEntries() {
+    synchronized (entries) {
+      return Lists.newArrayList(entries);
+    }
+  }
+
+  /**
+   * A page imported from a directory under the given ancestors, or
+   * {@code null} if it could not be imported.
+   */
+  private static class PageImport {
+
+    final ImportPlan.PageDirectory directory;
+    final List<BasePageEntry<?>> ancestors;
+    final BasePageEntry<?> page;
+
+    PageImport(ImportPlan.PageDirectory directory, 
+        List<BasePageEntry<?>> ancestors,
+        BasePageEntry<?> page) {
+      this.directory = directory;
+      this.ancestors = ancestors;
+      this.page = page;
+    }
+  }
+}
@@ -18,11 +18,12 @@ package com.google.sites.liberation.imprt;
 
 import com.google.gdata.client.sites.SitesService;
 import com.google.gdata.data.sites.BasePageEntry;
+import com.google.gdata.util.common.base.Nullable;
 import com.google.inject.ImplementedBy;
 
-import java.io.File;
 import java.net.URL;
 import java.util.List;
+import java.util.concurrent.Executor;
 
 /**
  * Parses a page and (possibly) its revisions and uploads them a feed.
@@ -34,17 +35,31 @@ public interface PageImporter {
 
   /**
    * Parses a page and uploads it as well as its comments, attachments,
-   * list items, and possibly revisions to a feed.
+   * list items, and possibly revisions to a feed. The page and its revisions
+   * are uploaded before this method returns, while its other entries are 
+   * uploaded on the given executor. If a manifest is given and records the 
+   * page as unchanged, nothing is uploaded and the page on the server is 
+   * returned; otherwise the page is recorded in the manifest once it and all
+   * of its other entries have been uploaded.
    * 
-   * @param directory directory of the page
+   * @param directory directory of the page, and its files
    * @param importRevisions whether on not revisions should also be imported
    * @param ancestors the pages ancestors, its parent as the last entry, etc.
+   * @param siteIndex index of the entries already at the feed URL
+   * @param manifest manifest of the pages imported before, or {@code null} 
+   *     if unchanged pages should not be skipped
    * @param feedUrl the feedUrl to upload the entries to
    * @param siteUrl the siteUrl the page will exist at
    * @param sitesService SitesService to use for uploading
+   * @param parseStage stage to take the page and its revisions from, which
+   *     is told of the page if it is skipped
+   * @param executor Executor on which to upload the page's other entries
    * @return the BasePageEntry returned by the server
    */
-  BasePageEntry<?> importPage(File directory, boolean importRevisions,
-      List<BasePageEntry<?>> ancestors, URL feedUrl, URL siteUrl, 
-      SitesService sitesService);
+  BasePageEntry<?> importPage(ImportPlan.PageDirectory directory, 
+      boolean importRevisions,
+      List<BasePageEntry<?>> ancestors, RemoteSiteIndex siteIndex, 
+      @Nullable ImportManifest manifest, URL feedUrl, URL siteUrl, 
+      SitesService sitesService, PageParseStage parseStage, 
+      Executor executor);
 }
@@ -21,6 +21,7 @@ import static com.google.sites.liberation.util.EntryType.getType;
 import static com.google.sites.liberation.util.EntryType.isPage;
 import static com.google.sites.liberation.util.EntryType.ATTACHMENT;
 
+import com.google.common.base.Supplier;
 import com.google.common.collect.Lists;
 import com.google.gdata.client.sites.SitesService;
 import com.google.gdata.data.Content;
@@ -30,13 +31,16 @@ import com.google.gdata.data.media.MediaSource;
 import com.google.gdata.data.sites.BaseContentEntry;
 import com.google.gdata.data.sites.BasePageEntry;
 import com.google.gdata.data.sites.PageName;
+import com.google.gdata.util.common.base.Nullable;
 import com.google.inject.Inject;
-import com.google.sites.liberation.parsers.PageParser;
 import com.google.sites.liberation.util.EntryUtils;
 
 import java.io.File;
 import java.net.URL;
 import java.util.List;
+import java.util.concurrent.Executor;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 
@@ -52,7 +56,6 @@ final class PageImporterImpl implements PageImporter {
   
   private final EntryUpdater entryUpdater;
   private final EntryUploader entryUploader;
-  private final PageParser pageParser;
   private final RelativeLinkConverter linkConverter;
   private final RevisionsImporter revisionsImporter;
   
@@ -62,28 +65,39 @@ final class PageImporterImpl implements PageImporter {
   @Inject
   PageImporterImpl(EntryUpdater entryUpdater,
       EntryUploader entryUploader,
-      PageParser pageParser,
       RelativeLinkConverter linkConverter,
       RevisionsImporter revisionsImporter) {
     this.entryUpdater = checkNotNull(entryUpdater);
     this.entryUploader = checkNotNull(entryUploader);
-    this.pageParser = checkNotNull(pageParser);
     this.linkConverter = checkNotNull(linkConverter);
     this.revisionsImporter = checkNotNull(revisionsImporter);
   }
   
   @Override
-  public BasePageEntry<?> importPage(File directory, boolean importRevisions, 
-      List<BasePageEntry<?>> ancestors, URL feedUrl, URL siteUrl, 
-      SitesService sitesService) {
-    checkNotNull(directory);
-    File file = new File(directory, "index.html");
-    if (!file.isFile()) {
-      LOGGER.log(Level.WARNING, "No valid file in directory: " + directory);
-      return null;
+  public BasePageEntry<?> importPage(ImportPlan.PageDirectory pageDirectory, 
+      boolean importRevisions, List<BasePageEntry<?>> ancestors, 
+      final RemoteSiteIndex siteIndex, final ImportManifest manifest, 
+      final URL feedUrl, URL siteUrl, final SitesService sitesService, 
+      PageParseStage parseStage, Executor executor) {
+    checkNotNull(pageDirectory);
+    checkNotNull(siteIndex);
+    checkNotNull(parseStage);
+    checkNotNull(executor);
+    final File directory = pageDirectory.getDirectory();
+    final String fingerprint = (manifest == null) 
+        ? null : manifest.getFingerprint(pageDirectory);
+    if (manifest != null) {
+      BasePageEntry<?> unchangedPage = manifest.getUnchangedPage(directory, 
+          fingerprint, ancestors, siteIndex);
+      if (unchangedPage != null) {
+        parseStage.discard(pageDirectory);
+        return unchangedPage;
+      }
     }
-    List<BaseContentEntry<?>> entries = pageParser.parsePage(file);
-    BasePageEntry<?> page = getFirstPageEntry(entries);
+    List<BaseContentEntry<?>> entries = 
+        parseStage.parsePage(pageDirectory.getPageFile());
+    BasePageEntry<?> page = (entries == null) 
+        ? null : getFirstPageEntry(entries);
     if (page == null) {
       LOGGER.log(Level.WARNING, "No valid page entry!");
       return null;
@@ -95,21 +109,33 @@ final class PageImporterImpl implements PageImporter {
       EntryUtils.setParent(page, ancestors.get(ancestors.size() - 1));
     }
     BasePageEntry<?> returnedEntry = null;
-    if (importRevisions && new File(directory, "_revisions").isDirectory()) {
+    if (importRevisions && !pageDirectory.getRevisionFiles().isEmpty()) {
       returnedEntry = revisionsImporter.importRevisions(
-          directory, ancestors, feedUrl, siteUrl, sitesService);
+          pageDirectory, ancestors, siteIndex, feedUrl, siteUrl, sitesService, 
+          parseStage);
     }
     if (returnedEntry == null) {
       returnedEntry = (BasePageEntry<?>) entryUploader.uploadEntry(
-          page, ancestors, feedUrl, sitesService);
+          page, ancestors, siteIndex, feedUrl, sitesService);
     } else {
       returnedEntry = (BasePageEntry<?>) entryUpdater.updateEntry(
           returnedEntry, page, sitesService);
+      if (returnedEntry != null) {
+        siteIndex.addEntry(returnedEntry);
+      }
+    }
+    if (returnedEntry == null) {
+      LOGGER.log(Level.WARNING, "Unable to upload page: " + directory);
+      return null;
     }
     
-    List<BasePageEntry<?>> newAncestors = Lists.newLinkedList(ancestors);
+    final List<BasePageEntry<?>> newAncestors = 
+        Lists.newLinkedList(ancestors);
     newAncestors.add(returnedEntry);
-    for (BaseContentEntry<?> child : getNonPageEntries(entries)) {
+    List<Supplier<Boolean>> uploads = Lists.newArrayList();
+    final List<BaseContentEntry<?>> children = Lists.newArrayList();
+    for (final BaseContentEntry<?> child : getNonPageEntries(entries)) {
+      EntryUtils.setParent(child, returnedEntry);
       if (getType(child) == ATTACHMENT) {
         if (child.getContent() != null) {
           String src = ((OutOfLineContent) child.getContent()).getUri();
@@ -121,13 +147,76 @@ final class PageImporterImpl implements PageImporter {
         } else {
           System.out.println(child.getTitle().getPlainText());
         }
+        uploads.add(new Supplier<Boolean>() {
+          @Override
+          public Boolean get() {
+            return entryUploader.uploadEntry(child, newAncestors, siteIndex, 
+                feedUrl, sitesService) != null;
+          }
+        });
+      } else {
+        children.add(child);
       }
-      EntryUtils.setParent(child, returnedEntry);
-      entryUploader.uploadEntry(child, newAncestors, feedUrl, sitesService);
     }
+    if (!children.isEmpty()) {
+      uploads.add(new Supplier<Boolean>() {
+        @Override
+        public Boolean get() {
+          return !entryUploader.uploadEntries(children, newAncestors, 
+              siteIndex, feedUrl, sitesService).contains(null);
+        }
+      });
+    }
+    Runnable onSuccess = null;
+    if (manifest != null && fingerprint != null) {
+      final BasePageEntry<?> importedPage = returnedEntry;
+      onSuccess = new Runnable() {
+        @Override
+        public void run() {
+          manifest.pageImported(directory, fingerprint, importedPage);
+        }
+      };
+    }
+    executeAll(uploads, executor, onSuccess);
     return returnedEntry;
   }
   
+  /**
+   * Executes the given uploads on the given executor, and then runs 
+   * {@code onSuccess}, if given, on the thread of the last upload to finish
+   * if every upload succeeded.
+   */
+  private static void executeAll(List<Supplier<Boolean>> uploads, 
+      Executor executor, @Nullable final Runnable onSuccess) {
+    if (uploads.isEmpty()) {
+      if (onSuccess != null) {
+        onSuccess.run();
+      }
+      return;
+    }
+    final AtomicInteger remaining = new AtomicInteger(uploads.size());
+    final AtomicBoolean failed = new AtomicBoolean();
+    for (final Supplier<Boolean> upload : uploads) {
+      executor.execute(new Runnable() {
+        @Override
+        public void run() {
+          boolean succeeded = false;
+          try {
+            succeeded = upload.get();
+          } finally {
+            if (!succeeded) {
+              failed.set(true);
+            }
+            if (remaining.decrementAndGet() == 0 && !failed.get() 
+                && onSuccess != null) {
+              onSuccess.run();
+            }
+          }
+        }
+      });
+    }
+  }
+  
   private BasePageEntry<?> getFirstPageEntry(List<BaseContentEntry<?>> entries) {
     for (BaseContentEntry<?> entry : entries) {
       if (isPage(entry)) {
@@ -0,0 +1,186 @@
+/*
+ * Copyright (C) 2009 Google Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.google.sites.liberation.imprt;
+
+import static com.google.common.base.Preconditions.checkArgument;
+import static com.google.common.base.Preconditions.checkNotNull;
+
+import com.google.common.base.Throwables;
+import com.google.common.collect.Maps;
+import com.google.common.util.concurrent.Futures;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+import com.google.gdata.data.sites.BaseContentEntry;
+import com.google.sites.liberation.parsers.PageParser;
+
+import java.io.File;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.Semaphore;
+
+/**
+ * Parses the pages of an export ahead of their upload, so that parsing and
+ * uploading overlap. A walker thread visits the pages of an {@link 
+ * ImportPlan} in the order they are imported, parents before children, and
+ * parses each page, and optionally its revisions, on a pool of worker 
+ * threads.
+ *
+ * <p>At most the given number of files are parsed ahead of the upload
+ * stage, which takes them from the stage through {@link #parsePage}. A file
+ * which has not been parsed ahead by the time it is asked for is parsed
+ * directly. Pages which will never be asked for, because they were skipped
+ * or the upload of an ancestor failed, must be {@link #discard discarded},
+ * so that they give up their place.</p>
+ */
+public final class PageParseStage implements PageParser {
+
+  private static final Future<List<BaseContentEntry<?>>> TAKEN =
+      Futures.immediateFuture(null);
+
+  private final PageParser pageParser;
+  private final Semaphore capacity;
+  private final ExecutorService executor;
+  private final ConcurrentMap<File, Future<List<BaseContentEntry<?>>>> parses;
+  private Thread walker;
+
+  /**
+   * Creates a new stage which parses with the given parser on
+   * {@code numThreads} worker threads, at most {@code capacity} files ahead.
+   */
+  PageParseStage(PageParser pageParser, int numThreads, int capacity) {
+    checkArgument(numThreads > 0);
+    checkArgument(capacity > 0);
+    this.pageParser = checkNotNull(pageParser);
+    this.capacity = new Semaphore(capacity);
+    executor = Executors.newFixedThreadPool(numThreads,
+        new ThreadFactoryBuilder().setDaemon(true)
+            .setNameFormat("page-parser-%d").build());
+    parses = Maps.newConcurrentMap();
+  }
+
+  /**
+   * Starts parsing the pages in the given plan, and their revisions if 
+   * {@code parseRevisions} is true.
+   */
+  void start(final ImportPlan plan, final boolean parseRevisions) {
+    checkNotNull(plan);
+    walker = new ThreadFactoryBuilder().setDaemon(true)
+        .setNameFormat("page-walker-%d").build().newThread(new Runnable() {
+          @Override
+          public void run() {
+            try {
+              walk(plan, parseRevisions);
+            } catch (InterruptedException e) {
+              Thread.currentThread().interrupt();
+            }
+          }
+        });
+    walker.start();
+  }
+
+  /**
+   * Returns the entries in the given file, waiting for it to be parsed if
+   * it is being parsed ahead, and otherwise parsing it directly.
+   */
+  @Override
+  public List<BaseContentEntry<?>> parsePage(File file) {
+    Future<List<BaseContentEntry<?>>> parse = parses.putIfAbsent(file, TAKEN);
+    if (parse == null || parse == TAKEN) {
+      return pageParser.parsePage(file);
+    }
+    if (parses.replace(file, parse, TAKEN)) {
+      capacity.release();
+    }
+    try {
+      return parse.get();
+    } catch (ExecutionException e) {
+      throw Throwables.propagate(e.getCause());
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      throw new RuntimeException(e);
+    }
+  }
+
+  /**
+   * Forgets the files of the given page, which will not be asked for,
+   * cancelling their parses if they are being parsed ahead, and never 
+   * parsing them ahead if they are not yet.
+   */
+  void discard(ImportPlan.PageDirectory page) {
+    for (File file : page.getRevisionFiles()) {
+      discard(file);
+    }
+    discard(page.getPageFile());
+  }
+
+  private void discard(File file) {
+    Future<List<BaseContentEntry<?>>> parse = parses.put(file, TAKEN);
+    if (parse != null && parse != TAKEN) {
+      parse.cancel(false);
+      capacity.release();
+    }
+  }
+
+  /**
+   * Stops parsing ahead, and forgets every file parsed so far.
+   */
+  void shutdown() {
+    if (walker != null) {
+      walker.interrupt();
+    }
+    executor.shutdownNow();
+    parses.clear();
+  }
+
+  /**
+   * Parses the pages in the given plan, parents before children, waiting
+   * for capacity before each file.
+   */
+  private void walk(ImportPlan plan, boolean parseRevisions)
+      throws InterruptedException {
+    for (ImportPlan.PageDirectory page : plan.getPages()) {
+      if (parseRevisions) {
+        for (File file : page.getRevisionFiles()) {
+          parseAhead(file);
+        }
+      }
+      parseAhead(page.getPageFile());
+    }
+  }
+
+  private void parseAhead(final File file) throws InterruptedException {
+    capacity.acquire();
+    FutureTask<List<BaseContentEntry<?>>> parse =
+        new FutureTask<List<BaseContentEntry<?>>>(
+            new Callable<List<BaseContentEntry<?>>>() {
+              @Override
+              public List<BaseContentEntry<?>> call() {
+                return pageParser.parsePage(file);
+              }
+            });
+    if (parses.putIfAbsent(file, parse) == null) {
+      executor.execute(parse);
+    } else {
+      capacity.release();
+    }
+  }
+}
@@ -32,57 +32,101 @@ import java.util.List;
  */
 final class RelativeLinkConverterImpl implements RelativeLinkConverter {
 
+  private static final String HREF = "href=";
+  private static final String PARENT = "../";
+  private static final String INDEX = "/index.html";
+
   @Override
   public void convertLinks(BasePageEntry<?> entry, List<BasePageEntry<?>> ancestors, 
       URL siteUrl, boolean isRevision) {
-    convertLinks(entry, ancestors, siteUrl, isRevision, "href=\"", "\"");
-    convertLinks(entry, ancestors, siteUrl, isRevision, "href='", "'");
+    String content = convertLinks(EntryUtils.getXhtmlContent(entry), 
+        ancestors, siteUrl.toExternalForm(), isRevision);
+    XmlBlob blob = new XmlBlob();
+    blob.setBlob(content);
+    TextConstruct textConstruct = new XhtmlTextConstruct(blob);
+    entry.setContent(textConstruct);
   }
   
   /**
-   * Converts the relative links in the content of the given entry, where a 
-   * link is defined by the given prefix and suffix. 
+   * Returns the given content with every double or single quoted href 
+   * starting with "../" made absolute, by resolving the leading "../"s 
+   * against the page names of the given ancestors and prepending the given 
+   * url. A trailing "/index.html" is removed. The content is scanned once, 
+   * and the result is written to a single buffer.
    */
-  private void convertLinks(BasePageEntry<?> entry, 
-      List<BasePageEntry<?>> ancestors, URL siteUrl, boolean isRevision,
-      String prefix, String suffix) {
-    String content = EntryUtils.getXhtmlContent(entry);
-    String url = siteUrl.toExternalForm();
-    int index = content.indexOf(prefix + "../");
+  static String convertLinks(String content, List<BasePageEntry<?>> ancestors, 
+      String url, boolean isRevision) {
+    StringBuilder builder = null;
+    String[] ancestorPaths = null;
+    boolean[] unclosed = new boolean[2];
+    int copied = 0;
+    int index = content.indexOf(HREF);
     while (index != -1) {
-      int startIndex = index + prefix.length();
-      int endIndex = content.indexOf(suffix, startIndex);
-      if (endIndex == -1) {
+      int startIndex = index + HREF.length() + 1;
+      if (startIndex > content.length()) {
         break;
       }
-      String link = content.substring(startIndex, endIndex);
-      if (link.startsWith("../")) {
-        if (isRevision) {
-          link = link.substring(3);
-        }
-        int ancestorIndex = ancestors.size();
-        while (link.startsWith("../") && ancestorIndex >= 0) {
-          link = link.substring(3);
-          ancestorIndex--;
-        }
-        String str = "";
-        while (ancestorIndex >= 0 && ancestorIndex < ancestors.size()) {
-          str = ancestors.get(ancestorIndex).getPageName().getValue() + "/" + str;
-          ancestorIndex--;
+      char quote = content.charAt(startIndex - 1);
+      int quoteType = (quote == '"') ? 0 : 1;
+      int endIndex = -1;
+      if ((quote == '"' || quote == '\'') && !unclosed[quoteType]
+          && content.startsWith(PARENT, startIndex)) {
+        endIndex = content.indexOf(quote, startIndex);
+        unclosed[quoteType] = (endIndex == -1);
+      }
+      if (endIndex == -1) {
+        index = content.indexOf(HREF, index + 1);
+        continue;
+      }
+      int linkIndex = startIndex;
+      if (isRevision) {
+        linkIndex += PARENT.length();
+      }
+      int ancestorIndex = ancestors.size();
+      while (content.startsWith(PARENT, linkIndex) 
+          && linkIndex + PARENT.length() <= endIndex && ancestorIndex >= 0) {
+        linkIndex += PARENT.length();
+        ancestorIndex--;
+      }
+      if (builder == null) {
+        builder = new StringBuilder(content.length() + 64);
+      }
+      builder.append(content, copied, startIndex).append(url).append('/');
+      int linkStart = builder.length();
+      if (ancestorIndex >= 0 && ancestorIndex < ancestors.size()) {
+        if (ancestorPaths == null) {
+          ancestorPaths = new String[ancestors.size()];
         }
-        link = str + link;
+        builder.append(getAncestorPath(ancestors, ancestorPaths, 
+            ancestorIndex));
       }
-      if (link.endsWith("/index.html")) {
-        link = link.substring(0, link.lastIndexOf("/index.html"));
+      builder.append(content, linkIndex, endIndex);
+      int indexStart = builder.length() - INDEX.length();
+      if (indexStart >= linkStart 
+          && builder.indexOf(INDEX, indexStart) == indexStart) {
+        builder.setLength(indexStart);
       }
-      String beforeLink = content.substring(0, startIndex);
-      String afterLink = content.substring(endIndex);
-      content = beforeLink + url + "/" + link + afterLink;
-      index = content.indexOf(prefix + "../");
+      copied = endIndex;
+      index = content.indexOf(HREF, endIndex);
     }
-    XmlBlob blob = new XmlBlob();
-    blob.setBlob(content);
-    TextConstruct textConstruct = new XhtmlTextConstruct(blob);
-    entry.setContent(textConstruct);
+    if (builder == null) {
+      return content;
+    }
+    return builder.append(content, copied, content.length()).toString();
+  }
+  
+  /**
+   * Returns the page names of the ancestors up to the one with the given 
+   * index, each followed by a slash, computing it once per conversion.
+   */
+  private static String getAncestorPath(List<BasePageEntry<?>> ancestors, 
+      String[] ancestorPaths, int ancestorIndex) {
+    if (ancestorPaths[ancestorIndex] == null) {
+      String parentPath = (ancestorIndex == 0) ? "" 
+          : getAncestorPath(ancestors, ancestorPaths, ancestorIndex - 1);
+      ancestorPaths[ancestorIndex] = parentPath 
+          + ancestors.get(ancestorIndex).getPageName().getValue() + "/";
+    }
+    return ancestorPaths[ancestorIndex];
   }
 }
@@ -0,0 +1,193 @@
+/*
+ * Copyright (C) 2009 Google Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.google.sites.liberation.imprt;
+
+import static com.google.common.base.Preconditions.checkNotNull;
+import static com.google.sites.liberation.util.EntryType.ATTACHMENT;
+import static com.google.sites.liberation.util.EntryType.WEB_ATTACHMENT;
+import static com.google.sites.liberation.util.EntryType.getType;
+import static com.google.sites.liberation.util.EntryType.isPage;
+
+import com.google.common.collect.HashMultimap;
+import com.google.common.collect.Lists;
+import com.google.common.collect.Maps;
+import com.google.common.collect.SetMultimap;
+import com.google.common.collect.Sets;
+import com.google.gdata.data.sites.BaseContentEntry;
+import com.google.gdata.data.sites.BasePageEntry;
+import com.google.sites.liberation.util.EntryUtils;
+
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Holds the entries of the site being imported to, so that whether an entry
+ * already exists can be answered without querying the server.
+ *
+ * <p>The index is filled with every entry of the site before an import
+ * starts, and is then told of every entry the import inserts or updates.
+ * Pages and attachments are indexed by id and by site-relative path, such
+ * as "/parent/page", and comments and list items by their parent and the
+ * fingerprint of their content, as computed by {@link ContentFingerprinter}.
+ * An index can be shared between threads.</p>
+ */
+public final class RemoteSiteIndex {
+
+  private final Map<String, BaseContentEntry<?>> entries;
+  private final Map<String, String> names;
+  private final Map<String, String> parentIds;
+  private final SetMultimap<String, String> children;
+  private final Map<String, String> paths;
+  private final Map<String, String> idsByPath;
+  private final Set<String> contentKeys;
+
+  /**
+   * Creates a new empty index.
+   */
+  public RemoteSiteIndex() {
+    entries = Maps.newHashMap();
+    names = Maps.newHashMap();
+    parentIds = Maps.newHashMap();
+    children = HashMultimap.create();
+    paths = Maps.newHashMap();
+    idsByPath = Maps.newHashMap();
+    contentKeys = Sets.newHashSet();
+  }
+
+  /**
+   * Adds the given entry, as returned by the server, to this index, or
+   * replaces the entry with the same id. Entries without an id are ignored.
+   * Entries can be added in any order.
+   */
+  public synchronized void addEntry(BaseContentEntry<?> entry) {
+    checkNotNull(entry);
+    String id = entry.getId();
+    if (id == null) {
+      return;
+    }
+    entries.put(id, entry);
+    String contentKey = getContentKey(entry,
+        ContentFingerprinter.getRemoteFingerprint(entry));
+    if (contentKey != null) {
+      contentKeys.add(contentKey);
+    }
+    String name = getName(entry);
+    if (name == null) {
+      return;
+    }
+    String oldParentId = parentIds.get(id);
+    if (oldParentId != null) {
+      children.remove(oldParentId, id);
+    }
+    names.put(id, name);
+    String parentId = EntryUtils.getParentId(entry);
+    if (parentId == null) {
+      parentIds.remove(id);
+    } else {
+      parentIds.put(id, parentId);
+      children.put(parentId, id);
+    }
+    indexPath(id);
+  }
+
+  /**
+   * Returns the entry with the given id, or {@code null} if there is none.
+   */
+  public synchronized BaseContentEntry<?> getEntry(String id) {
+    return entries.get(id);
+  }
+
+  /**
+   * Returns the page or attachment at the given site-relative path, or
+   * {@code null} if there is none.
+   */
+  public synchronized BaseContentEntry<?> getEntryByPath(String path) {
+    String id = idsByPath.get(path);
+    return (id == null) ? null : entries.get(id);
+  }
+
+  /**
+   * Returns whether this index holds a comment or list item with the same
+   * parent and content as the given one, which was parsed from an exported
+   * page.
+   */
+  public synchronized boolean containsEquivalent(BaseContentEntry<?> entry) {
+    String contentKey = getContentKey(entry,
+        ContentFingerprinter.getLocalFingerprint(entry));
+    return contentKey != null && contentKeys.contains(contentKey);
+  }
+
+  /**
+   * Returns the number of entries in this index.
+   */
+  public synchronized int size() {
+    return entries.size();
+  }
+
+  /**
+   * Indexes the path of the entry with the given id, if the path of its
+   * parent is known, and then the paths of its descendants.
+   */
+  private void indexPath(String id) {
+    String oldPath = paths.remove(id);
+    if (oldPath != null && id.equals(idsByPath.get(oldPath))) {
+      idsByPath.remove(oldPath);
+    }
+    String parentId = parentIds.get(id);
+    String parentPath = "";
+    if (parentId != null) {
+      parentPath = paths.get(parentId);
+      if (parentPath == null) {
+        return;
+      }
+    }
+    String path = parentPath + "/" + names.get(id);
+    paths.put(id, path);
+    idsByPath.put(path, id);
+    for (String child : Lists.newArrayList(children.get(id))) {
+      indexPath(child);
+    }
+  }
+
+  /**
+   * Returns the name of the given entry within the path of its parent, if
+   * it is a page or an attachment.
+   */
+  private static String getName(BaseContentEntry<?> entry) {
+    if (isPage(entry)) {
+      BasePageEntry<?> page = (BasePageEntry<?>) entry;
+      return (page.getPageName() == null)
+          ? null : page.getPageName().getValue();
+    }
+    if ((getType(entry) == ATTACHMENT || getType(entry) == WEB_ATTACHMENT)
+        && entry.getTitle() != null) {
+      return entry.getTitle().getPlainText().replaceAll(" ", "%20");
+    }
+    return null;
+  }
+
+  /**
+   * Returns the key of the given entry's parent and fingerprint, or
+   * {@code null} if it has no parent or no fingerprint.
+   */
+  private static String getContentKey(BaseContentEntry<?> entry,
+      String fingerprint) {
+    String parentId = EntryUtils.getParentId(entry);
+    return (parentId == null || fingerprint == null)
+        ? null : parentId + '\0' + fingerprint;
+  }
+}
@@ -3,8 +3,8 @@ package com.google.sites.liberation.imprt;
 import com.google.gdata.client.sites.SitesService;
 import com.google.gdata.data.sites.BasePageEntry;
 import com.google.inject.ImplementedBy;
+import com.google.sites.liberation.parsers.PageParser;
 
-import java.io.File;
 import java.net.URL;
 import java.util.List;
 
@@ -17,9 +17,12 @@ import java.util.List;
 public interface RevisionsImporter {
   
   /**
-   * Imports the revisions of the page with the given directory.
+   * Imports the revisions of the page with the given directory, parsed with
+   * the given parser, looking up whether the page already exists in the 
+   * given index.
    */
-  BasePageEntry<?> importRevisions(File directory, 
-      List<BasePageEntry<?>> ancestors, URL feedUrl, URL siteUrl, 
-      SitesService sitesService);
+  BasePageEntry<?> importRevisions(ImportPlan.PageDirectory directory, 
+      List<BasePageEntry<?>> ancestors, RemoteSiteIndex siteIndex, 
+      URL feedUrl, URL siteUrl, SitesService sitesService, 
+      PageParser pageParser);
 }
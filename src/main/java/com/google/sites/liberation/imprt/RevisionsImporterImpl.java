@@ -40,7 +40,6 @@ final class RevisionsImporterImpl implements RevisionsImporter {
   
   private final EntryUpdater entryUpdater;
   private final EntryUploader entryUploader;
-  private final PageParser pageParser;
   private final RelativeLinkConverter linkConverter;
   
   /**
@@ -48,43 +47,43 @@ final class RevisionsImporterImpl implements RevisionsImporter {
    */
   @Inject
   RevisionsImporterImpl(EntryUpdater entryUpdater, EntryUploader entryUploader, 
-      PageParser pageParser, RelativeLinkConverter linkConverter) {
+      RelativeLinkConverter linkConverter) {
     this.entryUpdater = checkNotNull(entryUpdater);
     this.entryUploader = checkNotNull(entryUploader);
-    this.pageParser = checkNotNull(pageParser);
     this.linkConverter = checkNotNull(linkConverter);
   }
   
   @Override
-  public BasePageEntry<?> importRevisions(File directory, 
-      List<BasePageEntry<?>> ancestors, URL feedUrl, URL siteUrl, 
-      SitesService sitesService) {
-    File revisionsDirectory = new File(directory, "_revisions");
-    int num = 1;
+  public BasePageEntry<?> importRevisions(ImportPlan.PageDirectory directory, 
+      List<BasePageEntry<?>> ancestors, RemoteSiteIndex siteIndex, 
+      URL feedUrl, URL siteUrl, SitesService sitesService, 
+      PageParser pageParser) {
+    checkNotNull(pageParser);
     BasePageEntry<?> revision = null;
-    while (new File(revisionsDirectory, num + ".html").isFile()) {
-      BasePageEntry<?> page = getPageEntry(new File(revisionsDirectory, 
-          num + ".html"));
+    for (File file : directory.getRevisionFiles()) {
+      BasePageEntry<?> page = getPageEntry(file, pageParser);
       if (page != null) {
-        page.setPageName(new PageName(directory.getName()));
+        page.setPageName(new PageName(directory.getDirectory().getName()));
         if (!ancestors.isEmpty()) {
           EntryUtils.setParent(page, ancestors.get(ancestors.size() - 1));
         }
         linkConverter.convertLinks(page, ancestors, siteUrl, true);
         if (revision == null) {
           revision = (BasePageEntry<?>) entryUploader
-              .uploadEntry(page, ancestors, feedUrl, sitesService);
+              .uploadEntry(page, ancestors, siteIndex, feedUrl, sitesService);
         } else {
           revision = (BasePageEntry<?>) entryUpdater
               .updateEntry(revision, page, sitesService);
+          if (revision != null) {
+            siteIndex.addEntry(revision);
+          }
         }
       }
-      num++;
     }
     return revision;
   }
     
-  private BasePageEntry<?> getPageEntry(File file) {
+  private BasePageEntry<?> getPageEntry(File file, PageParser pageParser) {
     List<BaseContentEntry<?>> entries = pageParser.parsePage(file);
     for (BaseContentEntry<?> entry : entries) {
       if (isPage(entry)) {
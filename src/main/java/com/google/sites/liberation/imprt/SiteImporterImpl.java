@@ -1,34 +1,65 @@
 package com.google.sites.liberation.imprt;
 
+import static com.google.common.base.Preconditions.checkArgument;
 import static com.google.common.base.Preconditions.checkNotNull;
 
 import com.google.common.collect.Lists;
 import com.google.gdata.client.sites.SitesService;
+import com.google.gdata.data.sites.BaseContentEntry;
 import com.google.gdata.data.sites.BasePageEntry;
 import com.google.gdata.util.common.base.Nullable;
 import com.google.inject.Inject;
+import com.google.sites.liberation.export.FeedProvider;
+import com.google.sites.liberation.parsers.PageParser;
 import com.google.sites.liberation.util.ProgressListener;
 import com.google.sites.liberation.util.UrlUtils;
 
 import java.io.File;
+import java.io.IOException;
 import java.net.URL;
 import java.util.List;
+import java.util.logging.Level;
+import java.util.logging.Logger;
 
 /**
- * Implements {@link SiteImporter} to import an entire site.
+ * Implements {@link SiteImporter} to import an entire site. Sibling pages,
+ * and the other entries of each page, are uploaded concurrently, by at most
+ * the configured number of threads at once. The entries already in the site
+ * are read once, before any page is imported, into a {@link RemoteSiteIndex},
+ * and the export is walked once into an {@link ImportPlan}.
+ * Pages are parsed ahead of their upload by a {@link PageParseStage}. If 
+ * configured to, pages which have not changed since they were last imported
+ * are skipped, as recorded in an {@link ImportManifest}.
  * 
  * @author bsimon@google.com (Benjamin Simon)
  */
 final class SiteImporterImpl implements SiteImporter {
 
+  private static final Logger LOGGER = Logger.getLogger(
+      SiteImporterImpl.class.getCanonicalName());
+  
+  /** The maximum number of files parsed ahead of their upload. */
+  static final int PARSE_AHEAD = 100;
+  
+  private final FeedProvider feedProvider;
   private final PageImporter pageImporter;
+  private final PageParser pageParser;
+  private final int importThreads;
+  private final boolean skipUnchanged;
   
   /**
    * Creates a new SiteImporterImpl with the given dependencies.
    */
   @Inject
-  SiteImporterImpl(PageImporter pageImporter) {
+  SiteImporterImpl(FeedProvider feedProvider, PageImporter pageImporter, 
+      PageParser pageParser, @ImportThreads int importThreads, 
+      @SkipUnchanged boolean skipUnchanged) {
+    this.feedProvider = checkNotNull(feedProvider);
     this.pageImporter = checkNotNull(pageImporter);
+    this.pageParser = checkNotNull(pageParser);
+    checkArgument(importThreads > 0);
+    this.importThreads = importThreads;
+    this.skipUnchanged = skipUnchanged;
   }
   
   @Override
@@ -39,52 +70,52 @@ final class SiteImporterImpl implements SiteImporter {
     URL siteUrl = UrlUtils.getSiteUrl(host, domain, webspace);
     
     progressListener.setStatus("Scanning directory.");
-    int numPages = getNumPages(rootDirectory);
-    List<BasePageEntry<?>> ancestors = Lists.newLinkedList();
-    for (File subDirectory : rootDirectory.listFiles()) {
-      if (subDirectory.isDirectory()
-          && !subDirectory.getName().startsWith("_")) {
-        importPage(subDirectory, importRevisions, ancestors, feedUrl, siteUrl, 
-            sitesService, progressListener, numPages);
-      }
+    ImportPlan plan = new ImportPlan(rootDirectory);
+    progressListener.setStatus("Indexing site.");
+    RemoteSiteIndex siteIndex = new RemoteSiteIndex();
+    for (BaseContentEntry<?> entry : 
+        feedProvider.getEntries(feedUrl, sitesService)) {
+      siteIndex.addEntry(entry);
     }
-    progressListener.setProgress(1.0);
-    progressListener.setStatus("Import complete.");
-  }
-  
-  private void importPage(File pageDirectory, boolean importRevisions,
-      List<BasePageEntry<?>> ancestors, URL feedUrl, URL siteUrl, 
-      SitesService sitesService, ProgressListener progressListener, int numPages) {
-    File file = new File(pageDirectory, "index.html");
-    if (file.isFile()) {
-      progressListener.setStatus("Importing page: " + pageDirectory.getName());
-      BasePageEntry<?> page = pageImporter.importPage(pageDirectory, 
-          importRevisions, ancestors, feedUrl, siteUrl, sitesService);
-      progressListener.setProgress(progressListener.getProgress() + 1.0/numPages);
-      if (page != null) {
-        List<BasePageEntry<?>> newAncestors = Lists.newLinkedList(ancestors);
-        newAncestors.add(page);
-        for (File subDirectory : pageDirectory.listFiles()) {
-          if (subDirectory.isDirectory() 
-              && !subDirectory.getName().startsWith("_")) {
-            importPage(subDirectory, importRevisions, newAncestors, feedUrl, 
-                siteUrl, sitesService, progressListener, numPages);
-          }
-        }
+    ImportManifest manifest = null;
+    if (skipUnchanged) {
+      try {
+        manifest = new ImportManifest(rootDirectory, feedUrl, importRevisions);
+      } catch (IOException e) {
+        throw new RuntimeException("Unable to create manifest in: " 
+            + rootDirectory, e);
       }
     }
-  }
-  
-  private int getNumPages(File directory) {
-    int num = 0;
-    for (File subDirectory : directory.listFiles()) {
-      if (subDirectory.isDirectory() 
-          && !subDirectory.getName().startsWith("_")) {
-        if (new File(subDirectory, "index.html").isFile()) {
-          num += 1 + getNumPages(subDirectory);
+    PageParseStage parseStage = new PageParseStage(pageParser, 
+        Runtime.getRuntime().availableProcessors(), PARSE_AHEAD);
+    parseStage.start(plan, importRevisions);
+    PageImportScheduler scheduler = new PageImportScheduler(pageImporter, 
+        importThreads, importRevisions, siteIndex, manifest, feedUrl, siteUrl,
+        sitesService, parseStage);
+    try {
+      List<BasePageEntry<?>> ancestors = Lists.newLinkedList();
+      for (ImportPlan.PageDirectory page : plan.getRootPages()) {
+        scheduler.schedule(page, ancestors);
+      }
+      progressListener.setStatus("Importing pages.");
+      scheduler.awaitCompletion(progressListener, plan.getNumPages());
+      if (manifest != null) {
+        manifest.importCompleted();
+      }
+    } catch (IOException e) {
+      LOGGER.log(Level.WARNING, "Unable to save manifest.", e);
+    } finally {
+      scheduler.shutdown();
+      parseStage.shutdown();
+      if (manifest != null) {
+        try {
+          manifest.save();
+        } catch (IOException e) {
+          LOGGER.log(Level.WARNING, "Unable to save manifest.", e);
         }
       }
     }
-    return num;
+    progressListener.setProgress(1.0);
+    progressListener.setStatus("Import complete.");
   }
 }
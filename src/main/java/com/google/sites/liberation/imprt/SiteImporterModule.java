@@ -16,6 +16,8 @@
 
 package com.google.sites.liberation.imprt;
 
+import static com.google.common.base.Preconditions.checkArgument;
+
 import com.google.inject.AbstractModule;
 
 /**
@@ -23,8 +25,45 @@ import com.google.inject.AbstractModule;
  */
 public class SiteImporterModule extends AbstractModule {
 
+  /**
+   * The number of pages and entries uploaded at once by default.
+   */
+  public static final int DEFAULT_IMPORT_THREADS = 4;
+  
+  private final int importThreads;
+  private final boolean skipUnchanged;
+  
+  /**
+   * Creates a module which uploads {@link #DEFAULT_IMPORT_THREADS} pages and 
+   * entries at once.
+   */
+  public SiteImporterModule() {
+    this(DEFAULT_IMPORT_THREADS);
+  }
+  
+  /**
+   * Creates a module which uploads at most {@code importThreads} pages and 
+   * entries at once. A page is still only uploaded once its parent has been.
+   */
+  public SiteImporterModule(int importThreads) {
+    this(importThreads, false);
+  }
+  
+  /**
+   * Creates a module which uploads at most {@code importThreads} pages and 
+   * entries at once, and which, if {@code skipUnchanged} is true, skips the 
+   * pages which have not changed since they were last imported from the 
+   * same directory to the same site.
+   */
+  public SiteImporterModule(int importThreads, boolean skipUnchanged) {
+    checkArgument(importThreads > 0);
+    this.importThreads = importThreads;
+    this.skipUnchanged = skipUnchanged;
+  }
+
   @Override
   protected void configure() {
-    //Currently nothing to configure.
+    bindConstant().annotatedWith(ImportThreads.class).to(importThreads);
+    bindConstant().annotatedWith(SkipUnchanged.class).to(skipUnchanged);
   }
-}
\ No newline at end of file
+}
@@ -32,28 +32,34 @@ import javax.xml.parsers.DocumentBuilderFactory;
 import javax.xml.parsers.ParserConfigurationException;
 
 /**
- * Parses a file into an org.w3c.Document.
+ * Parses a file into an org.w3c.Document. Documents can be parsed from
+ * several threads at once, as each thread parses with its own 
+ * DocumentBuilder.
  * 
  * @author bsimon@google.com (Benjamin Simon)
  */
 final class DocumentProviderImpl implements DocumentProvider {
 
-  private DocumentBuilder docBuilder;
+  private final ThreadLocal<DocumentBuilder> docBuilder;
   
   @Inject
   DocumentProviderImpl() {
-    try {
-      docBuilder = DocumentBuilderFactory.newInstance()
-          .newDocumentBuilder();
-    } catch (ParserConfigurationException e) {
-      throw new RuntimeException(e);
-    }
+    docBuilder = new ThreadLocal<DocumentBuilder>() {
+      @Override
+      protected DocumentBuilder initialValue() {
+        try {
+          return DocumentBuilderFactory.newInstance().newDocumentBuilder();
+        } catch (ParserConfigurationException e) {
+          throw new RuntimeException(e);
+        }
+      }
+    };
   }
   
   @Override
   public Document getDocument(File file) throws IOException {
     try {
-      return docBuilder.parse(file);
+      return docBuilder.get().parse(file);
     } catch (SAXException e) {
       return useJTidy(file);
     }
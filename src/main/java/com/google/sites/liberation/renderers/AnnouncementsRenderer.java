@@ -18,8 +18,9 @@ package com.google.sites.liberation.renderers;
 
 import com.google.gdata.data.sites.AnnouncementEntry;
 import com.google.inject.ImplementedBy;
-import com.google.sites.liberation.util.XmlElement;
+import com.google.sites.liberation.util.XmlWriter;
 
+import java.io.IOException;
 import java.util.List;
 
 /**
@@ -31,8 +32,9 @@ import java.util.List;
 public interface AnnouncementsRenderer {
 
   /**
-   * Returns an XmlElement containing the given announcements, in the same order
+   * Writes the given announcements to the given XmlWriter, in the same order 
    * as they appear in the list.
    */
-  XmlElement renderAnnouncements(List<AnnouncementEntry> announcements);
+  void renderAnnouncements(List<AnnouncementEntry> announcements, 
+      XmlWriter out) throws IOException;
 }
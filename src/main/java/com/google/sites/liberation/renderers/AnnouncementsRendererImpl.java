@@ -17,8 +17,9 @@
 package com.google.sites.liberation.renderers;
 
 import com.google.gdata.data.sites.AnnouncementEntry;
-import com.google.sites.liberation.util.XmlElement;
+import com.google.sites.liberation.util.XmlWriter;
 
+import java.io.IOException;
 import java.util.List;
 
 /**
@@ -29,30 +30,28 @@ import java.util.List;
 final class AnnouncementsRendererImpl implements AnnouncementsRenderer {
 
   @Override
-  public XmlElement renderAnnouncements(
-      List<AnnouncementEntry> announcements) {
-    XmlElement div = new XmlElement("div");
+  public void renderAnnouncements(List<AnnouncementEntry> announcements, 
+      XmlWriter out) throws IOException {
+    out.startElement("div");
     for (AnnouncementEntry announcement : announcements) {
-      div.addElement(new XmlElement("hr"));
-      XmlElement announceDiv = RendererUtils.getEntryElement(announcement, 
-          "blockquote");
-      XmlElement title = new XmlElement("b");
+      out.startElement("hr").endElement();
+      RendererUtils.startEntryElement(out, announcement, "blockquote");
       String href = announcement.getPageName().getValue() + "/index.html";
-      XmlElement titleLink = new XmlElement("a").addElement(
-          RendererUtils.getTitleElement(announcement));
-      titleLink.setAttribute("href", href);
-      title.addElement(titleLink);
-      announceDiv.addElement(title).addElement(new XmlElement("br"));
-      XmlElement info = new XmlElement("small");
-      XmlElement author = RendererUtils.getAuthorElement(announcement);
-      info.addText("posted by ").addElement(author);
-      XmlElement updated = RendererUtils.getUpdatedElement(announcement);
-      info.addText(" on ").addElement(updated);
-      announceDiv.addElement(info).addElement(new XmlElement("br"));
-      XmlElement mainHtml = RendererUtils.getXhtmlContentElement(announcement);
-      announceDiv.addElement(mainHtml);
-      div.addElement(announceDiv);
+      out.startElement("b");
+      out.startElement("a").setAttribute("href", href);
+      out.addElement(RendererUtils.getTitleElement(announcement));
+      out.endElement().endElement();
+      out.startElement("br").endElement();
+      out.startElement("small");
+      out.addText("posted by ")
+          .addElement(RendererUtils.getAuthorElement(announcement));
+      out.addText(" on ")
+          .addElement(RendererUtils.getUpdatedElement(announcement));
+      out.endElement();
+      out.startElement("br").endElement();
+      out.addElement(RendererUtils.getXhtmlContentElement(announcement));
+      out.endElement();
     }
-    return div;
+    out.endElement();
   }
 }
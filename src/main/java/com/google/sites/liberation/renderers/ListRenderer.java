@@ -19,8 +19,9 @@ package com.google.sites.liberation.renderers;
 import com.google.gdata.data.sites.ListItemEntry;
 import com.google.gdata.data.sites.ListPageEntry;
 import com.google.inject.ImplementedBy;
-import com.google.sites.liberation.util.XmlElement;
+import com.google.sites.liberation.util.XmlWriter;
 
+import java.io.IOException;
 import java.util.List;
 
 /**
@@ -32,8 +33,9 @@ import java.util.List;
 public interface ListRenderer {
 
   /**
-   * Returns an XmlElement containing the list given by the ListPageEntry,
-   * with the given list items.
+   * Writes the list given by the ListPageEntry, with the given list items, 
+   * to the given XmlWriter.
    */
-  XmlElement renderList(ListPageEntry entry, List<ListItemEntry> listItems);
+  void renderList(ListPageEntry entry, List<ListItemEntry> listItems, 
+      XmlWriter out) throws IOException;
 }
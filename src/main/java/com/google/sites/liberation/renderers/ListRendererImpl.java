@@ -21,8 +21,9 @@ import com.google.gdata.data.sites.ListPageEntry;
 import com.google.gdata.data.spreadsheet.Column;
 import com.google.gdata.data.spreadsheet.Field;
 import com.google.gdata.util.common.base.Nullable;
-import com.google.sites.liberation.util.XmlElement;
+import com.google.sites.liberation.util.XmlWriter;
 
+import java.io.IOException;
 import java.util.List;
 
 /**
@@ -33,34 +34,33 @@ import java.util.List;
 final class ListRendererImpl implements ListRenderer {
   
   @Override
-  public XmlElement renderList(ListPageEntry entry, 
-      @Nullable List<ListItemEntry> listItems) {
-    XmlElement table = new XmlElement("table").setAttribute("border", "1");
-    XmlElement header = new XmlElement("tr").setAttribute("class", "gs:data");
+  public void renderList(ListPageEntry entry, 
+      @Nullable List<ListItemEntry> listItems, XmlWriter out) 
+      throws IOException {
+    out.startElement("table").setAttribute("border", "1");
+    out.startElement("tr").setAttribute("class", "gs:data");
     for (Column col : entry.getData().getColumns()) {
-      XmlElement cell = new XmlElement("th");
-      cell.setAttribute("class", "gs:column");
-      cell.setAttribute("title", col.getIndex());
-      cell.addText(col.getName());
-      header.addElement(cell);
+      out.startElement("th");
+      out.setAttribute("class", "gs:column");
+      out.setAttribute("title", col.getIndex());
+      out.addText(col.getName());
+      out.endElement();
     }
-    XmlElement authorCell = new XmlElement("th");
-    header.addElement(authorCell.addText("Author"));
-    XmlElement updatedCell = new XmlElement("th");
-    header.addElement(updatedCell.addText("Updated"));
-    XmlElement revisionCell = new XmlElement("th");
-    header.addElement(revisionCell.addText("Version"));
-    table.addElement(header);
+    out.startElement("th").addText("Author").endElement();
+    out.startElement("th").addText("Updated").endElement();
+    out.startElement("th").addText("Version").endElement();
+    out.endElement();
     if (listItems != null) {
       for (ListItemEntry item : listItems) {
-        table.addElement(getRow(item));
+        renderRow(item, out);
       }
     }
-    return table;
+    out.endElement();
   }
   
-  private XmlElement getRow(ListItemEntry item) {
-    XmlElement element = RendererUtils.getEntryElement(item, "tr");
+  private void renderRow(ListItemEntry item, XmlWriter out) 
+      throws IOException {
+    RendererUtils.startEntryElement(out, item, "tr");
     for (Field field : item.getFields()) {
       String val;
       if (field.getValue() == null || field.getValue().equals("")) {
@@ -70,21 +70,18 @@ final class ListRendererImpl implements ListRenderer {
       } else {
         val = field.getValue();
       }
-      XmlElement cell = new XmlElement("td");
-      cell.setAttribute("class", "gs:field");
-      cell.setAttribute("title", field.getIndex());
-      cell.addXml(val);
-      element.addElement(cell);
+      out.startElement("td");
+      out.setAttribute("class", "gs:field");
+      out.setAttribute("title", field.getIndex());
+      out.addXml(val);
+      out.endElement();
     }
-    XmlElement authorCell = new XmlElement("td");
-    element.addElement(authorCell.addElement(
-        RendererUtils.getAuthorElement(item)));
-    XmlElement revisionCell = new XmlElement("td");
-    XmlElement updatedCell = new XmlElement("td");
-    element.addElement(updatedCell.addElement(
-        RendererUtils.getUpdatedElement(item)));
-    element.addElement(revisionCell.addElement(
-        RendererUtils.getRevisionElement(item)));
-    return element;
+    out.startElement("td")
+        .addElement(RendererUtils.getAuthorElement(item)).endElement();
+    out.startElement("td")
+        .addElement(RendererUtils.getUpdatedElement(item)).endElement();
+    out.startElement("td")
+        .addElement(RendererUtils.getRevisionElement(item)).endElement();
+    out.endElement();
   }
 }
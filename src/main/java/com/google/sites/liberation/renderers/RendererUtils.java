@@ -29,12 +29,14 @@ import com.google.gdata.data.TextConstruct;
 import com.google.gdata.data.sites.BaseContentEntry;
 import com.google.sites.liberation.util.EntryUtils;
 import com.google.sites.liberation.util.XmlElement;
+import com.google.sites.liberation.util.XmlWriter;
 
 import org.joda.time.DateTime;
 import org.joda.time.DateTimeZone;
 import org.joda.time.format.DateTimeFormatter;
 import org.joda.time.format.DateTimeFormatterBuilder;
 
+import java.io.IOException;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 
@@ -139,6 +141,18 @@ final class RendererUtils {
     return element;
   }
 
+  /**
+   * Starts a new hAtom "hentry" element of the given type for the given entry 
+   * in the given writer.
+   */
+  static XmlWriter startEntryElement(XmlWriter out, BaseContentEntry<?> entry, 
+      String elementType) throws IOException {
+    checkNotNull(entry, "entry");
+    checkNotNull(elementType, "elementType");
+    return out.startElement(elementType).setAttribute("id", entry.getId())
+        .setAttribute("class", "hentry " + getType(entry).toString());
+  }
+
   /**
    * Creates a new HyperLink with the given href and display text.
    */
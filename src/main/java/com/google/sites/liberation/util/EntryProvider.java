@@ -18,16 +18,18 @@ package com.google.sites.liberation.util;
 
 import com.google.gdata.client.Query;
 import com.google.gdata.client.sites.SitesService;
+import com.google.gdata.data.DateTime;
 import com.google.gdata.data.sites.BaseContentEntry;
 import com.google.gdata.util.ServiceException;
 import com.google.inject.ImplementedBy;
 
 import java.io.IOException;
+import java.net.URL;
 import java.util.List;
 
 /**
  * Returns a list of {@code BaseContentEntry}'s for a given 
- * query.
+ * query, or a single entry for a given id.
  * 
  * @author bsimon@google.com (Benjamin Simon)
  */
@@ -39,4 +41,20 @@ public interface EntryProvider {
    */
   List<BaseContentEntry<?>> getEntries(Query query, SitesService sitesService) 
       throws IOException, ServiceException;
+  
+  /**
+   * Returns the update time of the feed for the given query, which the 
+   * server sets to the time it served the feed.
+   */
+  DateTime getUpdated(Query query, SitesService sitesService)
+      throws IOException, ServiceException;
+  
+  /**
+   * Returns the entry of the given class with the given id, which is also the 
+   * URL it is served at.
+   */
+  @SuppressWarnings("unchecked")
+  BaseContentEntry<?> getEntry(URL entryUrl, 
+      Class<? extends BaseContentEntry> entryClass, SitesService sitesService)
+      throws IOException, ServiceException;
 }
@@ -21,16 +21,18 @@ import static com.google.common.base.Preconditions.checkNotNull;
 import com.google.common.collect.Lists;
 import com.google.gdata.client.Query;
 import com.google.gdata.client.sites.SitesService;
+import com.google.gdata.data.DateTime;
 import com.google.gdata.data.sites.BaseContentEntry;
 import com.google.gdata.data.sites.ContentFeed;
 import com.google.gdata.util.ServiceException;
 
 import java.io.IOException;
+import java.net.URL;
 import java.util.List;
 
 /**
  * Implements {@link EntryProvider} to provide entries for a given
- * query using a SitesService.
+ * query or id using a SitesService.
  * 
  * @author bsimon@google.com (Benjamin Simon)
  */
@@ -56,4 +58,23 @@ public final class EntryProviderImpl implements EntryProvider {
     }
     return adaptedEntries;
   }
+  
+  @Override
+  public DateTime getUpdated(Query query, SitesService sitesService)
+      throws IOException, ServiceException {
+    checkNotNull(query, "query");
+    checkNotNull(sitesService, "sitesService");
+    return sitesService.getFeed(query, ContentFeed.class).getUpdated();
+  }
+  
+  @SuppressWarnings("unchecked")
+  @Override
+  public BaseContentEntry<?> getEntry(URL entryUrl, 
+      Class<? extends BaseContentEntry> entryClass, SitesService sitesService)
+      throws IOException, ServiceException {
+    checkNotNull(entryUrl, "entryUrl");
+    checkNotNull(entryClass, "entryClass");
+    checkNotNull(sitesService, "sitesService");
+    return sitesService.getEntry(entryUrl, entryClass);
+  }
 }
@@ -65,6 +65,18 @@ public class EntryUtils {
     return link.getHref();
   }
   
+  /**
+   * Returns a string identifying the version of the given entry, made of its
+   * revision number and updated time.
+   */
+  public static String getVersion(BaseContentEntry<?> entry) {
+    String revision = (entry.getRevision() == null)
+        ? "" : String.valueOf(entry.getRevision().getValue());
+    String updated = (entry.getUpdated() == null)
+        ? "" : entry.getUpdated().toString();
+    return revision + '@' + updated;
+  }
+  
   /**
    * Sets the parent link of the given entry to the given id
    */
@@ -0,0 +1,99 @@
+/*
+ * Copyright (C) 2009 Google Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.google.sites.liberation.util;
+
+import java.io.File;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Provides utility methods for replacing files without losing them.
+ */
+public final class FileUtils {
+
+  private static final Logger LOGGER = Logger.getLogger(
+      FileUtils.class.getCanonicalName());
+
+  private FileUtils() {
+  }
+
+  /**
+   * Returns the backup used when {@code file} is replaced by
+   * {@link #replaceFile(File, File)}.
+   */
+  public static File getBackupFile(File file) {
+    return new File(file.getPath() + ".old");
+  }
+
+  /**
+   * Returns the given file, or its backup if a replacement of the file was
+   * interrupted before the new file took its place.
+   */
+  public static File getFileOrBackup(File file) {
+    File backup = getBackupFile(file);
+    return !file.isFile() && backup.isFile() ? backup : file;
+  }
+
+  /**
+   * Replaces {@code target} with {@code source} as 
+   * {@link #replaceFile(File, File, File)} does, using the backup given by
+   * {@link #getBackupFile(File)}.
+   */
+  public static boolean replaceFile(File source, File target) {
+    return replaceFile(source, target, getBackupFile(target));
+  }
+
+  /**
+   * Renames {@code source} to {@code target}, replacing it if it is a regular
+   * file, and returns whether {@code target} was replaced. Where a file can
+   * not be renamed over another, the old file is first renamed to 
+   * {@code backup}, and deleted only once the new file is in place. If the 
+   * new file still can not take its place, the old file is renamed back, and
+   * {@code source} is left as it was. A crash therefore never leaves neither
+   * the old nor the new file in place. A backup left by an interrupted 
+   * replacement is deleted once {@code target} is replaced.
+   */
+  public static boolean replaceFile(File source, File target, File backup) {
+    if (source.renameTo(target)) {
+      if (backup.exists() && !backup.delete()) {
+        LOGGER.log(Level.WARNING, "Unable to delete file: " + backup);
+      }
+      return true;
+    }
+    if (!target.isFile()) {
+      return false;
+    }
+    if (backup.exists() && !backup.delete()) {
+      LOGGER.log(Level.WARNING, "Unable to delete file: " + backup);
+      return false;
+    }
+    if (!target.renameTo(backup)) {
+      return false;
+    }
+    if (source.renameTo(target)) {
+      if (!backup.delete()) {
+        LOGGER.log(Level.WARNING, "Unable to delete file: " + backup);
+      }
+      return true;
+    }
+    if (!backup.renameTo(target)) {
+      LOGGER.log(Level.SEVERE, "Unable to rename " + backup + " back to " 
+          + target);
+    }
+    return false;
+  }
+}
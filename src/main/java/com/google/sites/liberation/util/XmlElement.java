@@ -16,28 +16,31 @@
 
 package com.google.sites.liberation.util;
 
-import com.google.gdata.util.common.base.Pair;
 import com.google.gdata.util.common.base.Preconditions;
 
-import org.apache.commons.lang.StringEscapeUtils;
-
 import java.io.IOException;
-import java.util.LinkedList;
-import java.util.List;
-import java.util.Map;
-import java.util.TreeMap;
+import java.util.Arrays;
 
 /**
  * A very simple implementation of an xml element to aid
  * in generating well formed xhtml pages.
  * 
+ * <p>Children and attributes are kept in small arrays which grow as needed, 
+ * with the attributes sorted by name. Text and attribute values are only 
+ * escaped while the element is written.</p>
+ * 
  * @author bsimon@google.com (Benjamin Simon)
  */
 public class XmlElement {
 	
+  private static final int INITIAL_CAPACITY = 4;
+  
   private final String elementType;
-  private final List<Pair<Object, ChildType>> children;
-  private final Map<String, String> attributes;
+  private Object[] children;
+  private ChildType[] childTypes;
+  private int numChildren;
+  private String[] attributes;
+  private int numAttributes;
 
   private static enum ChildType { ELEMENT, TEXT, XML }
   
@@ -49,8 +52,6 @@ public class XmlElement {
   public XmlElement(String elementType) {
     Preconditions.checkNotNull(elementType);
     this.elementType = elementType;
-    children = new LinkedList<Pair<Object, ChildType>>();
-    attributes = new TreeMap<String, String>();
   }
 	
   /**
@@ -61,7 +62,7 @@ public class XmlElement {
    */
   public XmlElement addElement(XmlElement child) {
     Preconditions.checkNotNull(child);
-    children.add(new Pair<Object, ChildType>(child, ChildType.ELEMENT));
+    addChild(child, ChildType.ELEMENT);
     return this;
   }
   
@@ -74,8 +75,7 @@ public class XmlElement {
    */
   public XmlElement addText(String text) {
     Preconditions.checkNotNull(text);
-    children.add(new Pair<Object, ChildType>(StringEscapeUtils.escapeXml(text),
-        ChildType.TEXT));
+    addChild(text, ChildType.TEXT);
     return this;
   }
   
@@ -88,7 +88,7 @@ public class XmlElement {
    */
   public XmlElement addXml(String xml) {
     Preconditions.checkNotNull(xml);
-    children.add(new Pair<Object, ChildType>(xml, ChildType.XML));
+    addChild(xml, ChildType.XML);
     return this;
   }
   
@@ -100,7 +100,28 @@ public class XmlElement {
   public XmlElement setAttribute(String name, String value) {
     Preconditions.checkNotNull(name, "name");
     Preconditions.checkNotNull(value, "value");
-    attributes.put(name, StringEscapeUtils.escapeXml(value));
+    if (attributes == null) {
+      attributes = new String[2 * INITIAL_CAPACITY];
+    }
+    int index = 0;
+    while (index < numAttributes) {
+      int comparison = attributes[2 * index].compareTo(name);
+      if (comparison == 0) {
+        attributes[2 * index + 1] = value;
+        return this;
+      } else if (comparison > 0) {
+        break;
+      }
+      index++;
+    }
+    if (2 * numAttributes == attributes.length) {
+      attributes = Arrays.copyOf(attributes, 2 * attributes.length);
+    }
+    System.arraycopy(attributes, 2 * index, attributes, 2 * index + 2, 
+        2 * (numAttributes - index));
+    attributes[2 * index] = name;
+    attributes[2 * index + 1] = value;
+    numAttributes++;
     return this;
   }
   
@@ -109,21 +130,26 @@ public class XmlElement {
    */
   public void appendTo(Appendable a) throws IOException {
     a.append('<').append(elementType);
-    for (Map.Entry<String, String> attribute : attributes.entrySet()) {
-      a.append(' ').append(attribute.getKey()).append("=\"")
-          .append(attribute.getValue()).append("\"");
+    for (int i = 0; i < numAttributes; i++) {
+      a.append(' ').append(attributes[2 * i]).append("=\"");
+      appendEscaped(attributes[2 * i + 1], a);
+      a.append('"');
     }
-    if (children.isEmpty()) {
+    if (numChildren == 0) {
       a.append(" />");
     } else {
       a.append(">");
-      for (Pair<Object, ChildType> pair : children) {
-        Object child = pair.getFirst();
-        ChildType type = pair.getSecond();
-        if (type == ChildType.ELEMENT) {
-          ((XmlElement)child).appendTo(a);
-        } else {
-          a.append((String)child);
+      for (int i = 0; i < numChildren; i++) {
+        switch (childTypes[i]) {
+          case ELEMENT:
+            ((XmlElement) children[i]).appendTo(a);
+            break;
+          case TEXT:
+            appendEscaped((String) children[i], a);
+            break;
+          default:
+            a.append((String) children[i]);
+            break;
         }
       }
       a.append("</").append(elementType).append('>');
@@ -144,11 +170,107 @@ public class XmlElement {
     return builder.toString();
   }
   
+  /**
+   * Returns whether the given object is an XmlElement of the same type, with 
+   * the same attributes and the same children.
+   */
   @Override
   public boolean equals(Object other) {
-    if (other instanceof XmlElement) {
-      return toString().equals(other.toString());
+    if (this == other) {
+      return true;
+    }
+    if (!(other instanceof XmlElement)) {
+      return false;
+    }
+    XmlElement element = (XmlElement) other;
+    if (!elementType.equals(element.elementType) 
+        || numAttributes != element.numAttributes 
+        || numChildren != element.numChildren) {
+      return false;
+    }
+    for (int i = 0; i < 2 * numAttributes; i++) {
+      if (!attributes[i].equals(element.attributes[i])) {
+        return false;
+      }
+    }
+    for (int i = 0; i < numChildren; i++) {
+      if (childTypes[i] != element.childTypes[i] 
+          || !children[i].equals(element.children[i])) {
+        return false;
+      }
+    }
+    return true;
+  }
+  
+  @Override
+  public int hashCode() {
+    int hashCode = elementType.hashCode();
+    for (int i = 0; i < 2 * numAttributes; i++) {
+      hashCode = 31 * hashCode + attributes[i].hashCode();
+    }
+    for (int i = 0; i < numChildren; i++) {
+      hashCode = 31 * hashCode + children[i].hashCode();
+    }
+    return hashCode;
+  }
+  
+  /**
+   * Appends the given string to the given Appendable, converted to xml-safe 
+   * characters in the same way as 
+   * {@link org.apache.commons.lang.StringEscapeUtils#escapeXml}: the five 
+   * basic xml entities are used, and characters beyond ASCII are written as 
+   * numeric character references.
+   */
+  static void appendEscaped(String string, Appendable a) throws IOException {
+    int start = 0;
+    int length = string.length();
+    for (int i = 0; i < length; i++) {
+      char c = string.charAt(i);
+      String entity;
+      switch (c) {
+        case '"':
+          entity = "&quot;";
+          break;
+        case '&':
+          entity = "&amp;";
+          break;
+        case '\'':
+          entity = "&apos;";
+          break;
+        case '<':
+          entity = "&lt;";
+          break;
+        case '>':
+          entity = "&gt;";
+          break;
+        default:
+          if (c <= 0x7f) {
+            continue;
+          }
+          entity = null;
+          break;
+      }
+      a.append(string, start, i);
+      if (entity == null) {
+        a.append("&#").append(Integer.toString(c)).append(';');
+      } else {
+        a.append(entity);
+      }
+      start = i + 1;
+    }
+    a.append(string, start, length);
+  }
+  
+  private void addChild(Object child, ChildType type) {
+    if (children == null) {
+      children = new Object[INITIAL_CAPACITY];
+      childTypes = new ChildType[INITIAL_CAPACITY];
+    } else if (numChildren == children.length) {
+      children = Arrays.copyOf(children, 2 * numChildren);
+      childTypes = Arrays.copyOf(childTypes, 2 * numChildren);
     }
-    return false;
+    children[numChildren] = child;
+    childTypes[numChildren] = type;
+    numChildren++;
   }
 }
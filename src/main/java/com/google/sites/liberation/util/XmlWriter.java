@@ -0,0 +1,151 @@
+/*
+ * Copyright (C) 2009 Google Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.google.sites.liberation.util;
+
+import com.google.gdata.util.common.base.Preconditions;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * Writes well formed xhtml straight to an {@link Appendable}, without building
+ * a tree of {@link XmlElement}s first.
+ * 
+ * <p>The output is the same as that of the equivalent {@code XmlElement}: 
+ * attributes appear alphabetically by name, and elements without children 
+ * are written as {@code <name />}. Only the start tag of the innermost open 
+ * element is held back, until its first child or its end, so that its 
+ * attributes can be sorted and an empty element can be closed in place.</p>
+ */
+public final class XmlWriter {
+
+  private final Appendable out;
+  private final List<String> openElements;
+  private final Map<String, String> attributes;
+  private boolean startTagPending;
+
+  /**
+   * Creates a new writer appending to the given Appendable.
+   */
+  public XmlWriter(Appendable out) {
+    this.out = Preconditions.checkNotNull(out);
+    openElements = new ArrayList<String>();
+    attributes = new TreeMap<String, String>();
+  }
+
+  /**
+   * Starts a new element of the given type, as a child of the current one.
+   */
+  public XmlWriter startElement(String elementType) throws IOException {
+    Preconditions.checkNotNull(elementType);
+    writeStartTag();
+    openElements.add(elementType);
+    startTagPending = true;
+    return this;
+  }
+
+  /**
+   * Sets the attribute with the given name of the element just started to 
+   * the given value.
+   * 
+   * @throws IllegalStateException if a child has already been written to the 
+   *     current element
+   */
+  public XmlWriter setAttribute(String name, String value) {
+    Preconditions.checkNotNull(name, "name");
+    Preconditions.checkNotNull(value, "value");
+    if (!startTagPending) {
+      throw new IllegalStateException("Attributes must be set before any "
+          + "children are written!");
+    }
+    attributes.put(name, value);
+    return this;
+  }
+
+  /**
+   * Writes the given plain text as a child of the current element, converted 
+   * to xml-safe characters.
+   */
+  public XmlWriter addText(String text) throws IOException {
+    Preconditions.checkNotNull(text);
+    writeStartTag();
+    XmlElement.appendEscaped(text, out);
+    return this;
+  }
+
+  /**
+   * Writes the given string of xml as a child of the current element, without 
+   * escaping it.
+   */
+  public XmlWriter addXml(String xml) throws IOException {
+    Preconditions.checkNotNull(xml);
+    writeStartTag();
+    out.append(xml);
+    return this;
+  }
+
+  /**
+   * Writes the given element as a child of the current element.
+   */
+  public XmlWriter addElement(XmlElement element) throws IOException {
+    Preconditions.checkNotNull(element);
+    writeStartTag();
+    element.appendTo(out);
+    return this;
+  }
+
+  /**
+   * Ends the current element.
+   * 
+   * @throws IllegalStateException if there is no open element
+   */
+  public XmlWriter endElement() throws IOException {
+    if (openElements.isEmpty()) {
+      throw new IllegalStateException("There is no element to end!");
+    }
+    String elementType = openElements.remove(openElements.size() - 1);
+    if (startTagPending) {
+      appendStartTag(elementType);
+      out.append(" />");
+      startTagPending = false;
+    } else {
+      out.append("</").append(elementType).append('>');
+    }
+    return this;
+  }
+
+  private void writeStartTag() throws IOException {
+    if (startTagPending) {
+      appendStartTag(openElements.get(openElements.size() - 1));
+      out.append('>');
+      startTagPending = false;
+    }
+  }
+
+  private void appendStartTag(String elementType) throws IOException {
+    out.append('<').append(elementType);
+    for (Map.Entry<String, String> attribute : attributes.entrySet()) {
+      out.append(' ').append(attribute.getKey()).append("=\"");
+      XmlElement.appendEscaped(attribute.getValue(), out);
+      out.append('"');
+    }
+    attributes.clear();
+  }
+}
@@ -0,0 +1,88 @@
+/*
+ * Copyright (C) 2009 Google Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.google.sites.liberation.export;
+
+import static org.junit.Assert.*;
+
+import com.google.gdata.data.sites.BaseContentEntry;
+import com.google.gdata.data.sites.PageName;
+import com.google.gdata.data.sites.WebPageEntry;
+import com.google.sites.liberation.util.EntryUtils;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import java.net.URL;
+
+public class AbsoluteLinkConverterImplTest {
+
+  private static final String URL = "https://sites.google.com/site/mysite";
+
+  private AbsoluteLinkConverter converter;
+  private EntryStore entryStore;
+
+  @Before
+  public void setUp() {
+    converter = new AbsoluteLinkConverterImpl();
+    entryStore = new InMemoryEntryStore();
+  }
+
+  @Test
+  public void testConvertLinks() {
+    assertEquals("<a href=\"../home/index.html\">x</a>",
+        AbsoluteLinkConverterImpl.convertLinks(
+            "<a href=\"" + URL + "/home\">x</a>", URL, "../"));
+    assertEquals("<a href='../../a/b/index.html'>x</a>"
+        + "<a href=\"../../c/index.html\">y</a>",
+        AbsoluteLinkConverterImpl.convertLinks(
+            "<a href='" + URL + "/a/b'>x</a><a href=\"" + URL + "/c\">y</a>",
+            URL, "../../"));
+    assertEquals("<a href=\"..//index.html\">x</a>",
+        AbsoluteLinkConverterImpl.convertLinks(
+            "<a href=\"" + URL + "\">x</a>", URL, "../"));
+  }
+
+  @Test
+  public void testOtherLinksAreKept() {
+    String content = "<a href=\"http://www.google.com/\">x</a>"
+        + "<a href=" + URL + "/unquoted>y</a><a href=\"" + URL + "/open";
+    assertSame(content, 
+        AbsoluteLinkConverterImpl.convertLinks(content, URL, "../"));
+  }
+
+  @Test
+  public void testConvertEntryLinks() throws Exception {
+    WebPageEntry parent = new WebPageEntry();
+    parent.setId("parent");
+    parent.setPageName(new PageName("parent"));
+    entryStore.addEntry(parent);
+    BaseContentEntry<?> entry = new WebPageEntry();
+    entry.setId("entry");
+    EntryUtils.setParentId(entry, "parent");
+    EntryUtils.setContent(entry, "<div><a href=\"" + URL 
+        + "/parent/other\">x</a> <a href='" + URL + "/home'>y</a></div>");
+    entryStore.addEntry(entry);
+    converter.convertLinks(entry, entryStore, new URL(URL), false);
+    assertEquals("<div><a href=\"../../parent/other/index.html\">x</a> "
+        + "<a href='../../home/index.html'>y</a></div>", 
+        EntryUtils.getXhtmlContent(entry));
+    EntryUtils.setContent(entry, "<div><a href=\"" + URL + "/home\">x</a></div>");
+    converter.convertLinks(entry, entryStore, new URL(URL), true);
+    assertEquals("<div><a href=\"../../../home/index.html\">x</a></div>", 
+        EntryUtils.getXhtmlContent(entry));
+  }
+}
@@ -0,0 +1,198 @@
+/*
+ * Copyright (C) 2009 Google Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.google.sites.liberation.export;
+
+import static org.junit.Assert.*;
+
+import com.google.common.collect.Maps;
+import com.google.gdata.client.sites.SitesService;
+import com.google.gdata.data.OutOfLineContent;
+import com.google.gdata.data.PlainTextConstruct;
+import com.google.gdata.data.sites.AttachmentEntry;
+import com.google.sites.liberation.util.ProgressListener;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+public class AttachmentDownloadSchedulerTest {
+
+  @Rule
+  public TemporaryFolder folder = new TemporaryFolder();
+
+  private FakeDownloader downloader;
+  private FakeProgressListener progressListener;
+  private SitesService sitesService;
+  private AttachmentDownloadScheduler scheduler;
+
+  @Before
+  public void setUp() {
+    downloader = new FakeDownloader();
+    progressListener = new FakeProgressListener();
+    sitesService = new SitesService("");
+    scheduler = new AttachmentDownloadScheduler(downloader, 8, 2);
+  }
+
+  @After
+  public void tearDown() {
+    scheduler.shutdown();
+  }
+
+  @Test
+  public void testDownloadsEverything() {
+    for (int i = 0; i < 20; i++) {
+      scheduler.schedule(getAttachment("http://host" + (i % 3) + "/file" + i),
+          new File(folder.getRoot(), "page" + i + "/file" + i), sitesService);
+    }
+    assertEquals(20, scheduler.getNumScheduled());
+    scheduler.awaitCompletion(progressListener, 5, 25);
+    assertEquals(20, scheduler.getNumCompleted());
+    assertEquals(20, downloader.getNumDownloads());
+    assertEquals(1.0, progressListener.getProgress(), 0.0);
+    assertTrue(new File(folder.getRoot(), "page7").isDirectory());
+  }
+
+  @Test
+  public void testPerHostLimit() {
+    for (int i = 0; i < 12; i++) {
+      scheduler.schedule(getAttachment("http://host" + (i % 2) + "/file" + i),
+          new File(folder.getRoot(), "file" + i), sitesService);
+    }
+    scheduler.awaitCompletion(progressListener, 0, 12);
+    assertEquals(12, downloader.getNumDownloads());
+    assertTrue(downloader.getMaxConcurrentDownloads("host0") <= 2);
+    assertTrue(downloader.getMaxConcurrentDownloads("host1") <= 2);
+  }
+
+  @Test
+  public void testSlowHostLeavesWorkersFree() throws InterruptedException {
+    scheduler.shutdown();
+    scheduler = new AttachmentDownloadScheduler(downloader, 2, 1);
+    downloader.blockedHost = "slow";
+    for (int i = 0; i < 3; i++) {
+      scheduler.schedule(getAttachment("http://slow/file" + i),
+          new File(folder.getRoot(), "slow" + i), sitesService);
+    }
+    scheduler.schedule(getAttachment("http://fast/file"),
+        new File(folder.getRoot(), "fast"), sitesService);
+    assertTrue(downloader.fastDownload.await(5, TimeUnit.SECONDS));
+    downloader.unblock.countDown();
+    scheduler.awaitCompletion(progressListener, 0, 4);
+    assertEquals(4, downloader.getNumDownloads());
+    assertEquals(1, downloader.getMaxConcurrentDownloads("slow"));
+  }
+
+  @Test
+  public void testGetHost() {
+    assertEquals("sites.google.com", AttachmentDownloadScheduler.getHost(
+        getAttachment("https://Sites.Google.com/feeds/media/x")));
+    assertEquals("", AttachmentDownloadScheduler.getHost(
+        new AttachmentEntry()));
+  }
+
+  private AttachmentEntry getAttachment(String uri) {
+    AttachmentEntry attachment = new AttachmentEntry();
+    attachment.setTitle(new PlainTextConstruct(uri));
+    OutOfLineContent content = new OutOfLineContent();
+    content.setUri(uri);
+    attachment.setContent(content);
+    return attachment;
+  }
+
+  private static class FakeDownloader implements AttachmentDownloader {
+
+    private final Map<String, AtomicInteger> current = Maps.newHashMap();
+    private final Map<String, Integer> max = Maps.newHashMap();
+    private int numDownloads;
+    final CountDownLatch unblock = new CountDownLatch(1);
+    final CountDownLatch fastDownload = new CountDownLatch(1);
+    volatile String blockedHost;
+
+    @Override
+    public boolean download(AttachmentEntry attachment, File file,
+        SitesService sitesService) {
+      String host = AttachmentDownloadScheduler.getHost(attachment);
+      synchronized (this) {
+        if (!current.containsKey(host)) {
+          current.put(host, new AtomicInteger());
+          max.put(host, 0);
+        }
+        int running = current.get(host).incrementAndGet();
+        max.put(host, Math.max(running, max.get(host)));
+      }
+      try {
+        if (host.equals(blockedHost)) {
+          unblock.await();
+        } else {
+          Thread.sleep(10);
+        }
+      } catch (InterruptedException e) {
+        Thread.currentThread().interrupt();
+      }
+      if (host.equals("fast")) {
+        fastDownload.countDown();
+      }
+      synchronized (this) {
+        current.get(host).decrementAndGet();
+        numDownloads++;
+      }
+      return true;
+    }
+
+    synchronized int getNumDownloads() {
+      return numDownloads;
+    }
+
+    synchronized int getMaxConcurrentDownloads(String host) {
+      return max.get(host);
+    }
+  }
+
+  private static class FakeProgressListener implements ProgressListener {
+
+    private double progress;
+    private String status;
+
+    @Override
+    public double getProgress() {
+      return progress;
+    }
+
+    @Override
+    public String getStatus() {
+      return status;
+    }
+
+    @Override
+    public void setProgress(double progress) {
+      this.progress = progress;
+    }
+
+    @Override
+    public void setStatus(String status) {
+      this.status = status;
+    }
+  }
+}
@@ -0,0 +1,119 @@
+/*
+ * Copyright (C) 2009 Google Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.google.sites.liberation.export;
+
+import static org.junit.Assert.*;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Arrays;
+
+public class AttachmentDownloaderImplTest {
+
+  @Rule
+  public TemporaryFolder folder = new TemporaryFolder();
+
+  @Test
+  public void testWrite() throws IOException {
+    byte[] data = getData(100000);
+    File file = new File(folder.getRoot(), "file.bin");
+    AttachmentDownloaderImpl.write(new ByteArrayInputStream(data), file);
+    assertTrue(Arrays.equals(data, read(file)));
+    assertEquals(1, folder.getRoot().list().length);
+  }
+
+  @Test
+  public void testWriteReplacesExistingFile() throws IOException {
+    File file = new File(folder.getRoot(), "file.bin");
+    FileOutputStream out = new FileOutputStream(file);
+    out.write(getData(50));
+    out.close();
+    byte[] data = getData(10);
+    AttachmentDownloaderImpl.write(new ByteArrayInputStream(data), file);
+    assertTrue(Arrays.equals(data, read(file)));
+  }
+
+  @Test
+  public void testWriteNeverReplacesDirectory() {
+    File file = new File(folder.getRoot(), "file.bin");
+    File child = new File(file, "child");
+    child.mkdirs();
+    byte[] data = getData(10);
+    try {
+      AttachmentDownloaderImpl.write(new ByteArrayInputStream(data), file);
+      fail();
+    } catch (IOException e) {
+      // expected
+    }
+    assertTrue(child.isDirectory());
+    assertEquals(Arrays.asList("file.bin"), 
+        Arrays.asList(folder.getRoot().list()));
+  }
+
+  @Test
+  public void testFailedWriteLeavesNoFile() {
+    File file = new File(folder.getRoot(), "file.bin");
+    InputStream failing = new ByteArrayInputStream(getData(1000)) {
+      @Override
+      public synchronized int read(byte[] b, int off, int len) {
+        if (pos > 500) {
+          throw new RuntimeException("connection reset");
+        }
+        return super.read(b, off, Math.min(len, 100));
+      }
+    };
+    try {
+      AttachmentDownloaderImpl.write(failing, file);
+      fail();
+    } catch (RuntimeException e) {
+      // expected
+    } catch (IOException e) {
+      // expected
+    }
+    assertEquals(0, folder.getRoot().list().length);
+  }
+
+  private byte[] getData(int length) {
+    byte[] data = new byte[length];
+    for (int i = 0; i < length; i++) {
+      data[i] = (byte) (i * 31);
+    }
+    return data;
+  }
+
+  private byte[] read(File file) throws IOException {
+    byte[] data = new byte[(int) file.length()];
+    InputStream in = new FileInputStream(file);
+    try {
+      int offset = 0;
+      while (offset < data.length) {
+        offset += in.read(data, offset, data.length - offset);
+      }
+    } finally {
+      in.close();
+    }
+    return data;
+  }
+}
@@ -21,6 +21,7 @@ import static org.junit.Assert.*;
 import com.google.common.collect.Lists;
 import com.google.gdata.client.Query;
 import com.google.gdata.client.sites.SitesService;
+import com.google.gdata.data.DateTime;
 import com.google.gdata.data.sites.BaseContentEntry;
 import com.google.gdata.data.sites.WebPageEntry;
 import com.google.gdata.util.ServiceException;
@@ -33,7 +34,11 @@ import java.io.IOException;
 import java.net.MalformedURLException;
 import java.net.URL;
 import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
 import java.util.List;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicInteger;
 
 /**
  * @author bsimon@google.com (Ben Simon)
@@ -150,6 +155,134 @@ public class ContinuousContentFeedTest {
     assertEquals(entries, newEntries);
   }
   
+  @Test
+  public void testConcurrentRequests() {
+    List<BaseContentEntry<?>> entries = Lists.newArrayList();
+    addNormalEntries(entries, 103);
+    FakeEntryDownloader entryProvider = new FakeEntryDownloader(entries, 5);
+    ContinuousContentFeed feed = 
+        new ContinuousContentFeed(url, entryProvider, sitesService, 4, 3);
+    List<BaseContentEntry<?>> newEntries = Lists.newArrayList(feed);
+    assertEquals(entries, newEntries);
+    assertTrue(entryProvider.getMaxConcurrentRequests() <= 3);
+  }
+  
+  @Test
+  public void testConcurrentRequestsWithExceptions() {
+    List<BaseContentEntry<?>> entries = Lists.newArrayList();
+    addIoExceptions(entries, 2);
+    addNormalEntries(entries, 17);
+    addServiceExceptions(entries, 3);
+    addNormalEntries(entries, 30);
+    addIoExceptions(entries, 1);
+    addNormalEntries(entries, 9);
+    EntryProvider entryProvider = new FakeEntryDownloader(entries, 5);
+    ContinuousContentFeed feed = 
+        new ContinuousContentFeed(url, entryProvider, sitesService, 8, 4);
+    List<BaseContentEntry<?>> newEntries = Lists.newArrayList(feed);
+    while(entries.remove(serviceExceptionEntry)) {}
+    while(entries.remove(ioExceptionEntry)) {}
+    assertEquals(entries, newEntries);
+  }
+  
+  @Test
+  public void testConcurrentRequestsSmallFeed() {
+    List<BaseContentEntry<?>> entries = Lists.newArrayList();
+    addNormalEntries(entries, 6);
+    FakeEntryDownloader serialProvider = new FakeEntryDownloader(entries, 100);
+    Lists.newArrayList(
+        new ContinuousContentFeed(url, serialProvider, sitesService, 20));
+    FakeEntryDownloader entryProvider = new FakeEntryDownloader(entries, 100);
+    ContinuousContentFeed feed = 
+        new ContinuousContentFeed(url, entryProvider, sitesService, 20, 4);
+    List<BaseContentEntry<?>> newEntries = Lists.newArrayList(feed);
+    assertEquals(entries, newEntries);
+    assertEquals(serialProvider.getNumRequests(), 
+        entryProvider.getNumRequests());
+  }
+  
+  @Test
+  public void testAdaptivePageSize() {
+    List<BaseContentEntry<?>> entries = Lists.newArrayList();
+    addNormalEntries(entries, 40);
+    addServiceExceptions(entries, 1);
+    addNormalEntries(entries, 150);
+    addIoExceptions(entries, 2);
+    addNormalEntries(entries, 30);
+    FakeEntryDownloader entryProvider = new FakeEntryDownloader(entries, 1000);
+    PageSizeController controller = 
+        new PageSizeController(4, 2, 64, Long.MAX_VALUE);
+    ContinuousContentFeed feed = 
+        new ContinuousContentFeed(url, entryProvider, sitesService, controller, 2);
+    List<BaseContentEntry<?>> newEntries = Lists.newArrayList(feed);
+    while(entries.remove(serviceExceptionEntry)) {}
+    while(entries.remove(ioExceptionEntry)) {}
+    assertEquals(entries, newEntries);
+    assertTrue(controller.getPageSize() > 4);
+  }
+  
+  @Test
+  public void testStartIndexAndCheckpoints() {
+    List<BaseContentEntry<?>> entries = Lists.newArrayList();
+    addNormalEntries(entries, 23);
+    EntryProvider entryProvider = new FakeEntryDownloader(entries, 100);
+    final List<Integer> checkpoints = Lists.newArrayList();
+    final List<BaseContentEntry<?>> newEntries = Lists.newArrayList();
+    FeedCheckpointListener listener = new FeedCheckpointListener() {
+      @Override
+      public void windowCompleted(int nextStartIndex) {
+        assertEquals(Math.min(nextStartIndex, 24) - 6, newEntries.size());
+        checkpoints.add(nextStartIndex);
+      }
+    };
+    ContinuousContentFeed feed = new ContinuousContentFeed(url, entryProvider, 
+        sitesService, PageSizeController.fixed(5), 2, 6, null, listener);
+    for (BaseContentEntry<?> entry : feed) {
+      newEntries.add(entry);
+    }
+    assertEquals(entries.subList(5, 23), newEntries);
+    assertEquals(Lists.newArrayList(11, 16, 21, 26), checkpoints);
+  }
+  
+  @Test
+  public void testUpdatedMin() {
+    List<BaseContentEntry<?>> entries = Lists.newArrayList();
+    addNormalEntries(entries, 12);
+    FakeEntryDownloader entryProvider = new FakeEntryDownloader(entries, 100);
+    DateTime updatedMin = DateTime.parseDateTime("2009-06-01T12:00:00.000Z");
+    ContinuousContentFeed feed = new ContinuousContentFeed(url, entryProvider, 
+        sitesService, PageSizeController.fixed(5), 1, 1, updatedMin, null);
+    assertEquals(entries, Lists.newArrayList(feed));
+    assertEquals(Lists.newArrayList(updatedMin), 
+        Lists.newArrayList(entryProvider.getUpdatedMins()));
+  }
+  
+  @Test
+  public void testFailedWindowsInsideFeed() {
+    List<BaseContentEntry<?>> entries = Lists.newArrayList();
+    addNormalEntries(entries, 4);
+    addIoExceptions(entries, 
+        (ContinuousContentFeed.MAX_FAILED_WINDOWS - 1) * 2);
+    addNormalEntries(entries, 3);
+    EntryProvider entryProvider = new FakeEntryDownloader(entries, 100);
+    ContinuousContentFeed feed = 
+        new ContinuousContentFeed(url, entryProvider, sitesService, 2);
+    List<BaseContentEntry<?>> newEntries = Lists.newArrayList(feed);
+    while(entries.remove(ioExceptionEntry)) {}
+    assertEquals(entries, newEntries);
+  }
+  
+  @Test
+  public void testEveryRequestFails() {
+    FailingEntryProvider entryProvider = new FailingEntryProvider();
+    ContinuousContentFeed feed = 
+        new ContinuousContentFeed(url, entryProvider, sitesService, 4, 3);
+    assertTrue(Lists.newArrayList(feed).isEmpty());
+    int numRequests = entryProvider.getNumRequests();
+    assertTrue(numRequests > 0);
+    assertTrue(numRequests <= ContinuousContentFeed.MAX_FAILED_WINDOWS * 7);
+  }
+  
   private void addNormalEntries(List<BaseContentEntry<?>> entries, int num) {
     for(int i = 0; i < num; i++) {
       entries.add(new WebPageEntry());
@@ -172,14 +305,58 @@ public class ContinuousContentFeedTest {
     
     private final int maxResultsPerRequest;
     private final List<BaseContentEntry<?>> entries;
+    private final AtomicInteger numRequests = new AtomicInteger();
+    private final AtomicInteger concurrentRequests = new AtomicInteger();
+    private final AtomicInteger maxConcurrentRequests = new AtomicInteger();
+    private final Set<DateTime> updatedMins = 
+        Collections.synchronizedSet(new HashSet<DateTime>());
     
     FakeEntryDownloader(List<BaseContentEntry<?>> entries, int maxResultsPerRequest) {
       this.maxResultsPerRequest = maxResultsPerRequest;
       this.entries = entries;
     }
     
+    int getNumRequests() {
+      return numRequests.get();
+    }
+    
+    int getMaxConcurrentRequests() {
+      return maxConcurrentRequests.get();
+    }
+    
+    Set<DateTime> getUpdatedMins() {
+      return updatedMins;
+    }
+    
     public List<BaseContentEntry<?>> getEntries(Query query, SitesService sitesService) 
         throws ServiceException, IOException {
+      numRequests.incrementAndGet();
+      updatedMins.add(query.getUpdatedMin());
+      int concurrent = concurrentRequests.incrementAndGet();
+      synchronized (maxConcurrentRequests) {
+        maxConcurrentRequests.set(
+            Math.max(maxConcurrentRequests.get(), concurrent));
+      }
+      try {
+        return getResponse(query);
+      } finally {
+        concurrentRequests.decrementAndGet();
+      }
+    }
+    
+    public DateTime getUpdated(Query query, SitesService sitesService) {
+      throw new UnsupportedOperationException();
+    }
+    
+    @SuppressWarnings("unchecked")
+    public BaseContentEntry<?> getEntry(URL entryUrl, 
+        Class<? extends BaseContentEntry> entryClass, 
+        SitesService sitesService) {
+      throw new UnsupportedOperationException();
+    }
+    
+    private List<BaseContentEntry<?>> getResponse(Query query) 
+        throws ServiceException, IOException {
       int fromIndex = query.getStartIndex() - 1;
       int max = Math.min(maxResultsPerRequest, query.getMaxResults());
       int toIndex = Math.min(fromIndex + max, entries.size());
@@ -196,4 +373,31 @@ public class ContinuousContentFeedTest {
       return response;
     }
   }
+  
+  private static class FailingEntryProvider implements EntryProvider {
+    
+    private final AtomicInteger numRequests = new AtomicInteger();
+    
+    int getNumRequests() {
+      return numRequests.get();
+    }
+    
+    public List<BaseContentEntry<?>> getEntries(Query query, 
+        SitesService sitesService) throws IOException {
+      numRequests.incrementAndGet();
+      throw new IOException("Error");
+    }
+    
+    public DateTime getUpdated(Query query, SitesService sitesService) 
+        throws IOException {
+      throw new IOException("Error");
+    }
+    
+    @SuppressWarnings("unchecked")
+    public BaseContentEntry<?> getEntry(URL entryUrl, 
+        Class<? extends BaseContentEntry> entryClass, 
+        SitesService sitesService) throws IOException {
+      throw new IOException("Error");
+    }
+  }
 }
@@ -0,0 +1,190 @@
+/*
+ * Copyright (C) 2009 Google Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.google.sites.liberation.export;
+
+import static org.junit.Assert.*;
+
+import com.google.gdata.data.PlainTextConstruct;
+import com.google.gdata.data.sites.AttachmentEntry;
+import com.google.gdata.data.sites.BaseContentEntry;
+import com.google.gdata.data.sites.BasePageEntry;
+import com.google.gdata.data.sites.PageName;
+import com.google.gdata.data.sites.WebPageEntry;
+import com.google.sites.liberation.util.EntryType;
+import com.google.sites.liberation.util.EntryUtils;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.IOException;
+import java.util.Collection;
+import java.util.List;
+
+public class DiskBackedEntryStoreTest {
+
+  @Rule
+  public TemporaryFolder folder = new TemporaryFolder();
+
+  private DiskBackedEntryStore entryStore;
+
+  @Before
+  public void setUp() throws IOException {
+    entryStore = new DiskBackedEntryStore(folder.getRoot(), 1);
+  }
+
+  @After
+  public void tearDown() throws IOException {
+    entryStore.close();
+  }
+
+  @Test
+  public void testGetEntry() {
+    assertNull(entryStore.getEntry(id("entry1")));
+    entryStore.addEntry(getNewPage(id("entry1"), null, "Entry 1"));
+    entryStore.addEntry(getNewPage(id("entry2"), id("entry1"), "Entry 2"));
+    entryStore.addEntry(
+        getNewAttachment(id("entry3"), id("entry2"), "file.txt"));
+    BaseContentEntry<?> entry1 = entryStore.getEntry(id("entry1"));
+    assertTrue(entry1 instanceof WebPageEntry);
+    assertEquals(id("entry1"), entry1.getId());
+    assertEquals("Entry 1", entry1.getTitle().getPlainText());
+    assertEquals("entry1-name",
+        ((BasePageEntry<?>) entry1).getPageName().getValue());
+    assertTrue(
+        EntryUtils.getXhtmlContent(entry1).contains("entry1-name content"));
+    BaseContentEntry<?> entry2 = entryStore.getEntry(id("entry2"));
+    assertEquals(id("entry1"), EntryUtils.getParentId(entry2));
+    BaseContentEntry<?> entry3 = entryStore.getEntry(id("entry3"));
+    assertTrue(entry3 instanceof AttachmentEntry);
+    assertEquals(id("entry2"), EntryUtils.getParentId(entry3));
+    assertNull(entryStore.getEntry(id("entry4")));
+  }
+
+  @Test
+  public void testGetChildren() {
+    assertTrue(entryStore.getChildren(id("entry1")).isEmpty());
+    entryStore.addEntry(getNewPage(id("entry1"), null, ""));
+    entryStore.addEntry(getNewPage(id("entry2"), id("entry1"), ""));
+    entryStore.addEntry(getNewPage(id("entry3"), id("entry1"), ""));
+    entryStore.addEntry(getNewPage(id("entry4"), id("entry2"), ""));
+    Collection<BaseContentEntry<?>> children1 = entryStore.getChildren(id("entry1"));
+    assertEquals(2, children1.size());
+    for (BaseContentEntry<?> child : children1) {
+      assertEquals(id("entry1"), EntryUtils.getParentId(child));
+    }
+    Collection<BaseContentEntry<?>> children2 = entryStore.getChildren(id("entry2"));
+    assertEquals(1, children2.size());
+    assertEquals(id("entry4"), children2.iterator().next().getId());
+    assertTrue(entryStore.getChildren(id("entry3")).isEmpty());
+    assertTrue(entryStore.getChildren(id("entry4")).isEmpty());
+  }
+
+  @Test
+  public void testGetParentAndTopLevelEntries() {
+    entryStore.addEntry(getNewPage(id("entry1"), null, ""));
+    entryStore.addEntry(getNewPage(id("entry2"), id("entry1"), ""));
+    entryStore.addEntry(getNewPage(id("entry3"), null, ""));
+    assertNull(entryStore.getParent(id("entry1")));
+    assertEquals(id("entry1"), entryStore.getParent(id("entry2")).getId());
+    Collection<BasePageEntry<?>> topLevelEntries =
+        entryStore.getTopLevelEntries();
+    assertEquals(2, topLevelEntries.size());
+  }
+
+  @Test
+  public void testGetAncestorsAndPath() {
+    entryStore.addEntry(getNewPage(id("entry1"), null, ""));
+    entryStore.addEntry(getNewPage(id("entry2"), id("entry1"), ""));
+    entryStore.addEntry(getNewAttachment(id("entry3"), id("entry2"), "a.txt"));
+    List<BasePageEntry<?>> ancestors = entryStore.getAncestors(id("entry3"));
+    assertEquals(2, ancestors.size());
+    assertEquals(id("entry1"), ancestors.get(0).getId());
+    assertEquals(id("entry2"), ancestors.get(1).getId());
+    assertEquals(2, entryStore.getDepth(id("entry3")));
+    assertEquals("entry1-name/entry2-name", entryStore.getPath(id("entry2")));
+    assertNull(entryStore.getPath(id("entry3")));
+    assertEquals(-1, entryStore.getDepth(id("entry4")));
+  }
+
+  @Test
+  public void testUpdatesAreKept() {
+    entryStore.addEntry(getNewPage(id("entry1"), null, ""));
+    entryStore.addEntry(getNewPage(id("entry2"), null, ""));
+    BaseContentEntry<?> entry1 = entryStore.getEntry(id("entry1"));
+    EntryUtils.setContent(entry1, "<div>converted</div>");
+    entryStore.updateEntry(entry1);
+    entryStore.getEntry(id("entry2"));
+    BaseContentEntry<?> readBack = entryStore.getEntry(id("entry1"));
+    assertNotSame(entry1, readBack);
+    assertTrue(EntryUtils.getXhtmlContent(readBack).contains("converted"));
+  }
+
+  @Test
+  public void testMetadataKeptInMemory() {
+    entryStore.addEntry(getNewPage(id("entry1"), null, "Entry 1"));
+    entryStore.addEntry(getNewAttachment(id("entry2"), id("entry1"), "file.txt"));
+    assertEquals("entry1-name", entryStore.getPageName(id("entry1")));
+    assertEquals("Entry 1", entryStore.getTitle(id("entry1")));
+    assertEquals(EntryType.WEB_PAGE, entryStore.getEntryType(id("entry1")));
+    assertNull(entryStore.getPageName(id("entry2")));
+    assertEquals(EntryType.ATTACHMENT, entryStore.getEntryType(id("entry2")));
+    assertNull(entryStore.getTitle(id("entry3")));
+  }
+
+  @Test
+  public void testCloseDeletesFile() throws IOException {
+    entryStore.addEntry(getNewPage(id("entry1"), null, ""));
+    entryStore.addEntry(getNewPage(id("entry2"), null, ""));
+    assertEquals(1, folder.getRoot().list().length);
+    entryStore.close();
+    assertEquals(0, folder.getRoot().list().length);
+    entryStore = new DiskBackedEntryStore(folder.getRoot(), 1);
+  }
+
+  private static String id(String name) {
+    return "https://sites.google.com/feeds/content/domain/webspace/" + name;
+  }
+
+  private static String name(String id) {
+    return id.substring(id.lastIndexOf('/') + 1) + "-name";
+  }
+
+  private BaseContentEntry<?> getNewPage(String id, String parentId,
+      String title) {
+    WebPageEntry entry = new WebPageEntry();
+    entry.setId(id);
+    entry.setPageName(new PageName(name(id)));
+    entry.setTitle(new PlainTextConstruct(title));
+    EntryUtils.setContent(entry, "<div>" + name(id) + " content</div>");
+    if (parentId != null) {
+      EntryUtils.setParentId(entry, parentId);
+    }
+    return entry;
+  }
+
+  private BaseContentEntry<?> getNewAttachment(String id, String parentId,
+      String title) {
+    AttachmentEntry entry = new AttachmentEntry();
+    entry.setId(id);
+    entry.setTitle(new PlainTextConstruct(title));
+    EntryUtils.setParentId(entry, parentId);
+    return entry;
+  }
+}
@@ -0,0 +1,107 @@
+/*
+ * Copyright (C) 2009 Google Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.google.sites.liberation.export;
+
+import static org.junit.Assert.*;
+
+import com.google.common.collect.Lists;
+import com.google.gdata.data.sites.AttachmentEntry;
+import com.google.gdata.data.sites.BaseContentEntry;
+import com.google.gdata.data.sites.WebPageEntry;
+import com.google.sites.liberation.util.EntryUtils;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.List;
+
+public class EntryReadinessTrackerTest {
+
+  private EntryReadinessTracker tracker;
+  
+  @Before
+  public void setUp() {
+    tracker = new EntryReadinessTracker();
+  }
+  
+  @Test
+  public void testParentsFirst() {
+    BaseContentEntry<?> page1 = getNewPage("page1", null);
+    BaseContentEntry<?> page2 = getNewPage("page2", "page1");
+    BaseContentEntry<?> attachment = getNewAttachment("attachment", "page2");
+    assertEquals(Lists.newArrayList(page1), tracker.addEntry(page1));
+    assertEquals(Lists.newArrayList(page2), tracker.addEntry(page2));
+    assertEquals(Lists.newArrayList(attachment), tracker.addEntry(attachment));
+    assertTrue(tracker.isReady("attachment"));
+    assertEquals(0, tracker.getNumWaiting());
+  }
+  
+  @Test
+  public void testChildrenFirst() {
+    BaseContentEntry<?> page1 = getNewPage("page1", null);
+    BaseContentEntry<?> page2 = getNewPage("page2", "page1");
+    BaseContentEntry<?> page3 = getNewPage("page3", "page2");
+    BaseContentEntry<?> attachment = getNewAttachment("attachment", "page2");
+    assertTrue(tracker.addEntry(page3).isEmpty());
+    assertTrue(tracker.addEntry(attachment).isEmpty());
+    assertTrue(tracker.addEntry(page2).isEmpty());
+    assertEquals(3, tracker.getNumWaiting());
+    assertFalse(tracker.isReady("page2"));
+    List<BaseContentEntry<?>> ready = tracker.addEntry(page1);
+    assertEquals(4, ready.size());
+    assertEquals(page1, ready.get(0));
+    assertEquals(page2, ready.get(1));
+    assertTrue(ready.indexOf(page3) > 1);
+    assertTrue(ready.indexOf(attachment) > 1);
+    assertEquals(0, tracker.getNumWaiting());
+  }
+  
+  @Test
+  public void testMissingAncestor() {
+    BaseContentEntry<?> page2 = getNewPage("page2", "page1");
+    BaseContentEntry<?> page3 = getNewPage("page3", "page2");
+    assertTrue(tracker.addEntry(page2).isEmpty());
+    assertTrue(tracker.addEntry(page3).isEmpty());
+    assertEquals(2, tracker.getNumWaiting());
+    assertTrue(tracker.addEntry(getNewAttachment("orphan", null)).isEmpty());
+  }
+  
+  @Test
+  public void testDuplicateIds() {
+    BaseContentEntry<?> page1 = getNewPage("page1", null);
+    assertEquals(1, tracker.addEntry(page1).size());
+    assertTrue(tracker.addEntry(getNewPage("page1", null)).isEmpty());
+  }
+  
+  private BaseContentEntry<?> getNewPage(String id, String parentId) {
+    WebPageEntry entry = new WebPageEntry();
+    entry.setId(id);
+    if (parentId != null) {
+      EntryUtils.setParentId(entry, parentId);
+    }
+    return entry;
+  }
+  
+  private BaseContentEntry<?> getNewAttachment(String id, String parentId) {
+    AttachmentEntry entry = new AttachmentEntry();
+    entry.setId(id);
+    if (parentId != null) {
+      EntryUtils.setParentId(entry, parentId);
+    }
+    return entry;
+  }
+}
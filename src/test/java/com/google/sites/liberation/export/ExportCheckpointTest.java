@@ -0,0 +1,369 @@
+/*
+ * Copyright (C) 2009 Google Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.google.sites.liberation.export;
+
+import static org.junit.Assert.*;
+
+import com.google.common.collect.Lists;
+import com.google.gdata.client.sites.SitesService;
+import com.google.gdata.data.DateTime;
+import com.google.gdata.data.OutOfLineContent;
+import com.google.gdata.data.PlainTextConstruct;
+import com.google.gdata.data.sites.AttachmentEntry;
+import com.google.gdata.data.sites.BaseContentEntry;
+import com.google.gdata.data.sites.PageName;
+import com.google.gdata.data.sites.Revision;
+import com.google.gdata.data.sites.WebPageEntry;
+
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.net.URL;
+import java.util.List;
+
+public class ExportCheckpointTest {
+
+  @Rule
+  public TemporaryFolder folder = new TemporaryFolder();
+
+  private File root;
+  private URL feedUrl;
+
+  @Before
+  public void setUp() throws IOException {
+    root = folder.getRoot();
+    feedUrl = new URL("https://sites.google.com/feeds/content/domain/webspace");
+  }
+
+  @Test
+  public void testNewCheckpoint() throws IOException {
+    ExportCheckpoint checkpoint =
+        new ExportCheckpoint(root, feedUrl, false, false);
+    assertFalse(checkpoint.isResumed());
+    assertFalse(checkpoint.isFeedComplete());
+    assertEquals(1, checkpoint.getNextStartIndex());
+    assertFalse(checkpoint.getJournaledEntries().iterator().hasNext());
+    checkpoint.close();
+    assertTrue(new File(root, "_checkpoint/manifest.txt").isFile());
+  }
+
+  @Test
+  public void testResume() throws IOException {
+    ExportCheckpoint checkpoint =
+        new ExportCheckpoint(root, feedUrl, false, false);
+    List<BaseContentEntry<?>> entries = Lists.newArrayList();
+    entries.add(getPage("page1", 1));
+    entries.add(getPage("page2", 3));
+    entries.add(getPage("page3", 1));
+    int index = 1;
+    for (BaseContentEntry<?> entry : checkpoint.journal(entries)) {
+      if (++index == 3) {
+        checkpoint.windowCompleted(3);
+      }
+    }
+    checkpoint.close();
+
+    checkpoint = new ExportCheckpoint(root, feedUrl, false, false);
+    assertTrue(checkpoint.isResumed());
+    assertFalse(checkpoint.isFeedComplete());
+    assertEquals(3, checkpoint.getNextStartIndex());
+    List<BaseContentEntry<?>> journaled =
+        Lists.newArrayList(checkpoint.getJournaledEntries());
+    assertEquals(2, journaled.size());
+    assertEquals(id("page1"), journaled.get(0).getId());
+    assertEquals(id("page2"), journaled.get(1).getId());
+    assertTrue(journaled.get(1) instanceof WebPageEntry);
+    assertEquals(Integer.valueOf(3), journaled.get(1).getRevision().getValue());
+    checkpoint.close();
+  }
+
+  @Test
+  public void testResumeFromInterruptedCompaction() throws IOException {
+    ExportCheckpoint checkpoint =
+        new ExportCheckpoint(root, feedUrl, false, false);
+    checkpoint.windowCompleted(21);
+    checkpoint.close();
+    File manifest = new File(root, "_checkpoint/manifest.txt");
+    assertTrue(manifest.renameTo(
+        new File(root, "_checkpoint/manifest.txt.old")));
+
+    checkpoint = new ExportCheckpoint(root, feedUrl, false, false);
+    assertTrue(checkpoint.isResumed());
+    assertEquals(21, checkpoint.getNextStartIndex());
+    checkpoint.close();
+    assertTrue(manifest.isFile());
+    assertFalse(new File(root, "_checkpoint/manifest.txt.old").exists());
+  }
+
+  @Test
+  public void testResumeFromLogWithoutClose() throws IOException {
+    File directory = new File(root, "page1-name");
+    directory.mkdirs();
+    new FileWriter(new File(directory, "index.html")).close();
+    File manifest = new File(root, "_checkpoint/manifest.txt");
+    ExportCheckpoint checkpoint =
+        new ExportCheckpoint(root, feedUrl, false, false);
+    long manifestLength = manifest.length();
+    Lists.newArrayList(checkpoint.journal(
+        Lists.<BaseContentEntry<?>>newArrayList(getPage("page1", 1))));
+    checkpoint.pageExported(getPage("page1", 1), "a");
+    checkpoint.windowCompleted(2);
+    assertEquals("The manifest should only be replaced on compaction.",
+        manifestLength, manifest.length());
+    FileWriter log = new FileWriter(
+        new File(root, "_checkpoint/manifest.log"), true);
+    log.write("nextStartIndex\t9");
+    log.close();
+
+    checkpoint = new ExportCheckpoint(root, feedUrl, false, false);
+    assertTrue(checkpoint.isResumed());
+    assertEquals(2, checkpoint.getNextStartIndex());
+    assertEquals(1,
+        Lists.newArrayList(checkpoint.getJournaledEntries()).size());
+    assertTrue(checkpoint.isPageExported(getPage("page1", 1), "a", directory));
+    checkpoint.close();
+  }
+
+  @Test
+  public void testCompletedExportIsNotResumed() throws IOException {
+    ExportCheckpoint checkpoint =
+        new ExportCheckpoint(root, feedUrl, false, false);
+    Lists.newArrayList(checkpoint.journal(
+        Lists.<BaseContentEntry<?>>newArrayList(getPage("page1", 1))));
+    checkpoint.feedCompleted();
+    checkpoint.exportCompleted();
+    checkpoint.close();
+    checkpoint = new ExportCheckpoint(root, feedUrl, false, false);
+    assertFalse(checkpoint.isResumed());
+    assertEquals(1, checkpoint.getNextStartIndex());
+    assertFalse(checkpoint.getJournaledEntries().iterator().hasNext());
+    checkpoint.close();
+  }
+
+  @Test
+  public void testDifferentExportIsNotResumed() throws IOException {
+    ExportCheckpoint checkpoint =
+        new ExportCheckpoint(root, feedUrl, false, false);
+    checkpoint.windowCompleted(21);
+    checkpoint.close();
+    checkpoint = new ExportCheckpoint(root, feedUrl, true, false);
+    assertFalse(checkpoint.isResumed());
+    checkpoint.close();
+    checkpoint = new ExportCheckpoint(root, feedUrl, true, false);
+    assertTrue(checkpoint.isResumed());
+    assertEquals(1, checkpoint.getNextStartIndex());
+    checkpoint.close();
+    checkpoint = new ExportCheckpoint(root,
+        new URL("https://sites.google.com/feeds/content/domain/other"), true,
+        false);
+    assertFalse(checkpoint.isResumed());
+    checkpoint.close();
+  }
+
+  @Test
+  public void testPages() throws IOException {
+    File directory = new File(root, "page1-name");
+    directory.mkdirs();
+    ExportCheckpoint checkpoint =
+        new ExportCheckpoint(root, feedUrl, false, false);
+    checkpoint.pageExported(getPage("page1", 1), "a");
+    checkpoint.close();
+    checkpoint = new ExportCheckpoint(root, feedUrl, false, false);
+    assertFalse(checkpoint.isPageExported(getPage("page1", 1), "a", directory));
+    new FileWriter(new File(directory, "index.html")).close();
+    assertTrue(checkpoint.isPageExported(getPage("page1", 1), "a", directory));
+    assertFalse(checkpoint.isPageExported(getPage("page1", 1), "b", directory));
+    assertFalse(checkpoint.isPageExported(getPage("page2", 1), "a", directory));
+    checkpoint.close();
+  }
+
+  @Test
+  public void testIncremental() throws IOException {
+    File directory = new File(root, "page1-name");
+    directory.mkdirs();
+    new FileWriter(new File(directory, "index.html")).close();
+    ExportCheckpoint checkpoint =
+        new ExportCheckpoint(root, feedUrl, false, false);
+    assertFalse(checkpoint.isIncremental());
+    checkpoint.pageExported(getPage("page1", 1), "a");
+    checkpoint.pageExported(getPage("page2", 1), "b");
+    checkpoint.feedCompleted();
+    checkpoint.exportCompleted();
+    checkpoint.close();
+
+    checkpoint = new ExportCheckpoint(root, feedUrl, false, false);
+    assertTrue(checkpoint.isIncremental());
+    assertFalse(checkpoint.isResumed());
+    assertFalse(checkpoint.isFeedComplete());
+    assertEquals(1, checkpoint.getNextStartIndex());
+    assertTrue(checkpoint.isPageExported(getPage("page1", 1), "a", directory));
+    checkpoint.feedCompleted();
+    checkpoint.exportCompleted();
+    checkpoint.close();
+
+    checkpoint = new ExportCheckpoint(root, feedUrl, false, false);
+    assertTrue(checkpoint.isIncremental());
+    assertTrue(checkpoint.isPageExported(getPage("page1", 1), "a", directory));
+    assertFalse(checkpoint.isPageExported(getPage("page2", 1), "b", directory));
+    checkpoint.close();
+  }
+
+  @Test
+  public void testJournalIsDeletedWithoutSnapshot() throws IOException {
+    ExportCheckpoint checkpoint =
+        new ExportCheckpoint(root, feedUrl, false, false);
+    checkpoint.feedStarted(DateTime.parseDateTime("2009-07-01T12:00:00.000Z"));
+    Lists.newArrayList(checkpoint.journal(
+        Lists.<BaseContentEntry<?>>newArrayList(getPage("page1", 1))));
+    checkpoint.feedCompleted();
+    checkpoint.close();
+    assertTrue(new File(root, "_checkpoint/entries.dat").exists());
+    checkpoint = new ExportCheckpoint(root, feedUrl, false, false);
+    checkpoint.exportCompleted();
+    checkpoint.close();
+    assertFalse(new File(root, "_checkpoint/entries.dat").exists());
+
+    checkpoint = new ExportCheckpoint(root, feedUrl, false, true);
+    assertTrue(checkpoint.isIncremental());
+    assertNull(checkpoint.getPreviousFeedStarted());
+    checkpoint.close();
+  }
+
+  @Test
+  public void testSnapshot() throws IOException {
+    ExportCheckpoint checkpoint =
+        new ExportCheckpoint(root, feedUrl, false, true);
+    assertNull(checkpoint.getPreviousFeedStarted());
+    DateTime started = DateTime.parseDateTime("2009-07-01T12:00:00.000Z");
+    checkpoint.feedStarted(started);
+    WebPageEntry page2 = getPage("page2", 2);
+    page2.setUpdated(DateTime.parseDateTime("2009-07-01T12:30:00.000Z"));
+    Lists.newArrayList(checkpoint.journal(
+        Lists.<BaseContentEntry<?>>newArrayList(getPage("page1", 1), page2)));
+    checkpoint.feedCompleted();
+    checkpoint.exportCompleted();
+    checkpoint.close();
+
+    checkpoint = new ExportCheckpoint(root, feedUrl, false, true);
+    assertEquals(started, checkpoint.getPreviousFeedStarted());
+    assertFalse(checkpoint.getJournaledEntries().iterator().hasNext());
+    List<BaseContentEntry<?>> snapshot =
+        Lists.newArrayList(checkpoint.getSnapshotEntries());
+    assertEquals(2, snapshot.size());
+    assertEquals(id("page1"), snapshot.get(0).getId());
+    assertEquals(id("page2"), snapshot.get(1).getId());
+    checkpoint.feedCompleted();
+    checkpoint.exportCompleted();
+    checkpoint.close();
+    assertFalse(new File(root, "_checkpoint/snapshot.dat").exists());
+
+    checkpoint = new ExportCheckpoint(root, feedUrl, false, true);
+    assertTrue(checkpoint.isIncremental());
+    assertNull(checkpoint.getPreviousFeedStarted());
+    checkpoint.close();
+  }
+
+  @Test
+  public void testAttachments() throws IOException {
+    final File file = new File(root, "file.txt");
+    AttachmentEntry attachment = getAttachment("file", 1);
+    ExportCheckpoint checkpoint =
+        new ExportCheckpoint(root, feedUrl, false, false);
+    assertFalse(checkpoint.isAttachmentDownloaded(attachment, file));
+    AttachmentDownloader downloader = checkpoint.recordDownloads(
+        new AttachmentDownloader() {
+          @Override
+          public boolean download(AttachmentEntry attachment, File f,
+              SitesService sitesService) {
+            write(f, "contents");
+            return true;
+          }
+        });
+    downloader.download(attachment, file, new SitesService(""));
+    checkpoint.close();
+    checkpoint = new ExportCheckpoint(root, feedUrl, false, false);
+    assertTrue(checkpoint.isAttachmentDownloaded(attachment, file));
+    assertFalse(checkpoint.isAttachmentDownloaded(
+        getAttachment("file", 2), file));
+    write(file, "contentz");
+    assertFalse(checkpoint.isAttachmentDownloaded(attachment, file));
+    checkpoint.close();
+  }
+
+  @Test
+  public void testFailedDownloadKeepsPreviousFile() throws IOException {
+    File file = new File(root, "file.txt");
+    AttachmentEntry attachment = getAttachment("file", 1);
+    write(file, "contents");
+    ExportCheckpoint checkpoint =
+        new ExportCheckpoint(root, feedUrl, false, false);
+    AttachmentDownloader downloader = checkpoint.recordDownloads(
+        new AttachmentDownloader() {
+          @Override
+          public boolean download(AttachmentEntry attachment, File f,
+              SitesService sitesService) {
+            return false;
+          }
+        });
+    assertFalse(downloader.download(attachment, file, new SitesService("")));
+    assertTrue(file.isFile());
+    checkpoint.close();
+    checkpoint = new ExportCheckpoint(root, feedUrl, false, false);
+    assertFalse(checkpoint.isAttachmentDownloaded(attachment, file));
+    checkpoint.close();
+  }
+
+  private void write(File file, String contents) {
+    try {
+      FileWriter writer = new FileWriter(file);
+      writer.write(contents);
+      writer.close();
+    } catch (IOException e) {
+      throw new RuntimeException(e);
+    }
+  }
+
+  private String id(String name) {
+    return feedUrl + "/" + name;
+  }
+
+  private WebPageEntry getPage(String name, int revision) {
+    WebPageEntry entry = new WebPageEntry();
+    entry.setId(id(name));
+    entry.setPageName(new PageName(name + "-name"));
+    entry.setTitle(new PlainTextConstruct(name));
+    entry.setRevision(new Revision(revision));
+    entry.setUpdated(DateTime.parseDateTime("2009-06-01T12:00:00.000Z"));
+    return entry;
+  }
+
+  private AttachmentEntry getAttachment(String name, int revision) {
+    AttachmentEntry entry = new AttachmentEntry();
+    entry.setId(id(name));
+    entry.setTitle(new PlainTextConstruct(name));
+    entry.setRevision(new Revision(revision));
+    OutOfLineContent content = new OutOfLineContent();
+    content.setUri(id(name) + "/media");
+    entry.setContent(content);
+    return entry;
+  }
+}
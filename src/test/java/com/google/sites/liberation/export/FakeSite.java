@@ -0,0 +1,512 @@
+/*
+ * Copyright (C) 2009 Google Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.google.sites.liberation.export;
+
+import static com.google.common.base.Preconditions.checkArgument;
+import static com.google.common.base.Preconditions.checkNotNull;
+import static com.google.sites.liberation.util.EntryType.ATTACHMENT;
+import static com.google.sites.liberation.util.EntryType.getType;
+import static com.google.sites.liberation.util.EntryType.isPage;
+
+import com.google.common.collect.LinkedListMultimap;
+import com.google.common.collect.Lists;
+import com.google.common.collect.ListMultimap;
+import com.google.common.collect.Maps;
+import com.google.common.io.ByteStreams;
+import com.google.gdata.client.Query;
+import com.google.gdata.client.sites.ContentQuery;
+import com.google.gdata.client.sites.SitesService;
+import com.google.gdata.data.DateTime;
+import com.google.gdata.data.ILink;
+import com.google.gdata.data.OutOfLineContent;
+import com.google.gdata.data.sites.AttachmentEntry;
+import com.google.gdata.data.sites.BaseContentEntry;
+import com.google.gdata.data.sites.BasePageEntry;
+import com.google.gdata.util.ServiceException;
+import com.google.sites.liberation.imprt.BatchInsertResult;
+import com.google.sites.liberation.imprt.EntryBatchInserter;
+import com.google.sites.liberation.imprt.EntryInserter;
+import com.google.sites.liberation.imprt.EntryUpdater;
+import com.google.sites.liberation.util.EntryProvider;
+import com.google.sites.liberation.util.EntryType;
+import com.google.sites.liberation.util.EntryUtils;
+
+import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.HttpURLConnection;
+import java.net.URL;
+import java.util.EnumMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * An offline stand-in for the Sites GData API, which serves a single site
+ * from memory through the {@link EntryProvider}, {@link EntryInserter},
+ * {@link EntryBatchInserter}, {@link EntryUpdater} and
+ * {@link AttachmentDownloader} interfaces, so that whole exports and imports
+ * can run without a network.
+ *
+ * <p>Entries are kept as Atom, so every response holds new entries, as a
+ * response from the server would. Each call counts as one request of its
+ * {@link Request kind}, takes at least the configured latency, and fails
+ * with the configured probability: queries then throw a
+ * {@link ServiceException}, and the other requests behave as their real
+ * implementations do when the server returns an error. Each entry of a batch
+ * also fails on its own with the configured probability. The
+ * {@code SitesService} passed to each call is ignored.</p>
+ *
+ * <p>A fake site can be shared between threads.</p>
+ */
+public final class FakeSite implements EntryProvider, EntryInserter,
+    EntryBatchInserter, EntryUpdater, AttachmentDownloader {
+
+  private static final Logger LOGGER = Logger.getLogger(
+      FakeSite.class.getCanonicalName());
+
+  /**
+   * The kinds of request a fake site serves.
+   */
+  public static enum Request { QUERY, GET, INSERT, BATCH, UPDATE, DOWNLOAD }
+
+  private final String feedUrl;
+  private final AtomEntrySerializer serializer;
+  private final List<String> ids;
+  private final Map<String, StoredEntry> entries;
+  private final Map<String, String> idsByPath;
+  private final ListMultimap<String, byte[]> revisions;
+  private final Map<String, byte[]> media;
+  private final Map<Request, AtomicInteger> numRequests;
+  private final AtomicInteger numErrors;
+  private volatile long latencyMillis;
+  private volatile double errorRate;
+  private Random random;
+  private int nextId;
+
+  /**
+   * Creates a new empty site served at the given feed URL.
+   */
+  public FakeSite(URL feedUrl) {
+    this.feedUrl = checkNotNull(feedUrl).toExternalForm();
+    serializer = new AtomEntrySerializer();
+    ids = Lists.newArrayList();
+    entries = Maps.newHashMap();
+    idsByPath = Maps.newHashMap();
+    revisions = LinkedListMultimap.create();
+    media = Maps.newHashMap();
+    numRequests = new EnumMap<Request, AtomicInteger>(Request.class);
+    for (Request request : Request.values()) {
+      numRequests.put(request, new AtomicInteger());
+    }
+    numErrors = new AtomicInteger();
+    random = new Random(0);
+  }
+
+  /**
+   * Makes every request take at least the given number of milliseconds.
+   */
+  public FakeSite setLatency(long latencyMillis) {
+    checkArgument(latencyMillis >= 0);
+    this.latencyMillis = latencyMillis;
+    return this;
+  }
+
+  /**
+   * Makes each request fail with the given probability, drawn from a random
+   * number generator with the given seed.
+   */
+  public FakeSite setErrorRate(double errorRate, long seed) {
+    checkArgument(errorRate >= 0 && errorRate <= 1);
+    synchronized (this) {
+      random = new Random(seed);
+    }
+    this.errorRate = errorRate;
+    return this;
+  }
+
+  /**
+   * Adds the given entry to this site, or replaces the entry with the same
+   * id, without counting a request. Entries must be added after their parent.
+   */
+  public synchronized void addEntry(BaseContentEntry<?> entry) {
+    checkNotNull(entry.getId());
+    String id = entry.getId();
+    StoredEntry old = entries.get(id);
+    if (old == null) {
+      ids.add(id);
+    } else if (old.path != null) {
+      idsByPath.remove(old.path);
+    }
+    StoredEntry stored = new StoredEntry(serialize(entry),
+        EntryUtils.getParentId(entry), getType(entry), entry.getUpdated(),
+        getPath(entry));
+    entries.put(id, stored);
+    if (stored.path != null) {
+      idsByPath.put(stored.path, id);
+    }
+  }
+
+  /**
+   * Adds the given revision of the page with the same id to this site. The
+   * revisions of a page are served in the order they are added.
+   */
+  public synchronized void addRevision(BaseContentEntry<?> revision) {
+    revisions.put(checkNotNull(revision.getId()), serialize(revision));
+  }
+
+  /**
+   * Serves the given data at the given media URL.
+   */
+  public synchronized void addMedia(String uri, byte[] data) {
+    media.put(checkNotNull(uri), checkNotNull(data));
+  }
+
+  /**
+   * Returns new copies of all of the entries in this site, in the order they
+   * were first added.
+   */
+  public synchronized List<BaseContentEntry<?>> getEntries() {
+    List<BaseContentEntry<?>> copies = Lists.newArrayList();
+    for (String id : ids) {
+      copies.add(deserialize(entries.get(id).atom));
+    }
+    return copies;
+  }
+
+  /**
+   * Returns a new copy of the entry at the given site-relative path, such as
+   * "/parent/page", or {@code null} if there is none.
+   */
+  public synchronized BaseContentEntry<?> getEntryByPath(String path) {
+    String id = idsByPath.get(path);
+    return (id == null) ? null : deserialize(entries.get(id).atom);
+  }
+
+  /**
+   * Returns the data served at the given media URL, or {@code null} if there
+   * is none.
+   */
+  public synchronized byte[] getMedia(String uri) {
+    return media.get(uri);
+  }
+
+  /**
+   * Returns the number of requests of the given kind made so far, including
+   * failed ones.
+   */
+  public int getNumRequests(Request request) {
+    return numRequests.get(request).get();
+  }
+
+  /**
+   * Returns the number of requests made so far which failed.
+   */
+  public int getNumErrors() {
+    return numErrors.get();
+  }
+
+  @Override
+  public List<BaseContentEntry<?>> getEntries(Query query,
+      SitesService sitesService) throws IOException, ServiceException {
+    checkNotNull(query);
+    request(Request.QUERY);
+    String url = query.getFeedUrl().toExternalForm();
+    List<byte[]> matches = Lists.newArrayList();
+    synchronized (this) {
+      if (url.contains("/feeds/revision/")) {
+        matches.addAll(revisions.get(url.replace("revision", "content")));
+      } else if (query instanceof ContentQuery
+          && ((ContentQuery) query).getPath() != null) {
+        String id = idsByPath.get(((ContentQuery) query).getPath());
+        if (id != null) {
+          matches.add(entries.get(id).atom);
+        }
+      } else {
+        for (String id : ids) {
+          StoredEntry entry = entries.get(id);
+          if (matches(entry, query)) {
+            matches.add(entry.atom);
+          }
+        }
+      }
+    }
+    int fromIndex = Math.max(query.getStartIndex(), 1) - 1;
+    int toIndex = matches.size();
+    if (query.getMaxResults() > 0) {
+      toIndex = Math.min(toIndex, fromIndex + query.getMaxResults());
+    }
+    List<BaseContentEntry<?>> response = Lists.newArrayList();
+    for (int i = fromIndex; i < toIndex; i++) {
+      response.add(deserialize(matches.get(i)));
+    }
+    return response;
+  }
+
+  @Override
+  public DateTime getUpdated(Query query, SitesService sitesService)
+      throws IOException, ServiceException {
+    checkNotNull(query);
+    request(Request.QUERY);
+    return DateTime.now();
+  }
+
+  @SuppressWarnings("unchecked")
+  @Override
+  public BaseContentEntry<?> getEntry(URL entryUrl,
+      Class<? extends BaseContentEntry> entryClass, SitesService sitesService)
+      throws IOException, ServiceException {
+    request(Request.GET);
+    StoredEntry entry;
+    synchronized (this) {
+      entry = entries.get(entryUrl.toExternalForm());
+    }
+    if (entry == null) {
+      throw new ServiceException("No such entry: " + entryUrl);
+    }
+    return deserialize(entry.atom);
+  }
+
+  @Override
+  public BaseContentEntry<?> insertEntry(BaseContentEntry<?> entry,
+      URL feedUrl, SitesService sitesService) {
+    try {
+      request(Request.INSERT);
+      synchronized (this) {
+        entry.setId(this.feedUrl + "/" + (++nextId));
+        store(entry);
+      }
+      return deserialize(serialize(entry));
+    } catch (IOException e) {
+      LOGGER.log(Level.WARNING, "Unable to insert entry: " + entry, e);
+      return null;
+    } catch (ServiceException e) {
+      LOGGER.log(Level.WARNING, "Unable to insert entry: " + entry, e);
+      return null;
+    }
+  }
+
+  @Override
+  public List<BatchInsertResult> insertEntries(
+      List<BaseContentEntry<?>> entries, URL feedUrl,
+      SitesService sitesService) throws ServiceException {
+    request(Request.BATCH);
+    List<BatchInsertResult> results = Lists.newArrayList();
+    for (BaseContentEntry<?> entry : entries) {
+      checkArgument(entry.getMediaSource() == null);
+      synchronized (this) {
+        if (errorRate > 0 && random.nextDouble() < errorRate) {
+          numErrors.incrementAndGet();
+          LOGGER.log(Level.WARNING, "Unable to insert entry: " + entry);
+          results.add(BatchInsertResult.failed(
+              HttpURLConnection.HTTP_UNAVAILABLE));
+          continue;
+        }
+        BaseContentEntry<?> copy = deserialize(serialize(entry));
+        copy.setId(this.feedUrl + "/" + (++nextId));
+        try {
+          store(copy);
+        } catch (IOException e) {
+          throw new RuntimeException(e);
+        }
+        results.add(BatchInsertResult.inserted(deserialize(serialize(copy))));
+      }
+    }
+    return results;
+  }
+
+  @Override
+  public BaseContentEntry<?> updateEntry(BaseContentEntry<?> oldEntry,
+      BaseContentEntry<?> newEntry, SitesService sitesService) {
+    try {
+      request(Request.UPDATE);
+      synchronized (this) {
+        if (!entries.containsKey(oldEntry.getId())) {
+          throw new ServiceException("No such entry: " + oldEntry.getId());
+        }
+        newEntry.setId(oldEntry.getId());
+        store(newEntry);
+      }
+      return deserialize(serialize(newEntry));
+    } catch (IOException e) {
+      LOGGER.log(Level.WARNING, "Unable to update entry:" + oldEntry, e);
+      return null;
+    } catch (ServiceException e) {
+      LOGGER.log(Level.WARNING, "Unable to update entry:" + oldEntry, e);
+      return null;
+    }
+  }
+
+  @Override
+  public boolean download(AttachmentEntry attachment, File file,
+      SitesService sitesService) {
+    String uri = ((OutOfLineContent) attachment.getContent()).getUri();
+    try {
+      request(Request.DOWNLOAD);
+      byte[] data = getMedia(uri);
+      if (data == null) {
+        throw new ServiceException("No such media: " + uri);
+      }
+      AttachmentDownloaderImpl.write(new ByteArrayInputStream(data), file);
+      return true;
+    } catch (IOException e) {
+      LOGGER.log(Level.WARNING, "Error downloading attachment: "
+          + attachment.getTitle().getPlainText(), e);
+    } catch (ServiceException e) {
+      LOGGER.log(Level.WARNING, "Error downloading attachment: "
+          + attachment.getTitle().getPlainText(), e);
+    }
+    return false;
+  }
+
+  /**
+   * Stores the given entry, which already has its final id, along with the
+   * data of its media source, if any, and links pages to their location as
+   * the server does.
+   */
+  private void store(BaseContentEntry<?> entry) throws IOException {
+    if (entry.getMediaSource() != null) {
+      InputStream in = entry.getMediaSource().getInputStream();
+      byte[] data;
+      try {
+        data = ByteStreams.toByteArray(in);
+      } finally {
+        in.close();
+      }
+      String uri = entry.getId() + "/media";
+      media.put(uri, data);
+      entry.setContent(new OutOfLineContent());
+      ((OutOfLineContent) entry.getContent()).setUri(uri);
+    }
+    String path = getPath(entry);
+    if (isPage(entry) && path != null
+        && entry.getLink(ILink.Rel.ALTERNATE, "text/html") == null) {
+      entry.addLink(ILink.Rel.ALTERNATE, "text/html",
+          feedUrl.replace("/feeds/content/", "/") + path);
+    }
+    entry.setUpdated(DateTime.now());
+    addEntry(entry);
+  }
+
+  /**
+   * Counts a request of the given kind, waits for the latency and fails the
+   * request with the configured probability.
+   */
+  private void request(Request request) throws ServiceException {
+    numRequests.get(request).incrementAndGet();
+    if (latencyMillis > 0) {
+      try {
+        Thread.sleep(latencyMillis);
+      } catch (InterruptedException e) {
+        Thread.currentThread().interrupt();
+        throw new ServiceException(e);
+      }
+    }
+    boolean fail;
+    synchronized (this) {
+      fail = errorRate > 0 && random.nextDouble() < errorRate;
+    }
+    if (fail) {
+      numErrors.incrementAndGet();
+      throw new ServiceException("Injected failure of " + request + ".");
+    }
+  }
+
+  private boolean matches(StoredEntry entry, Query query) {
+    if (query.getUpdatedMin() != null && (entry.updated == null
+        || entry.updated.compareTo(query.getUpdatedMin()) < 0)) {
+      return false;
+    }
+    if (query instanceof ContentQuery) {
+      ContentQuery contentQuery = (ContentQuery) query;
+      if (contentQuery.getKind() != null
+          && !contentQuery.getKind().equals(entry.type.toString())) {
+        return false;
+      }
+      if (contentQuery.getParent() != null && (entry.parentId == null
+          || !entry.parentId.endsWith("/" + contentQuery.getParent()))) {
+        return false;
+      }
+    }
+    return true;
+  }
+
+  /**
+   * Returns the site-relative path of the given entry, if it is a page or an
+   * attachment whose parent is known.
+   */
+  private String getPath(BaseContentEntry<?> entry) {
+    String name;
+    if (isPage(entry) && ((BasePageEntry<?>) entry).getPageName() != null) {
+      name = ((BasePageEntry<?>) entry).getPageName().getValue();
+    } else if (getType(entry) == ATTACHMENT && entry.getTitle() != null) {
+      name = entry.getTitle().getPlainText().replaceAll(" ", "%20");
+    } else {
+      return null;
+    }
+    String parentId = EntryUtils.getParentId(entry);
+    if (parentId == null) {
+      return "/" + name;
+    }
+    StoredEntry parent = entries.get(parentId);
+    if (parent == null || parent.path == null) {
+      return null;
+    }
+    return parent.path + "/" + name;
+  }
+
+  private byte[] serialize(BaseContentEntry<?> entry) {
+    try {
+      return serializer.serialize(entry);
+    } catch (IOException e) {
+      throw new RuntimeException(e);
+    }
+  }
+
+  private BaseContentEntry<?> deserialize(byte[] atom) {
+    try {
+      return serializer.deserialize(atom);
+    } catch (IOException e) {
+      throw new RuntimeException(e);
+    }
+  }
+
+  /**
+   * An entry of the site, and the fields queries select it by.
+   */
+  private static class StoredEntry {
+
+    final byte[] atom;
+    final String parentId;
+    final EntryType type;
+    final DateTime updated;
+    final String path;
+
+    StoredEntry(byte[] atom, String parentId, EntryType type, DateTime updated,
+        String path) {
+      this.atom = atom;
+      this.parentId = parentId;
+      this.type = type;
+      this.updated = updated;
+      this.path = path;
+    }
+  }
+}
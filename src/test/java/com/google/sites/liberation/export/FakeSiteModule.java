@@ -0,0 +1,51 @@
+/*
+ * Copyright (C) 2009 Google Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.google.sites.liberation.export;
+
+import static com.google.common.base.Preconditions.checkNotNull;
+
+import com.google.inject.AbstractModule;
+import com.google.sites.liberation.imprt.EntryBatchInserter;
+import com.google.sites.liberation.imprt.EntryInserter;
+import com.google.sites.liberation.imprt.EntryUpdater;
+import com.google.sites.liberation.util.EntryProvider;
+
+/**
+ * GUICE module binding every interface the exporter and importer use to 
+ * reach the Sites API to a single {@link FakeSite}. Install it next to 
+ * {@link SiteExporterModule} or {@code SiteImporterModule}.
+ */
+public class FakeSiteModule extends AbstractModule {
+
+  private final FakeSite fakeSite;
+
+  /**
+   * Creates a new module serving the given fake site.
+   */
+  public FakeSiteModule(FakeSite fakeSite) {
+    this.fakeSite = checkNotNull(fakeSite);
+  }
+
+  @Override
+  protected void configure() {
+    bind(EntryProvider.class).toInstance(fakeSite);
+    bind(EntryInserter.class).toInstance(fakeSite);
+    bind(EntryBatchInserter.class).toInstance(fakeSite);
+    bind(EntryUpdater.class).toInstance(fakeSite);
+    bind(AttachmentDownloader.class).toInstance(fakeSite);
+  }
+}
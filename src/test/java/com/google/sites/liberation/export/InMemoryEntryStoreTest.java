@@ -20,6 +20,8 @@ import static org.junit.Assert.*;
 
 import com.google.gdata.data.PlainTextConstruct;
 import com.google.gdata.data.sites.BaseContentEntry;
+import com.google.gdata.data.sites.BasePageEntry;
+import com.google.gdata.data.sites.PageName;
 import com.google.gdata.data.sites.WebPageEntry;
 import com.google.sites.liberation.export.EntryStore;
 import com.google.sites.liberation.export.InMemoryEntryStore;
@@ -29,6 +31,7 @@ import org.junit.Before;
 import org.junit.Test;
 
 import java.util.Collection;
+import java.util.List;
 
 /**
  * @author bsimon@google.com (Benjamin Simon)
@@ -79,6 +82,54 @@ public class InMemoryEntryStoreTest {
     assertTrue(entryStore.getChildren("entry4").isEmpty());
   }
   
+  @Test
+  public void testUpdateEntry() {
+    BaseContentEntry<?> entry1 = getNewEntry("entry1");
+    entryStore.addEntry(entry1);
+    entryStore.addEntry(getNewEntry("entry2", "entry1"));
+    BaseContentEntry<?> updated1 = getNewEntry("entry1", null, "Updated");
+    BaseContentEntry<?> updated2 = getNewEntry("entry2", "entry1", "Updated");
+    entryStore.updateEntry(updated1);
+    entryStore.updateEntry(updated2);
+    assertSame(updated1, entryStore.getEntry("entry1"));
+    assertSame(updated2, entryStore.getEntry("entry2"));
+    assertSame(updated1, entryStore.getTopLevelEntries().iterator().next());
+    assertEquals(1, entryStore.getChildren("entry1").size());
+    assertSame(updated2, entryStore.getChildren("entry1").iterator().next());
+  }
+  
+  @Test
+  public void testGetAncestorsAndPath() {
+    BaseContentEntry<?> entry1 = getNewPage("entry1", null);
+    BaseContentEntry<?> entry2 = getNewPage("entry2", "entry1");
+    BaseContentEntry<?> entry3 = getNewPage("entry3", "entry2");
+    entryStore.addEntry(entry3);
+    entryStore.addEntry(entry2);
+    assertNull(entryStore.getAncestors("entry3"));
+    assertEquals(-1, entryStore.getDepth("entry3"));
+    assertNull(entryStore.getPath("entry3"));
+    entryStore.addEntry(entry1);
+    assertTrue(entryStore.getAncestors("entry1").isEmpty());
+    assertEquals(0, entryStore.getDepth("entry1"));
+    assertEquals("entry1-name", entryStore.getPath("entry1"));
+    List<BasePageEntry<?>> ancestors = entryStore.getAncestors("entry3");
+    assertEquals(2, ancestors.size());
+    assertEquals(entry1, ancestors.get(0));
+    assertEquals(entry2, ancestors.get(1));
+    assertEquals(2, entryStore.getDepth("entry3"));
+    assertEquals("entry1-name/entry2-name/entry3-name", 
+        entryStore.getPath("entry3"));
+    assertEquals(1, entryStore.getDepth("entry2"));
+    assertEquals("entry1-name/entry2-name", entryStore.getPath("entry2"));
+    assertNull(entryStore.getPath("entry4"));
+  }
+  
+  private BaseContentEntry<?> getNewPage(String id, String parentId) {
+    WebPageEntry entry = (WebPageEntry) getNewEntry(id, parentId);
+    entry.setPageName(new PageName(id + "-name"));
+    return entry;
+  }
+  
   private BaseContentEntry<?> getNewEntry(String id) {
     return getNewEntry(id, null, "");
   }
@@ -0,0 +1,95 @@
+/*
+ * Copyright (C) 2009 Google Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.google.sites.liberation.export;
+
+import static org.junit.Assert.assertEquals;
+
+import com.google.gdata.data.PlainTextConstruct;
+import com.google.gdata.data.sites.BasePageEntry;
+import com.google.gdata.data.sites.PageName;
+import com.google.gdata.data.sites.WebPageEntry;
+import com.google.sites.liberation.util.EntryUtils;
+import com.google.sites.liberation.util.XmlWriter;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.IOException;
+
+public class NavigationSideBarTest {
+
+  private static final String HEADER = 
+      "<table><tr><th align=\"left\">Navigation</th></tr>";
+  
+  private EntryStore entryStore;
+  private NavigationSideBar sideBar;
+  private BasePageEntry<?> home;
+  private BasePageEntry<?> about;
+  private BasePageEntry<?> child;
+
+  @Before
+  public void before() {
+    entryStore = new InMemoryEntryStore();
+    home = newPage("home", "Home & Garden", null);
+    about = newPage("about", "About", null);
+    child = newPage("child", "Child", "about");
+    entryStore.addEntry(home);
+    entryStore.addEntry(about);
+    entryStore.addEntry(child);
+    sideBar = new NavigationSideBar(entryStore);
+  }
+
+  @Test
+  public void testTopLevelPage() throws IOException {
+    assertEquals(HEADER 
+        + "<tr><td><small>About</small></td></tr>"
+        + "<tr><td><small><a href=\"../home/index.html\">Home &amp; Garden"
+        + "</a></small></td></tr></table>", write(about, 0));
+    assertEquals(HEADER 
+        + "<tr><td><small><a href=\"../about/index.html\">About</a></small>"
+        + "</td></tr><tr><td><small>Home &amp; Garden</small></td></tr>"
+        + "</table>", write(home, 0));
+  }
+
+  @Test
+  public void testSubpage() throws IOException {
+    String expected = HEADER 
+        + "<tr><td><small><a href=\"../../about/index.html\">About</a>"
+        + "</small></td></tr><tr><td><small><a href=\"../../home/index.html\">"
+        + "Home &amp; Garden</a></small></td></tr></table>";
+    assertEquals(expected, write(child, 1));
+    assertEquals(expected, write(child, 1));
+  }
+  
+  private String write(BasePageEntry<?> entry, int depth) throws IOException {
+    StringBuilder out = new StringBuilder();
+    sideBar.write(entry, depth, new XmlWriter(out));
+    return out.toString();
+  }
+
+  private static BasePageEntry<?> newPage(String id, String title, 
+      String parentId) {
+    BasePageEntry<?> page = new WebPageEntry();
+    page.setId(id);
+    page.setTitle(new PlainTextConstruct(title));
+    page.setPageName(new PageName(id));
+    if (parentId != null) {
+      EntryUtils.setParentId(page, parentId);
+    }
+    return page;
+  }
+}
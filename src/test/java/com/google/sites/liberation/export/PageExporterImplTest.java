@@ -32,6 +32,7 @@ import com.google.gdata.data.sites.PageName;
 import com.google.gdata.data.sites.WebPageEntry;
 import com.google.sites.liberation.util.EntryUtils;
 import com.google.sites.liberation.util.XmlElement;
+import com.google.sites.liberation.util.XmlWriter;
 import com.google.sites.liberation.renderers.AncestorLinksRenderer;
 import com.google.sites.liberation.renderers.AnnouncementsRenderer;
 import com.google.sites.liberation.renderers.AttachmentsRenderer;
@@ -204,8 +205,8 @@ public class PageExporterImplTest {
         will(returnValue(new XmlElement("div")));
       oneOf (contentRenderer).renderContent(entry, true); 
         will(returnValue(new XmlElement("div")));
-      oneOf (listRenderer).renderList(with(entry), with(equal(listItems))); 
-        will(returnValue(new XmlElement("div")));
+      oneOf (listRenderer).renderList(with(entry), with(equal(listItems)), 
+          with(any(XmlWriter.class)));
     }});
     
     exporter.exportPage(entry, entryStore, out, true);
@@ -273,8 +274,7 @@ public class PageExporterImplTest {
       oneOf (contentRenderer).renderContent(entry, true); 
         will(returnValue(new XmlElement("div")));
       oneOf (announcementsRenderer).renderAnnouncements(
-          with(equal(announcements))); 
-        will(returnValue(new XmlElement("div")));
+          with(equal(announcements)), with(any(XmlWriter.class)));
     }});
     
     exporter.exportPage(entry, entryStore, out, true);
@@ -0,0 +1,100 @@
+/*
+ * Copyright (C) 2009 Google Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.google.sites.liberation.export;
+
+import static org.junit.Assert.*;
+
+import com.google.gdata.data.PlainTextConstruct;
+import com.google.gdata.data.sites.AttachmentEntry;
+import com.google.gdata.data.sites.BaseContentEntry;
+import com.google.gdata.data.sites.BasePageEntry;
+import com.google.gdata.data.sites.PageName;
+import com.google.gdata.data.sites.Revision;
+import com.google.gdata.data.sites.WebPageEntry;
+import com.google.sites.liberation.util.EntryUtils;
+
+import org.junit.Test;
+
+public class PageFingerprinterTest {
+
+  @Test
+  public void testUnchangedSite() {
+    assertEquals(getFingerprint(buildSite(1, 1, 1, "Root")),
+        getFingerprint(buildSite(1, 1, 1, "Root")));
+  }
+
+  @Test
+  public void testOwnRevision() {
+    assertFalse(getFingerprint(buildSite(1, 1, 1, "Root")).equals(
+        getFingerprint(buildSite(2, 1, 1, "Root"))));
+  }
+
+  @Test
+  public void testChildRevision() {
+    assertFalse(getFingerprint(buildSite(1, 2, 1, "Root")).equals(
+        getFingerprint(buildSite(1, 1, 1, "Root"))));
+  }
+
+  @Test
+  public void testUnrelatedPage() {
+    assertEquals(getFingerprint(buildSite(1, 1, 1, "Root")),
+        getFingerprint(buildSite(1, 1, 2, "Root")));
+  }
+
+  @Test
+  public void testAncestorAndSidebar() {
+    assertFalse(getFingerprint(buildSite(1, 1, 1, "Root")).equals(
+        getFingerprint(buildSite(1, 1, 1, "New Root"))));
+  }
+
+  private String getFingerprint(EntryStore entryStore) {
+    return new PageFingerprinter(entryStore).getFingerprint(
+        (BasePageEntry<?>) entryStore.getEntry("page"));
+  }
+
+  /**
+   * Returns a site with a top-level page called {@code rootTitle}, holding
+   * the fingerprinted page, which holds an attachment, and another page.
+   */
+  private EntryStore buildSite(int pageRevision, int attachmentRevision,
+      int otherRevision, String rootTitle) {
+    EntryStore entryStore = new InMemoryEntryStore();
+    entryStore.addEntry(getPage("root", null, rootTitle, 1));
+    entryStore.addEntry(getPage("page", "root", "Page", pageRevision));
+    entryStore.addEntry(getPage("other", "root", "Other", otherRevision));
+    AttachmentEntry attachment = new AttachmentEntry();
+    attachment.setId("attachment");
+    attachment.setTitle(new PlainTextConstruct("file.txt"));
+    attachment.setRevision(new Revision(attachmentRevision));
+    EntryUtils.setParentId(attachment, "page");
+    entryStore.addEntry(attachment);
+    return entryStore;
+  }
+
+  private BaseContentEntry<?> getPage(String id, String parentId,
+      String title, int revision) {
+    WebPageEntry entry = new WebPageEntry();
+    entry.setId(id);
+    entry.setTitle(new PlainTextConstruct(title));
+    entry.setPageName(new PageName(id));
+    entry.setRevision(new Revision(revision));
+    if (parentId != null) {
+      EntryUtils.setParentId(entry, parentId);
+    }
+    return entry;
+  }
+}
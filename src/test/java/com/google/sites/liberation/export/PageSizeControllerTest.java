@@ -0,0 +1,83 @@
+/*
+ * Copyright (C) 2009 Google Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.google.sites.liberation.export;
+
+import static org.junit.Assert.*;
+
+import org.junit.Test;
+
+public class PageSizeControllerTest {
+
+  @Test
+  public void testFixed() {
+    PageSizeController controller = PageSizeController.fixed(20);
+    for (int i = 0; i < 10; i++) {
+      controller.recordResponse(20, 20, 1);
+    }
+    assertEquals(20, controller.getPageSize());
+    controller.recordFailure();
+    assertEquals(20, controller.getPageSize());
+  }
+  
+  @Test
+  public void testGrowsWhileFastAndComplete() {
+    PageSizeController controller = new PageSizeController(10, 5, 50, 1000);
+    controller.recordResponse(10, 10, 100);
+    assertEquals(10, controller.getPageSize());
+    controller.recordResponse(10, 10, 100);
+    assertEquals(20, controller.getPageSize());
+    controller.recordResponse(20, 20, 100);
+    controller.recordResponse(20, 20, 100);
+    assertEquals(40, controller.getPageSize());
+    controller.recordResponse(40, 40, 100);
+    controller.recordResponse(40, 40, 100);
+    assertEquals(50, controller.getPageSize());
+  }
+  
+  @Test
+  public void testDoesNotGrowOnPartialOrSmallResponses() {
+    PageSizeController controller = new PageSizeController(10, 5, 50, 1000);
+    controller.recordResponse(10, 7, 100);
+    controller.recordResponse(10, 7, 100);
+    controller.recordResponse(5, 5, 100);
+    controller.recordResponse(5, 5, 100);
+    assertEquals(10, controller.getPageSize());
+  }
+  
+  @Test
+  public void testShrinksOnFailureAndSlowResponse() {
+    PageSizeController controller = new PageSizeController(40, 5, 50, 1000);
+    controller.recordFailure();
+    assertEquals(20, controller.getPageSize());
+    controller.recordResponse(20, 20, 5000);
+    assertEquals(10, controller.getPageSize());
+    controller.recordFailure();
+    controller.recordFailure();
+    assertEquals(5, controller.getPageSize());
+  }
+  
+  @Test
+  public void testRecoversAfterFailure() {
+    PageSizeController controller = new PageSizeController(20, 5, 50, 1000);
+    controller.recordResponse(20, 20, 100);
+    controller.recordFailure();
+    assertEquals(10, controller.getPageSize());
+    controller.recordResponse(10, 10, 100);
+    controller.recordResponse(10, 10, 100);
+    assertEquals(20, controller.getPageSize());
+  }
+}
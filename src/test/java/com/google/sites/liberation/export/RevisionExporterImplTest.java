@@ -26,6 +26,7 @@ import com.google.sites.liberation.renderers.ListRenderer;
 import com.google.sites.liberation.renderers.RevisionRenderer;
 import com.google.sites.liberation.renderers.TitleRenderer;
 import com.google.sites.liberation.util.XmlElement;
+import com.google.sites.liberation.util.XmlWriter;
 
 import org.junit.Before;
 import org.junit.Test;
@@ -90,8 +91,9 @@ public class RevisionExporterImplTest {
           will(returnValue(new XmlElement("div")));
       oneOf (titleRenderer).renderTitle(revision);
           will(returnValue(new XmlElement("div")));
-      oneOf (listRenderer).renderList(revision, new ArrayList<ListItemEntry>());
-          will(returnValue(new XmlElement("div")));
+      oneOf (listRenderer).renderList(with(revision), 
+          with(equal(new ArrayList<ListItemEntry>())), 
+          with(any(XmlWriter.class)));
     }});
     
     revisionExporter.exportRevision(revision, out);
@@ -21,6 +21,7 @@ import static org.junit.Assert.*;
 import com.google.common.collect.Maps;
 import com.google.common.collect.Sets;
 import com.google.gdata.client.sites.SitesService;
+import com.google.gdata.data.DateTime;
 import com.google.gdata.data.ILink;
 import com.google.gdata.data.PlainTextConstruct;
 import com.google.gdata.data.XhtmlTextConstruct;
@@ -30,16 +31,20 @@ import com.google.gdata.data.sites.BasePageEntry;
 import com.google.gdata.data.sites.FileCabinetPageEntry;
 import com.google.gdata.data.sites.ListPageEntry;
 import com.google.gdata.data.sites.PageName;
+import com.google.gdata.data.sites.Revision;
 import com.google.gdata.data.sites.SitesLink;
 import com.google.gdata.data.sites.WebPageEntry;
 import com.google.gdata.util.XmlBlob;
 import com.google.sites.liberation.util.ProgressListener;
 
 import org.junit.Before;
+import org.junit.Rule;
 import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
 import org.jmock.Expectations;
 import org.jmock.Mockery;
 import org.jmock.integration.junit4.JUnit4Mockery;
+import org.jmock.lib.concurrent.Synchroniser;
 import org.jmock.lib.legacy.ClassImposteriser;
 
 import java.io.File;
@@ -47,6 +52,7 @@ import java.io.IOException;
 import java.net.MalformedURLException;
 import java.net.URL;
 import java.util.Collection;
+import java.util.Collections;
 import java.util.Map;
 
 /**
@@ -54,7 +60,11 @@ import java.util.Map;
  */
 public class SiteExporterImplTest {
   
+  @Rule
+  public TemporaryFolder folder = new TemporaryFolder();
+  
   private Mockery context;
+  private File root;
   private AbsoluteLinkConverter linkConverter;
   private AppendableFactory appendableFactory;
   private AttachmentDownloader attachmentDownloader;
@@ -74,6 +84,7 @@ public class SiteExporterImplTest {
   public void before() throws MalformedURLException {
     context = new JUnit4Mockery() {{
       setImposteriser(ClassImposteriser.INSTANCE);
+      setThreadingPolicy(new Synchroniser());
     }};
     linkConverter = context.mock(AbsoluteLinkConverter.class);
     appendableFactory = context.mock(AppendableFactory.class);
@@ -90,6 +101,7 @@ public class SiteExporterImplTest {
     sitesService = new SitesService("");
     entries = Sets.newHashSet();
     feedUrl = new URL("https://host/feeds/content/domain/webspace");
+    root = folder.getRoot();
   }
   
   @Test
@@ -98,8 +110,13 @@ public class SiteExporterImplTest {
       allowing (entryStoreFactory).newEntryStore(); 
           will(returnValue(entryStore));
       allowing (progressListener).setStatus(with(any(String.class)));
-      allowing (feedProvider).getEntries(feedUrl, sitesService);
+      allowing (feedProvider).getEntries(with(equal(feedUrl)), 
+          with(equal(sitesService)), with(equal(1)), 
+          with(aNull(DateTime.class)), 
+          with(any(FeedCheckpointListener.class)));
           will(returnValue(entries));
+      allowing (feedProvider).getServerTime(feedUrl, sitesService);
+          will(returnValue(null));
     }});
     
     export(false);
@@ -120,27 +137,91 @@ public class SiteExporterImplTest {
     context.checking(new Expectations() {{
       allowing (entryStoreFactory).newEntryStore(); 
           will(returnValue(entryStore));
-      allowing (feedProvider).getEntries(feedUrl, sitesService);
+      allowing (feedProvider).getEntries(with(equal(feedUrl)), 
+          with(equal(sitesService)), with(equal(1)), 
+          with(aNull(DateTime.class)), 
+          with(any(FeedCheckpointListener.class)));
           will(returnValue(entries));
+      allowing (feedProvider).getServerTime(feedUrl, sitesService);
+          will(returnValue(null));
       allowing (entryStore).getEntry("1"); will(returnValue(page));
       allowing (entryStore).getParent("1"); will(returnValue(null));
+      allowing (entryStore).getPath("1"); will(returnValue("Page-1"));
+      allowing (entryStore).getChildren(with(any(String.class)));
+          will(returnValue(Collections.emptyList()));
+      allowing (entryStore).getTopLevelEntries();
+          will(returnValue(Collections.emptyList()));
+      allowing (entryStore).getAncestors(with(any(String.class)));
+          will(returnValue(Collections.emptyList()));
       allowing (progressListener).setStatus(with(any(String.class)));
       allowing (progressListener).setProgress(with(any(Double.class)));
       oneOf (entryStore).addEntry(page);
       oneOf (appendableFactory).getAppendable(
-          new File("path/Page-1/index.html"));
+          new File(root, "Page-1/index.html"));
           will(returnValue(out));
       oneOf (linkConverter).convertLinks(page, entryStore, 
           new URL("https://host/a/domain/webspace"), false);
+      oneOf (entryStore).updateEntry(page);
       oneOf (pageExporter).exportPage(page, entryStore, out, true);
       oneOf (revisionsExporter).exportRevisions(page, entryStore, 
-          new File("path/Page-1"), sitesService, 
+          new File(root, "Page-1"), sitesService, 
           new URL("https://host/a/domain/webspace"));
     }});
     
     export(true);
   }
   
+  @Test
+  public void testIncrementalExport() throws IOException {
+    final BasePageEntry<?> page = new WebPageEntry();
+    page.setId("1");
+    page.setTitle(new PlainTextConstruct("Page 1"));
+    page.setPageName(new PageName("Page-1"));
+    page.setRevision(new Revision(1));
+    XmlBlob blob = new XmlBlob();
+    blob.setBlob("content");
+    page.setContent(new XhtmlTextConstruct(blob));
+    entries.add(page);
+    final Appendable out = context.mock(Appendable.class);
+    
+    context.checking(new Expectations() {{
+      allowing (entryStoreFactory).newEntryStore(); 
+          will(returnValue(entryStore));
+      allowing (feedProvider).getEntries(with(equal(feedUrl)), 
+          with(equal(sitesService)), with(equal(1)), 
+          with(aNull(DateTime.class)), 
+          with(any(FeedCheckpointListener.class)));
+          will(returnValue(entries));
+      allowing (feedProvider).getServerTime(feedUrl, sitesService);
+          will(returnValue(null));
+      allowing (entryStore).getEntry("1"); will(returnValue(page));
+      allowing (entryStore).getParent("1"); will(returnValue(null));
+      allowing (entryStore).getPath("1"); will(returnValue("Page-1"));
+      allowing (entryStore).getChildren(with(any(String.class)));
+          will(returnValue(Collections.emptyList()));
+      allowing (entryStore).getTopLevelEntries();
+          will(returnValue(Collections.emptyList()));
+      allowing (entryStore).getAncestors(with(any(String.class)));
+          will(returnValue(Collections.emptyList()));
+      allowing (progressListener).setStatus(with(any(String.class)));
+      allowing (progressListener).setProgress(with(any(Double.class)));
+      exactly(3).of (entryStore).addEntry(page);
+      exactly(3).of (linkConverter).convertLinks(page, entryStore, 
+          new URL("https://host/a/domain/webspace"), false);
+      exactly(3).of (entryStore).updateEntry(page);
+      exactly(2).of (appendableFactory).getAppendable(
+          new File(root, "Page-1/index.html"));
+          will(returnValue(out));
+      exactly(2).of (pageExporter).exportPage(page, entryStore, out, false);
+    }});
+    
+    export(false);
+    assertTrue(new File(root, "Page-1/index.html").createNewFile());
+    export(false);
+    page.setRevision(new Revision(2));
+    export(false);
+  }
+  
   @Test
   public void testOnePageWithAttachment() throws IOException {
     final BasePageEntry<?> page = new FileCabinetPageEntry();
@@ -161,10 +242,22 @@ public class SiteExporterImplTest {
     context.checking(new Expectations() {{
       allowing (entryStoreFactory).newEntryStore(); 
           will(returnValue(entryStore));
-      allowing (feedProvider).getEntries(feedUrl, sitesService);
+      allowing (feedProvider).getEntries(with(equal(feedUrl)), 
+          with(equal(sitesService)), with(equal(1)), 
+          with(aNull(DateTime.class)), 
+          with(any(FeedCheckpointListener.class)));
           will(returnValue(entries));
+      allowing (feedProvider).getServerTime(feedUrl, sitesService);
+          will(returnValue(null));
       allowing (entryStore).getEntry("1"); will(returnValue(page));
       allowing (entryStore).getParent("1"); will(returnValue(null));
+      allowing (entryStore).getPath("1"); will(returnValue("Page-1"));
+      allowing (entryStore).getChildren(with(any(String.class)));
+          will(returnValue(Collections.emptyList()));
+      allowing (entryStore).getTopLevelEntries();
+          will(returnValue(Collections.emptyList()));
+      allowing (entryStore).getAncestors(with(any(String.class)));
+          will(returnValue(Collections.emptyList()));
       allowing (entryStore).getEntry("2"); will(returnValue(attachment));
       allowing (entryStore).getParent("2"); will(returnValue(page));
       allowing (progressListener).setStatus(with(any(String.class)));
@@ -172,16 +265,17 @@ public class SiteExporterImplTest {
       oneOf (entryStore).addEntry(page);
       oneOf (entryStore).addEntry(attachment);
       oneOf (appendableFactory).getAppendable(
-          new File("path/Page-1/index.html"));
+          new File(root, "Page-1/index.html"));
           will(returnValue(out));
       oneOf (linkConverter).convertLinks(page, entryStore, 
           new URL("https://host/a/domain/webspace"), false);
+      oneOf (entryStore).updateEntry(page);
       oneOf (pageExporter).exportPage(page, entryStore, out, false);
     }});
     
     export(false);
     assertTrue(downloaded.get(attachment).equals(
-        new File("path/Page-1/attach this.wow")));
+        new File(root, "Page-1/attach this.wow")));
   }
   
   @Test
@@ -224,16 +318,29 @@ public class SiteExporterImplTest {
     context.checking(new Expectations() {{
       allowing (entryStoreFactory).newEntryStore(); 
           will(returnValue(entryStore));
-      allowing (feedProvider).getEntries(feedUrl, sitesService);
+      allowing (feedProvider).getEntries(with(equal(feedUrl)), 
+          with(equal(sitesService)), with(equal(1)), 
+          with(aNull(DateTime.class)), 
+          with(any(FeedCheckpointListener.class)));
           will(returnValue(entries));
+      allowing (feedProvider).getServerTime(feedUrl, sitesService);
+          will(returnValue(null));
       allowing (entryStore).getEntry("1"); will(returnValue(page1));
       allowing (entryStore).getEntry("2"); will(returnValue(attachment1));
       allowing (entryStore).getEntry("3"); will(returnValue(page2));
       allowing (entryStore).getEntry("4"); will(returnValue(attachment2));
       allowing (entryStore).getEntry("5"); will(returnValue(attachment3));
       allowing (entryStore).getParent("1"); will(returnValue(null));
+      allowing (entryStore).getPath("1"); will(returnValue("Page-1"));
+      allowing (entryStore).getChildren(with(any(String.class)));
+          will(returnValue(Collections.emptyList()));
+      allowing (entryStore).getTopLevelEntries();
+          will(returnValue(Collections.emptyList()));
+      allowing (entryStore).getAncestors(with(any(String.class)));
+          will(returnValue(Collections.emptyList()));
       allowing (entryStore).getParent("2"); will(returnValue(page1));
       allowing (entryStore).getParent("3"); will(returnValue(page1));
+      allowing (entryStore).getPath("3"); will(returnValue("Page-1/Page-2"));
       allowing (entryStore).getParent("4"); will(returnValue(page1));
       allowing (entryStore).getParent("5"); will(returnValue(page2));
       allowing (progressListener).setStatus(with(any(String.class)));
@@ -244,37 +351,39 @@ public class SiteExporterImplTest {
       oneOf (entryStore).addEntry(attachment2);
       oneOf (entryStore).addEntry(attachment3);
       oneOf (appendableFactory).getAppendable(
-          new File("path/Page-1/index.html"));
+          new File(root, "Page-1/index.html"));
           will(returnValue(out1));
       oneOf (appendableFactory).getAppendable(
-          new File("path/Page-1/Page-2/index.html"));
+          new File(root, "Page-1/Page-2/index.html"));
           will(returnValue(out2));
       oneOf (linkConverter).convertLinks(page1, entryStore, 
           new URL("https://host/a/domain/webspace"), false);
+      oneOf (entryStore).updateEntry(page1);
       oneOf (linkConverter).convertLinks(page2, entryStore, 
           new URL("https://host/a/domain/webspace"), false);
+      oneOf (entryStore).updateEntry(page2);
       oneOf (pageExporter).exportPage(page1, entryStore, out1, true);
       oneOf (pageExporter).exportPage(page2, entryStore, out2, true);
       oneOf (revisionsExporter).exportRevisions(page1, entryStore,
-          new File("path/Page-1"), sitesService, 
+          new File(root, "Page-1"), sitesService, 
           new URL("https://host/a/domain/webspace"));
       oneOf (revisionsExporter).exportRevisions(page2, entryStore,
-          new File("path/Page-1/Page-2"), sitesService,
+          new File(root, "Page-1/Page-2"), sitesService,
           new URL("https://host/a/domain/webspace"));
     }});
     
     export(true);
     assertTrue(downloaded.get(attachment1).equals(
-        new File("path/Page-1/attach this.wow")));
+        new File(root, "Page-1/attach this.wow")));
     assertTrue(downloaded.get(attachment2).equals(
-        new File("path/Page-1/picture.png")));
+        new File(root, "Page-1/picture.png")));
     assertTrue(downloaded.get(attachment3).equals(
-        new File("path/Page-1/Page-2/document.doc")));
+        new File(root, "Page-1/Page-2/document.doc")));
   }
   
   private void export(boolean exportRevisions) {
     siteExporter.exportSite("host", "domain", "webspace", exportRevisions, 
-        sitesService, new File("path"), progressListener);
+        sitesService, root, progressListener);
   }
   
   /**
@@ -284,13 +393,14 @@ public class SiteExporterImplTest {
   private class FakeDownloader implements AttachmentDownloader {
     
     FakeDownloader() {
-      downloaded = Maps.newHashMap();
+      downloaded = Maps.newConcurrentMap();
     }
     
     @Override
-    public void download(AttachmentEntry attachment, File file, 
+    public boolean download(AttachmentEntry attachment, File file, 
         SitesService sitesService) {
       downloaded.put(attachment, file);
+      return true;
     }
   }
 }
@@ -0,0 +1,283 @@
+/*
+ * Copyright (C) 2009 Google Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.google.sites.liberation.export;
+
+import static com.google.sites.liberation.util.EntryType.getType;
+import static com.google.sites.liberation.util.EntryType.isPage;
+import static org.junit.Assert.*;
+
+import com.google.common.base.Charsets;
+import com.google.common.collect.HashMultiset;
+import com.google.common.collect.Multiset;
+import com.google.common.io.Files;
+import com.google.gdata.client.sites.SitesService;
+import com.google.gdata.data.OutOfLineContent;
+import com.google.gdata.data.sites.AttachmentEntry;
+import com.google.gdata.data.sites.BaseContentEntry;
+import com.google.gdata.data.sites.BasePageEntry;
+import com.google.inject.Guice;
+import com.google.sites.liberation.export.FakeSite.Request;
+import com.google.sites.liberation.imprt.SiteImporter;
+import com.google.sites.liberation.imprt.SiteImporterModule;
+import com.google.sites.liberation.util.EntryType;
+import com.google.sites.liberation.util.EntryUtils;
+import com.google.sites.liberation.util.ProgressListener;
+
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.io.IOException;
+import java.net.URL;
+import java.util.Arrays;
+
+/**
+ * Exports a {@link SyntheticSite} from a {@link FakeSite}, and imports it
+ * back into another one, through the real exporter and importer.
+ */
+public class SiteRoundTripTest {
+
+  private static final int NUM_PAGES = 40;
+  private static final int DEPTH = 3;
+  private static final int REVISIONS_PER_PAGE = 3;
+
+  @Rule
+  public TemporaryFolder folder = new TemporaryFolder();
+
+  private SyntheticSite site;
+  private FakeSite fakeSite;
+  private EntryStore entryStore;
+  private File root;
+
+  @Before
+  public void before() throws IOException {
+    site = new SyntheticSite(NUM_PAGES, DEPTH, 1, REVISIONS_PER_PAGE);
+    fakeSite = site.newFakeSite();
+    entryStore = site.newEntryStore();
+    root = folder.getRoot();
+  }
+
+  @Test
+  public void testExport() throws IOException {
+    exportSite(fakeSite, true);
+    int numAttachments = 0;
+    for (BaseContentEntry<?> entry : site.newEntries()) {
+      if (isPage(entry)) {
+        File directory = new File(root, entryStore.getPath(entry.getId()));
+        assertTrue(new File(directory, "index.html").isFile());
+        assertTrue(new File(directory, "history.html").isFile());
+        for (int revision = 1; revision < REVISIONS_PER_PAGE; revision++) {
+          assertTrue(new File(directory, "_revisions/" + revision + ".html")
+              .isFile());
+        }
+      } else if (entry instanceof AttachmentEntry) {
+        File directory = new File(root,
+            entryStore.getPath(EntryUtils.getParentId(entry)));
+        File file = new File(directory, entry.getTitle().getPlainText());
+        assertTrue(Arrays.equals(
+            SyntheticSite.getAttachmentData((AttachmentEntry) entry),
+            Files.toByteArray(file)));
+        numAttachments++;
+      }
+    }
+    assertEquals(numAttachments, fakeSite.getNumRequests(Request.DOWNLOAD));
+    assertTrue(fakeSite.getNumRequests(Request.QUERY) > NUM_PAGES);
+    assertEquals(0, fakeSite.getNumRequests(Request.GET));
+    assertEquals(0, fakeSite.getNumRequests(Request.INSERT));
+    assertEquals(0, fakeSite.getNumRequests(Request.UPDATE));
+    assertEquals(0, fakeSite.getNumErrors());
+  }
+
+  @Test
+  public void testImportIntoNewSite() throws IOException {
+    checkImport(new SiteImporterModule(), 0);
+  }
+
+  @Test
+  public void testImportWithOneThread() throws IOException {
+    checkImport(new SiteImporterModule(1), 0);
+  }
+
+  @Test
+  public void testImportWithLatency() throws IOException {
+    checkImport(new SiteImporterModule(16), 2);
+  }
+
+  @Test
+  public void testImportIntoImportedSite() throws IOException {
+    exportSite(fakeSite, false);
+    FakeSite copy = new FakeSite(new URL(
+        "https://" + SyntheticSite.HOST + "/feeds/content/site/copy"));
+    importSite(new SiteImporterModule(), copy);
+    int numEntries = copy.getEntries().size();
+    int numInserts = copy.getNumRequests(Request.INSERT);
+    int numBatches = copy.getNumRequests(Request.BATCH);
+    int numQueries = copy.getNumRequests(Request.QUERY);
+    importSite(new SiteImporterModule(), copy);
+    assertEquals(numEntries, copy.getEntries().size());
+    assertEquals(numInserts, copy.getNumRequests(Request.INSERT));
+    assertEquals(numBatches, copy.getNumRequests(Request.BATCH));
+    assertEquals(numInserts, copy.getNumRequests(Request.UPDATE));
+    assertTrue(copy.getNumRequests(Request.QUERY) - numQueries < NUM_PAGES);
+    assertEquals(0, copy.getNumRequests(Request.GET));
+    assertEquals(0, copy.getNumErrors());
+  }
+
+  @Test
+  public void testImportIntoRestoredSite() throws IOException {
+    exportSite(fakeSite, false);
+    FakeSite restored = new FakeSite(new URL(SyntheticSite.FEED_URL));
+    for (BaseContentEntry<?> entry : site.newEntries()) {
+      if (getType(entry) == EntryType.COMMENT
+          || getType(entry) == EntryType.LIST_ITEM) {
+        entry.setId(entry.getId() + "-restored");
+      }
+      restored.addEntry(entry);
+    }
+    int numEntries = restored.getEntries().size();
+    Guice.createInjector(new SiteImporterModule(),
+        new FakeSiteModule(restored)).getInstance(SiteImporter.class)
+        .importSite(SyntheticSite.HOST, null, SyntheticSite.WEBSPACE, false,
+            new SitesService("test"), root, new NullProgressListener());
+    assertEquals(numEntries, restored.getEntries().size());
+    assertEquals(0, restored.getNumRequests(Request.INSERT));
+    assertEquals(0, restored.getNumRequests(Request.BATCH));
+    assertEquals(0, restored.getNumErrors());
+  }
+
+  @Test
+  public void testSkipUnchangedPages() throws IOException {
+    exportSite(fakeSite, false);
+    FakeSite copy = new FakeSite(new URL(
+        "https://" + SyntheticSite.HOST + "/feeds/content/site/copy"));
+    SiteImporterModule importerModule = new SiteImporterModule(
+        SiteImporterModule.DEFAULT_IMPORT_THREADS, true);
+    importSite(importerModule, copy);
+    int numEntries = copy.getEntries().size();
+    int numInserts = copy.getNumRequests(Request.INSERT);
+    int numBatches = copy.getNumRequests(Request.BATCH);
+    importSite(importerModule, copy);
+    assertEquals(numEntries, copy.getEntries().size());
+    assertEquals(numInserts, copy.getNumRequests(Request.INSERT));
+    assertEquals(numBatches, copy.getNumRequests(Request.BATCH));
+    assertEquals(0, copy.getNumRequests(Request.UPDATE));
+    File page = new File(root, "page-0/index.html");
+    Files.append("\n", page, Charsets.UTF_8);
+    importSite(importerModule, copy);
+    assertEquals(numEntries, copy.getEntries().size());
+    assertEquals(numInserts, copy.getNumRequests(Request.INSERT));
+    // The changed page and its attachment.
+    assertEquals(2, copy.getNumRequests(Request.UPDATE));
+    assertEquals(0, copy.getNumErrors());
+  }
+
+  @Test
+  public void testExportWithErrors() throws IOException {
+    fakeSite.setErrorRate(0.05, 42);
+    exportSite(fakeSite, false);
+    assertTrue(fakeSite.getNumErrors() > 0);
+    assertTrue(new File(root, "page-0/index.html").isFile());
+  }
+
+  private void checkImport(SiteImporterModule importerModule,
+      long latencyMillis) throws IOException {
+    exportSite(fakeSite, false);
+    FakeSite copy = new FakeSite(new URL(
+        "https://" + SyntheticSite.HOST + "/feeds/content/site/copy"))
+        .setLatency(latencyMillis);
+    importSite(importerModule, copy);
+    Multiset<EntryType> types = HashMultiset.create();
+    for (BaseContentEntry<?> entry : site.newEntries()) {
+      types.add(getType(entry));
+      if (isPage(entry)) {
+        BaseContentEntry<?> page = copy.getEntryByPath(
+            "/" + entryStore.getPath(entry.getId()));
+        assertNotNull(page);
+        assertEquals(entry.getTitle().getPlainText(),
+            page.getTitle().getPlainText());
+        assertEquals(((BasePageEntry<?>) entry).getPageName().getValue(),
+            ((BasePageEntry<?>) page).getPageName().getValue());
+      } else if (entry instanceof AttachmentEntry) {
+        BaseContentEntry<?> attachment = copy.getEntryByPath("/"
+            + entryStore.getPath(EntryUtils.getParentId(entry)) + "/"
+            + entry.getTitle().getPlainText().replaceAll(" ", "%20"));
+        assertNotNull(attachment);
+        assertTrue(Arrays.equals(
+            SyntheticSite.getAttachmentData((AttachmentEntry) entry),
+            copy.getMedia(((OutOfLineContent) attachment.getContent())
+                .getUri())));
+      }
+    }
+    Multiset<EntryType> copiedTypes = HashMultiset.create();
+    for (BaseContentEntry<?> entry : copy.getEntries()) {
+      copiedTypes.add(getType(entry));
+    }
+    assertEquals(types, copiedTypes);
+    int numBatched = types.count(EntryType.COMMENT)
+        + types.count(EntryType.LIST_ITEM);
+    assertEquals(types.size() - numBatched,
+        copy.getNumRequests(Request.INSERT));
+    assertTrue(copy.getNumRequests(Request.BATCH) > 0);
+    assertTrue(copy.getNumRequests(Request.BATCH) < numBatched);
+    assertEquals(0, copy.getNumRequests(Request.UPDATE));
+    assertTrue(copy.getNumRequests(Request.QUERY) < NUM_PAGES);
+    assertEquals(0, copy.getNumRequests(Request.GET));
+    assertEquals(0, copy.getNumErrors());
+  }
+
+  private void importSite(SiteImporterModule importerModule, FakeSite copy) {
+    Guice.createInjector(importerModule, new FakeSiteModule(copy))
+        .getInstance(SiteImporter.class).importSite(SyntheticSite.HOST, null,
+            "copy", false, new SitesService("test"), root,
+            new NullProgressListener());
+  }
+
+  private void exportSite(FakeSite fakeSite, boolean exportRevisions) {
+    Guice.createInjector(new SiteExporterModule(), new FakeSiteModule(fakeSite))
+        .getInstance(SiteExporter.class).exportSite(SyntheticSite.HOST, null,
+            SyntheticSite.WEBSPACE, exportRevisions, new SitesService("test"),
+            root, new NullProgressListener());
+  }
+
+  private static class NullProgressListener implements ProgressListener {
+
+    private String status;
+    private double progress;
+
+    @Override
+    public String getStatus() {
+      return status;
+    }
+
+    @Override
+    public double getProgress() {
+      return progress;
+    }
+
+    @Override
+    public void setStatus(String status) {
+      this.status = status;
+    }
+
+    @Override
+    public void setProgress(double progress) {
+      this.progress = progress;
+    }
+  }
+}
@@ -0,0 +1,65 @@
+/*
+ * Copyright (C) 2009 Google Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.google.sites.liberation.export;
+
+import static org.junit.Assert.*;
+
+import com.google.common.collect.Lists;
+import com.google.gdata.data.sites.BaseContentEntry;
+import com.google.gdata.data.sites.Revision;
+import com.google.gdata.data.sites.WebPageEntry;
+
+import org.junit.Test;
+
+import java.util.List;
+
+public class SnapshotMergerTest {
+
+  @Test
+  public void testMerge() {
+    List<BaseContentEntry<?>> snapshot = Lists.newArrayList();
+    snapshot.add(getPage("page1", 1));
+    snapshot.add(getPage("page2", 1));
+    snapshot.add(getPage("page3", 1));
+    List<BaseContentEntry<?>> changes = Lists.newArrayList();
+    changes.add(getPage("page4", 1));
+    changes.add(getPage("page2", 2));
+    List<BaseContentEntry<?>> merged = Lists.newArrayList(
+        new SnapshotMerger(snapshot, changes));
+    assertEquals(4, merged.size());
+    assertSame(snapshot.get(0), merged.get(0));
+    assertSame(changes.get(1), merged.get(1));
+    assertSame(snapshot.get(2), merged.get(2));
+    assertSame(changes.get(0), merged.get(3));
+  }
+
+  @Test
+  public void testNoChanges() {
+    List<BaseContentEntry<?>> snapshot = Lists.newArrayList();
+    snapshot.add(getPage("page1", 1));
+    List<BaseContentEntry<?>> merged = Lists.newArrayList(
+        new SnapshotMerger(snapshot, Lists.<BaseContentEntry<?>>newArrayList()));
+    assertEquals(snapshot, merged);
+  }
+
+  private WebPageEntry getPage(String id, int revision) {
+    WebPageEntry entry = new WebPageEntry();
+    entry.setId(id);
+    entry.setRevision(new Revision(revision));
+    return entry;
+  }
+}
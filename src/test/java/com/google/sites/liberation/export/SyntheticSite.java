@@ -0,0 +1,327 @@
+/*
+ * Copyright (C) 2009 Google Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.google.sites.liberation.export;
+
+import static com.google.common.base.Preconditions.checkArgument;
+import static com.google.sites.liberation.util.EntryType.isPage;
+
+import com.google.common.base.Charsets;
+import com.google.common.collect.Lists;
+import com.google.common.io.Files;
+import com.google.gdata.data.DateTime;
+import com.google.gdata.data.OutOfLineContent;
+import com.google.gdata.data.Person;
+import com.google.gdata.data.PlainTextConstruct;
+import com.google.gdata.data.sites.AttachmentEntry;
+import com.google.gdata.data.sites.BaseContentEntry;
+import com.google.gdata.data.sites.BasePageEntry;
+import com.google.gdata.data.sites.CommentEntry;
+import com.google.gdata.data.sites.ListItemEntry;
+import com.google.gdata.data.sites.ListPageEntry;
+import com.google.gdata.data.sites.PageName;
+import com.google.gdata.data.sites.Revision;
+import com.google.gdata.data.sites.WebPageEntry;
+import com.google.gdata.data.spreadsheet.Column;
+import com.google.gdata.data.spreadsheet.Data;
+import com.google.gdata.data.spreadsheet.Field;
+import com.google.gdata.util.ContentType;
+import com.google.inject.Guice;
+import com.google.inject.Injector;
+import com.google.sites.liberation.util.EntryUtils;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.UnsupportedEncodingException;
+import java.io.Writer;
+import java.net.URL;
+import java.util.List;
+
+/**
+ * Generates a synthetic site of a given size and depth, for tests and
+ * benchmarks.
+ *
+ * <p>The site has {@code numPages} pages, of which every fourth is a list
+ * page with a few list items, and the rest are web pages. The pages form
+ * trees {@code depth} levels deep below the top-level pages. Every page has
+ * a comment and the given number of attachments and revisions, and its 
+ * content links to its parent and to a top-level page by their absolute 
+ * urls, as a site returned by the feed does. The same arguments always 
+ * generate the same site.</p>
+ */
+public final class SyntheticSite {
+
+  /** The host of the synthetic site. */
+  public static final String HOST = "sites.google.com";
+
+  /** The webspace of the synthetic site. */
+  public static final String WEBSPACE = "synthetic";
+
+  /** The url of the synthetic site, which its absolute links start with. */
+  public static final String SITE_URL = "https://" + HOST + "/site/" 
+      + WEBSPACE;
+
+  /** The url of the content feed of the synthetic site. */
+  public static final String FEED_URL = "https://" + HOST 
+      + "/feeds/content/site/" + WEBSPACE;
+
+  private static final DateTime UPDATED =
+      DateTime.parseDateTime("2009-08-06T16:08:12.107Z");
+  private static final int LIST_ITEMS_PER_LIST = 5;
+  private static final int PARAGRAPHS_PER_PAGE = 5;
+
+  private final int numPages;
+  private final int numTopLevelPages;
+  private final int attachmentsPerPage;
+  private final int revisionsPerPage;
+
+  /**
+   * Creates a new synthetic site with the given number of pages, nested
+   * the given number of levels below the top-level pages, without 
+   * attachments or earlier revisions.
+   */
+  public SyntheticSite(int numPages, int depth) {
+    this(numPages, depth, 0, 1);
+  }
+
+  /**
+   * Creates a new synthetic site with the given number of pages, nested
+   * the given number of levels below the top-level pages, each with the 
+   * given number of attachments and of revisions, including the current one.
+   */
+  public SyntheticSite(int numPages, int depth, int attachmentsPerPage, 
+      int revisionsPerPage) {
+    checkArgument(numPages > 0);
+    checkArgument(depth >= 0);
+    checkArgument(attachmentsPerPage >= 0);
+    checkArgument(revisionsPerPage > 0);
+    this.numPages = numPages;
+    numTopLevelPages = Math.max(1, numPages / (depth + 1));
+    this.attachmentsPerPage = attachmentsPerPage;
+    this.revisionsPerPage = revisionsPerPage;
+  }
+
+  /**
+   * Returns new entries for every page, comment, list item and attachment in 
+   * this site, with every entry after its parent.
+   */
+  public List<BaseContentEntry<?>> newEntries() {
+    List<BaseContentEntry<?>> entries = Lists.newArrayList();
+    for (int i = 0; i < numPages; i++) {
+      BasePageEntry<?> page = newPage(i, revisionsPerPage);
+      entries.add(page);
+      CommentEntry comment = new CommentEntry();
+      initEntry(comment, "comment" + i, "page" + i);
+      EntryUtils.setContent(comment, "<div>Comment on page " + i + "</div>");
+      entries.add(comment);
+      if (page instanceof ListPageEntry) {
+        for (int j = 0; j < LIST_ITEMS_PER_LIST; j++) {
+          ListItemEntry item = new ListItemEntry();
+          initEntry(item, "item" + i + '-' + j, "page" + i);
+          item.addField(new Field("A", "Name", "Item " + j + " <b>" + j + "</b>"));
+          item.addField(new Field("B", "Done", (j % 2 == 0) ? "on" : ""));
+          entries.add(item);
+        }
+      }
+      for (int j = 0; j < attachmentsPerPage; j++) {
+        AttachmentEntry attachment = new AttachmentEntry();
+        initEntry(attachment, "attachment" + i + '-' + j, "page" + i);
+        attachment.setTitle(new PlainTextConstruct("file " + i + '-' + j 
+            + ".txt"));
+        OutOfLineContent content = new OutOfLineContent();
+        content.setUri(SITE_URL + "/_/media/" + i + '-' + j);
+        content.setMimeType(new ContentType("text/plain"));
+        attachment.setContent(content);
+        entries.add(attachment);
+      }
+    }
+    return entries;
+  }
+
+  /**
+   * Returns new entries for every revision of the given page of this site, 
+   * from the first to the current one.
+   */
+  public List<BaseContentEntry<?>> newRevisions(int page) {
+    checkArgument(page >= 0 && page < numPages);
+    List<BaseContentEntry<?>> revisions = Lists.newArrayList();
+    for (int revision = 1; revision <= revisionsPerPage; revision++) {
+      revisions.add(newPage(page, revision));
+    }
+    return revisions;
+  }
+
+  /**
+   * Returns the data of the given attachment of this site.
+   */
+  public static byte[] getAttachmentData(AttachmentEntry attachment) {
+    String uri = ((OutOfLineContent) attachment.getContent()).getUri();
+    StringBuilder data = new StringBuilder();
+    for (int i = 0; i < 16; i++) {
+      data.append("Data of ").append(uri).append(".\n");
+    }
+    try {
+      return data.toString().getBytes("UTF-8");
+    } catch (UnsupportedEncodingException e) {
+      throw new RuntimeException(e);
+    }
+  }
+
+  /**
+   * Returns a new {@link FakeSite} serving this site, with its revisions and
+   * the data of its attachments.
+   */
+  public FakeSite newFakeSite() throws IOException {
+    FakeSite fakeSite = new FakeSite(new URL(FEED_URL));
+    for (BaseContentEntry<?> entry : newEntries()) {
+      fakeSite.addEntry(entry);
+      if (entry instanceof AttachmentEntry) {
+        AttachmentEntry attachment = (AttachmentEntry) entry;
+        fakeSite.addMedia(((OutOfLineContent) attachment.getContent())
+            .getUri(), getAttachmentData(attachment));
+      }
+    }
+    for (int i = 0; i < numPages; i++) {
+      for (BaseContentEntry<?> revision : newRevisions(i)) {
+        fakeSite.addRevision(revision);
+      }
+    }
+    return fakeSite;
+  }
+
+  /**
+   * Returns a new {@link EntryStore} holding new entries for this site.
+   */
+  public EntryStore newEntryStore() {
+    EntryStore entryStore = new InMemoryEntryStore();
+    for (BaseContentEntry<?> entry : newEntries()) {
+      entryStore.addEntry(entry);
+    }
+    return entryStore;
+  }
+
+  /**
+   * Exports every page of this site to an index.html file in the given
+   * directory, the way a site export lays them out, and returns the files.
+   */
+  public List<File> exportTo(File rootDirectory) throws IOException {
+    Injector injector = Guice.createInjector(new SiteExporterModule());
+    AbsoluteLinkConverter linkConverter =
+        injector.getInstance(AbsoluteLinkConverter.class);
+    PageExporter pageExporter = injector.getInstance(PageExporter.class);
+    EntryStore entryStore = newEntryStore();
+    List<BaseContentEntry<?>> pages = Lists.newArrayList();
+    for (BaseContentEntry<?> entry : newEntries()) {
+      if (isPage(entry)) {
+        pages.add(entryStore.getEntry(entry.getId()));
+      }
+    }
+    URL siteUrl = new URL(SITE_URL);
+    for (BaseContentEntry<?> page : pages) {
+      linkConverter.convertLinks(page, entryStore, siteUrl, false);
+    }
+    List<File> files = Lists.newArrayList();
+    for (BaseContentEntry<?> page : pages) {
+      File directory = new File(rootDirectory,
+          entryStore.getPath(page.getId()));
+      directory.mkdirs();
+      File file = new File(directory, "index.html");
+      Writer out = Files.newWriter(file, Charsets.UTF_8);
+      try {
+        pageExporter.exportPage(page, entryStore, out, false);
+      } finally {
+        out.close();
+      }
+      files.add(file);
+    }
+    return files;
+  }
+
+  private BasePageEntry<?> newPage(int i, int revision) {
+    BasePageEntry<?> page;
+    if (i % 4 == 3) {
+      page = newListPage();
+    } else {
+      page = new WebPageEntry();
+    }
+    initEntry(page, "page" + i, (i < numTopLevelPages)
+        ? null : "page" + (i - numTopLevelPages));
+    page.setRevision(new Revision(revision));
+    page.setTitle(new PlainTextConstruct("Page " + i + " & \"more\""));
+    page.setPageName(new PageName("page-" + i));
+    EntryUtils.setContent(page, getContent(i, revision));
+    return page;
+  }
+
+  /**
+   * Returns the site-relative path of the given page, without a leading 
+   * slash.
+   */
+  private String getPath(int i) {
+    String path = "page-" + i;
+    while (i >= numTopLevelPages) {
+      i -= numTopLevelPages;
+      path = "page-" + i + '/' + path;
+    }
+    return path;
+  }
+
+  private String getContent(int i, int revision) {
+    StringBuilder builder = new StringBuilder("<div>");
+    if (revision < revisionsPerPage) {
+      builder.append("<p>Revision ").append(revision).append(".</p>");
+    }
+    for (int j = 0; j < PARAGRAPHS_PER_PAGE; j++) {
+      builder.append("<p>Paragraph ").append(j).append(" of page ").append(i);
+      if (i >= numTopLevelPages) {
+        builder.append(", below <a href=\"").append(SITE_URL).append('/')
+            .append(getPath(i - numTopLevelPages))
+            .append("\">its parent</a>");
+      }
+      builder.append(", next to <a href=\"").append(SITE_URL).append("/page-")
+          .append((i + j) % numTopLevelPages).append("\">a top-level page</a>")
+          .append(".</p>");
+    }
+    return builder.append("</div>").toString();
+  }
+
+  private static ListPageEntry newListPage() {
+    ListPageEntry page = new ListPageEntry();
+    Data data = new Data();
+    data.setStartIndex(1);
+    Column name = new Column();
+    name.setIndex("A");
+    name.setName("Name");
+    data.addColumn(name);
+    Column done = new Column();
+    done.setIndex("B");
+    done.setName("Done");
+    data.addColumn(done);
+    page.setData(data);
+    return page;
+  }
+
+  private static void initEntry(BaseContentEntry<?> entry, String id,
+      String parentId) {
+    entry.setId(FEED_URL + '/' + id);
+    if (parentId != null) {
+      EntryUtils.setParentId(entry, FEED_URL + '/' + parentId);
+    }
+    entry.setUpdated(UPDATED);
+    entry.setRevision(new Revision(1));
+    entry.getAuthors().add(new Person("Author", null, "author@example.com"));
+  }
+}
@@ -0,0 +1,97 @@
+/*
+ * Copyright (C) 2009 Google Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.google.sites.liberation.imprt;
+
+import static com.google.sites.liberation.imprt.ContentFingerprinter.getLocalFingerprint;
+import static com.google.sites.liberation.imprt.ContentFingerprinter.getRemoteFingerprint;
+import static org.junit.Assert.*;
+
+import com.google.gdata.data.PlainTextConstruct;
+import com.google.gdata.data.XhtmlTextConstruct;
+import com.google.gdata.data.sites.BaseContentEntry;
+import com.google.gdata.data.sites.CommentEntry;
+import com.google.gdata.data.sites.ListItemEntry;
+import com.google.gdata.data.sites.WebPageEntry;
+import com.google.gdata.data.spreadsheet.Field;
+import com.google.gdata.util.XmlBlob;
+
+import org.junit.Test;
+
+/**
+ * @author bsimon@google.com (Benjamin Simon)
+ */
+public class ContentFingerprinterTest {
+
+  @Test
+  public void testComment() {
+    XmlBlob blob = new XmlBlob();
+    blob.setBlob("<div>hi &amp;\n  <b>bye</b> </div>");
+    CommentEntry remote = new CommentEntry();
+    remote.setContent(new XhtmlTextConstruct(blob));
+    assertEquals(getRemoteFingerprint(remote),
+        getLocalFingerprint(newComment("hi & bye")));
+    assertEquals(getLocalFingerprint(remote),
+        getLocalFingerprint(newComment(" hi &  bye")));
+    assertFalse(getRemoteFingerprint(remote).equals(
+        getLocalFingerprint(newComment("hi & by"))));
+  }
+
+  @Test
+  public void testListItem() {
+    ListItemEntry remote = newListItem("Item <b>1</b> &lt; 2", "", "on");
+    ListItemEntry local = newListItem("Item 1 < 2", " ", "on");
+    assertEquals(getRemoteFingerprint(remote), getLocalFingerprint(local));
+    assertFalse(getRemoteFingerprint(remote).equals(
+        getLocalFingerprint(newListItem("Item 1 < 2", "x", "on"))));
+    assertFalse(getRemoteFingerprint(remote).equals(
+        getLocalFingerprint(newListItem("Item 1 < 2", "on", " "))));
+  }
+
+  @Test
+  public void testListItemColumnOrder() {
+    ListItemEntry reordered = new ListItemEntry();
+    reordered.addField(new Field("C", "Done", "on"));
+    reordered.addField(new Field("A", "Name", "a"));
+    reordered.addField(new Field("B", "Notes", "b"));
+    assertEquals(getLocalFingerprint(newListItem("a", "b", "on")),
+        getLocalFingerprint(reordered));
+  }
+
+  @Test
+  public void testKindsDiffer() {
+    ListItemEntry item = new ListItemEntry();
+    assertFalse(getLocalFingerprint(newComment("")).equals(
+        getLocalFingerprint(item)));
+    BaseContentEntry<?> page = new WebPageEntry();
+    assertNull(getLocalFingerprint(page));
+    assertNull(getRemoteFingerprint(page));
+  }
+
+  private CommentEntry newComment(String text) {
+    CommentEntry comment = new CommentEntry();
+    comment.setContent(new PlainTextConstruct(text));
+    return comment;
+  }
+
+  private ListItemEntry newListItem(String name, String notes, String done) {
+    ListItemEntry item = new ListItemEntry();
+    item.addField(new Field("A", "Name", name));
+    item.addField(new Field("B", "Notes", notes));
+    item.addField(new Field("C", "Done", done));
+    return item;
+  }
+}
@@ -0,0 +1,116 @@
+/*
+ * Copyright (C) 2009 Google Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.google.sites.liberation.imprt;
+
+import static org.junit.Assert.*;
+
+import com.google.common.collect.Lists;
+import com.google.gdata.client.sites.SitesService;
+import com.google.gdata.data.batch.BatchStatus;
+import com.google.gdata.data.batch.BatchUtils;
+import com.google.gdata.data.sites.BaseContentEntry;
+import com.google.gdata.data.sites.CommentEntry;
+import com.google.gdata.data.sites.ContentFeed;
+import com.google.gdata.util.ServiceException;
+
+import org.jmock.Expectations;
+import org.jmock.Mockery;
+import org.jmock.integration.junit4.JUnit4Mockery;
+import org.jmock.lib.legacy.ClassImposteriser;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.net.URL;
+import java.util.List;
+
+public class EntryBatchInserterImplTest {
+
+  private Mockery context;
+  private SitesService sitesService;
+  private EntryBatchInserter entryBatchInserter;
+  private URL feedUrl;
+  
+  @Before
+  public void before() throws IOException {
+    context = new JUnit4Mockery() {{
+      setImposteriser(ClassImposteriser.INSTANCE);
+    }};
+    sitesService = context.mock(SitesService.class);
+    entryBatchInserter = new EntryBatchInserterImpl();
+    feedUrl = new URL("http://sites.google.com/feeds/content/site/test");
+  }
+  
+  @Test
+  public void testInsertEntries() throws IOException, ServiceException {
+    final List<BaseContentEntry<?>> entries = Lists.newArrayList();
+    for (int i = 0; i < 5; i++) {
+      entries.add(new CommentEntry());
+    }
+    final ContentFeed response = new ContentFeed();
+    response.getEntries().add(newResult("2", 201, "inserted2"));
+    response.getEntries().add(newResult("1", 409, null));
+    response.getEntries().add(newResult("0", 201, "inserted0"));
+    response.getEntries().add(newResult("3", 503, null));
+    context.checking(new Expectations() {{
+      oneOf (sitesService).batch(
+          with(new URL(feedUrl.toExternalForm() + "/batch")), 
+          with(any(ContentFeed.class)));
+        will(returnValue(response));
+    }});
+    
+    List<BatchInsertResult> results = 
+        entryBatchInserter.insertEntries(entries, feedUrl, sitesService);
+    assertEquals(5, results.size());
+    assertEquals("inserted0", results.get(0).getEntry().getId());
+    assertNull(results.get(1).getEntry());
+    assertFalse(results.get(1).isRetryable());
+    assertEquals("inserted2", results.get(2).getEntry().getId());
+    assertNull(results.get(3).getEntry());
+    assertTrue(results.get(3).isRetryable());
+    assertNull(results.get(4));
+    for (BaseContentEntry<?> entry : entries) {
+      assertNull(BatchUtils.getBatchId(entry));
+      assertNull(BatchUtils.getBatchOperationType(entry));
+    }
+  }
+  
+  @Test(expected = ServiceException.class)
+  public void testInsertEntriesFailure() throws IOException, 
+      ServiceException {
+    final List<BaseContentEntry<?>> entries = Lists.newArrayList();
+    entries.add(new CommentEntry());
+    entries.add(new CommentEntry());
+    context.checking(new Expectations() {{
+      oneOf (sitesService).batch(with(any(URL.class)), 
+          with(any(ContentFeed.class)));
+        will(throwException(new ServiceException("error")));
+    }});
+    
+    entryBatchInserter.insertEntries(entries, feedUrl, sitesService);
+  }
+  
+  private CommentEntry newResult(String batchId, int code, String id) {
+    CommentEntry entry = new CommentEntry();
+    entry.setId(id);
+    BatchUtils.setBatchId(entry, batchId);
+    BatchStatus status = new BatchStatus();
+    status.setCode(code);
+    entry.addExtension(status);
+    return entry;
+  }
+}
@@ -19,15 +19,20 @@ package com.google.sites.liberation.imprt;
 import static org.junit.Assert.*;
 
 import com.google.common.collect.Lists;
-import com.google.gdata.client.sites.ContentQuery;
+import com.google.common.collect.Maps;
+import com.google.gdata.client.Query;
 import com.google.gdata.client.sites.SitesService;
+import com.google.gdata.data.DateTime;
 import com.google.gdata.data.ILink;
 import com.google.gdata.data.sites.BaseContentEntry;
 import com.google.gdata.data.sites.BasePageEntry;
+import com.google.gdata.data.sites.ListItemEntry;
 import com.google.gdata.data.sites.PageName;
 import com.google.gdata.data.sites.WebPageEntry;
+import com.google.gdata.data.spreadsheet.Field;
 import com.google.gdata.util.ServiceException;
 import com.google.sites.liberation.util.EntryProvider;
+import com.google.sites.liberation.util.EntryUtils;
 
 import org.jmock.Expectations;
 import org.jmock.Mockery;
@@ -37,10 +42,12 @@ import org.junit.Before;
 import org.junit.Test;
 
 import java.io.IOException;
+import java.net.HttpURLConnection;
 import java.net.MalformedURLException;
 import java.net.URL;
 import java.util.LinkedList;
 import java.util.List;
+import java.util.Map;
 
 /**
  * @author bsimon@google.com (Benjamin Simon)
@@ -49,10 +56,11 @@ public class EntryUploaderImplTest {
 
   private Mockery context;
   private SitesService sitesService;
+  private FakeBatchInserter entryBatchInserter;
   private EntryInserter entryInserter;
-  private EntryProvider entryProvider;
   private EntryUpdater entryUpdater;
   private EntryUploader entryUploader;
+  private RemoteSiteIndex siteIndex;
   private URL feedUrl;
   
   @Before
@@ -61,12 +69,13 @@ public class EntryUploaderImplTest {
       setImposteriser(ClassImposteriser.INSTANCE);
     }};
     sitesService = context.mock(SitesService.class);
+    entryBatchInserter = new FakeBatchInserter();
     entryInserter = context.mock(EntryInserter.class);
-    entryProvider = context.mock(EntryProvider.class);
     entryUpdater = context.mock(EntryUpdater.class);
     feedUrl = new URL("http://sites.google.com/feeds/content/site/test");
-    entryUploader = new EntryUploaderImpl(entryInserter, entryProvider, 
-        entryUpdater);
+    entryUploader = new EntryUploaderImpl(entryBatchInserter, entryInserter, 
+        entryUpdater, entryBatchInserter, 0);
+    siteIndex = new RemoteSiteIndex();
   }
   
   @Test
@@ -79,22 +88,22 @@ public class EntryUploaderImplTest {
     oldEntry.addLink(ILink.Rel.ENTRY_EDIT, ILink.Type.ATOM, id);
     final BaseContentEntry<?> returnedEntry = new WebPageEntry();
     returnedEntry.setId(id);
+    siteIndex.addEntry(oldEntry);
     
     context.checking(new Expectations() {{
-      oneOf (sitesService).getEntry(new URL(id), WebPageEntry.class);
-        will(returnValue(oldEntry));
       oneOf (entryUpdater).updateEntry(oldEntry, newEntry, sitesService);
         will(returnValue(returnedEntry));
     }});
     
     assertEquals(returnedEntry, entryUploader.uploadEntry(newEntry, 
-        new LinkedList<BasePageEntry<?>>(), feedUrl, sitesService));
+        new LinkedList<BasePageEntry<?>>(), siteIndex, feedUrl, sitesService));
+    assertSame(returnedEntry, siteIndex.getEntry(id));
   }
   
-  @SuppressWarnings("unchecked")
   @Test
   public void testUpdateByPath() throws IOException, ServiceException {
     final BasePageEntry<?> parent = new WebPageEntry();
+    parent.setId(feedUrl.toExternalForm() + "/parent");
     parent.setPageName(new PageName("parent"));
     final BasePageEntry<?> newEntry = new WebPageEntry();
     newEntry.setPageName(new PageName("entry"));
@@ -103,19 +112,20 @@ public class EntryUploaderImplTest {
     final BasePageEntry<?> oldEntry = new WebPageEntry();
     final String id = feedUrl.toExternalForm() + "/entry";
     oldEntry.setId(id);
+    oldEntry.setPageName(new PageName("entry"));
     oldEntry.addLink(ILink.Rel.ENTRY_EDIT, ILink.Type.ATOM, id);
+    EntryUtils.setParentId(oldEntry, parent.getId());
     final BaseContentEntry<?> returnedEntry = new WebPageEntry();
+    siteIndex.addEntry(oldEntry);
+    siteIndex.addEntry(parent);
     
     context.checking(new Expectations() {{
-      allowing (entryProvider).getEntries(with(any(ContentQuery.class)), 
-          with(sitesService)); 
-          will(returnValue(Lists.newArrayList(oldEntry)));
       oneOf (entryUpdater).updateEntry(oldEntry, newEntry, sitesService);
           will(returnValue(returnedEntry));
     }});
     
     assertEquals(returnedEntry, entryUploader.uploadEntry(newEntry, ancestors,
-        feedUrl, sitesService));
+        siteIndex, feedUrl, sitesService));
   }
   
   @Test
@@ -130,17 +140,221 @@ public class EntryUploaderImplTest {
     final String id = feedUrl.toExternalForm() + "/entry";
     oldEntry.setId(id);
     oldEntry.addLink(ILink.Rel.ENTRY_EDIT, ILink.Type.ATOM, id);
+    oldEntry.setPageName(new PageName("other"));
+    siteIndex.addEntry(oldEntry);
     final BaseContentEntry<?> returnedEntry = new WebPageEntry();
     
     context.checking(new Expectations() {{
-      allowing (entryProvider).getEntries(with(any(ContentQuery.class)), 
-          with(sitesService));
-          will(returnValue(Lists.newArrayList()));
       oneOf (entryInserter).insertEntry(newEntry, feedUrl, sitesService);
           will(returnValue(returnedEntry));
     }});
     
     assertEquals(returnedEntry, entryUploader.uploadEntry(newEntry, ancestors,
-        feedUrl, sitesService));
+        siteIndex, feedUrl, sitesService));
+  }
+  
+  @Test
+  public void testUploadEntriesInBatches() throws IOException, 
+      ServiceException {
+    final List<BaseContentEntry<?>> items = newListItems(250);
+    ListItemEntry existing = newListItem("item0");
+    existing.setId(feedUrl.toExternalForm() + "/item0");
+    siteIndex.addEntry(existing);
+    
+    List<BaseContentEntry<?>> returnedEntries = entryUploader.uploadEntries(
+        items, new LinkedList<BasePageEntry<?>>(), siteIndex, feedUrl, 
+        sitesService);
+    assertEquals(items.size(), returnedEntries.size());
+    assertSame(items.get(0), returnedEntries.get(0));
+    for (int i = 1; i < items.size(); i++) {
+      assertEquals("inserted", returnedEntries.get(i).getId());
+    }
+    assertEquals(Lists.newArrayList(EntryUploaderImpl.BATCH_SIZE, 
+        EntryUploaderImpl.BATCH_SIZE, 49), entryBatchInserter.batchSizes);
+  }
+  
+  @Test
+  public void testUploadEntriesRetriesFailures() throws IOException, 
+      ServiceException {
+    final List<BaseContentEntry<?>> items = newListItems(10);
+    entryBatchInserter.failures.put(items.get(3), 1);
+    entryBatchInserter.failures.put(items.get(7), 
+        EntryUploaderImpl.BATCH_ATTEMPTS);
+    
+    List<BaseContentEntry<?>> returnedEntries = entryUploader.uploadEntries(
+        items, new LinkedList<BasePageEntry<?>>(), siteIndex, feedUrl, 
+        sitesService);
+    assertEquals("inserted", returnedEntries.get(3).getId());
+    assertNull(returnedEntries.get(7));
+    assertEquals(Lists.newArrayList(10, 2, 1), 
+        entryBatchInserter.batchSizes);
+  }
+  
+  @Test
+  public void testUploadEntriesSkipsPermanentFailures() {
+    List<BaseContentEntry<?>> items = newListItems(10);
+    entryBatchInserter.failures.put(items.get(3), 1);
+    entryBatchInserter.failureCode = HttpURLConnection.HTTP_CONFLICT;
+    
+    List<BaseContentEntry<?>> returnedEntries = entryUploader.uploadEntries(
+        items, new LinkedList<BasePageEntry<?>>(), siteIndex, feedUrl, 
+        sitesService);
+    assertNull(returnedEntries.get(3));
+    assertEquals(Lists.newArrayList(10), entryBatchInserter.batchSizes);
+  }
+  
+  @Test
+  public void testUploadEntriesChecksInsertsAfterRequestFailure() {
+    List<BaseContentEntry<?>> items = newListItems(10);
+    entryBatchInserter.failRequests = 1;
+    entryBatchInserter.insertFailedRequests = true;
+    
+    List<BaseContentEntry<?>> returnedEntries = entryUploader.uploadEntries(
+        items, new LinkedList<BasePageEntry<?>>(), siteIndex, feedUrl, 
+        sitesService);
+    for (int i = 0; i < items.size(); i++) {
+      assertSame(items.get(i), returnedEntries.get(i));
+    }
+    assertEquals(Lists.newArrayList(10), entryBatchInserter.batchSizes);
+    assertEquals(10, entryBatchInserter.inserted.size());
+  }
+  
+  @Test
+  public void testUploadEntriesRetriesAfterRequestFailure() {
+    List<BaseContentEntry<?>> items = newListItems(10);
+    entryBatchInserter.failRequests = 1;
+    
+    List<BaseContentEntry<?>> returnedEntries = entryUploader.uploadEntries(
+        items, new LinkedList<BasePageEntry<?>>(), siteIndex, feedUrl, 
+        sitesService);
+    for (int i = 0; i < items.size(); i++) {
+      assertEquals("inserted", returnedEntries.get(i).getId());
+    }
+    assertEquals(Lists.newArrayList(10, 10), entryBatchInserter.batchSizes);
+    assertEquals(10, entryBatchInserter.inserted.size());
+  }
+  
+  @Test
+  public void testUploadEntriesUploadsPagesIndividually() 
+      throws IOException, ServiceException {
+    final BasePageEntry<?> page = new WebPageEntry();
+    page.setPageName(new PageName("entry"));
+    final BaseContentEntry<?> returnedEntry = new WebPageEntry();
+    context.checking(new Expectations() {{
+      oneOf (entryInserter).insertEntry(page, feedUrl, sitesService);
+          will(returnValue(returnedEntry));
+    }});
+    
+    List<BaseContentEntry<?>> entries = Lists.newArrayList();
+    entries.add(page);
+    entries.addAll(newListItems(1));
+    List<BaseContentEntry<?>> returnedEntries = entryUploader.uploadEntries(
+        entries, new LinkedList<BasePageEntry<?>>(), siteIndex, feedUrl, 
+        sitesService);
+    assertSame(returnedEntry, returnedEntries.get(0));
+    assertEquals("inserted", returnedEntries.get(1).getId());
+    assertEquals(Lists.newArrayList(1), entryBatchInserter.batchSizes);
+  }
+  
+  @Test
+  public void testUploadEntriesSkipsInsertedEntries() {
+    List<BaseContentEntry<?>> items = newListItems(10);
+    entryUploader.uploadEntries(items, new LinkedList<BasePageEntry<?>>(), 
+        siteIndex, feedUrl, sitesService);
+    List<BaseContentEntry<?>> returnedEntries = entryUploader.uploadEntries(
+        newListItems(10), new LinkedList<BasePageEntry<?>>(), siteIndex, 
+        feedUrl, sitesService);
+    assertEquals(10, returnedEntries.size());
+    assertEquals(Lists.newArrayList(10), entryBatchInserter.batchSizes);
+  }
+  
+  private List<BaseContentEntry<?>> newListItems(int num) {
+    List<BaseContentEntry<?>> items = Lists.newArrayList();
+    for (int i = 0; i < num; i++) {
+      items.add(newListItem("item" + i));
+    }
+    return items;
+  }
+  
+  private ListItemEntry newListItem(String value) {
+    ListItemEntry item = new ListItemEntry();
+    item.addField(new Field("A", "Name", value));
+    EntryUtils.setParentId(item, feedUrl.toExternalForm() + "/list");
+    return item;
+  }
+  
+  /**
+   * Inserts every list item, except that each entry in {@code failures} fails 
+   * the given number of times first, with {@code failureCode}, and the first
+   * {@code failRequests} requests fail as a whole, after inserting their 
+   * entries if {@code insertFailedRequests} is true. Returns the inserted
+   * items for any query.
+   */
+  private static class FakeBatchInserter implements EntryBatchInserter,
+      EntryProvider {
+    
+    final Map<BaseContentEntry<?>, Integer> failures = Maps.newHashMap();
+    final List<Integer> batchSizes = Lists.newArrayList();
+    final List<BaseContentEntry<?>> inserted = Lists.newArrayList();
+    int failureCode = HttpURLConnection.HTTP_UNAVAILABLE;
+    int failRequests;
+    boolean insertFailedRequests;
+    
+    @Override
+    public List<BatchInsertResult> insertEntries(
+        List<BaseContentEntry<?>> entries, URL feedUrl, 
+        SitesService sitesService) throws IOException {
+      batchSizes.add(entries.size());
+      boolean fail = failRequests > 0;
+      if (fail) {
+        failRequests--;
+        if (!insertFailedRequests) {
+          throw new IOException("Connection reset");
+        }
+      }
+      List<BatchInsertResult> results = Lists.newArrayList();
+      for (BaseContentEntry<?> entry : entries) {
+        Integer numFailures = failures.get(entry);
+        if (numFailures != null && numFailures > 0) {
+          failures.put(entry, numFailures - 1);
+          results.add(BatchInsertResult.failed(failureCode));
+        } else {
+          // TODO(gk5885): remove extra cast for
+          // http://bugs.sun.com/bugdatabase/view_bug.do?bug_id=6302214
+          ListItemEntry item = (ListItemEntry) (BaseContentEntry) entry;
+          ListItemEntry inserted = new ListItemEntry();
+          inserted.setId("inserted");
+          inserted.getFields().addAll(item.getFields());
+          EntryUtils.setParentId(inserted, EntryUtils.getParentId(item));
+          this.inserted.add(inserted);
+          results.add(BatchInsertResult.inserted(inserted));
+        }
+      }
+      if (fail) {
+        throw new IOException("Connection reset");
+      }
+      return results;
+    }
+    
+    @Override
+    public List<BaseContentEntry<?>> getEntries(Query query, 
+        SitesService sitesService) {
+      int fromIndex = Math.min(query.getStartIndex() - 1, inserted.size());
+      return Lists.newArrayList(inserted.subList(fromIndex, 
+          Math.min(fromIndex + query.getMaxResults(), inserted.size())));
+    }
+    
+    @SuppressWarnings("unchecked")
+    @Override
+    public BaseContentEntry<?> getEntry(URL entryUrl, 
+        Class<? extends BaseContentEntry> entryClass, 
+        SitesService sitesService) {
+      throw new UnsupportedOperationException();
+    }
+    
+    @Override
+    public DateTime getUpdated(Query query, SitesService sitesService) {
+      throw new UnsupportedOperationException();
+    }
   }
 }
@@ -0,0 +1,177 @@
+/*
+ * Copyright (C) 2009 Google Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.google.sites.liberation.imprt;
+
+import static org.junit.Assert.*;
+
+import com.google.common.base.Charsets;
+import com.google.common.collect.Lists;
+import com.google.common.io.Files;
+import com.google.gdata.data.DateTime;
+import com.google.gdata.data.sites.BasePageEntry;
+import com.google.gdata.data.sites.PageName;
+import com.google.gdata.data.sites.WebPageEntry;
+import com.google.sites.liberation.util.EntryUtils;
+
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.io.IOException;
+import java.net.URL;
+import java.util.List;
+
+public class ImportManifestTest {
+
+  @Rule
+  public TemporaryFolder folder = new TemporaryFolder();
+
+  private URL feedUrl;
+  private File directory;
+  private RemoteSiteIndex siteIndex;
+  private BasePageEntry<?> parent;
+  private BasePageEntry<?> page;
+  private List<BasePageEntry<?>> ancestors;
+
+  @Before
+  public void setUp() throws IOException {
+    feedUrl = new URL("https://sites.google.com/feeds/content/site/test");
+    directory = new File(folder.getRoot(), "parent/page");
+    directory.mkdirs();
+    Files.write("page", new File(directory, "index.html"), Charsets.UTF_8);
+    Files.write("data", new File(directory, "file.txt"), Charsets.UTF_8);
+    parent = newPage("parent", null);
+    page = newPage("page", parent.getId());
+    siteIndex = new RemoteSiteIndex();
+    siteIndex.addEntry(parent);
+    siteIndex.addEntry(page);
+    ancestors = Lists.<BasePageEntry<?>>newArrayList(parent);
+  }
+
+  @Test
+  public void testUnchangedPage() throws IOException {
+    ImportManifest manifest = newManifest(false);
+    String fingerprint = manifest.getFingerprint(getPageDirectory());
+    assertNull(manifest.getUnchangedPage(directory, fingerprint, ancestors,
+        siteIndex));
+    manifest.pageImported(directory, fingerprint, page);
+    manifest.importCompleted();
+    manifest = newManifest(false);
+    assertEquals(fingerprint, manifest.getFingerprint(getPageDirectory()));
+    assertSame(page, manifest.getUnchangedPage(directory, fingerprint,
+        ancestors, siteIndex));
+  }
+
+  @Test
+  public void testInterruptedSave() throws IOException {
+    ImportManifest manifest = newManifest(false);
+    String fingerprint = manifest.getFingerprint(getPageDirectory());
+    manifest.pageImported(directory, fingerprint, page);
+    manifest.importCompleted();
+    File manifestFile = new File(folder.getRoot(), "_import/manifest.txt");
+    assertTrue(manifestFile.renameTo(
+        new File(folder.getRoot(), "_import/manifest.txt.old")));
+    manifest = newManifest(false);
+    assertSame(page, manifest.getUnchangedPage(directory, fingerprint,
+        ancestors, siteIndex));
+  }
+
+  @Test
+  public void testChangedFile() throws IOException {
+    ImportManifest manifest = newManifest(false);
+    manifest.pageImported(directory,
+        manifest.getFingerprint(getPageDirectory()), page);
+    Files.append("!", new File(directory, "file.txt"), Charsets.UTF_8);
+    String fingerprint = manifest.getFingerprint(getPageDirectory());
+    assertNull(manifest.getUnchangedPage(directory, fingerprint, ancestors,
+        siteIndex));
+  }
+
+  @Test
+  public void testChangedRevision() throws IOException {
+    File revisions = new File(directory, "_revisions");
+    revisions.mkdirs();
+    Files.write("revision", new File(revisions, "1.html"), Charsets.UTF_8);
+    ImportManifest manifest = newManifest(true);
+    manifest.pageImported(directory, manifest.getFingerprint(
+        getPageDirectory()), page);
+    Files.append("!", new File(revisions, "1.html"), Charsets.UTF_8);
+    String fingerprint = manifest.getFingerprint(getPageDirectory());
+    assertNull(manifest.getUnchangedPage(directory, fingerprint, ancestors,
+        siteIndex));
+  }
+
+  @Test
+  public void testChangedRemotePage() throws IOException {
+    ImportManifest manifest = newManifest(false);
+    String fingerprint = manifest.getFingerprint(getPageDirectory());
+    manifest.pageImported(directory, fingerprint, page);
+    BasePageEntry<?> updated = newPage("page", parent.getId());
+    updated.setUpdated(DateTime.now());
+    siteIndex.addEntry(updated);
+    assertNull(manifest.getUnchangedPage(directory, fingerprint, ancestors,
+        siteIndex));
+    siteIndex.addEntry(page);
+    assertNull("A changed page should be forgotten.",
+        manifest.getUnchangedPage(directory, fingerprint, ancestors,
+            siteIndex));
+  }
+
+  @Test
+  public void testChangedParent() throws IOException {
+    ImportManifest manifest = newManifest(false);
+    String fingerprint = manifest.getFingerprint(getPageDirectory());
+    manifest.pageImported(directory, fingerprint, page);
+    List<BasePageEntry<?>> otherAncestors =
+        Lists.<BasePageEntry<?>>newArrayList(newPage("other", null));
+    assertNull(manifest.getUnchangedPage(directory, fingerprint,
+        otherAncestors, siteIndex));
+  }
+
+  @Test
+  public void testDifferentSettings() throws IOException {
+    ImportManifest manifest = newManifest(false);
+    String fingerprint = manifest.getFingerprint(getPageDirectory());
+    manifest.pageImported(directory, fingerprint, page);
+    manifest.importCompleted();
+    manifest = newManifest(true);
+    assertNull(manifest.getUnchangedPage(directory, fingerprint, ancestors,
+        siteIndex));
+  }
+
+  private ImportPlan.PageDirectory getPageDirectory() {
+    return new ImportPlan(directory.getParentFile()).getRootPages().get(0);
+  }
+
+  private ImportManifest newManifest(boolean importRevisions)
+      throws IOException {
+    return new ImportManifest(folder.getRoot(), feedUrl, importRevisions);
+  }
+
+  private BasePageEntry<?> newPage(String name, String parentId) {
+    BasePageEntry<?> page = new WebPageEntry();
+    page.setId(feedUrl.toExternalForm() + "/" + name);
+    page.setPageName(new PageName(name));
+    page.setUpdated(DateTime.parseDateTime("2009-07-01T00:00:00.000Z"));
+    if (parentId != null) {
+      EntryUtils.setParentId(page, parentId);
+    }
+    return page;
+  }
+}
@@ -0,0 +1,93 @@
+/*
+ * Copyright (C) 2009 Google Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.google.sites.liberation.imprt;
+
+import static org.junit.Assert.*;
+
+import com.google.common.collect.Lists;
+
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.List;
+
+public class ImportPlanTest {
+
+  @Rule
+  public TemporaryFolder folder = new TemporaryFolder();
+
+  private File root;
+
+  @Before
+  public void setUp() throws IOException {
+    root = folder.getRoot();
+    newFile("b/index.html");
+    newFile("b/file.txt");
+    newFile("b/child/index.html");
+    newFile("b/_revisions/1.html");
+    newFile("b/_revisions/2.html");
+    newFile("b/_revisions/4.html");
+    newFile("a/index.html");
+    newFile("a/attachments/file.txt");
+    newFile("_import/index.html");
+    newFile("empty/file.txt");
+    newFile("index.html");
+  }
+
+  @Test
+  public void testPages() {
+    ImportPlan plan = new ImportPlan(root);
+    assertEquals(3, plan.getNumPages());
+    assertEquals(Lists.newArrayList(new File(root, "a"), new File(root, "b")),
+        getDirectories(plan.getRootPages()));
+    assertEquals(Lists.newArrayList(new File(root, "a"), new File(root, "b"),
+        new File(root, "b/child")), getDirectories(plan.getPages()));
+    assertTrue(plan.getPages().get(0).getChildren().isEmpty());
+    assertEquals(Lists.newArrayList(new File(root, "b/child")),
+        getDirectories(plan.getPages().get(1).getChildren()));
+  }
+
+  @Test
+  public void testFiles() {
+    ImportPlan.PageDirectory page = new ImportPlan(root).getPages().get(1);
+    assertEquals(new File(root, "b/index.html"), page.getPageFile());
+    assertEquals(Lists.newArrayList(new File(root, "b/file.txt"),
+        new File(root, "b/index.html")), page.getFiles());
+    assertEquals(Lists.newArrayList(new File(root, "b/_revisions/1.html"),
+        new File(root, "b/_revisions/2.html")), page.getRevisionFiles());
+    assertTrue(new ImportPlan(root).getPages().get(0).getRevisionFiles()
+        .isEmpty());
+  }
+
+  private List<File> getDirectories(List<ImportPlan.PageDirectory> pages) {
+    List<File> directories = Lists.newArrayList();
+    for (ImportPlan.PageDirectory page : pages) {
+      directories.add(page.getDirectory());
+    }
+    return directories;
+  }
+
+  private void newFile(String path) throws IOException {
+    File file = new File(root, path);
+    file.getParentFile().mkdirs();
+    file.createNewFile();
+  }
+}
@@ -0,0 +1,258 @@
+/*
+ * Copyright (C) 2009 Google Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.google.sites.liberation.imprt;
+
+import static org.junit.Assert.*;
+
+import com.google.common.collect.Lists;
+import com.google.common.collect.Sets;
+import com.google.gdata.client.sites.SitesService;
+import com.google.gdata.data.sites.BaseContentEntry;
+import com.google.gdata.data.sites.BasePageEntry;
+import com.google.gdata.data.sites.WebPageEntry;
+import com.google.sites.liberation.parsers.PageParser;
+import com.google.sites.liberation.util.ProgressListener;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.io.IOException;
+import java.net.URL;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.Executor;
+
+public class PageImportSchedulerTest {
+
+  private static final int NUM_THREADS = 4;
+  private static final int ENTRIES_PER_PAGE = 2;
+
+  @Rule
+  public TemporaryFolder folder = new TemporaryFolder();
+
+  private FakePageImporter pageImporter;
+  private FakeProgressListener progressListener;
+  private PageImportScheduler scheduler;
+  private List<File> pageDirectories;
+
+  @Before
+  public void setUp() throws IOException {
+    pageImporter = new FakePageImporter();
+    progressListener = new FakeProgressListener();
+    scheduler = new PageImportScheduler(pageImporter, NUM_THREADS, false,
+        new RemoteSiteIndex(), null,
+        new URL("https://sites.google.com/feeds/content/site/test"),
+        new URL("https://sites.google.com/site/test"),
+        new SitesService(""),
+        new PageParseStage(new FakePageParser(), 1, 1));
+    pageDirectories = Lists.newArrayList();
+    for (int i = 0; i < 3; i++) {
+      File page = newPage(folder.getRoot(), "page" + i);
+      for (int j = 0; j < 3; j++) {
+        File child = newPage(page, "child" + j);
+        for (int k = 0; k < 2; k++) {
+          newPage(child, "grandchild" + k);
+        }
+      }
+    }
+    new File(folder.getRoot(), "page0/_revisions").mkdirs();
+    new File(folder.getRoot(), "page1/attachments").mkdirs();
+  }
+
+  @After
+  public void tearDown() {
+    scheduler.shutdown();
+  }
+
+  @Test
+  public void testImportsEverythingAfterItsParent() {
+    scheduleTopLevelPages();
+    scheduler.awaitCompletion(progressListener, pageDirectories.size());
+    assertEquals(Sets.newHashSet(pageDirectories),
+        pageImporter.getImportedDirectories());
+    assertEquals(pageDirectories.size() * ENTRIES_PER_PAGE,
+        pageImporter.getNumEntries());
+    assertEquals(0, pageImporter.getNumOutOfOrder());
+    assertEquals(1.0, progressListener.getProgress(), 0.0001);
+  }
+
+  @Test
+  public void testConcurrencyLimit() {
+    scheduleTopLevelPages();
+    scheduler.awaitCompletion(progressListener, pageDirectories.size());
+    assertTrue(pageImporter.getMaxConcurrentUploads() > 1);
+    assertTrue(pageImporter.getMaxConcurrentUploads() <= NUM_THREADS);
+  }
+
+  @Test
+  public void testSkipsChildrenOfFailedPages() {
+    File failed = new File(folder.getRoot(), "page2");
+    pageImporter.fail(failed);
+    scheduleTopLevelPages();
+    scheduler.awaitCompletion(progressListener, pageDirectories.size());
+    for (File directory : pageDirectories) {
+      boolean inFailed = directory.getPath().startsWith(failed.getPath());
+      assertEquals(!inFailed,
+          pageImporter.getImportedDirectories().contains(directory));
+    }
+  }
+
+  private void scheduleTopLevelPages() {
+    List<BasePageEntry<?>> ancestors = Lists.newLinkedList();
+    for (ImportPlan.PageDirectory page
+        : new ImportPlan(folder.getRoot()).getRootPages()) {
+      scheduler.schedule(page, ancestors);
+    }
+  }
+
+  private File newPage(File parent, String name) throws IOException {
+    File directory = new File(parent, name);
+    directory.mkdirs();
+    new File(directory, "index.html").createNewFile();
+    pageDirectories.add(directory);
+    return directory;
+  }
+
+  /**
+   * Imports a page as an entry whose id is the path of its directory, after
+   * checking that its parent has been imported, and uploads a number of
+   * other entries for it on the given executor.
+   */
+  private static class FakePageImporter implements PageImporter {
+
+    private final Set<File> imported = Sets.newHashSet();
+    private final Set<File> failed = Sets.newHashSet();
+    private int numEntries;
+    private int numOutOfOrder;
+    private int numRunning;
+    private int maxRunning;
+
+    synchronized void fail(File directory) {
+      failed.add(directory);
+    }
+
+    @Override
+    public BasePageEntry<?> importPage(
+        ImportPlan.PageDirectory pageDirectory, boolean importRevisions,
+        List<BasePageEntry<?>> ancestors, RemoteSiteIndex siteIndex,
+        ImportManifest manifest, URL feedUrl, URL siteUrl,
+        SitesService sitesService, PageParseStage parseStage,
+        Executor executor) {
+      File directory = pageDirectory.getDirectory();
+      synchronized (this) {
+        String parentId = ancestors.isEmpty() ? null
+            : ancestors.get(ancestors.size() - 1).getId();
+        File parent = directory.getParentFile();
+        if (parentId == null ? imported.contains(parent)
+            : !(parentId.equals(parent.getPath())
+                && imported.contains(parent))) {
+          numOutOfOrder++;
+        }
+      }
+      upload();
+      synchronized (this) {
+        if (failed.contains(directory)) {
+          return null;
+        }
+        imported.add(directory);
+      }
+      for (int i = 0; i < ENTRIES_PER_PAGE; i++) {
+        executor.execute(new Runnable() {
+          @Override
+          public void run() {
+            upload();
+            synchronized (FakePageImporter.this) {
+              numEntries++;
+            }
+          }
+        });
+      }
+      WebPageEntry page = new WebPageEntry();
+      page.setId(directory.getPath());
+      return page;
+    }
+
+    private void upload() {
+      synchronized (this) {
+        numRunning++;
+        maxRunning = Math.max(maxRunning, numRunning);
+      }
+      try {
+        Thread.sleep(5);
+      } catch (InterruptedException e) {
+        Thread.currentThread().interrupt();
+      }
+      synchronized (this) {
+        numRunning--;
+      }
+    }
+
+    synchronized Set<File> getImportedDirectories() {
+      return Sets.newHashSet(imported);
+    }
+
+    synchronized int getNumEntries() {
+      return numEntries;
+    }
+
+    synchronized int getNumOutOfOrder() {
+      return numOutOfOrder;
+    }
+
+    synchronized int getMaxConcurrentUploads() {
+      return maxRunning;
+    }
+  }
+
+  private static class FakeProgressListener implements ProgressListener {
+
+    private double progress;
+    private String status;
+
+    @Override
+    public double getProgress() {
+      return progress;
+    }
+
+    @Override
+    public String getStatus() {
+      return status;
+    }
+
+    @Override
+    public void setProgress(double progress) {
+      this.progress = progress;
+    }
+
+    @Override
+    public void setStatus(String status) {
+      this.status = status;
+    }
+  }
+
+  private static class FakePageParser implements PageParser {
+
+    @Override
+    public List<BaseContentEntry<?>> parsePage(File file) {
+      throw new UnsupportedOperationException();
+    }
+  }
+}
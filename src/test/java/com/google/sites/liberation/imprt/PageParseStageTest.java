@@ -0,0 +1,222 @@
+/*
+ * Copyright (C) 2009 Google Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.google.sites.liberation.imprt;
+
+import static org.junit.Assert.*;
+
+import com.google.common.base.Charsets;
+import com.google.common.collect.HashMultiset;
+import com.google.common.collect.Lists;
+import com.google.common.collect.Multiset;
+import com.google.common.io.Files;
+import com.google.gdata.data.sites.BaseContentEntry;
+import com.google.gdata.data.sites.WebPageEntry;
+import com.google.sites.liberation.parsers.PageParser;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.List;
+
+public class PageParseStageTest {
+
+  private static final long TIMEOUT_MILLIS = 5000;
+
+  @Rule
+  public TemporaryFolder folder = new TemporaryFolder();
+
+  private FakePageParser pageParser;
+  private PageParseStage parseStage;
+  private File page;
+  private File child;
+  private File revision;
+
+  @Before
+  public void setUp() throws IOException {
+    pageParser = new FakePageParser();
+    page = newPage(folder.getRoot(), "page");
+    child = newPage(new File(folder.getRoot(), "page"), "child");
+    File revisionsDirectory = new File(folder.getRoot(), "page/_revisions");
+    revisionsDirectory.mkdirs();
+    revision = new File(revisionsDirectory, "1.html");
+    Files.write("revision", revision, Charsets.UTF_8);
+    new File(folder.getRoot(), "_import").mkdirs();
+  }
+
+  @After
+  public void tearDown() {
+    if (parseStage != null) {
+      parseStage.shutdown();
+    }
+  }
+
+  @Test
+  public void testParsesAhead() throws InterruptedException {
+    parseStage = new PageParseStage(pageParser, 2, 10);
+    parseStage.start(new ImportPlan(folder.getRoot()), true);
+    pageParser.awaitParsed(3);
+    assertParsed(page);
+    assertParsed(revision);
+    assertParsed(child);
+    assertEquals(3, pageParser.numParsed());
+    assertEquals(0, pageParser.parsedOn(Thread.currentThread()));
+  }
+
+  @Test
+  public void testSkipsRevisions() throws InterruptedException {
+    parseStage = new PageParseStage(pageParser, 2, 10);
+    parseStage.start(new ImportPlan(folder.getRoot()), false);
+    pageParser.awaitParsed(2);
+    assertParsed(page);
+    assertParsed(child);
+    assertParsed(revision);
+    assertEquals(1, pageParser.parsedOn(Thread.currentThread()));
+  }
+
+  @Test
+  public void testParsesDirectlyIfNotStarted() {
+    parseStage = new PageParseStage(pageParser, 2, 10);
+    assertParsed(page);
+    assertParsed(page);
+    assertEquals(2, pageParser.numParsed());
+    assertEquals(2, pageParser.parsedOn(Thread.currentThread()));
+  }
+
+  @Test
+  public void testParsesAtMostCapacityAhead() throws InterruptedException {
+    parseStage = new PageParseStage(pageParser, 2, 1);
+    parseStage.start(new ImportPlan(folder.getRoot()), true);
+    pageParser.awaitParsed(1);
+    Thread.sleep(100);
+    assertEquals(1, pageParser.numParsed());
+    assertParsed(revision);
+    pageParser.awaitParsed(2);
+    assertParsed(page);
+    pageParser.awaitParsed(3);
+    assertParsed(child);
+    assertEquals(0, pageParser.parsedOn(Thread.currentThread()));
+  }
+
+  @Test
+  public void testDiscardedPagesGiveUpCapacity() throws IOException,
+      InterruptedException {
+    for (int i = 0; i < SiteImporterImpl.PARSE_AHEAD; i++) {
+      newPage(folder.getRoot(), "skipped" + i);
+    }
+    File last = newPage(folder.getRoot(), "zzz");
+    ImportPlan plan = new ImportPlan(folder.getRoot());
+    parseStage = new PageParseStage(pageParser, 2,
+        SiteImporterImpl.PARSE_AHEAD);
+    parseStage.start(plan, true);
+    for (ImportPlan.PageDirectory skipped : plan.getPages()) {
+      if (!skipped.getDirectory().equals(last)) {
+        parseStage.discard(skipped);
+      }
+    }
+    pageParser.awaitParsed(last);
+    assertParsed(last);
+    assertEquals(0, pageParser.parsedOn(Thread.currentThread()));
+  }
+
+  @Test(expected = IllegalStateException.class)
+  public void testPropagatesParseFailure() throws InterruptedException {
+    pageParser.failing = page;
+    parseStage = new PageParseStage(pageParser, 2, 10);
+    parseStage.start(new ImportPlan(folder.getRoot()), false);
+    pageParser.awaitParsed(2);
+    parseStage.parsePage(new File(page, "index.html"));
+  }
+
+  private void assertParsed(File file) {
+    if (file.isDirectory()) {
+      file = new File(file, "index.html");
+    }
+    List<BaseContentEntry<?>> entries = parseStage.parsePage(file);
+    assertEquals(1, entries.size());
+    assertEquals(file.getPath(), entries.get(0).getId());
+  }
+
+  private File newPage(File parent, String name) throws IOException {
+    File directory = new File(parent, name);
+    directory.mkdirs();
+    Files.write(name, new File(directory, "index.html"), Charsets.UTF_8);
+    return directory;
+  }
+
+  private static class FakePageParser implements PageParser {
+
+    final Multiset<File> parsed = HashMultiset.create();
+    final List<Thread> threads = Lists.newArrayList();
+    volatile File failing;
+
+    @Override
+    public List<BaseContentEntry<?>> parsePage(File file) {
+      synchronized (this) {
+        parsed.add(file.getParentFile().getName().equals("_revisions")
+            ? file : file.getParentFile());
+        threads.add(Thread.currentThread());
+        notifyAll();
+      }
+      if (file.getParentFile().equals(failing)) {
+        throw new IllegalStateException();
+      }
+      WebPageEntry entry = new WebPageEntry();
+      entry.setId(file.getPath());
+      List<BaseContentEntry<?>> entries = Lists.newArrayList();
+      entries.add(entry);
+      return entries;
+    }
+
+    synchronized void awaitParsed(int num) throws InterruptedException {
+      long end = System.currentTimeMillis() + TIMEOUT_MILLIS;
+      while (parsed.size() < num) {
+        long remaining = end - System.currentTimeMillis();
+        assertTrue("Timed out waiting for parses.", remaining > 0);
+        wait(remaining);
+      }
+    }
+
+    synchronized void awaitParsed(File directory)
+        throws InterruptedException {
+      long end = System.currentTimeMillis() + TIMEOUT_MILLIS;
+      while (!parsed.contains(directory)) {
+        long remaining = end - System.currentTimeMillis();
+        assertTrue("Timed out waiting for parse.", remaining > 0);
+        wait(remaining);
+      }
+    }
+
+    synchronized int numParsed() {
+      return parsed.size();
+    }
+
+    synchronized int parsedOn(Thread thread) {
+      int num = 0;
+      for (Thread parsedOn : threads) {
+        if (parsedOn == thread) {
+          num++;
+        }
+      }
+      return num;
+    }
+  }
+}
@@ -0,0 +1,92 @@
+/*
+ * Copyright (C) 2009 Google Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.google.sites.liberation.imprt;
+
+import static org.junit.Assert.*;
+
+import com.google.common.collect.Lists;
+import com.google.gdata.data.sites.BasePageEntry;
+import com.google.gdata.data.sites.PageName;
+import com.google.gdata.data.sites.WebPageEntry;
+import com.google.sites.liberation.util.EntryUtils;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import java.net.URL;
+import java.util.List;
+
+public class RelativeLinkConverterImplTest {
+
+  private static final String URL = "https://sites.google.com/site/mysite";
+
+  private RelativeLinkConverter converter;
+  private List<BasePageEntry<?>> ancestors;
+
+  @Before
+  public void setUp() {
+    converter = new RelativeLinkConverterImpl();
+    ancestors = Lists.newArrayList();
+    ancestors.add(getPage("a"));
+    ancestors.add(getPage("b"));
+  }
+
+  @Test
+  public void testConvertLinks() {
+    assertEquals("<a href=\"" + URL + "/a/b\">x</a>", convert(
+        "<a href=\"../index.html\">x</a>", false));
+    assertEquals("<a href='" + URL + "/a/c'>x</a>", convert(
+        "<a href='../../c/index.html'>x</a>", false));
+    assertEquals("<a href=\"" + URL + "/home\">x</a>"
+        + "<a href='" + URL + "/a/b/d.txt'>y</a>", convert(
+        "<a href=\"../../../home/index.html\">x</a>"
+        + "<a href='../d.txt'>y</a>", false));
+    assertEquals("<a href=\"" + URL + "/a/b\">x</a>", convert(
+        "<a href=\"../../index.html\">x</a>", true));
+  }
+
+  @Test
+  public void testOtherLinksAreKept() {
+    String content = "<a href=\"http://www.google.com/\">x</a>"
+        + "<a href='page/index.html'>y</a><a href=../z>z</a>";
+    assertSame(content, convert(content, false));
+    assertEquals("<a href=\"../open</a><a href='" + URL + "/a/b/c'>y</a>",
+        convert("<a href=\"../open</a><a href='../c/index.html'>y</a>", 
+        false));
+  }
+
+  @Test
+  public void testConvertEntryLinks() throws Exception {
+    BasePageEntry<?> entry = getPage("page");
+    EntryUtils.setContent(entry, 
+        "<div><a href=\"../../index.html\">x</a></div>");
+    converter.convertLinks(entry, ancestors, new URL(URL), false);
+    assertEquals("<div><a href=\"" + URL + "/a\">x</a></div>", 
+        EntryUtils.getXhtmlContent(entry));
+  }
+
+  private String convert(String content, boolean isRevision) {
+    return RelativeLinkConverterImpl.convertLinks(content, ancestors, URL, 
+        isRevision);
+  }
+
+  private BasePageEntry<?> getPage(String name) {
+    BasePageEntry<?> page = new WebPageEntry();
+    page.setPageName(new PageName(name));
+    return page;
+  }
+}
@@ -0,0 +1,145 @@
+/*
+ * Copyright (C) 2009 Google Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.google.sites.liberation.imprt;
+
+import static org.junit.Assert.*;
+
+import com.google.gdata.data.PlainTextConstruct;
+import com.google.gdata.data.XhtmlTextConstruct;
+import com.google.gdata.data.sites.AttachmentEntry;
+import com.google.gdata.data.sites.BasePageEntry;
+import com.google.gdata.data.sites.CommentEntry;
+import com.google.gdata.data.sites.ListItemEntry;
+import com.google.gdata.data.sites.PageName;
+import com.google.gdata.data.sites.WebPageEntry;
+import com.google.gdata.data.spreadsheet.Field;
+import com.google.gdata.util.XmlBlob;
+import com.google.sites.liberation.util.EntryUtils;
+
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * @author bsimon@google.com (Benjamin Simon)
+ */
+public class RemoteSiteIndexTest {
+
+  private RemoteSiteIndex siteIndex;
+
+  @Before
+  public void before() {
+    siteIndex = new RemoteSiteIndex();
+  }
+
+  @Test
+  public void testGetEntry() {
+    BasePageEntry<?> page = newPage("page", "Page", null);
+    siteIndex.addEntry(page);
+    assertSame(page, siteIndex.getEntry("page"));
+    assertNull(siteIndex.getEntry("other"));
+    assertEquals(1, siteIndex.size());
+  }
+
+  @Test
+  public void testGetEntryByPathInAnyOrder() {
+    BasePageEntry<?> grandchild = newPage("grandchild", "grandchild", "child");
+    AttachmentEntry attachment = new AttachmentEntry();
+    attachment.setId("attachment");
+    attachment.setTitle(new PlainTextConstruct("my file.txt"));
+    EntryUtils.setParentId(attachment, "child");
+    BasePageEntry<?> child = newPage("child", "child", "parent");
+    BasePageEntry<?> parent = newPage("parent", "parent", null);
+    siteIndex.addEntry(grandchild);
+    siteIndex.addEntry(attachment);
+    siteIndex.addEntry(child);
+    assertNull(siteIndex.getEntryByPath("/parent/child"));
+    siteIndex.addEntry(parent);
+    assertSame(parent, siteIndex.getEntryByPath("/parent"));
+    assertSame(child, siteIndex.getEntryByPath("/parent/child"));
+    assertSame(grandchild,
+        siteIndex.getEntryByPath("/parent/child/grandchild"));
+    assertSame(attachment,
+        siteIndex.getEntryByPath("/parent/child/my%20file.txt"));
+  }
+
+  @Test
+  public void testRenamedPageMovesDescendants() {
+    siteIndex.addEntry(newPage("parent", "parent", null));
+    BasePageEntry<?> child = newPage("child", "child", "parent");
+    siteIndex.addEntry(child);
+    siteIndex.addEntry(newPage("parent", "renamed", null));
+    assertNull(siteIndex.getEntryByPath("/parent"));
+    assertNull(siteIndex.getEntryByPath("/parent/child"));
+    assertSame(child, siteIndex.getEntryByPath("/renamed/child"));
+  }
+
+  @Test
+  public void testContainsEquivalentComment() {
+    CommentEntry comment = new CommentEntry();
+    comment.setId("comment");
+    XmlBlob blob = new XmlBlob();
+    blob.setBlob("<div>hi &amp; <b>bye</b></div>");
+    comment.setContent(new XhtmlTextConstruct(blob));
+    EntryUtils.setParentId(comment, "page");
+    siteIndex.addEntry(comment);
+    assertTrue(siteIndex.containsEquivalent(newComment("hi & bye", "page")));
+    assertFalse(siteIndex.containsEquivalent(newComment("hi", "page")));
+    assertFalse(siteIndex.containsEquivalent(
+        newComment("hi & bye", "other")));
+  }
+
+  @Test
+  public void testContainsEquivalentListItem() {
+    ListItemEntry item = newListItem("list", "1", "2");
+    item.setId("item");
+    siteIndex.addEntry(item);
+    ListItemEntry reordered = new ListItemEntry();
+    reordered.addField(new Field("B", "Second", "2"));
+    reordered.addField(new Field("A", "First", "1"));
+    EntryUtils.setParentId(reordered, "list");
+    assertTrue(siteIndex.containsEquivalent(reordered));
+    assertFalse(siteIndex.containsEquivalent(newListItem("list", "1", "3")));
+    assertFalse(siteIndex.containsEquivalent(newListItem("other", "1", "2")));
+    assertFalse(siteIndex.containsEquivalent(newPage("page", "page", "list")));
+  }
+
+  private BasePageEntry<?> newPage(String id, String name, String parentId) {
+    BasePageEntry<?> page = new WebPageEntry();
+    page.setId(id);
+    page.setPageName(new PageName(name));
+    if (parentId != null) {
+      EntryUtils.setParentId(page, parentId);
+    }
+    return page;
+  }
+
+  private CommentEntry newComment(String text, String parentId) {
+    CommentEntry comment = new CommentEntry();
+    comment.setContent(new PlainTextConstruct(text));
+    EntryUtils.setParentId(comment, parentId);
+    return comment;
+  }
+
+  private ListItemEntry newListItem(String parentId, String first,
+      String second) {
+    ListItemEntry item = new ListItemEntry();
+    item.addField(new Field("A", "First", first));
+    item.addField(new Field("B", "Second", second));
+    EntryUtils.setParentId(item, parentId);
+    return item;
+  }
+}
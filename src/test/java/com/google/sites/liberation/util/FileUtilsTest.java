@@ -0,0 +1,72 @@
+/*
+ * Copyright (C) 2009 Google Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.google.sites.liberation.util;
+
+import static org.junit.Assert.*;
+
+import com.google.common.base.Charsets;
+import com.google.common.io.Files;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.io.IOException;
+
+public class FileUtilsTest {
+
+  @Rule
+  public TemporaryFolder folder = new TemporaryFolder();
+
+  @Test
+  public void testReplaceFile() throws IOException {
+    File source = write("source", "new");
+    File target = write("target", "old");
+    assertTrue(FileUtils.replaceFile(source, target));
+    assertEquals("new", Files.toString(target, Charsets.UTF_8));
+    assertFalse(source.exists());
+    assertFalse(FileUtils.getBackupFile(target).exists());
+  }
+
+  @Test
+  public void testReplaceFileNeverReplacesDirectory() throws IOException {
+    File source = write("source", "new");
+    File target = new File(folder.getRoot(), "target");
+    new File(target, "child").mkdirs();
+    assertFalse(FileUtils.replaceFile(source, target));
+    assertTrue(new File(target, "child").isDirectory());
+    assertTrue(source.isFile());
+    assertFalse(FileUtils.getBackupFile(target).exists());
+  }
+
+  @Test
+  public void testGetFileOrBackup() throws IOException {
+    File file = new File(folder.getRoot(), "file");
+    assertEquals(file, FileUtils.getFileOrBackup(file));
+    File backup = write("file.old", "old");
+    assertEquals(backup, FileUtils.getFileOrBackup(file));
+    write("file", "new");
+    assertEquals(file, FileUtils.getFileOrBackup(file));
+  }
+
+  private File write(String name, String contents) throws IOException {
+    File file = new File(folder.getRoot(), name);
+    Files.write(contents, file, Charsets.UTF_8);
+    return file;
+  }
+}
@@ -18,8 +18,12 @@ package com.google.sites.liberation.util;
 
 import static org.junit.Assert.*;
 
+import org.apache.commons.lang.StringEscapeUtils;
 import org.junit.Test;
 
+import java.io.IOException;
+import java.util.Random;
+
 /**
  * @author bsimon@google.com (Benjamin Simon)
  */
@@ -111,4 +115,62 @@ public class XmlElementTest {
     div.setAttribute("href", "not#");
     assertEquals("<div class=\"main\" href=\"not#\" />", div.toString());
   }
+  
+  @Test
+  public void testManyChildrenAndAttributes() {
+    XmlElement ul = new XmlElement("ul");
+    StringBuilder expected = new StringBuilder("<ul");
+    for (char c = 'a'; c <= 'z'; c++) {
+      expected.append(' ').append(c).append("=\"").append(c).append('"');
+    }
+    expected.append('>');
+    for (char c = 'z'; c >= 'a'; c--) {
+      ul.setAttribute(String.valueOf(c), String.valueOf(c));
+    }
+    for (int i = 0; i < 100; i++) {
+      ul.addElement(new XmlElement("li").addText(Integer.toString(i)));
+      expected.append("<li>").append(i).append("</li>");
+    }
+    expected.append("</ul>");
+    assertEquals(expected.toString(), ul.toString());
+  }
+  
+  @Test
+  public void testAppendEscaped() throws IOException {
+    Random random = new Random(42);
+    String alphabet = "ab <>&\"'\u00e9\u20ac\ud83d\ude00\n";
+    for (int i = 0; i < 1000; i++) {
+      StringBuilder text = new StringBuilder();
+      int length = random.nextInt(20);
+      for (int j = 0; j < length; j++) {
+        text.append(alphabet.charAt(random.nextInt(alphabet.length())));
+      }
+      StringBuilder escaped = new StringBuilder();
+      XmlElement.appendEscaped(text.toString(), escaped);
+      assertEquals(StringEscapeUtils.escapeXml(text.toString()), 
+          escaped.toString());
+    }
+    XmlElement a = new XmlElement("a").setAttribute("title", "\"x\" & 'y'")
+        .addText("\u00e9");
+    assertEquals("<a title=\"&quot;x&quot; &amp; &apos;y&apos;\">&#233;</a>", 
+        a.toString());
+  }
+  
+  @Test
+  public void testEquals() {
+    XmlElement div = new XmlElement("div").setAttribute("class", "main")
+        .addElement(new XmlElement("hr")).addText("text");
+    XmlElement other = new XmlElement("div").addElement(new XmlElement("hr"))
+        .setAttribute("class", "main").addText("text");
+    assertEquals(div, other);
+    assertEquals(div.hashCode(), other.hashCode());
+    assertFalse(div.equals(new XmlElement("div")));
+    assertFalse(div.equals(new XmlElement("span").setAttribute("class", "main")
+        .addElement(new XmlElement("hr")).addText("text")));
+    assertFalse(div.equals(new XmlElement("div").setAttribute("class", "side")
+        .addElement(new XmlElement("hr")).addText("text")));
+    assertFalse(div.equals(new XmlElement("div").setAttribute("class", "main")
+        .addElement(new XmlElement("hr")).addXml("text")));
+    assertFalse(div.equals("<div class=\"main\"><hr />text</div>"));
+  }
 }
@@ -0,0 +1,89 @@
+/*
+ * Copyright (C) 2009 Google Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.google.sites.liberation.util;
+
+import static org.junit.Assert.*;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.IOException;
+
+public class XmlWriterTest {
+
+  private StringBuilder out;
+  private XmlWriter writer;
+
+  @Before
+  public void setUp() {
+    out = new StringBuilder();
+    writer = new XmlWriter(out);
+  }
+
+  @Test
+  public void testEmptyElement() throws IOException {
+    writer.startElement("div").endElement();
+    assertEquals("<div />", out.toString());
+  }
+
+  @Test
+  public void testChildren() throws IOException {
+    writer.startElement("div").startElement("span").startElement("hr")
+        .endElement().endElement().addText("a<b").addXml("<br />")
+        .addElement(new XmlElement("p").addText("c")).endElement();
+    assertEquals("<div><span><hr /></span>a&lt;b<br /><p>c</p></div>", 
+        out.toString());
+  }
+
+  @Test
+  public void testEmptyTextIsAChild() throws IOException {
+    writer.startElement("div").addText("").endElement();
+    assertEquals("<div></div>", out.toString());
+  }
+
+  @Test
+  public void testAttributes() throws IOException {
+    writer.startElement("div").setAttribute("href", "#")
+        .setAttribute("class", "main").setAttribute("href", "\"not#\"")
+        .endElement();
+    assertEquals("<div class=\"main\" href=\"&quot;not#&quot;\" />", 
+        out.toString());
+    try {
+      writer.setAttribute("name", "value");
+      fail("Attributes should only be set on a started element!");
+    } catch (IllegalStateException e) {}
+  }
+
+  @Test
+  public void testSameOutputAsXmlElement() throws IOException {
+    XmlElement table = new XmlElement("table").setAttribute("border", "1");
+    table.addElement(new XmlElement("tr").setAttribute("class", "gs:data")
+        .addElement(new XmlElement("th").addText("Author")));
+    table.addElement(new XmlElement("tr").addElement(new XmlElement("td")));
+    writer.startElement("table").setAttribute("border", "1");
+    writer.startElement("tr").setAttribute("class", "gs:data");
+    writer.startElement("th").addText("Author").endElement().endElement();
+    writer.startElement("tr").startElement("td").endElement().endElement();
+    writer.endElement();
+    assertEquals(table.toString(), out.toString());
+  }
+
+  @Test(expected = IllegalStateException.class)
+  public void testEndWithoutStart() throws IOException {
+    writer.endElement();
+  }
+}